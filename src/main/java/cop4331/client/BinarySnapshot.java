@@ -0,0 +1,338 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact binary snapshot of the product catalog.
+ * <p>
+ * The file is a fixed header, one fixed-size record per product and a string table.
+ * Records hold the numeric fields inline and refer to strings by their offset in the table;
+ * repeated strings such as seller IDs and types are stored once.
+ * Products that are not plain {@link Product}s (bundles, discounted products) keep their
+ * fields in the record for indexing and carry their full JSON form as a payload string.
+ * <p>
+ * Snapshots are written through a {@link FileChannel} and read back through a
+ * {@link MappedByteBuffer}; {@link #asList()} materializes each product on first access,
+ * so opening a snapshot costs no more than mapping it.
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0x53435042; // "SCPB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;   // magic, version, record count, reserved
+    private static final int NO_STRING = -1;
+
+    // Record layout: id, name, description, sellerId, type, payload refs, then numeric fields
+    private static final int ID = 0;
+    private static final int NAME = 4;
+    private static final int DESCRIPTION = 8;
+    private static final int SELLER_ID = 12;
+    private static final int TYPE = 16;
+    private static final int PAYLOAD = 20;
+    private static final int PRICE = 24;
+    private static final int INVOICE_PRICE = 32;
+    private static final int QUANTITY = 40;
+    private static final int RECORD_SIZE = 44;
+
+    private final MappedByteBuffer buffer;
+    private final ObjectMapper objectMapper;
+    private final int recordCount;
+    private final int stringTableOffset;
+
+    private BinarySnapshot(MappedByteBuffer buffer, ObjectMapper objectMapper) throws IOException {
+        this.buffer = buffer;
+        this.objectMapper = objectMapper;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary product snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported binary snapshot version " + buffer.getInt(4));
+        }
+        this.recordCount = buffer.getInt(8);
+        this.stringTableOffset = HEADER_SIZE + recordCount * RECORD_SIZE;
+    }
+
+    /**
+     * Maps an existing snapshot file.
+     *
+     * @param file the snapshot file.
+     * @param objectMapper the mapper used to bind payload products.
+     * @return the opened snapshot.
+     * @throws IOException if the file cannot be mapped or is not a snapshot.
+     */
+    public static BinarySnapshot open(File file, ObjectMapper objectMapper) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new BinarySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), objectMapper);
+        }
+    }
+
+    /**
+     * Writes a list of products as a binary snapshot.
+     *
+     * @param file the file to write; any existing file is replaced.
+     * @param products the products to write.
+     * @param objectMapper the mapper used to serialize payload products.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(File file, List<Product> products, ObjectMapper objectMapper) throws IOException {
+        write(file, encode(products, objectMapper));
+    }
+
+    /**
+     * Encodes a list of products in the snapshot format without writing it, so the products can
+     * change again while the encoded snapshot is written.
+     *
+     * @param products the products to encode.
+     * @param objectMapper the mapper used to serialize payload products.
+     * @return the record section and the string table, to pass to {@link #write(File, ByteBuffer[])}.
+     * @throws IOException if a payload product cannot be serialized.
+     */
+    public static ByteBuffer[] encode(List<Product> products, ObjectMapper objectMapper) throws IOException {
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, Integer> offsets = new HashMap<>();
+
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + products.size() * RECORD_SIZE);
+        records.putInt(MAGIC).putInt(VERSION).putInt(products.size()).putInt(0);
+        for (Product product : products) {
+            boolean plain = product.getClass() == Product.class || product instanceof ColumnarCatalog.View;
+            records.putInt(intern(product.getId(), strings, offsets));
+            records.putInt(intern(product.getName(), strings, offsets));
+            records.putInt(intern(product.getDescription(), strings, offsets));
+            records.putInt(intern(product.getSellerId(), strings, offsets));
+            records.putInt(intern(product.getType(), strings, offsets));
+            records.putInt(plain ? NO_STRING : append(objectMapper.writeValueAsString(product), strings));
+            records.putDouble(product.getPrice());
+            records.putDouble(product.getInvoicePrice());
+            records.putInt(product.getQuantity());
+        }
+        records.flip();
+        return new ByteBuffer[] {records, ByteBuffer.wrap(strings.toByteArray())};
+    }
+
+    /**
+     * Writes a snapshot encoded by {@link #encode}.
+     *
+     * @param file the file to write; any existing file is replaced.
+     * @param snapshot the encoded snapshot; its buffers are read from their current positions.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(File file, ByteBuffer[] snapshot) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[snapshot.length];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = snapshot[i].duplicate(); // A retried checkpoint writes the same buffers again
+            remaining += buffers[i].remaining();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Converts a products JSON file into a binary snapshot.
+     *
+     * @param jsonFile the JSON array of products to read.
+     * @param binaryFile the snapshot file to write.
+     * @param objectMapper the mapper used for JSON binding.
+     * @throws IOException if either file cannot be processed.
+     */
+    public static void convertJsonToBinary(File jsonFile, File binaryFile, ObjectMapper objectMapper) throws IOException {
+        List<Product> products = objectMapper.readValue(jsonFile,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+        write(binaryFile, products, objectMapper);
+    }
+
+    /**
+     * Converts a binary snapshot back into a products JSON file.
+     *
+     * @param binaryFile the snapshot file to read.
+     * @param jsonFile the JSON file to write.
+     * @param objectMapper the mapper used for JSON binding.
+     * @throws IOException if either file cannot be processed.
+     */
+    public static void convertBinaryToJson(File binaryFile, File jsonFile, ObjectMapper objectMapper) throws IOException {
+        objectMapper.writeValue(jsonFile, new ArrayList<>(open(binaryFile, objectMapper).asList()));
+    }
+
+    /**
+     * Command-line converter: {@code toBinary <json> <bin>} or {@code toJson <bin> <json>}.
+     *
+     * @param args the conversion direction followed by the source and target files.
+     * @throws IOException if the conversion fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("toBinary") || args[0].equals("toJson"))) {
+            System.out.println("Usage: BinarySnapshot toBinary <products.json> <products.bin>");
+            System.out.println("       BinarySnapshot toJson <products.bin> <products.json>");
+            return;
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        if (args[0].equals("toBinary")) {
+            convertJsonToBinary(new File(args[1]), new File(args[2]), objectMapper);
+        } else {
+            convertBinaryToJson(new File(args[1]), new File(args[2]), objectMapper);
+        }
+    }
+
+    /**
+     * Returns the number of products in the snapshot.
+     *
+     * @return the record count.
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Reads only the ID of a product, without materializing it.
+     *
+     * @param index the record index.
+     * @return the product ID.
+     */
+    public String idAt(int index) {
+        return readString(buffer.getInt(recordOffset(index) + ID));
+    }
+
+    /**
+     * Builds the product stored at a record index.
+     *
+     * @param index the record index.
+     * @return a new Product for the record.
+     */
+    public Product materialize(int index) {
+        int record = recordOffset(index);
+        int payload = buffer.getInt(record + PAYLOAD);
+        if (payload != NO_STRING) {
+            try {
+                return objectMapper.readValue(readString(payload), Product.class);
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt product payload at record " + index, e);
+            }
+        }
+        return new Product(
+                readString(buffer.getInt(record + ID)),
+                readString(buffer.getInt(record + NAME)),
+                readString(buffer.getInt(record + DESCRIPTION)),
+                buffer.getDouble(record + PRICE),
+                buffer.getInt(record + QUANTITY),
+                readString(buffer.getInt(record + SELLER_ID)),
+                buffer.getDouble(record + INVOICE_PRICE),
+                readString(buffer.getInt(record + TYPE)));
+    }
+
+    /**
+     * Returns a mutable list view of the snapshot whose products are materialized on first access.
+     * Replaced and appended products are kept in memory; the mapped file is never modified.
+     *
+     * @return the lazily materialized product list.
+     */
+    public List<Product> asList() {
+        return new LazyProductList();
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private String readString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        int position = stringTableOffset + offset;
+        int length = buffer.getInt(position);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int intern(String value, ByteArrayOutputStream strings, Map<String, Integer> offsets) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer offset = offsets.get(value);
+        if (offset == null) {
+            offset = append(value, strings);
+            offsets.put(value, offset);
+        }
+        return offset;
+    }
+
+    private static int append(String value, ByteArrayOutputStream strings) {
+        int offset = strings.size();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        strings.write(bytes.length >>> 24);
+        strings.write(bytes.length >>> 16);
+        strings.write(bytes.length >>> 8);
+        strings.write(bytes.length);
+        strings.write(bytes, 0, bytes.length);
+        return offset;
+    }
+
+    /**
+     * Product list backed by the mapped records, materializing and caching each product on first access.
+     */
+    private class LazyProductList extends AbstractList<Product> implements RandomAccess {
+        // Readers materialize concurrently; the first to publish a record wins, so all see one instance
+        private final AtomicReferenceArray<Product> materialized = new AtomicReferenceArray<>(recordCount);
+        private final List<Product> appended = new ArrayList<>();
+
+        @Override
+        public Product get(int index) {
+            if (index >= recordCount) {
+                return appended.get(index - recordCount);
+            }
+            Product product = materialized.get(index);
+            if (product == null) {
+                materialized.compareAndSet(index, null, materialize(index));
+                product = materialized.get(index);
+            }
+            return product;
+        }
+
+        @Override
+        public Product set(int index, Product product) {
+            if (index >= recordCount) {
+                return appended.set(index - recordCount, product);
+            }
+            Product previous = get(index);
+            materialized.set(index, product);
+            return previous;
+        }
+
+        @Override
+        public boolean add(Product product) {
+            appended.add(product);
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return recordCount + appended.size();
+        }
+    }
+}
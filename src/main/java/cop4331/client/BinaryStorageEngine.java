@@ -0,0 +1,56 @@
+package cop4331.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * JSON storage engine variant that checkpoints products to a memory-mapped {@link BinarySnapshot}
+ * ({@code products.bin}). Users and the journal are unchanged.
+ * On first use, products are read from {@code products.json} and converted at the next checkpoint.
+ */
+public class BinaryStorageEngine extends JsonStorageEngine {
+    /**
+     * Constructs a binary storage engine.
+     *
+     * @param directory the directory holding the snapshot and journal files.
+     * @param durability when journal records are forced to disk.
+     * @param syncIntervalMillis the sync interval used by {@link Journal.Durability#INTERVAL}.
+     */
+    public BinaryStorageEngine(File directory, Journal.Durability durability, long syncIntervalMillis) {
+        super(directory, durability, syncIntervalMillis);
+    }
+
+    /**
+     * Maps products.bin and hands the lazily materialized list to the loader,
+     * or falls back to products.json if no binary snapshot exists yet.
+     *
+     * @param loader receives the products.
+     * @throws IOException if the snapshot cannot be read.
+     */
+    @Override
+    protected void loadProducts(Loader loader) throws IOException {
+        File file = new File(directory, "products.bin");
+        if (!file.exists()) {
+            super.loadProducts(loader);
+            return;
+        }
+
+        long start = System.nanoTime();
+        BinarySnapshot snapshot = BinarySnapshot.open(file, objectMapper);
+        loader.loadProducts(snapshot.asList(), snapshot::idAt);
+        System.out.println(String.format("Mapped %d records from %s in %.1f ms",
+                snapshot.size(), file.getName(), (System.nanoTime() - start) / 1e6));
+    }
+
+    @Override
+    protected Journal.Task prepareProducts(List<Product> products) throws IOException {
+        ByteBuffer[] snapshot = BinarySnapshot.encode(products, objectMapper);
+        return () -> {
+            File temp = new File(directory, "products.bin.tmp");
+            BinarySnapshot.write(temp, snapshot);
+            replace(temp, new File(directory, "products.bin"));
+        };
+    }
+}
@@ -1,26 +1,49 @@
 package cop4331.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * The Cart class represents a shopping cart that contains line items and notifies observers of changes.
+ * <p>
+ * Items are kept in insertion order, one per product, keyed by product ID, so finding, merging,
+ * updating and removing an item are constant-time. Adding a product that is already in the cart
+ * increases the quantity of its line item.
+ * <p>
+ * The total is kept in whole cents and adjusted by each item's amount as items are added, removed
+ * or changed, so updating it costs the same for a cart of three lines as for one of three hundred.
+ * {@link #calculateTotal()} reprices every item from scratch.
+ * <p>
+ * Each change notifies observers with a {@link ChangeSet} of the product IDs added, removed or
+ * changed. Between {@link #beginBatch()} and {@link #endBatch()} changes are collected instead and
+ * observers are notified once, when the outermost batch ends.
  */
+@JsonIgnoreProperties(value = "total", allowGetters = true) // Recalculated from the items when read
 public class Cart implements Iterable<LineItem> {
-    private List<LineItem> items;
-    private transient List<Observer<Cart>> observers;
-    private double total;
+    private Map<String, LineItem> items;            // Product ID -> line item, in insertion order
+    private transient List<LineItem> itemList;      // Snapshot returned by getItems(); null after a change
+    private transient ObserverRegistry<Cart> observers;
+    private transient ChangeSet pendingChanges = new ChangeSet(); // Changes not yet sent to observers
+    private transient int batchDepth;                               // Nesting depth of open batches
+    private long totalCents;
     private boolean empty;
 
     /**
      * Constructs an empty Cart.
      */
     public Cart() {
-        this.items = new ArrayList<>();
-        this.observers = new ArrayList<>();
-        this.total = 0.0;
+        this.items = new LinkedHashMap<>();
+        this.observers = new ObserverRegistry<>();
+        this.totalCents = 0;
         this.empty = true;
     }
 
@@ -30,22 +53,54 @@ public class Cart implements Iterable<LineItem> {
      * @return the unmodifiable list of line items
      */
     public List<LineItem> getItems() {
-        return Collections.unmodifiableList(items);
+        List<LineItem> list = itemList;
+        if (list == null) {
+            list = Collections.unmodifiableList(new ArrayList<>(items.values()));
+            itemList = list;
+        }
+        return list;
     }
 
     /**
      * Sets the list of line items in the cart and notifies observers.
+     * Items for the same product are merged into a new line item, leaving the given ones unchanged;
+     * their stock holds are released, as when a product is added again.
      * Also updates the total cost and empty status.
      * 
      * @param items the new list of line items
      */
     public void setItems(List<LineItem> items) {
-        this.items = new ArrayList<>(items);
+        Set<String> oldIds = this.items.keySet();
+        this.items = new LinkedHashMap<>();
+        for (LineItem item : items) {
+            LineItem existing = this.items.putIfAbsent(item.getProduct().getId(), item);
+            if (existing != null) {
+                for (LineItem merged : new LineItem[] {existing, item}) {
+                    if (merged.getHold() != null) {
+                        CartHolds.getInstance().release(merged.getHold());
+                    }
+                }
+                this.items.put(item.getProduct().getId(),
+                        new LineItem(existing.getProduct(), existing.getQuantity() + item.getQuantity()));
+            }
+        }
+        itemList = null;
         calculateTotal();
         empty = this.items.isEmpty();
+        pendingChanges.recordReplaced(oldIds, this.items.keySet());
         notifyObservers();
     }
 
+    /**
+     * Retrieves the line item of a product.
+     *
+     * @param productId the ID of the product
+     * @return the line item, or null if the product is not in the cart
+     */
+    public LineItem getItem(String productId) {
+        return items.get(productId);
+    }
+
     /**
      * Adds a line item to the cart and notifies observers.
      * Also updates the total cost and empty status.
@@ -54,9 +109,36 @@ public class Cart implements Iterable<LineItem> {
      * @param qty the quantity of the product
      */
     public void addItem(Product product, int qty) {
-        items.add(new LineItem(product, qty));
-        calculateTotal();
-        empty = items.isEmpty();
+        addItem(product, qty, null);
+    }
+
+    /**
+     * Adds a line item whose stock is held for this cart and notifies observers.
+     * If the product is already in the cart, the quantities are merged and the item's earlier
+     * hold is released, so the new hold must cover the merged quantity.
+     * The hold is released if the item leaves the cart without being checked out.
+     * 
+     * @param product the product to add
+     * @param qty the quantity of the product
+     * @param hold the stock hold for the item's whole quantity, or null if none
+     */
+    public void addItem(Product product, int qty, CartHold hold) {
+        LineItem item = items.get(product.getId());
+        if (item == null) {
+            item = new LineItem(product, qty);
+            items.put(product.getId(), item);
+            itemList = null;
+            pendingChanges.recordAdded(product.getId());
+        } else {
+            releaseHold(item);
+            item.setQuantity(item.getQuantity() + qty);
+            totalCents -= item.getAmountCents();
+            pendingChanges.recordChanged(product.getId());
+        }
+        item.setHold(hold);
+        item.setAmountCents(Money.lineCents(item.getProduct().getPrice(), item.getQuantity()));
+        totalCents += item.getAmountCents();
+        empty = false;
         notifyObservers();
     }
 
@@ -67,8 +149,13 @@ public class Cart implements Iterable<LineItem> {
      * @param product the product to remove
      */
     public void removeItem(Product product) {
-        items.removeIf(item -> item.getProduct().equals(product));
-        calculateTotal();
+        LineItem item = items.remove(product.getId());
+        if (item != null) {
+            releaseHold(item);
+            totalCents -= item.getAmountCents();
+            itemList = null;
+            pendingChanges.recordRemoved(product.getId());
+        }
         empty = items.isEmpty();
         notifyObservers();
     }
@@ -79,13 +166,27 @@ public class Cart implements Iterable<LineItem> {
      * @param newQuantity
      */
     public void updateItemQuantity(Product product, int newQuantity) {
-        for (LineItem item : items) {
-            if (item.getProduct().equals(product)) {
-                item.setQuantity(newQuantity);
-                calculateTotal();
-                notifyObservers(); // Notify observers about the change
-                return;
-            }
+        LineItem item = items.get(product.getId());
+        if (item != null) {
+            releaseHold(item); // The held quantity no longer matches; checkout reserves afresh
+            item.setQuantity(newQuantity);
+            long amountCents = Money.lineCents(item.getProduct().getPrice(), newQuantity);
+            totalCents += amountCents - item.getAmountCents();
+            item.setAmountCents(amountCents);
+            pendingChanges.recordChanged(product.getId());
+            notifyObservers(); // Notify observers about the change
+        }
+    }
+
+    /**
+     * Releases the stock hold of a product's line item, if it has one.
+     *
+     * @param productId the ID of the product
+     */
+    void releaseHold(String productId) {
+        LineItem item = items.get(productId);
+        if (item != null) {
+            releaseHold(item);
         }
     }
 
@@ -93,12 +194,24 @@ public class Cart implements Iterable<LineItem> {
      * Clears all items from the cart and notifies observers.
      */
     public void clearCart() {
+        for (LineItem item : items.values()) {
+            releaseHold(item);
+            pendingChanges.recordRemoved(item.getProduct().getId());
+        }
         items.clear();
-        calculateTotal();
+        itemList = null;
+        totalCents = 0;
         empty = true;
         notifyObservers();
     }
 
+    private static void releaseHold(LineItem item) {
+        if (item.getHold() != null) {
+            CartHolds.getInstance().release(item.getHold());
+            item.setHold(null);
+        }
+    }
+
     /**
      * Checks if the cart is empty.
      * 
@@ -123,7 +236,17 @@ public class Cart implements Iterable<LineItem> {
      * @return the total cost
      */
     public double getTotal() {
-        return total;
+        return Money.toDollars(totalCents);
+    }
+
+    /**
+     * Returns the exact total cost of the items in the cart.
+     *
+     * @return the total cost in cents
+     */
+    @JsonIgnore
+    public long getTotalCents() {
+        return totalCents;
     }
 
     /**
@@ -132,22 +255,26 @@ public class Cart implements Iterable<LineItem> {
      * @param total the total cost to set
      */
     public void setTotal(double total) {
-        this.total = total;
+        this.totalCents = Money.toCents(total);
     }
 
     /**
-     * Recalculates the total cost based on the items in the cart.
+     * Recalculates the total cost from the current price of every item in the cart,
+     * for example after prices changed or to verify the running total.
      * Also updates the empty status.
      */
     public void calculateTotal() {
-        total = items.stream()
-                     .mapToDouble(item -> item.getProduct().getPrice() * item.getQuantity())
-                     .sum();
+        long sum = 0;
+        for (LineItem item : items.values()) {
+            item.setAmountCents(Money.lineCents(item.getProduct().getPrice(), item.getQuantity()));
+            sum += item.getAmountCents();
+        }
+        totalCents = sum;
         empty = items.isEmpty();
     }
 
     /**
-     * Adds an observer.
+     * Adds an observer. Observers are held weakly, so the caller must keep a reference to the observer.
      * 
      * @param observer the observer to add
      */
@@ -155,6 +282,17 @@ public class Cart implements Iterable<LineItem> {
         observers.add(observer);
     }
 
+    /**
+     * Adds an observer notified on the given executor, for example {@code SwingUtilities::invokeLater}.
+     * Observers are held weakly, so the caller must keep a reference to the observer.
+     *
+     * @param observer the observer to add
+     * @param executor the executor to deliver notifications on
+     */
+    public void addObserver(Observer<Cart> observer, Executor executor) {
+        observers.add(observer, executor);
+    }
+
     /**
      * Removes an observer.
      * 
@@ -165,12 +303,37 @@ public class Cart implements Iterable<LineItem> {
     }
 
     /**
-     * Notifies all observers of changes to the cart.
+     * Starts a batch of changes: observers are not notified until the matching {@link #endBatch()},
+     * and then only once, with all the changes made in between. Batches may be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes. When the outermost batch ends, observers are notified once if
+     * anything changed.
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch without beginBatch");
+        }
+        if (--batchDepth == 0 && !pendingChanges.isEmpty()) {
+            notifyObservers();
+        }
+    }
+
+    /**
+     * Notifies all observers of the changes to the cart since the last notification,
+     * unless a batch is open.
      */
     public void notifyObservers() {
-        for (Observer<Cart> observer : observers) {
-            observer.update(this);
+        if (batchDepth > 0) {
+            return;
         }
+        ChangeSet changes = pendingChanges;
+        pendingChanges = new ChangeSet();
+        observers.notifyObservers(this, changes);
     }
 
     /**
@@ -180,6 +343,6 @@ public class Cart implements Iterable<LineItem> {
      */
     @Override
     public Iterator<LineItem> iterator() {
-        return items.iterator();
+        return getItems().iterator();
     }
 }
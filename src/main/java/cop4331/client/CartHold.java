@@ -0,0 +1,83 @@
+package cop4331.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stock set aside for a cart line item until it is checked out, removed or the hold expires.
+ * A hold ends exactly once: converted into a checkout reservation, released, or expired.
+ */
+public class CartHold {
+    private static final int ACTIVE = 0;
+    private static final int CONVERTED = 1;
+    private static final int RELEASED = 2;
+    private static final int EXPIRED = 3;
+
+    private final Product product;
+    private final int quantity;
+    private final AtomicInteger state = new AtomicInteger(ACTIVE);
+    private volatile HashedTimingWheel.Timeout expiry;
+
+    /**
+     * Constructs a hold over units already reserved on a product.
+     *
+     * @param product the product the units were reserved on.
+     * @param quantity the number of reserved units.
+     */
+    CartHold(Product product, int quantity) {
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Retrieves the held product.
+     *
+     * @return the product.
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Retrieves the number of held units.
+     *
+     * @return the quantity.
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Checks whether the hold still reserves its units.
+     *
+     * @return true until the hold is converted, released or expired.
+     */
+    public boolean isActive() {
+        return state.get() == ACTIVE;
+    }
+
+    void setExpiry(HashedTimingWheel.Timeout expiry) {
+        this.expiry = expiry;
+    }
+
+    /**
+     * Ends the hold in a final state.
+     *
+     * @param converted whether the units move to a checkout instead of returning to stock.
+     * @param expired whether the hold ended because its time ran out.
+     * @return true if the hold was active and is now ended.
+     */
+    boolean end(boolean converted, boolean expired) {
+        int target = converted ? CONVERTED : expired ? EXPIRED : RELEASED;
+        if (!state.compareAndSet(ACTIVE, target)) {
+            return false;
+        }
+        HashedTimingWheel.Timeout timeout = expiry;
+        if (timeout != null && !expired) {
+            timeout.cancel();
+        }
+        if (!converted) {
+            product.releaseReservation(quantity);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+package cop4331.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Singleton that places time-limited holds on stock as items enter a cart.
+ * <p>
+ * A hold reserves units on the product (see {@link Product#tryReserve(int)}) so they cannot be
+ * sold to another customer, and schedules its expiry on a {@link HashedTimingWheel}. At checkout
+ * the hold is converted into the checkout's reservation; if the customer removes the item or does
+ * not check out within the time limit, the units return to stock.
+ * Holds are disabled unless {@code -Dcop4331.cartHoldSeconds} is set to a positive number of seconds.
+ */
+public class CartHolds {
+    /** System property setting how long a hold lasts, in seconds; 0 disables holds. */
+    private static final String TTL_PROPERTY = "cop4331.cartHoldSeconds";
+
+    /** Duration of one timing wheel tick; holds expire within one tick of their deadline. */
+    private static final long TICK_MILLIS = 100;
+
+    /** Number of buckets in the timing wheel. */
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private static CartHolds instance; // Singleton instance
+
+    private final long ttlMillis;
+    private final HashedTimingWheel wheel;
+    private final AtomicLong activeHolds = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong conversions = new AtomicLong();
+    private final AtomicLong releases = new AtomicLong();
+
+    /**
+     * Constructs a hold manager.
+     *
+     * @param ttl how long a hold lasts; 0 disables holds.
+     * @param unit the unit of {@code ttl}.
+     */
+    public CartHolds(long ttl, TimeUnit unit) {
+        this.ttlMillis = unit.toMillis(ttl);
+        this.wheel = new HashedTimingWheel(TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL, "cart-hold-expiry");
+    }
+
+    /**
+     * Returns the Singleton instance, configured from the system properties on first use.
+     *
+     * @return the CartHolds instance.
+     */
+    public static synchronized CartHolds getInstance() {
+        if (instance == null) {
+            instance = new CartHolds(Long.getLong(TTL_PROPERTY, 0), TimeUnit.SECONDS);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the Singleton instance, for example with a short time limit in tests.
+     *
+     * @param holds the instance to return from {@link #getInstance()}, or null to create it on next use.
+     */
+    static synchronized void setInstance(CartHolds holds) {
+        instance = holds;
+    }
+
+    /**
+     * Checks whether holds are placed at all.
+     *
+     * @return true if the time limit is positive.
+     */
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    /**
+     * Reserves units of a product for a cart until the hold is converted, released or expires.
+     *
+     * @param product the catalog product to hold.
+     * @param quantity the number of units to hold.
+     * @return the hold, or null if holds are disabled or fewer units are available.
+     */
+    public CartHold hold(Product product, int quantity) {
+        if (!isEnabled() || !product.tryReserve(quantity)) {
+            return null;
+        }
+        CartHold hold = new CartHold(product, quantity);
+        activeHolds.incrementAndGet();
+        hold.setExpiry(wheel.schedule(() -> {
+            if (hold.end(false, true)) {
+                activeHolds.decrementAndGet();
+                expirations.incrementAndGet();
+            }
+        }, ttlMillis, TimeUnit.MILLISECONDS));
+        return hold;
+    }
+
+    /**
+     * Hands a hold's reserved units to a checkout. The caller becomes responsible for
+     * committing or releasing them.
+     *
+     * @param hold the hold to convert.
+     * @return true if the hold was still active, false if it had already expired or been released.
+     */
+    public boolean convert(CartHold hold) {
+        if (!hold.end(true, false)) {
+            return false;
+        }
+        activeHolds.decrementAndGet();
+        conversions.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns a hold's units to stock, for example when its item leaves the cart.
+     *
+     * @param hold the hold to release.
+     */
+    public void release(CartHold hold) {
+        if (hold.end(false, false)) {
+            activeHolds.decrementAndGet();
+            releases.incrementAndGet();
+        }
+    }
+
+    /**
+     * Retrieves the number of holds currently reserving stock.
+     *
+     * @return the active hold count.
+     */
+    public long getActiveHolds() {
+        return activeHolds.get();
+    }
+
+    /**
+     * Retrieves the number of holds that ran out of time.
+     *
+     * @return the expiration count.
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * Retrieves the number of holds converted into a checkout.
+     *
+     * @return the conversion count.
+     */
+    public long getConversions() {
+        return conversions.get();
+    }
+
+    /**
+     * Retrieves the number of holds released before they expired.
+     *
+     * @return the release count.
+     */
+    public long getReleases() {
+        return releases.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CartHolds[active=" + getActiveHolds() + ", expired=" + getExpirations()
+                + ", converted=" + getConversions() + ", released=" + getReleases() + "]";
+    }
+}
@@ -0,0 +1,615 @@
+package cop4331.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory secondary indexes over the catalog, answering {@link CatalogQuery} range and facet
+ * queries without scanning every product.
+ * <p>
+ * Each product gets a slot number. Sellers, types and in-stock are bitmaps of slots, so criteria
+ * combine with word-wide AND and OR, and the total is a population count. Prices and names are
+ * sorted indexes of slots: a price range is read off the price index starting at its lowest
+ * price, and a page is read off the index of its sort order, skipping products the criteria
+ * exclude, until the page is full. When few products match, they are sorted directly instead.
+ * <p>
+ * A sorted index is a large sorted array plus a small sorted array of recent changes, merged into
+ * it once the changes reach a sixty-fourth of its size, so updating a product costs a binary search
+ * and a short copy instead of a shift of the whole index. Entries of changed or removed products
+ * are marked stale and skipped until the merge drops them.
+ * <p>
+ * The index reflects each product as it was last indexed: price and stock changes reach it when
+ * the product is updated in the database, as checkout does, but not when stock is only held for
+ * a cart. Queries share a read lock and updates take a write lock.
+ */
+public class CatalogIndex {
+    /** Orders names ignoring case, then exactly, so the order is total. */
+    private static final Comparator<String> NAME_ORDER =
+            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.<String>naturalOrder()));
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slots = new HashMap<>(); // Product ID -> slot
+    private int[] freeSlots = new int[16];                      // Slots of removed products, for reuse
+    private int freeCount;
+    private int slotCount;                                      // Slots ever used
+
+    // Slot -> indexed product fields
+    private String[] productIds = new String[1024];
+    private long[] prices = new long[1024];
+    private String[] names = new String[1024];
+    private int[] sellerCodes = new int[1024];
+    private int[] typeCodes = new int[1024];
+
+    private final BitSet live = new BitSet();    // Slots holding a product
+    private final BitSet inStock = new BitSet(); // Slots of products with available stock
+    private final Facet sellers = new Facet();
+    private final Facet types = new Facet();
+    private final SortedSlots<Long> byPrice = new SortedSlots<>(Comparator.<Long>naturalOrder());
+    private final SortedSlots<String> byName = new SortedSlots<>(NAME_ORDER);
+
+    /**
+     * The distinct values of a product field, each with a code and a bitmap of the slots holding it.
+     */
+    private static final class Facet {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<BitSet> slots = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+                slots.add(new BitSet());
+            }
+            return code;
+        }
+
+        /**
+         * Retrieves the slots holding any of the given values.
+         */
+        BitSet slotsOf(Set<String> matching) {
+            BitSet union = new BitSet();
+            for (String value : matching) {
+                Integer code = codes.get(value);
+                if (code != null) {
+                    union.or(slots.get(code));
+                }
+            }
+            return union;
+        }
+
+        /**
+         * Counts the slots holding each value among the given slots.
+         *
+         * @param among the slots to count.
+         * @param total the number of slots among them.
+         * @param slotCodes the code of each slot.
+         * @return the non-zero counts by value, in the order the values were first indexed.
+         */
+        Map<String, Integer> count(BitSet among, int total, int[] slotCodes) {
+            int[] counts = new int[values.size()];
+            if ((long) values.size() * (among.length() / 64 + 1) < total) {
+                // Few values: intersecting each bitmap is cheaper than visiting every slot
+                for (int code = 0; code < counts.length; code++) {
+                    BitSet intersection = (BitSet) slots.get(code).clone();
+                    intersection.and(among);
+                    counts[code] = intersection.cardinality();
+                }
+            } else {
+                for (int slot = among.nextSetBit(0); slot >= 0; slot = among.nextSetBit(slot + 1)) {
+                    counts[slotCodes[slot]]++;
+                }
+            }
+            Map<String, Integer> byValue = new LinkedHashMap<>();
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0) {
+                    byValue.put(values.get(code), counts[code]);
+                }
+            }
+            return byValue;
+        }
+    }
+
+    /**
+     * Slots sorted by a key, then by product ID. Every indexed slot is either in the main array
+     * or in the pending array of recent changes; a stale slot's entry in the main array is ignored.
+     */
+    private final class SortedSlots<K> {
+        private static final int MIN_PENDING = 1024;
+        private static final int BEFORE = -1; // Searches for a key with these sort before or after its entries
+        private static final int AFTER = -2;
+
+        private final Comparator<? super K> order;
+        private Object[] keys = new Object[0];
+        private int[] slots = new int[0];
+        private int size;
+        private final BitSet stale = new BitSet();
+        private int staleCount;
+        private Object[] pendingKeys = new Object[16];
+        private int[] pendingSlots = new int[16];
+        private int pendingSize;
+        private final BitSet pending = new BitSet();
+
+        SortedSlots(Comparator<? super K> order) {
+            this.order = order;
+        }
+
+        void add(int slot, K key) {
+            int at = lowerBound(pendingKeys, pendingSlots, pendingSize, key, slot);
+            if (pendingSize == pendingSlots.length) {
+                pendingKeys = Arrays.copyOf(pendingKeys, pendingSize * 2);
+                pendingSlots = Arrays.copyOf(pendingSlots, pendingSize * 2);
+            }
+            System.arraycopy(pendingKeys, at, pendingKeys, at + 1, pendingSize - at);
+            System.arraycopy(pendingSlots, at, pendingSlots, at + 1, pendingSize - at);
+            pendingKeys[at] = key;
+            pendingSlots[at] = slot;
+            pendingSize++;
+            pending.set(slot);
+            if (pendingSize > Math.max(MIN_PENDING, size >> 6)) {
+                merge();
+            }
+        }
+
+        /**
+         * Adds many slots at once, sorting them instead of inserting each into the pending entries.
+         */
+        void addAll(int[] added, int count, IntFunction<K> keyOf) {
+            merge();
+            Integer[] sorted = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = added[i];
+            }
+            Arrays.sort(sorted, (a, b) -> compare(keyOf.apply(a), a, keyOf.apply(b), b));
+            pendingKeys = new Object[Math.max(16, count)];
+            pendingSlots = new int[pendingKeys.length];
+            for (int i = 0; i < count; i++) {
+                pendingKeys[i] = keyOf.apply(sorted[i]);
+                pendingSlots[i] = sorted[i];
+                pending.set(sorted[i]);
+            }
+            pendingSize = count;
+            merge();
+            pendingKeys = new Object[16];
+            pendingSlots = new int[16];
+        }
+
+        void remove(int slot) {
+            if (pending.get(slot)) {
+                int at = 0;
+                while (pendingSlots[at] != slot) {
+                    at++;
+                }
+                System.arraycopy(pendingKeys, at + 1, pendingKeys, at, pendingSize - at - 1);
+                System.arraycopy(pendingSlots, at + 1, pendingSlots, at, pendingSize - at - 1);
+                pendingKeys[--pendingSize] = null;
+                pending.clear(slot);
+            } else if (!stale.get(slot)) {
+                stale.set(slot);
+                if (++staleCount > Math.max(MIN_PENDING, size >> 2)) {
+                    merge();
+                }
+            }
+        }
+
+        /**
+         * Merges the pending entries into the main array and drops the stale ones.
+         */
+        private void merge() {
+            int merged = size - staleCount + pendingSize;
+            Object[] mergedKeys = new Object[merged];
+            int[] mergedSlots = new int[merged];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < merged; k++) {
+                while (i < size && stale.get(slots[i])) {
+                    i++;
+                }
+                if (j == pendingSize || (i < size && compare(keys[i], slots[i], pendingKeys[j], pendingSlots[j]) < 0)) {
+                    mergedKeys[k] = keys[i];
+                    mergedSlots[k] = slots[i++];
+                } else {
+                    mergedKeys[k] = pendingKeys[j];
+                    mergedSlots[k] = pendingSlots[j++];
+                }
+            }
+            keys = mergedKeys;
+            slots = mergedSlots;
+            size = merged;
+            stale.clear();
+            staleCount = 0;
+            Arrays.fill(pendingKeys, 0, pendingSize, null);
+            pendingSize = 0;
+            pending.clear();
+        }
+
+        /**
+         * Visits the slots in order, or in reverse order, until the visitor returns false.
+         *
+         * @param from the key to start at, or null to start at the first or last slot.
+         * @param descending true to visit in reverse order.
+         * @param visitor receives each slot; returns false to stop.
+         */
+        void walk(K from, boolean descending, IntPredicate visitor) {
+            if (!descending) {
+                int i = from == null ? 0 : lowerBound(keys, slots, size, from, BEFORE);
+                int j = from == null ? 0 : lowerBound(pendingKeys, pendingSlots, pendingSize, from, BEFORE);
+                while (true) {
+                    while (i < size && stale.get(slots[i])) {
+                        i++;
+                    }
+                    int slot;
+                    if (i < size && (j == pendingSize || compare(keys[i], slots[i], pendingKeys[j], pendingSlots[j]) < 0)) {
+                        slot = slots[i++];
+                    } else if (j < pendingSize) {
+                        slot = pendingSlots[j++];
+                    } else {
+                        return;
+                    }
+                    if (!visitor.test(slot)) {
+                        return;
+                    }
+                }
+            }
+            int i = from == null ? size - 1 : lowerBound(keys, slots, size, from, AFTER) - 1;
+            int j = from == null ? pendingSize - 1 : lowerBound(pendingKeys, pendingSlots, pendingSize, from, AFTER) - 1;
+            while (true) {
+                while (i >= 0 && stale.get(slots[i])) {
+                    i--;
+                }
+                int slot;
+                if (i >= 0 && (j < 0 || compare(keys[i], slots[i], pendingKeys[j], pendingSlots[j]) > 0)) {
+                    slot = slots[i--];
+                } else if (j >= 0) {
+                    slot = pendingSlots[j--];
+                } else {
+                    return;
+                }
+                if (!visitor.test(slot)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Finds the first entry not before a key and slot, or with {@link #BEFORE} or {@link #AFTER},
+         * the first entry with the key or the first after it.
+         */
+        private int lowerBound(Object[] entryKeys, int[] entrySlots, int count, K key, int slot) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(entryKeys[middle], entrySlots[middle], key, slot) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Compares two entries. Only entries that are not stale are compared by product ID, since a
+         * stale slot may have been reused.
+         */
+        @SuppressWarnings("unchecked")
+        private int compare(Object keyA, int slotA, Object keyB, int slotB) {
+            int byKey = order.compare((K) keyA, (K) keyB);
+            if (byKey != 0) {
+                return byKey;
+            } else if (slotB == BEFORE) {
+                return 1;
+            } else if (slotB == AFTER) {
+                return -1;
+            }
+            return productIds[slotA].compareTo(productIds[slotB]);
+        }
+    }
+
+    /**
+     * Adds products to the index, or re-indexes them if already present.
+     *
+     * @param products the products to index.
+     */
+    public void addAll(Iterable<Product> products) {
+        lock.writeLock().lock();
+        try {
+            // New products are sorted into the sorted indexes together
+            int[] added = new int[16];
+            int count = 0;
+            BitSet addedSlots = new BitSet();
+            for (Product product : products) {
+                Integer slot = slots.get(product.getId());
+                if (slot == null) {
+                    if (count == added.length) {
+                        added = Arrays.copyOf(added, count * 2);
+                    }
+                    added[count] = addLocked(product);
+                    addedSlots.set(added[count++]);
+                } else if (addedSlots.get(slot)) {
+                    // Listed twice; not in the sorted indexes yet, so the last one simply replaces it
+                    prices[slot] = Money.toCents(product.getPrice());
+                    names[slot] = product.getName();
+                    sellers.slots.get(sellerCodes[slot]).clear(slot);
+                    types.slots.get(typeCodes[slot]).clear(slot);
+                    setFacets(slot, product);
+                } else {
+                    indexLocked(product);
+                }
+            }
+            byPrice.addAll(added, count, slot -> prices[slot]);
+            byName.addAll(added, count, slot -> names[slot]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a product to the index, or re-indexes it with its current price, name, seller, type and stock.
+     *
+     * @param product the product to index.
+     */
+    public void index(Product product) {
+        lock.writeLock().lock();
+        try {
+            indexLocked(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a product from the index.
+     *
+     * @param productId the ID of the product.
+     * @return true if the product was indexed.
+     */
+    public boolean remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(productId);
+            if (slot == null) {
+                return false;
+            }
+            live.clear(slot);
+            inStock.clear(slot);
+            sellers.slots.get(sellerCodes[slot]).clear(slot);
+            types.slots.get(typeCodes[slot]).clear(slot);
+            byPrice.remove(slot);
+            byName.remove(slot);
+            productIds[slot] = null;
+            names[slot] = null;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of products in the index.
+     *
+     * @return the indexed product count.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a page of products matching a query, with the total number of matches and facet counts.
+     *
+     * @param query the criteria, sort order and page.
+     * @return the result, holding product IDs only.
+     */
+    public CatalogResult query(CatalogQuery query) {
+        lock.readLock().lock();
+        try {
+            return queryLocked(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void indexLocked(Product product) {
+        Integer slot = slots.get(product.getId());
+        if (slot == null) {
+            slot = addLocked(product);
+            byPrice.add(slot, prices[slot]);
+            byName.add(slot, names[slot]);
+            return;
+        }
+        long price = Money.toCents(product.getPrice());
+        if (prices[slot] != price) {
+            byPrice.remove(slot);
+            prices[slot] = price;
+            byPrice.add(slot, price);
+        }
+        String name = product.getName();
+        if (!Objects.equals(names[slot], name)) {
+            byName.remove(slot);
+            names[slot] = name;
+            byName.add(slot, name);
+        }
+        sellers.slots.get(sellerCodes[slot]).clear(slot);
+        types.slots.get(typeCodes[slot]).clear(slot);
+        setFacets(slot, product);
+    }
+
+    /**
+     * Gives a new product a slot and indexes all but its sorted keys.
+     *
+     * @return the slot, still to be added to the sorted indexes.
+     */
+    private int addLocked(Product product) {
+        int slot = allocate();
+        slots.put(product.getId(), slot);
+        productIds[slot] = product.getId();
+        live.set(slot);
+        prices[slot] = Money.toCents(product.getPrice());
+        names[slot] = product.getName();
+        setFacets(slot, product);
+        return slot;
+    }
+
+    private void setFacets(int slot, Product product) {
+        sellerCodes[slot] = sellers.code(product.getSellerId());
+        typeCodes[slot] = types.code(product.getType());
+        sellers.slots.get(sellerCodes[slot]).set(slot);
+        types.slots.get(typeCodes[slot]).set(slot);
+        inStock.set(slot, product.getAvailableQuantity() > 0);
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        int slot = slotCount++;
+        if (slot == productIds.length) {
+            productIds = Arrays.copyOf(productIds, slot * 2);
+            prices = Arrays.copyOf(prices, slot * 2);
+            names = Arrays.copyOf(names, slot * 2);
+            sellerCodes = Arrays.copyOf(sellerCodes, slot * 2);
+            typeCodes = Arrays.copyOf(typeCodes, slot * 2);
+        }
+        return slot;
+    }
+
+    private CatalogResult queryLocked(CatalogQuery query) {
+        BitSet sellerFilter = query.getSellerIds().isEmpty() ? null : sellers.slotsOf(query.getSellerIds());
+        BitSet typeFilter = query.getTypes().isEmpty() ? null : types.slotsOf(query.getTypes());
+        BitSet stockFilter = query.isInStockOnly() ? inStock : null;
+        BitSet priceFilter = query.hasPriceRange() ? priceRange(query.getMinPriceCents(), query.getMaxPriceCents()) : null;
+
+        BitSet matches = intersect(sellerFilter, typeFilter, stockFilter, priceFilter);
+        int total = matches.cardinality();
+
+        // Each facet counts the matches of every other criterion
+        BitSet exceptSellers = sellerFilter == null ? matches : intersect(null, typeFilter, stockFilter, priceFilter);
+        Map<String, Integer> sellerCounts = sellers.count(exceptSellers, exceptSellers.cardinality(), sellerCodes);
+        BitSet exceptTypes = typeFilter == null ? matches : intersect(sellerFilter, null, stockFilter, priceFilter);
+        Map<String, Integer> typeCounts = types.count(exceptTypes, exceptTypes.cardinality(), typeCodes);
+        int inStockCount = total;
+        if (stockFilter == null) {
+            BitSet stocked = (BitSet) matches.clone();
+            stocked.and(inStock);
+            inStockCount = stocked.cardinality();
+        }
+
+        List<String> page = new ArrayList<>();
+        int end = (int) Math.min((long) query.getOffset() + query.getLimit(), total);
+        if (query.getOffset() < end) {
+            // Reading the sort index visits about end * live / total slots; sorting the matches costs total * log(total)
+            double walkCost = (double) end * live.cardinality() / total;
+            double sortCost = 4.0 * total * (32 - Integer.numberOfLeadingZeros(total));
+            if (walkCost < sortCost) {
+                walkPage(query, matches, end, page);
+            } else {
+                sortPage(query, matches, end, page);
+            }
+        }
+        return new CatalogResult(page, total, sellerCounts, typeCounts, inStockCount);
+    }
+
+    /**
+     * Intersects the live slots with each criterion that is set.
+     */
+    private BitSet intersect(BitSet... filters) {
+        BitSet result = (BitSet) live.clone();
+        for (BitSet filter : filters) {
+            if (filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the slots in a price range off the price index.
+     */
+    private BitSet priceRange(long minCents, long maxCents) {
+        BitSet range = new BitSet();
+        byPrice.walk(minCents, false, slot -> {
+            if (prices[slot] > maxCents) {
+                return false;
+            }
+            range.set(slot);
+            return true;
+        });
+        return range;
+    }
+
+    /**
+     * Fills a page by reading the index of the sort order, skipping slots that do not match.
+     */
+    private void walkPage(CatalogQuery query, BitSet matches, int end, List<String> page) {
+        int[] seen = new int[1];
+        IntPredicate visitor = slot -> {
+            if (matches.get(slot) && seen[0]++ >= query.getOffset()) {
+                page.add(productIds[slot]);
+            }
+            return seen[0] < end;
+        };
+        switch (query.getSort()) {
+            case PRICE_ASCENDING:
+                byPrice.walk(query.hasPriceRange() ? query.getMinPriceCents() : null, false, visitor);
+                break;
+            case PRICE_DESCENDING:
+                byPrice.walk(query.hasPriceRange() ? query.getMaxPriceCents() : null, true, visitor);
+                break;
+            default:
+                byName.walk(null, false, visitor);
+                break;
+        }
+    }
+
+    /**
+     * Fills a page by sorting every match, for queries matching few products.
+     */
+    private void sortPage(CatalogQuery query, BitSet matches, int end, List<String> page) {
+        Integer[] matching = new Integer[matches.cardinality()];
+        int count = 0;
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            matching[count++] = slot;
+        }
+        // The same order as the sort indexes, so pages agree whichever way they are read
+        Comparator<Integer> byId = Comparator.comparing(slot -> productIds[slot]);
+        Comparator<Integer> order;
+        switch (query.getSort()) {
+            case PRICE_ASCENDING:
+                order = Comparator.comparingLong((Integer slot) -> prices[slot]).thenComparing(byId);
+                break;
+            case PRICE_DESCENDING:
+                order = Comparator.comparingLong((Integer slot) -> prices[slot]).thenComparing(byId).reversed();
+                break;
+            default:
+                order = Comparator.comparing((Integer slot) -> names[slot], NAME_ORDER).thenComparing(byId);
+                break;
+        }
+        Arrays.sort(matching, order);
+        for (int i = query.getOffset(); i < end; i++) {
+            page.add(productIds[matching[i]]);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package cop4331.client;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Criteria for browsing the catalog: a price range, in-stock only, sellers and product types,
+ * with a sort order and a page. Criteria are combined with AND; several sellers or several types
+ * match any of them. Run a query with {@link Database#queryProducts(CatalogQuery)}.
+ * <p>
+ * For example, the second page of twenty in-stock bundles under $50, cheapest first:
+ * <pre>
+ * new CatalogQuery().priceBetween(0, 50).inStock().ofType("bundle")
+ *         .sortBy(CatalogQuery.Sort.PRICE_ASCENDING).page(20, 20)
+ * </pre>
+ */
+public class CatalogQuery {
+    /** The page size used if none is set. */
+    public static final int DEFAULT_LIMIT = 20;
+
+    private long minPriceCents = 0;
+    private long maxPriceCents = Long.MAX_VALUE;
+    private boolean inStockOnly;
+    private final Set<String> sellerIds = new LinkedHashSet<>();
+    private final Set<String> types = new LinkedHashSet<>();
+    private Sort sort = Sort.NAME;
+    private int offset;
+    private int limit = DEFAULT_LIMIT;
+
+    /**
+     * Orders in which matching products can be returned. Ties are broken consistently, so pages
+     * of the same query do not overlap.
+     */
+    public enum Sort {
+        /** By name, ignoring case. */
+        NAME,
+        /** Cheapest first. */
+        PRICE_ASCENDING,
+        /** Most expensive first. */
+        PRICE_DESCENDING
+    }
+
+    /**
+     * Limits results to a price range.
+     *
+     * @param minPrice the lowest price, inclusive.
+     * @param maxPrice the highest price, inclusive.
+     * @return this query.
+     * @throws IllegalArgumentException if the range is empty or negative.
+     */
+    public CatalogQuery priceBetween(double minPrice, double maxPrice) {
+        if (minPrice < 0 || maxPrice < minPrice) {
+            throw new IllegalArgumentException("Invalid price range: " + minPrice + " to " + maxPrice);
+        }
+        this.minPriceCents = Money.toCents(minPrice);
+        this.maxPriceCents = Money.toCents(maxPrice);
+        return this;
+    }
+
+    /**
+     * Limits results to products with available stock.
+     *
+     * @return this query.
+     */
+    public CatalogQuery inStock() {
+        this.inStockOnly = true;
+        return this;
+    }
+
+    /**
+     * Limits results to a seller's products; call again to include more sellers.
+     *
+     * @param sellerId the seller ID.
+     * @return this query.
+     */
+    public CatalogQuery fromSeller(String sellerId) {
+        sellerIds.add(sellerId);
+        return this;
+    }
+
+    /**
+     * Limits results to a product type, such as {@code product}, {@code bundle} or
+     * {@code discountedProduct}; call again to include more types.
+     *
+     * @param type the product type.
+     * @return this query.
+     */
+    public CatalogQuery ofType(String type) {
+        types.add(type);
+        return this;
+    }
+
+    /**
+     * Sets the order of the results.
+     *
+     * @param sort the sort order.
+     * @return this query.
+     */
+    public CatalogQuery sortBy(Sort sort) {
+        if (sort == null) {
+            throw new IllegalArgumentException("Sort order is required");
+        }
+        this.sort = sort;
+        return this;
+    }
+
+    /**
+     * Sets the page of results to return.
+     *
+     * @param offset the number of matching products to skip.
+     * @param limit the maximum number of products to return.
+     * @return this query.
+     * @throws IllegalArgumentException if the offset or limit is negative.
+     */
+    public CatalogQuery page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Invalid page: offset " + offset + ", limit " + limit);
+        }
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Retrieves the lowest price matched.
+     *
+     * @return the price in cents; 0 if no range is set.
+     */
+    public long getMinPriceCents() {
+        return minPriceCents;
+    }
+
+    /**
+     * Retrieves the highest price matched.
+     *
+     * @return the price in cents; {@link Long#MAX_VALUE} if no range is set.
+     */
+    public long getMaxPriceCents() {
+        return maxPriceCents;
+    }
+
+    /**
+     * Checks whether the query has a price range.
+     *
+     * @return true if {@link #priceBetween} was called.
+     */
+    public boolean hasPriceRange() {
+        return minPriceCents > 0 || maxPriceCents < Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether results are limited to products with available stock.
+     *
+     * @return true if only products in stock match.
+     */
+    public boolean isInStockOnly() {
+        return inStockOnly;
+    }
+
+    /**
+     * Retrieves the sellers results are limited to.
+     *
+     * @return an unmodifiable set of seller IDs; empty to match every seller.
+     */
+    public Set<String> getSellerIds() {
+        return Collections.unmodifiableSet(sellerIds);
+    }
+
+    /**
+     * Retrieves the product types results are limited to.
+     *
+     * @return an unmodifiable set of types; empty to match every type.
+     */
+    public Set<String> getTypes() {
+        return Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * Retrieves the order of the results.
+     *
+     * @return the sort order.
+     */
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * Retrieves the number of matching products skipped.
+     *
+     * @return the page offset.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Retrieves the maximum number of products returned.
+     *
+     * @return the page size.
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
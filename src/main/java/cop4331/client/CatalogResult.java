@@ -0,0 +1,100 @@
+package cop4331.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of products matching a {@link CatalogQuery}, with the number of matches and facet counts.
+ * <p>
+ * Each facet counts the products that match every criterion except its own, so a customer can
+ * see how many products each other seller or type would give, and how many are in stock.
+ */
+public class CatalogResult {
+    private final List<String> productIds;
+    private final List<Product> products;
+    private final int total;
+    private final Map<String, Integer> sellerCounts;
+    private final Map<String, Integer> typeCounts;
+    private final int inStockCount;
+
+    CatalogResult(List<String> productIds, int total, Map<String, Integer> sellerCounts,
+                  Map<String, Integer> typeCounts, int inStockCount) {
+        this(productIds, Collections.<Product>emptyList(), total, sellerCounts, typeCounts, inStockCount);
+    }
+
+    private CatalogResult(List<String> productIds, List<Product> products, int total, Map<String, Integer> sellerCounts,
+                          Map<String, Integer> typeCounts, int inStockCount) {
+        this.productIds = Collections.unmodifiableList(productIds);
+        this.products = Collections.unmodifiableList(products);
+        this.total = total;
+        this.sellerCounts = Collections.unmodifiableMap(sellerCounts);
+        this.typeCounts = Collections.unmodifiableMap(typeCounts);
+        this.inStockCount = inStockCount;
+    }
+
+    /**
+     * Creates a copy of this result holding the products of the page.
+     *
+     * @param products the products, in the order of {@link #getProductIds()}.
+     * @return the new result.
+     */
+    CatalogResult withProducts(List<Product> products) {
+        return new CatalogResult(productIds, products, total, sellerCounts, typeCounts, inStockCount);
+    }
+
+    /**
+     * Retrieves the IDs of the products on the page.
+     *
+     * @return an unmodifiable list of product IDs, in the query's sort order.
+     */
+    public List<String> getProductIds() {
+        return productIds;
+    }
+
+    /**
+     * Retrieves the products on the page.
+     *
+     * @return an unmodifiable list of products, in the query's sort order; products deleted since
+     *         the query ran are left out.
+     */
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * Retrieves the number of matching products on every page.
+     *
+     * @return the total number of matches.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Retrieves the number of products of each seller matching every criterion but the sellers.
+     *
+     * @return an unmodifiable map from seller ID to count, leaving out sellers with none.
+     */
+    public Map<String, Integer> getSellerCounts() {
+        return sellerCounts;
+    }
+
+    /**
+     * Retrieves the number of products of each type matching every criterion but the types.
+     *
+     * @return an unmodifiable map from type to count, leaving out types with none.
+     */
+    public Map<String, Integer> getTypeCounts() {
+        return typeCounts;
+    }
+
+    /**
+     * Retrieves the number of in-stock products matching every criterion but in-stock only.
+     *
+     * @return the in-stock count.
+     */
+    public int getInStockCount() {
+        return inStockCount;
+    }
+}
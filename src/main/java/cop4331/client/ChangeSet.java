@@ -0,0 +1,113 @@
+package cop4331.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The IDs of the elements added to, removed from and changed in an observable collection since
+ * observers were last notified, so that they can update only what changed.
+ * <p>
+ * Changes to the same ID coalesce: an element added and then removed within one batch does not
+ * appear at all, one removed and added again appears as changed, and one added and then changed
+ * appears as added.
+ */
+public class ChangeSet {
+    private final Set<String> added = new LinkedHashSet<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+    private final Set<String> changed = new LinkedHashSet<>();
+
+    /**
+     * Records that an element was added.
+     *
+     * @param id the ID of the element.
+     */
+    public void recordAdded(String id) {
+        if (removed.remove(id)) {
+            changed.add(id);
+        } else if (!changed.contains(id)) {
+            added.add(id);
+        }
+    }
+
+    /**
+     * Records that an element was removed.
+     *
+     * @param id the ID of the element.
+     */
+    public void recordRemoved(String id) {
+        if (!added.remove(id)) {
+            changed.remove(id);
+            removed.add(id);
+        }
+    }
+
+    /**
+     * Records that an element changed in place.
+     *
+     * @param id the ID of the element.
+     */
+    public void recordChanged(String id) {
+        if (!added.contains(id) && !removed.contains(id)) {
+            changed.add(id);
+        }
+    }
+
+    /**
+     * Records that a collection's elements were replaced: every old ID is removed and every new ID
+     * added, so IDs in both end up as changed.
+     *
+     * @param oldIds the IDs before the replacement.
+     * @param newIds the IDs after the replacement.
+     */
+    public void recordReplaced(Collection<String> oldIds, Collection<String> newIds) {
+        for (String id : oldIds) {
+            recordRemoved(id);
+        }
+        for (String id : newIds) {
+            recordAdded(id);
+        }
+    }
+
+    /**
+     * Retrieves the IDs of the elements added.
+     *
+     * @return an unmodifiable set of IDs, in the order they were recorded.
+     */
+    public Set<String> getAdded() {
+        return Collections.unmodifiableSet(added);
+    }
+
+    /**
+     * Retrieves the IDs of the elements removed.
+     *
+     * @return an unmodifiable set of IDs, in the order they were recorded.
+     */
+    public Set<String> getRemoved() {
+        return Collections.unmodifiableSet(removed);
+    }
+
+    /**
+     * Retrieves the IDs of the elements changed in place.
+     *
+     * @return an unmodifiable set of IDs, in the order they were recorded.
+     */
+    public Set<String> getChanged() {
+        return Collections.unmodifiableSet(changed);
+    }
+
+    /**
+     * Checks whether any change was recorded.
+     *
+     * @return true if nothing was added, removed or changed.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{added=" + added + ", removed=" + removed + ", changed=" + changed + "}";
+    }
+}
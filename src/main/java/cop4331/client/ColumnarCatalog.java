@@ -0,0 +1,956 @@
+package cop4331.client;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Product catalog stored column by column in primitive arrays, for catalogs of millions of products.
+ * <p>
+ * A {@code List<Product>} holds one object per product plus its {@code AtomicLong} stock, and a
+ * scan over prices or stock follows a pointer per product. Here each product is a row: prices and
+ * invoice prices are {@code double} columns, stock is an {@link AtomicLongArray} packed the same
+ * way as {@link Product}'s, and seller IDs and types are dictionary-encoded as {@code int} codes.
+ * Columns are allocated in fixed-size chunks that never move, so growing the catalog never copies
+ * them and stock can be reserved concurrently with additions. Product IDs are indexed by an
+ * open-addressing table of row numbers rather than a map of boxed positions.
+ * <p>
+ * Existing callers see products through {@link #view(int)}, a {@link Product} facade that reads
+ * and writes its row, so reserving stock through any view of a row is seen by every other view.
+ * Products that are not plain {@link Product}s (bundles, discounted products) and products in hot
+ * mode are kept as objects; switching a view to hot mode moves its row to an object, and earlier
+ * views of the row delegate to it. Views are created on demand and two views of a row are equal.
+ * Dependents such as bundles are registered with the row rather than the view, and passed on to
+ * the object a row is moved to, so a change made through any view or by replacing the row reaches them.
+ * <p>
+ * Adding, replacing and removing rows is synchronized; reads need no lock. Rows are never reused,
+ * so a view of a removed product keeps working, like a removed {@code Product} object would.
+ */
+public class ColumnarCatalog {
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // Rows per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Stock word of a row whose product is kept as an object in {@link #objects}. */
+    private static final long MOVED = Long.MIN_VALUE;
+
+    private static final int EMPTY = 0;      // Index slot never used
+    private static final int TOMBSTONE = -1; // Index slot of a removed ID
+
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int rowCount;                                        // Rows allocated
+    private volatile int[] order = new int[16];                           // List position -> row
+    private volatile int size;                                            // Live rows
+    private volatile AtomicIntegerArray index = new AtomicIntegerArray(16); // Row + 1 by ID hash
+    private int indexUsed;                                                // Live and tombstone slots
+    private final Map<Integer, Product> objects = new ConcurrentHashMap<>();
+    private final Map<Integer, List<Product>> dependents = new ConcurrentHashMap<>(); // Row -> copy-on-write list
+    private final Dictionary sellers = new Dictionary();
+    private final Dictionary types = new Dictionary();
+
+    /**
+     * The columns of {@value #CHUNK_SIZE} consecutive rows.
+     */
+    private static final class Chunk {
+        private final String[] ids = new String[CHUNK_SIZE];
+        private final String[] names = new String[CHUNK_SIZE];
+        private final String[] descriptions = new String[CHUNK_SIZE];
+        private final double[] prices = new double[CHUNK_SIZE];
+        private final double[] invoicePrices = new double[CHUNK_SIZE];
+        private final AtomicLongArray stock = new AtomicLongArray(CHUNK_SIZE);
+        private final int[] sellers = new int[CHUNK_SIZE];
+        private final int[] types = new int[CHUNK_SIZE];
+    }
+
+    /**
+     * Encodes repeated strings, such as seller IDs, as small integer codes; null is {@code -1}.
+     */
+    private static final class Dictionary {
+        private volatile String[] values = new String[8];
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        /** Must be called while holding the catalog's lock. */
+        int encode(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                String[] current = values;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[code] = value;
+                values = current; // Publishes the new value
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return code < 0 ? null : values[code];
+        }
+
+        /** Must be called while holding the catalog's lock. */
+        int lookup(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+    }
+
+    /**
+     * A {@link Product} that reads and writes one row of the catalog.
+     */
+    static final class View extends Product {
+        private final ColumnarCatalog catalog;
+        private final int row;
+
+        View(ColumnarCatalog catalog, int row) {
+            this.catalog = catalog;
+            this.row = row;
+        }
+
+        /**
+         * Retrieves the product the row was moved to, if it is no longer stored in columns.
+         */
+        Product target() {
+            return catalog.movedTo(row);
+        }
+
+        private Chunk chunk() {
+            return catalog.chunks[row >>> CHUNK_SHIFT];
+        }
+
+        @Override
+        public String getId() {
+            return chunk().ids[row & CHUNK_MASK];
+        }
+
+        @Override
+        public void setId(String id) {
+            Product target = target();
+            if (target != null) {
+                target.setId(id);
+            }
+            catalog.rename(row, id);
+        }
+
+        @Override
+        public String getName() {
+            Product target = target();
+            return target != null ? target.getName() : chunk().names[row & CHUNK_MASK];
+        }
+
+        @Override
+        public void setName(String name) {
+            Product target = target();
+            if (target != null) {
+                target.setName(name);
+                return;
+            }
+            chunk().names[row & CHUNK_MASK] = name;
+            pricingChanged();
+        }
+
+        @Override
+        public String getDescription() {
+            Product target = target();
+            return target != null ? target.getDescription() : chunk().descriptions[row & CHUNK_MASK];
+        }
+
+        @Override
+        public void setDescription(String description) {
+            Product target = target();
+            if (target != null) {
+                target.setDescription(description);
+                return;
+            }
+            chunk().descriptions[row & CHUNK_MASK] = description;
+            pricingChanged();
+        }
+
+        @Override
+        public String getType() {
+            Product target = target();
+            return target != null ? target.getType() : catalog.types.decode(chunk().types[row & CHUNK_MASK]);
+        }
+
+        @Override
+        public void setType(String type) {
+            Product target = target();
+            if (target != null) {
+                target.setType(type);
+                return;
+            }
+            synchronized (catalog) {
+                chunk().types[row & CHUNK_MASK] = catalog.types.encode(type);
+            }
+        }
+
+        @Override
+        public double getPrice() {
+            Product target = target();
+            return target != null ? target.getPrice() : chunk().prices[row & CHUNK_MASK];
+        }
+
+        @Override
+        public void setPrice(double price) {
+            Product target = target();
+            if (target != null) {
+                target.setPrice(price);
+                return;
+            }
+            chunk().prices[row & CHUNK_MASK] = Money.checkPrice(price);
+            pricingChanged();
+        }
+
+        @Override
+        public double getInvoicePrice() {
+            Product target = target();
+            return target != null ? target.getInvoicePrice() : chunk().invoicePrices[row & CHUNK_MASK];
+        }
+
+        @Override
+        public void setInvoicePrice(double invoicePrice) {
+            Product target = target();
+            if (target != null) {
+                target.setInvoicePrice(invoicePrice);
+                return;
+            }
+            chunk().invoicePrices[row & CHUNK_MASK] = Money.checkPrice(invoicePrice);
+        }
+
+        @Override
+        public String getSellerId() {
+            Product target = target();
+            return target != null ? target.getSellerId() : catalog.sellers.decode(chunk().sellers[row & CHUNK_MASK]);
+        }
+
+        @Override
+        public void setSellerId(String sellerId) {
+            Product target = target();
+            if (target != null) {
+                target.setSellerId(sellerId);
+                return;
+            }
+            synchronized (catalog) {
+                chunk().sellers[row & CHUNK_MASK] = catalog.sellers.encode(sellerId);
+            }
+        }
+
+        @Override
+        public int getQuantity() {
+            long current = chunk().stock.get(row & CHUNK_MASK);
+            return current == MOVED ? target().getQuantity() : onHand(current);
+        }
+
+        @Override
+        public void setQuantity(int quantity) {
+            AtomicLongArray stock = chunk().stock;
+            int i = row & CHUNK_MASK;
+            long current;
+            do {
+                current = stock.get(i);
+                if (current == MOVED) {
+                    target().setQuantity(quantity);
+                    return;
+                }
+            } while (!stock.compareAndSet(i, current, pack(quantity, reserved(current))));
+            stockChanged();
+        }
+
+        @Override
+        public int getAvailableQuantity() {
+            long current = chunk().stock.get(row & CHUNK_MASK);
+            return current == MOVED ? target().getAvailableQuantity() : onHand(current) - reserved(current);
+        }
+
+        @Override
+        public boolean tryReserve(int quantity) {
+            AtomicLongArray stock = chunk().stock;
+            int i = row & CHUNK_MASK;
+            while (true) {
+                long current = stock.get(i);
+                if (current == MOVED) {
+                    return target().tryReserve(quantity);
+                }
+                int onHand = onHand(current);
+                int reserved = reserved(current);
+                if (onHand - reserved < quantity) {
+                    return false;
+                }
+                if (stock.compareAndSet(i, current, pack(onHand, reserved + quantity))) {
+                    stockChanged();
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void commitReservation(int quantity) {
+            AtomicLongArray stock = chunk().stock;
+            int i = row & CHUNK_MASK;
+            long current;
+            do {
+                current = stock.get(i);
+                if (current == MOVED) {
+                    target().commitReservation(quantity);
+                    return;
+                }
+            } while (!stock.compareAndSet(i, current, pack(onHand(current) - quantity, reserved(current) - quantity)));
+            stockChanged();
+        }
+
+        @Override
+        public void releaseReservation(int quantity) {
+            AtomicLongArray stock = chunk().stock;
+            int i = row & CHUNK_MASK;
+            long current;
+            do {
+                current = stock.get(i);
+                if (current == MOVED) {
+                    target().releaseReservation(quantity);
+                    return;
+                }
+            } while (!stock.compareAndSet(i, current, pack(onHand(current), reserved(current) - quantity)));
+            stockChanged();
+        }
+
+        @Override
+        public void restock(int quantity) {
+            AtomicLongArray stock = chunk().stock;
+            int i = row & CHUNK_MASK;
+            long current;
+            do {
+                current = stock.get(i);
+                if (current == MOVED) {
+                    target().restock(quantity);
+                    return;
+                }
+            } while (!stock.compareAndSet(i, current, current + ((long) quantity << 32)));
+            stockChanged();
+        }
+
+        /**
+         * Moves the row out of the columns into a {@link Product} object and switches that to hot mode.
+         *
+         * @param stripes the number of stripes, rounded up to a power of two.
+         */
+        @Override
+        public void enableHotMode(int stripes) {
+            catalog.detach(row).enableHotMode(stripes);
+        }
+
+        @Override
+        public boolean isHotMode() {
+            Product target = target();
+            return target != null && target.isHotMode();
+        }
+
+        @Override
+        void addDependent(Product dependent) {
+            catalog.addDependent(row, dependent);
+        }
+
+        @Override
+        void removeDependent(Product dependent) {
+            catalog.removeDependent(row, dependent);
+        }
+
+        @Override
+        protected void pricingChanged() {
+            catalog.pricingChanged(row);
+        }
+
+        @Override
+        protected void stockChanged() {
+            catalog.stockChanged(row);
+        }
+
+        /**
+         * Checks whether another product is a view of the same row of the same catalog.
+         *
+         * @param other the object to compare with.
+         * @return true if both read and write the same row.
+         */
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof View && ((View) other).catalog == catalog && ((View) other).row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(catalog) * 31 + row;
+        }
+
+        /**
+         * Serializes a copy of the product instead of the view and its catalog.
+         */
+        private Object writeReplace() {
+            Product target = target();
+            return target != null ? target : catalog.copy(row);
+        }
+    }
+
+    /**
+     * Creates an empty catalog.
+     */
+    public ColumnarCatalog() {}
+
+    /**
+     * Creates a catalog holding copies of products.
+     *
+     * @param products the products to add.
+     * @return the new catalog.
+     * @throws IllegalArgumentException if two products have the same ID.
+     */
+    public static ColumnarCatalog of(Collection<Product> products) {
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        for (Product product : products) {
+            catalog.add(product);
+        }
+        return catalog;
+    }
+
+    /**
+     * Adds a product as a new row. Plain products are copied into the columns; others are kept as objects.
+     *
+     * @param product the product to add.
+     * @return the row of the product.
+     * @throws IllegalArgumentException if a product with the same ID is in the catalog.
+     */
+    public synchronized int add(Product product) {
+        if (rowOf(product.getId()) >= 0) {
+            throw new IllegalArgumentException("Duplicate product ID: " + product.getId());
+        }
+        int row = rowCount;
+        if ((row >>> CHUNK_SHIFT) == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = new Chunk();
+            chunks = grown;
+        }
+        write(row, product);
+        rowCount = row + 1;
+        indexInsert(product.getId(), row);
+
+        int[] current = order;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[size] = row;
+        order = current;
+        size++;
+        return row;
+    }
+
+    /**
+     * Replaces the product in a row, keeping its row so that views of it see the new values.
+     *
+     * @param row the row to replace.
+     * @param product the new product.
+     * @throws IllegalArgumentException if the product has a new ID that another product already has.
+     */
+    public synchronized void set(int row, Product product) {
+        if (product instanceof View && ((View) product).catalog == this && ((View) product).row == row) {
+            return; // Already the row
+        }
+        String oldId = chunks[row >>> CHUNK_SHIFT].ids[row & CHUNK_MASK];
+        if (!oldId.equals(product.getId())) {
+            if (rowOf(product.getId()) >= 0) {
+                throw new IllegalArgumentException("Duplicate product ID: " + product.getId());
+            }
+            indexRemove(oldId);
+            indexInsert(product.getId(), row);
+        }
+        write(row, product);
+    }
+
+    /**
+     * Removes a product. Its row is not reused, so existing views of it keep working.
+     *
+     * @param productId the ID of the product.
+     * @return true if the product was in the catalog.
+     */
+    public synchronized boolean remove(String productId) {
+        int row = rowOf(productId);
+        if (row < 0) {
+            return false;
+        }
+        indexRemove(productId);
+        int[] current = order;
+        for (int position = 0; position < size; position++) {
+            if (current[position] == row) {
+                removeAt(position);
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds a product by ID.
+     *
+     * @param productId the ID of the product.
+     * @return a view of its row, the object it is kept as, or null if not found.
+     */
+    public Product get(String productId) {
+        int row = rowOf(productId);
+        return row < 0 ? null : product(row);
+    }
+
+    /**
+     * Finds the row of a product.
+     *
+     * @param productId the ID of the product.
+     * @return the row, or -1 if not found.
+     */
+    public int rowOf(String productId) {
+        AtomicIntegerArray table = index;
+        int mask = table.length() - 1;
+        for (int slot = hash(productId) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table.get(slot);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != TOMBSTONE && productId.equals(idAt(entry - 1))) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the product in a row, as a view if it is stored in columns.
+     *
+     * @param row the row.
+     * @return the product.
+     */
+    public Product product(int row) {
+        Product target = movedTo(row);
+        return target != null ? target : new View(this, row);
+    }
+
+    /**
+     * Retrieves a view of a row, even if its product is kept as an object.
+     *
+     * @param row the row.
+     * @return a view reading and writing the row.
+     */
+    public Product view(int row) {
+        return new View(this, row);
+    }
+
+    /**
+     * Retrieves the number of products in the catalog.
+     *
+     * @return the product count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the row of the product at a position in insertion order, for scanning the catalog.
+     *
+     * @param position the position, from 0 to {@link #size()} - 1.
+     * @return the row.
+     */
+    public int rowAt(int position) {
+        if (position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        return order[position];
+    }
+
+    /**
+     * Retrieves the ID of the product in a row.
+     *
+     * @param row the row.
+     * @return the product ID.
+     */
+    public String idAt(int row) {
+        return chunks[row >>> CHUNK_SHIFT].ids[row & CHUNK_MASK];
+    }
+
+    /**
+     * Retrieves the price of the product in a row without creating a view.
+     *
+     * @param row the row.
+     * @return the price.
+     */
+    public double priceAt(int row) {
+        Product target = movedTo(row);
+        return target != null ? target.getPrice() : chunks[row >>> CHUNK_SHIFT].prices[row & CHUNK_MASK];
+    }
+
+    /**
+     * Retrieves the invoice price of the product in a row without creating a view.
+     *
+     * @param row the row.
+     * @return the invoice price.
+     */
+    public double invoicePriceAt(int row) {
+        Product target = movedTo(row);
+        return target != null ? target.getInvoicePrice() : chunks[row >>> CHUNK_SHIFT].invoicePrices[row & CHUNK_MASK];
+    }
+
+    /**
+     * Retrieves the quantity in stock of the product in a row without creating a view.
+     *
+     * @param row the row.
+     * @return the quantity, including reserved units.
+     */
+    public int quantityAt(int row) {
+        long current = chunks[row >>> CHUNK_SHIFT].stock.get(row & CHUNK_MASK);
+        return current == MOVED ? objects.get(row).getQuantity() : Product.onHand(current);
+    }
+
+    /**
+     * Retrieves the available quantity of the product in a row without creating a view.
+     *
+     * @param row the row.
+     * @return the quantity that can still be reserved.
+     */
+    public int availableQuantityAt(int row) {
+        long current = chunks[row >>> CHUNK_SHIFT].stock.get(row & CHUNK_MASK);
+        return current == MOVED ? objects.get(row).getAvailableQuantity() : Product.onHand(current) - Product.reserved(current);
+    }
+
+    /**
+     * Retrieves the dictionary code of the seller of the product in a row, for scans by seller.
+     *
+     * @param row the row.
+     * @return the seller code, or -1 if the product has no seller or is kept as an object.
+     */
+    public int sellerCodeAt(int row) {
+        return movedTo(row) != null ? -1 : chunks[row >>> CHUNK_SHIFT].sellers[row & CHUNK_MASK];
+    }
+
+    /**
+     * Retrieves the dictionary code of a seller.
+     *
+     * @param sellerId the seller ID.
+     * @return the seller code, or -1 if no product in the columns has that seller.
+     */
+    public synchronized int sellerCode(String sellerId) {
+        return sellers.lookup(sellerId);
+    }
+
+    /**
+     * Returns a mutable list of the products in insertion order, for callers that expect a
+     * {@code List<Product>}. Removing shifts the later positions, like an {@link ArrayList}.
+     *
+     * @return a list backed by the catalog.
+     */
+    public List<Product> asList() {
+        return new ProductList();
+    }
+
+    /**
+     * The products of the catalog as a list, in insertion order.
+     */
+    private final class ProductList extends AbstractList<Product> implements RandomAccess {
+        @Override
+        public Product get(int position) {
+            return product(rowAt(position));
+        }
+
+        @Override
+        public Product set(int position, Product product) {
+            int row = rowAt(position);
+            Product previous = product(row);
+            ColumnarCatalog.this.set(row, product);
+            return previous;
+        }
+
+        @Override
+        public boolean add(Product product) {
+            ColumnarCatalog.this.add(product);
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public Product remove(int position) {
+            synchronized (ColumnarCatalog.this) {
+                int row = rowAt(position);
+                Product removed = product(row);
+                indexRemove(idAt(row));
+                removeAt(position);
+                modCount++;
+                return removed;
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Retrieves the object a row is kept as.
+     *
+     * @return the product, or null if the row is stored in columns.
+     */
+    private Product movedTo(int row) {
+        return chunks[row >>> CHUNK_SHIFT].stock.get(row & CHUNK_MASK) == MOVED ? objects.get(row) : null;
+    }
+
+    /**
+     * Moves a row out of the columns into a {@link Product} object with the same values and stock.
+     *
+     * @return the object the row is now kept as.
+     */
+    private synchronized Product detach(int row) {
+        AtomicLongArray stock = chunks[row >>> CHUNK_SHIFT].stock;
+        while (true) {
+            long current = stock.get(row & CHUNK_MASK);
+            if (current == MOVED) {
+                return objects.get(row);
+            }
+            Product product = copy(row, current);
+            objects.put(row, product);
+            if (stock.compareAndSet(row & CHUNK_MASK, current, MOVED)) {
+                for (Product dependent : dependents.getOrDefault(row, Collections.<Product>emptyList())) {
+                    product.addDependent(dependent); // Changes to the object now reach the row's dependents
+                }
+                return product; // Views reserving from here on reach the object
+            }
+            objects.remove(row); // Stock changed while copying
+        }
+    }
+
+    /**
+     * Copies the product in a column row into a new {@link Product}.
+     */
+    private Product copy(int row) {
+        return copy(row, chunks[row >>> CHUNK_SHIFT].stock.get(row & CHUNK_MASK));
+    }
+
+    private Product copy(int row, long stock) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & CHUNK_MASK;
+        Product product = new Product(chunk.ids[i], chunk.names[i], chunk.descriptions[i], chunk.prices[i],
+                Product.onHand(stock), sellers.decode(chunk.sellers[i]), chunk.invoicePrices[i], types.decode(chunk.types[i]));
+        product.tryReserve(Product.reserved(stock));
+        return product;
+    }
+
+    /**
+     * Writes a product into a row: its fields into the columns, or the object itself if it is not
+     * a plain product. The row's dependents move with it and are told the row changed.
+     * Must be called while holding the lock.
+     */
+    private void write(int row, Product product) {
+        if (product instanceof View && ((View) product).target() != null) {
+            product = ((View) product).target();
+        }
+        List<Product> rowDependents = dependents.getOrDefault(row, Collections.<Product>emptyList());
+        Product previous = movedTo(row);
+        if (previous != null && previous != product) {
+            for (Product dependent : rowDependents) {
+                previous.removeDependent(dependent);
+            }
+        }
+        writeValues(row, product);
+        Product current = movedTo(row);
+        if (current != null && current != previous) {
+            for (Product dependent : rowDependents) {
+                current.addDependent(dependent);
+            }
+        }
+        pricingChanged(row);
+        stockChanged(row);
+    }
+
+    private void writeValues(int row, Product product) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int i = row & CHUNK_MASK;
+        chunk.ids[i] = product.getId();
+        boolean plain = (product.getClass() == Product.class || product instanceof View) && !product.isHotMode();
+        if (!plain) {
+            objects.put(row, product);
+            chunk.stock.set(i, MOVED); // Published after the object, so views that see MOVED find it
+            return;
+        }
+        chunk.names[i] = product.getName();
+        chunk.descriptions[i] = product.getDescription();
+        chunk.prices[i] = product.getPrice();
+        chunk.invoicePrices[i] = product.getInvoicePrice();
+        chunk.sellers[i] = sellers.encode(product.getSellerId());
+        chunk.types[i] = types.encode(product.getType());
+        int quantity = product.getQuantity();
+        chunk.stock.set(i, Product.pack(quantity, quantity - product.getAvailableQuantity())); // Publishes the columns
+        objects.remove(row);
+    }
+
+    /**
+     * Registers a product that depends on a row, such as a bundle containing a view of it.
+     */
+    private synchronized void addDependent(int row, Product dependent) {
+        List<Product> copy = new ArrayList<>(dependents.getOrDefault(row, Collections.<Product>emptyList()));
+        copy.add(dependent);
+        dependents.put(row, copy);
+        Product target = movedTo(row);
+        if (target != null) {
+            target.addDependent(dependent);
+        }
+    }
+
+    /**
+     * Unregisters a product registered with {@link #addDependent(int, Product)}.
+     */
+    private synchronized void removeDependent(int row, Product dependent) {
+        List<Product> copy = new ArrayList<>(dependents.getOrDefault(row, Collections.<Product>emptyList()));
+        for (int i = 0; i < copy.size(); i++) {
+            if (copy.get(i) == dependent) {
+                copy.remove(i);
+                break;
+            }
+        }
+        if (copy.isEmpty()) {
+            dependents.remove(row);
+        } else {
+            dependents.put(row, copy);
+        }
+        Product target = movedTo(row);
+        if (target != null) {
+            target.removeDependent(dependent);
+        }
+    }
+
+    private void pricingChanged(int row) {
+        for (Product dependent : dependents.getOrDefault(row, Collections.<Product>emptyList())) {
+            dependent.pricingChanged();
+        }
+    }
+
+    private void stockChanged(int row) {
+        for (Product dependent : dependents.getOrDefault(row, Collections.<Product>emptyList())) {
+            dependent.stockChanged();
+        }
+    }
+
+    /**
+     * Changes the ID of a row. Must not be called while holding the lock of another catalog.
+     */
+    private synchronized void rename(int row, String id) {
+        String oldId = idAt(row);
+        if (oldId.equals(id)) {
+            return;
+        }
+        if (rowOf(id) >= 0) {
+            throw new IllegalArgumentException("Duplicate product ID: " + id);
+        }
+        boolean indexed = rowOf(oldId) == row;
+        chunks[row >>> CHUNK_SHIFT].ids[row & CHUNK_MASK] = id;
+        if (indexed) {
+            indexRemove(oldId, row);
+            indexInsert(id, row);
+        }
+    }
+
+    /** Must be called while holding the lock. */
+    private void removeAt(int position) {
+        int[] current = order;
+        System.arraycopy(current, position + 1, current, position, size - position - 1);
+        size--;
+        order = current;
+    }
+
+    /** Must be called while holding the lock. */
+    private void indexInsert(String id, int row) {
+        if ((indexUsed + 1) * 2 > index.length()) {
+            rehash();
+        }
+        AtomicIntegerArray table = index;
+        int mask = table.length() - 1;
+        int slot = hash(id) & mask;
+        while (table.get(slot) != EMPTY && table.get(slot) != TOMBSTONE) {
+            slot = (slot + 1) & mask;
+        }
+        if (table.get(slot) == EMPTY) {
+            indexUsed++;
+        }
+        table.set(slot, row + 1); // Published after the row's columns
+    }
+
+    /** Must be called while holding the lock. */
+    private void indexRemove(String id) {
+        indexRemove(id, rowOf(id));
+    }
+
+    /** Removes the slot of a row whose ID was {@code id}, even if the row has been renamed since. */
+    private void indexRemove(String id, int row) {
+        AtomicIntegerArray table = index;
+        int mask = table.length() - 1;
+        for (int slot = hash(id) & mask; table.get(slot) != EMPTY; slot = (slot + 1) & mask) {
+            if (table.get(slot) == row + 1) {
+                table.set(slot, TOMBSTONE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index without tombstones, doubling it if more than a quarter full of live IDs.
+     * Lookups keep using the old table until the new one is complete.
+     */
+    private void rehash() {
+        AtomicIntegerArray old = index;
+        int live = 0;
+        for (int slot = 0; slot < old.length(); slot++) {
+            if (old.get(slot) > 0) {
+                live++;
+            }
+        }
+        int capacity = old.length();
+        while ((live + 1) * 4 > capacity) {
+            capacity *= 2;
+        }
+        AtomicIntegerArray table = new AtomicIntegerArray(capacity);
+        int mask = capacity - 1;
+        for (int slot = 0; slot < old.length(); slot++) {
+            int entry = old.get(slot);
+            if (entry > 0) {
+                int target = hash(idAt(entry - 1)) & mask;
+                while (table.get(target) != EMPTY) {
+                    target = (target + 1) & mask;
+                }
+                table.set(target, entry);
+            }
+        }
+        indexUsed = live;
+        index = table;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9E3779B9; // Spreads IDs that differ only in their last characters
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Copies the products into a new list of {@link Product} objects.
+     *
+     * @return the products, in insertion order.
+     */
+    public List<Product> toProducts() {
+        List<Product> products = new ArrayList<>(size);
+        for (int position = 0; position < size; position++) {
+            int row = rowAt(position);
+            Product target = movedTo(row);
+            products.add(target != null ? target : copy(row));
+        }
+        return products;
+    }
+}
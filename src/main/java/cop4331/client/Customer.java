@@ -1,12 +1,30 @@
 package cop4331.client;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The Customer class represents a customer user in the system.
  * It extends the User class and includes a shopping cart.
  */
 public class Customer extends User {
+    /** Results of recent checkouts by request ID, so a repeated submission does not buy twice. */
+    private static final IdempotencyStore<Boolean> checkouts = new IdempotencyStore<>(10_000, 1, TimeUnit.HOURS);
+
+    /** Commits paid orders, so a slow journal write does not hold up the payment gateway's threads. */
+    private static final ExecutorService orderCommits = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "order-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private Cart cart;
 
     /**
@@ -86,10 +104,28 @@ public class Customer extends User {
      * @param qty the quantity of the product
      */
     public void addToCart(Product product, int qty) {
-        if (product.getQuantity() < qty) {
+        // Adding a product already in the cart merges into its line item, so check stock for the total
+        LineItem existing = cart.getItem(product.getId());
+        int lineQty = existing == null ? qty : existing.getQuantity() + qty;
+
+        CartHolds holds = CartHolds.getInstance();
+        CartHold hold = null;
+        boolean inStock;
+        if (holds.isEnabled()) {
+            cart.releaseHold(product.getId()); // Replaced by one hold for the merged quantity
+            hold = holds.hold(product, lineQty); // Set the stock aside until checkout or expiry
+            inStock = hold != null;
+            if (!inStock && existing != null) {
+                existing.setHold(holds.hold(product, existing.getQuantity())); // Keep holding what was already in the cart
+            }
+        } else {
+            inStock = product.getAvailableQuantity() >= lineQty;
+        }
+
+        if (!inStock) {
             System.out.println("Insufficient stock for " + product.getName());
         } else {
-            cart.addItem(product, qty); // Add item to the cart
+            cart.addItem(product, qty, hold); // Add item to the cart, holding its stock if enabled
             // Update the database with the changes
             Database.getInstance().updateUser(this);       // Save updated customer to users.json
             System.out.println(qty + " x " + product.getName() + " added to cart.");
@@ -97,38 +133,229 @@ public class Customer extends User {
     }
 
     /**
-     * Completes the checkout process by clearing the cart and updating product inventory.
+     * Reserves stock for every item in the cart, or for none of them.
+     * Items are resolved against the catalog, so the reservation applies to the shared stock.
+     *
+     * @return the reservation, or null if the cart is empty or an item does not have enough stock.
      */
-    public void checkout() {
+    public StockReservation reserveCart() {
         if (cart.getItems().isEmpty()) {
             System.out.println("Your cart is empty. Add items before checking out.");
-            return;
+            return null;
         }
 
+        StockReservation reservation = new StockReservation();
         for (LineItem item : cart.getItems()) {
-            Product product = item.getProduct();
-            int purchasedQty = item.getQuantity();
+            CartHold hold = item.getHold();
+            if (hold != null && CartHolds.getInstance().convert(hold)) {
+                item.setHold(null);
+                reservation.adopt(hold.getProduct(), hold.getQuantity());
+                continue;
+            }
 
+            Product product = Database.getInstance().getProductById(item.getProduct().getId());
+            if (product == null) {
+                product = item.getProduct();
+            }
+            if (!reservation.add(product, item.getQuantity())) {
+                reservation.release();
+                System.out.println("Insufficient stock for " + product.getName());
+                return null;
+            }
+        }
+        return reservation;
+    }
+
+    /**
+     * Completes the checkout process by reserving every item in the cart, then clearing the cart
+     * and updating product inventory. Nothing is bought unless every item is in stock.
+     *
+     * @return true if the purchase completed, false if an item was out of stock or the order could not be saved.
+     */
+    public boolean checkout() {
+        StockReservation reservation = reserveCart();
+        if (reservation == null) {
+            return false;
+        }
+        return checkout(reservation);
+    }
+
+    /**
+     * Completes the checkout process at most once per request ID. A repeated request, for example
+     * a double-click or a retry after a timeout, returns the result of the first one without
+     * touching stock or sales again; concurrent duplicates wait for the first to finish.
+     *
+     * @param requestId the client-supplied ID of the checkout request.
+     * @return the result of the first checkout with this request ID.
+     */
+    public boolean checkout(String requestId) {
+        return checkouts.execute(getId() + "/" + requestId, this::checkout);
+    }
+
+    /**
+     * Completes the checkout process for stock already reserved with {@link #reserveCart()}, at most
+     * once per request ID. If the request is a duplicate, the reservation is released and the result
+     * of the first checkout is returned.
+     *
+     * @param requestId the client-supplied ID of the checkout request.
+     * @param reservation the reservation covering the cart.
+     * @return the result of the first checkout with this request ID.
+     */
+    public boolean checkout(String requestId, StockReservation reservation) {
+        AtomicBoolean ran = new AtomicBoolean();
+        boolean result = checkouts.execute(getId() + "/" + requestId, () -> {
+            ran.set(true);
+            return checkout(reservation);
+        });
+        if (!ran.get()) {
+            reservation.release(); // The first request already bought the cart
+            System.out.println("Duplicate checkout request " + requestId + " ignored.");
+        }
+        return result;
+    }
+
+    /**
+     * Pays for and completes the checkout of stock already reserved with {@link #reserveCart()}, at
+     * most once per request ID. The payment is authorized under the request ID inside the idempotent
+     * section, so a duplicate request waits for the first one and is never charged, and a request
+     * retried with the same ID after a failure gets the gateway's earlier decision rather than a
+     * second charge. The reservation is released unless the order is saved. Approved orders are
+     * committed on a separate pool, so the payment gateway's threads never wait for the journal.
+     *
+     * @param requestId the client-supplied ID of the checkout request; keep it for retries after a failure.
+     * @param reservation the reservation covering the cart.
+     * @param cardNumber the credit card number.
+     * @param expiration the expiration date in MM/YY format.
+     * @param cvv the CVV code.
+     * @param amount the amount to charge.
+     * @return a future completed with true once the order is saved, false if the payment was declined,
+     *         or exceptionally if the payment could not be processed or the order could not be saved,
+     *         in which case the request can be retried with the same ID.
+     */
+    public CompletableFuture<Boolean> checkout(String requestId, StockReservation reservation,
+                                               String cardNumber, String expiration, String cvv, double amount) {
+        String key = getId() + "/" + requestId;
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Boolean> result = checkouts.executeAsync(key, () -> {
+            ran.set(true);
+            return Payment.getInstance().processPaymentAsync(key, cardNumber, expiration, cvv, amount)
+                    .whenComplete((approved, error) -> {
+                        if (error != null || !approved) {
+                            reservation.release();
+                        }
+                    })
+                    .thenApplyAsync(approved -> {
+                        if (approved && !checkout(reservation)) { // Rolls back and releases the reservation
+                            throw new IllegalStateException("Order could not be saved; retry to complete it without a new charge");
+                        }
+                        return approved;
+                    }, orderCommits);
+        });
+        if (!ran.get()) {
+            reservation.release(); // The first request is paying for the cart
+            System.out.println("Duplicate checkout request " + requestId + " ignored.");
+        }
+        return result;
+    }
+
+    /**
+     * Completes the checkout process for stock already reserved with {@link #reserveCart()}.
+     * The stock decrements, the sellers' sales and the removal of the purchased quantities from the
+     * cart are committed as one transaction; if it cannot be saved, every change is undone and the
+     * reservation released. Items added to the cart after the reservation was taken stay in it.
+     *
+     * @param reservation the reservation covering the cart.
+     * @return true if the order was saved, false if it was rolled back.
+     */
+    public boolean checkout(StockReservation reservation) {
+        Database database = Database.getInstance();
+        List<LineItem> items = reservation.getItems();
+        PromotionEngine.Quote quote = PromotionEngine.getInstance().quote(items); // Sales are recorded at promotional prices
+        Database.Transaction transaction = database.beginTransaction();
+        transaction.onRollback(reservation::release);
+        try {
             // Update the product inventory
-            product.setQuantity(product.getQuantity() - purchasedQty);
-            
-
-            // Update the seller's financial data
-            Seller seller = Database.getInstance().getSellerById(product.getSellerId());
-            if (seller != null) {
-                seller.recordSale(product, purchasedQty);
-                seller.getInventory().updateProduct(product); // Update seller's inventory
-                Database.getInstance().updateUser(seller); // Save updated seller to users.json
+            reservation.commit();
+            for (LineItem item : reservation.getItems()) {
+                transaction.onRollback(() -> item.getProduct().restock(item.getQuantity()));
+            }
+
+            for (int i = 0; i < items.size(); i++) {
+                Product product = items.get(i).getProduct();
+                int purchasedQty = items.get(i).getQuantity();
+                long saleCents = quote.getLineCents(i);
+
+                // Update the seller's financial data
+                Seller seller = database.getSellerById(product.getSellerId());
+                if (seller != null) {
+                    synchronized (seller) {
+                        seller.recordSale(product, purchasedQty, saleCents);
+                    }
+                    transaction.onRollback(() -> {
+                        synchronized (seller) {
+                            seller.recordSale(product, -purchasedQty, -saleCents);
+                        }
+                    });
+                    transaction.updateUser(seller);
+                }
+
+                transaction.updateProduct(product);
             }
 
-            Database.getInstance().updateProduct(product); // Save product changes to products.json
+            // Take the purchased quantities out of the cart; items added since the reservation stay
+            List<LineItem> before = new ArrayList<>();
+            cart.beginBatch();
+            try {
+                for (LineItem item : items) {
+                    LineItem line = cart.getItem(item.getProduct().getId());
+                    if (line == null) {
+                        continue;
+                    }
+                    before.add(new LineItem(line.getProduct(), line.getQuantity()));
+                    int remaining = line.getQuantity() - item.getQuantity();
+                    if (remaining > 0) {
+                        cart.updateItemQuantity(line.getProduct(), remaining);
+                    } else {
+                        cart.removeItem(line.getProduct());
+                    }
+                }
+            } finally {
+                cart.endBatch();
+            }
+            transaction.onRollback(() -> {
+                cart.beginBatch();
+                try {
+                    for (LineItem line : before) {
+                        if (cart.getItem(line.getProduct().getId()) == null) {
+                            cart.addItem(line.getProduct(), line.getQuantity());
+                        } else {
+                            cart.updateItemQuantity(line.getProduct(), line.getQuantity());
+                        }
+                    }
+                } finally {
+                    cart.endBatch();
+                }
+            });
+            transaction.updateUser(this);
+
+            transaction.commit(); // One durable write for the whole order
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Checkout failed and was rolled back; no items were purchased.");
+            return false;
+        } finally {
+            transaction.rollback(); // No-op once committed
         }
 
-        // Clear the cart
-        cart.clearCart(); // Properly clears the cart
-        Database.getInstance().updateUser(this); // Save the cleared cart to users.json
+        try {
+            OrderLedger.getInstance().record(new Order(getId(), items, quote));
+        } catch (IOException e) {
+            // The purchase itself is saved; only its history entry is missing
+            e.printStackTrace();
+        }
 
         System.out.println("Checkout completed successfully. Thank you for your purchase!");
+        return true;
     }
 
     /**
@@ -1,34 +1,122 @@
 package cop4331.client;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import com.fasterxml.jackson.annotation.JsonSubTypes;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 /**
  * Singleton class for managing persistent storage of users and products.
+ * Users and products are held in memory. Changed entities are tracked as dirty and only those
+ * are handed to the {@link StorageEngine}, in one engine transaction per write; inside a
+ * {@link #beginBatch()}/{@link #endBatch()} scope the write is deferred until the scope ends,
+ * so an entity changed several times is written once.
+ * The engine is chosen with {@code -Dcop4331.storage=json|binary|sql|segmented} and stores its files
+ * in {@code -Dcop4331.dataDir} (the working directory by default). With {@code -Dcop4331.catalog=columnar}
+ * products are held in a {@link ColumnarCatalog} instead of a list of objects, for very large catalogs.
+ * <p>
+ * The database is safe to use from several threads. Lookups first try an optimistic read and
+ * retry under a shared lock if a mutation ran concurrently; mutations, batches and writes to the
+ * engine take the lock exclusively. Every lookup therefore sees the collections and indexes as
+ * they were between two mutations, and {@link #getUsers()} and {@link #getProducts()} return
+ * point-in-time copies. Users and products themselves are shared, mutable objects: a change to
+ * one is published to other threads by passing it to an update method, and callers that
+ * read-modify-write the same entity from several threads must coordinate those changes themselves.
  */
 public class Database {
     private static Database instance; // Singleton instance
     private List<User> users;         // List of users
     private List<Product> products;   // List of products
-    private ObjectMapper objectMapper; // JSON serializer/deserializer
+    private ColumnarCatalog columnarCatalog; // The catalog behind products in columnar mode, or null
+    private StorageEngine engine;     // Persistence backend
+
+    /** Guards every field below, the lists and the engine; reads may be optimistic. */
+    private final StampedLock lock = new StampedLock();
+
+    // Indexes kept consistent with the lists on every load, add and update.
+    // Concurrent maps, so an optimistic read racing a mutation cannot corrupt them.
+    private Map<String, Integer> productPositions = new ConcurrentHashMap<>(); // Product ID -> index in products, in list mode
+    private Map<String, Integer> userPositions = new ConcurrentHashMap<>();    // User ID -> index in users
+    private Map<String, User> usersByUsername = new ConcurrentHashMap<>();     // Username -> user
+    private Set<String> bundleIds = ConcurrentHashMap.newKeySet();             // IDs of products that are bundles
+    private Map<String, Set<String>> bundlesByProduct = new ConcurrentHashMap<>(); // Product ID -> IDs of the bundles containing it
+    private volatile SearchIndex searchIndex;   // Built on the first search, then kept current
+    private volatile CatalogIndex catalogIndex; // Built on the first catalog query, then kept current
+
+    // Changes not yet handed to the engine
+    private Map<String, User> dirtyUsers = new LinkedHashMap<>();
+    private Map<String, Product> dirtyProducts = new LinkedHashMap<>();
+    private Set<String> deletedUsers = new LinkedHashSet<>();
+    private Set<String> deletedProducts = new LinkedHashSet<>();
+    private int batchDepth;           // Nesting depth of open batches
+    private final AtomicBoolean checkpointQueued = new AtomicBoolean(); // A checkpoint waits on the checkpoint thread
+
+    /** Runs the checkpoints that writes ask for, so the writing thread does not serialize the whole state. */
+    private static final ExecutorService checkpoints = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "database-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Products whose stock is striped for flash sales
+    private final Set<String> hotProducts = new HashSet<>(Arrays.asList(
+            System.getProperty(HOT_PRODUCTS_PROPERTY, "").split("\\s*,\\s*")));
+
+    /** System property selecting the storage engine: json, binary, sql or segmented. */
+    private static final String STORAGE_PROPERTY = "cop4331.storage";
+
+    /** System property naming the directory that holds the data files. */
+    private static final String DATA_DIR_PROPERTY = "cop4331.dataDir";
+
+    /** System property selecting the journal durability: sync, interval or buffered. */
+    private static final String DURABILITY_PROPERTY = "cop4331.durability";
+
+    /** System property selecting how products are held in memory: list or columnar. */
+    private static final String CATALOG_PROPERTY = "cop4331.catalog";
+
+    /** System property listing the comma-separated IDs of products to keep in hot mode. */
+    private static final String HOT_PRODUCTS_PROPERTY = "cop4331.hotProducts";
 
-    private static final String USERS_FILE = "users.json";
-    private static final String PRODUCTS_FILE = "products.json";
+    /** Milliseconds between forced syncs in interval durability mode. */
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
 
     // Private constructor for Singleton pattern
     private Database() {
+        this(createEngine());
+
+        // Don't lose queued changes when the application exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                engine.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+    }
+
+    /**
+     * Constructs a database over a specific storage engine and loads its data.
+     *
+     * @param engine the storage engine to use.
+     */
+    Database(StorageEngine engine) {
         this.users = new ArrayList<>();
-        this.products = new ArrayList<>();
-        this.objectMapper = new ObjectMapper();
+        this.products = createProductList();
+        this.engine = engine;
         loadData();
     }
 
@@ -45,51 +133,213 @@ public class Database {
     }
 
     /**
-     * Loads users and products from JSON files into memory.
+     * Replaces the Singleton instance, for example with a database over an in-memory engine in tests.
+     *
+     * @param database the instance to return from {@link #getInstance()}, or null to create it on next use.
+     */
+    static synchronized void setInstance(Database database) {
+        instance = database;
+    }
+
+    /**
+     * Retrieves the directory holding the data files, as set by {@code -Dcop4331.dataDir}.
+     *
+     * @return the data directory; the working directory by default.
+     */
+    static File getDataDirectory() {
+        return new File(System.getProperty(DATA_DIR_PROPERTY, "."));
+    }
+
+    /**
+     * Creates the empty product list selected by the system properties. A columnar catalog indexes
+     * its own rows by product ID, so products are then looked up in it instead of {@link #productPositions}.
+     *
+     * @return a list of objects, or a list backed by a columnar catalog.
+     */
+    private List<Product> createProductList() {
+        String catalog = System.getProperty(CATALOG_PROPERTY, "list").toLowerCase();
+        switch (catalog) {
+            case "columnar":
+                columnarCatalog = new ColumnarCatalog();
+                return columnarCatalog.asList();
+            case "list":
+                columnarCatalog = null;
+                return new ArrayList<>();
+            default:
+                throw new IllegalArgumentException("Unknown catalog: " + catalog);
+        }
+    }
+
+    /**
+     * Creates the storage engine selected by the system properties.
+     *
+     * @return the configured storage engine.
+     */
+    private static StorageEngine createEngine() {
+        File directory = getDataDirectory();
+        Journal.Durability durability = Journal.Durability.valueOf(
+                System.getProperty(DURABILITY_PROPERTY, "interval").toUpperCase());
+        String storage = System.getProperty(STORAGE_PROPERTY, "json").toLowerCase();
+        switch (storage) {
+            case "binary":
+                return new BinaryStorageEngine(directory, durability, SYNC_INTERVAL_MILLIS);
+            case "sql":
+                try {
+                    return new SqlStorageEngine(directory);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot open SQL storage in " + directory, e);
+                }
+            case "segmented":
+                return new SegmentedStorageEngine(directory);
+            case "json":
+                return new JsonStorageEngine(directory, durability, SYNC_INTERVAL_MILLIS);
+            default:
+                throw new IllegalArgumentException("Unknown storage engine: " + storage);
+        }
+    }
+
+    /**
+     * Loads users and products from the storage engine into memory,
+     * indexing each element as it is loaded.
      */
     public void loadData() {
+        long stamp = lock.writeLock();
         try {
-            // Debugging users.json
-        File usersFile = new File(USERS_FILE);
-        if (usersFile.exists()) {
-            System.out.println("Loading users.json...");
-            System.out.println("JSON Content: " + new String(Files.readAllBytes(usersFile.toPath())));
-            users = objectMapper.readValue(usersFile, new TypeReference<List<User>>() {});
-        } else {
-            users = new ArrayList<>();
+            loadDataLocked();
+        } finally {
+            lock.unlockWrite(stamp);
         }
+    }
 
-        // Debugging products.json
-        File productsFile = new File(PRODUCTS_FILE);
-        if (productsFile.exists()) {
-            System.out.println("Loading products.json...");
-            System.out.println("JSON Content: " + new String(Files.readAllBytes(productsFile.toPath())));
-            products = objectMapper.readValue(productsFile, new TypeReference<List<Product>>() {});
-        } else {
-            products = new ArrayList<>();
-        }
+    private void loadDataLocked() {
+        users = new ArrayList<>();
+        products = createProductList();
+        productPositions.clear();
+        bundleIds.clear();
+        bundlesByProduct.clear();
+        searchIndex = null; // Rebuilt from the loaded products on the next search or query
+        catalogIndex = null;
+        userPositions.clear();
+        usersByUsername.clear();
+        List<PromotionRule> discounts = new ArrayList<>(); // Of discounted products read from the save
+
+        try {
+            engine.load(new StorageEngine.Loader() {
+                @Override
+                public void loadUser(User user) {
+                    if (!replaceUser(user)) {
+                        appendUser(user);
+                    }
+                }
+
+                @Override
+                public void loadProduct(Product product) {
+                    product = undiscounted(product, discounts);
+                    if (!replaceProduct(product)) {
+                        appendProduct(product);
+                    }
+                }
+
+                @Override
+                public void unloadUser(String userId) {
+                    removeUser(userId);
+                }
+
+                @Override
+                public void unloadProduct(String productId) {
+                    removeProduct(productId);
+                }
+
+                @Override
+                public void loadProducts(List<Product> list, IntFunction<String> idAt) {
+                    productPositions.clear();
+                    bundleIds.clear();
+                    bundlesByProduct.clear();
+                    products = createProductList();
+                    if (columnarCatalog == null) {
+                        products = list; // Keep the loaded objects as they are
+                        for (int i = 0; i < list.size(); i++) {
+                            if (list.get(i) instanceof DiscountedProduct) {
+                                list.set(i, undiscounted(list.get(i), discounts));
+                            }
+                            productPositions.put(idAt.apply(i), i);
+                            trackBundle(list.get(i));
+                        }
+                    } else {
+                        for (Product product : list) {
+                            appendProduct(undiscounted(product, discounts)); // Copied into the columns
+                        }
+                    }
+                }
+            });
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        // Inventories saved before they referenced the catalog embed their products; adopt any it lacks
+        for (User user : users) {
+            if (user instanceof Seller) {
+                for (Product product : ((Seller) user).getInventory().takeEmbeddedProducts()) {
+                    if (storedProduct(product.getId()) == null) {
+                        appendProduct(product);
+                        dirtyProducts.put(product.getId(), product);
+                    }
+                }
+            }
+        }
+
+        // Bundles are stored with copies of their products; make them use the loaded ones
+        linkBundles();
+
+        if (!discounts.isEmpty()) {
+            migrateDiscounts(discounts);
+        }
+
+        for (String productId : hotProducts) {
+            Product product = storedProduct(productId);
+            if (product != null) {
+                applyHotMode(product);
+            }
+        }
     }
 
     /**
-     * Adds a product to the database and saves the data.
+     * Adds a product to the database and persists it.
      *
      * @param product the product to add.
      */
     public void addProduct(Product product) {
-        products.add(product);
-        saveData(); // Save changes
+        long stamp = lock.writeLock();
+        try {
+            if (!replaceProduct(product)) {
+                appendProduct(product);
+            }
+            Product stored = storedProduct(product.getId());
+            applyHotMode(stored);
+            linkBundles(stored.getId());
+            markDirty(stored);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
-     * Saves users and products to their respective JSON files.
+     * Writes the complete state of users and products through the storage engine,
+     * letting it discard any incremental log.
      */
     public void saveData() {
+        long stamp = lock.writeLock();
         try {
-            objectMapper.writeValue(new File(USERS_FILE), users);
-            objectMapper.writeValue(new File(PRODUCTS_FILE), products);
+            saveDataLocked();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void saveDataLocked() {
+        try {
+            engine.checkpoint(users, products);
+            clearDirty();
 
             System.out.println("Data saved successfully.");
         } catch (IOException e) {
@@ -98,43 +348,691 @@ public class Database {
     }
 
     /**
-     * Updates a product in the product list and saves to JSON.
+     * Blocks until every change made so far has been written and forced to disk.
+     * Mutators may return before their change is durable, so callers that need
+     * durability (such as checkout) wait here.
+     * The wait itself happens outside the lock, so other threads keep reading and writing.
+     */
+    public void flush() {
+        long stamp = lock.writeLock();
+        try {
+            writeDirty();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        try {
+            engine.flush();
+        } catch (IOException e) {
+            // Incremental writes failed; persist everything instead
+            e.printStackTrace();
+            saveData();
+        }
+    }
+
+    /**
+     * Updates a product in the product list and persists the change.
      *
      * @param updatedProduct the product to update.
      */
     public void updateProduct(Product updatedProduct) {
-        products.replaceAll(product -> product.getId().equals(updatedProduct.getId()) ? updatedProduct : product);
-        saveData();
+        long stamp = lock.writeLock();
+        try {
+            if (replaceProduct(updatedProduct)) {
+                Product stored = storedProduct(updatedProduct.getId());
+                applyHotMode(stored);
+                linkBundles(stored.getId());
+                markDirty(stored);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
-     * Updates a user in the user list and saves to JSON.
+     * Updates a user in the user list and persists the change.
      *
      * @param updatedUser the user to update.
      */
     public void updateUser(User updatedUser) {
-        users.replaceAll(user -> user.getId().equals(updatedUser.getId()) ? updatedUser : user);
-        saveData();
+        long stamp = lock.writeLock();
+        try {
+            if (replaceUser(updatedUser)) {
+                markDirty(updatedUser);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Deletes a product from the product list and persists the change.
+     *
+     * @param productId the ID of the product to delete.
+     */
+    public void deleteProduct(String productId) {
+        long stamp = lock.writeLock();
+        try {
+            if (removeProduct(productId)) {
+                dirtyProducts.remove(productId);
+                deletedProducts.add(productId);
+                writeIfNotBatched();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Deletes a user from the user list and persists the change.
+     *
+     * @param userId the ID of the user to delete.
+     */
+    public void deleteUser(String userId) {
+        long stamp = lock.writeLock();
+        try {
+            if (removeUser(userId)) {
+                dirtyUsers.remove(userId);
+                deletedUsers.add(userId);
+                writeIfNotBatched();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Opens a batch: changes are tracked but not written until the outermost
+     * {@link #endBatch()}. Batches nest, and while any thread has a batch open every
+     * thread's changes are deferred to the end of the last open batch.
+     */
+    public void beginBatch() {
+        long stamp = lock.writeLock();
+        try {
+            batchDepth++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Closes a batch, writing every entity changed within it once the outermost batch ends.
+     */
+    public void endBatch() {
+        long stamp = lock.writeLock();
+        try {
+            if (batchDepth > 0 && --batchDepth == 0) {
+                writeDirty();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Starts a transaction whose changes are written together, in one durable write, when it commits.
+     *
+     * @return the new transaction.
+     */
+    public Transaction beginTransaction() {
+        return new Transaction();
+    }
+
+    /**
+     * Replaces the product with the same ID.
+     *
+     * @param updatedProduct the replacement product.
+     * @return true if a product was replaced, false if none had the same ID.
+     */
+    private boolean replaceProduct(Product updatedProduct) {
+        Product previous;
+        if (columnarCatalog != null) {
+            int row = columnarCatalog.rowOf(updatedProduct.getId());
+            if (row < 0) {
+                return false;
+            }
+            previous = columnarCatalog.get(updatedProduct.getId());
+            columnarCatalog.set(row, updatedProduct);
+        } else {
+            Integer position = productPositions.get(updatedProduct.getId());
+            if (position == null) {
+                return false;
+            }
+            previous = products.set(position, updatedProduct);
+        }
+        untrackBundle(previous, previous != updatedProduct);
+        indexProduct(updatedProduct);
+        return true;
+    }
+
+    /**
+     * Retrieves the product the list holds for an ID: the one that was stored, or with a columnar
+     * catalog, a view of the row it was copied into.
+     *
+     * @param productId the ID of the product.
+     * @return the stored product, or null if none has the ID.
+     */
+    private Product storedProduct(String productId) {
+        if (columnarCatalog != null) {
+            return columnarCatalog.get(productId);
+        }
+        Integer position = productPositions.get(productId);
+        return position == null ? null : products.get(position);
+    }
+
+    /**
+     * Appends a product to the product list and indexes it.
+     *
+     * @param product the product to append.
+     */
+    private void appendProduct(Product product) {
+        if (columnarCatalog == null) {
+            productPositions.put(product.getId(), products.size());
+        }
+        products.add(product);
+        indexProduct(product);
+    }
+
+    /**
+     * Removes a product from the product list and shifts the positions after it.
+     *
+     * @param productId the ID of the product to remove.
+     * @return true if a product was removed.
+     */
+    private boolean removeProduct(String productId) {
+        Product removed;
+        if (columnarCatalog != null) {
+            removed = columnarCatalog.get(productId);
+            if (!columnarCatalog.remove(productId)) {
+                return false;
+            }
+        } else {
+            Integer position = productPositions.remove(productId);
+            if (position == null) {
+                return false;
+            }
+            removed = products.remove((int) position);
+            for (int i = position; i < products.size(); i++) {
+                productPositions.put(products.get(i).getId(), i);
+            }
+        }
+        untrackBundle(removed, true);
+        if (searchIndex != null) {
+            searchIndex.remove(productId);
+        }
+        if (catalogIndex != null) {
+            catalogIndex.remove(productId);
+        }
+        return true;
+    }
+
+    /**
+     * Brings the search and catalog indexes up to date with a product, if they have been built.
+     *
+     * @param product the added or replaced product.
+     */
+    private void indexProduct(Product product) {
+        trackBundle(product);
+        if (searchIndex != null) {
+            searchIndex.index(product);
+        }
+        if (catalogIndex != null) {
+            catalogIndex.index(product);
+        }
+    }
+
+    /**
+     * Appends a user to the user list and indexes it.
+     *
+     * @param user the user to append.
+     */
+    private void appendUser(User user) {
+        userPositions.put(user.getId(), users.size());
+        usersByUsername.put(user.getUsername(), user);
+        users.add(user);
+    }
+
+    /**
+     * Replaces the user with the same ID.
+     *
+     * @param updatedUser the replacement user.
+     * @return true if a user was replaced, false if none had the same ID.
+     */
+    private boolean replaceUser(User updatedUser) {
+        Integer position = userPositions.get(updatedUser.getId());
+        if (position == null) {
+            return false;
+        }
+        User previous = users.set(position, updatedUser);
+        usersByUsername.remove(previous.getUsername());
+        usersByUsername.put(updatedUser.getUsername(), updatedUser);
+        return true;
+    }
+
+    /**
+     * Removes a user from the user list and shifts the positions after it.
+     *
+     * @param userId the ID of the user to remove.
+     * @return true if a user was removed.
+     */
+    private boolean removeUser(String userId) {
+        Integer position = userPositions.remove(userId);
+        if (position == null) {
+            return false;
+        }
+        User removed = users.remove((int) position);
+        usersByUsername.remove(removed.getUsername());
+        for (int i = position; i < users.size(); i++) {
+            userPositions.put(users.get(i).getId(), i);
+        }
+        return true;
+    }
+
+    /**
+     * Records a bundle's ID and the IDs of the products it bundles, so that a change to one of them
+     * relinks only the bundles containing it.
+     *
+     * @param product an added or replaced product; ignored unless it is a bundle.
+     */
+    private void trackBundle(Product product) {
+        if (!(product instanceof ProductBundle)) {
+            return;
+        }
+        bundleIds.add(product.getId());
+        for (Product component : ((ProductBundle) product).getProducts()) {
+            bundlesByProduct.computeIfAbsent(component.getId(), id -> ConcurrentHashMap.newKeySet()).add(product.getId());
+        }
+    }
+
+    /**
+     * Forgets a bundle recorded by {@link #trackBundle(Product)}.
+     *
+     * @param product a replaced or removed product; ignored unless it is a bundle.
+     * @param unlink whether the bundle is gone from the catalog, so its products should stop telling it about changes.
+     */
+    private void untrackBundle(Product product, boolean unlink) {
+        if (!(product instanceof ProductBundle)) {
+            return;
+        }
+        bundleIds.remove(product.getId());
+        for (Product component : ((ProductBundle) product).getProducts()) {
+            Set<String> bundles = bundlesByProduct.get(component.getId());
+            if (bundles != null) {
+                bundles.remove(product.getId());
+                if (bundles.isEmpty()) {
+                    bundlesByProduct.remove(component.getId());
+                }
+            }
+        }
+        if (unlink) {
+            ((ProductBundle) product).unlink();
+        }
+    }
+
+    /**
+     * Makes every bundle use the stored instances of the products it bundles. Bundles are loaded
+     * with copies of their products, so a bundle would otherwise price and reserve stock on
+     * products the catalog does not hold.
+     */
+    private void linkBundles() {
+        for (String bundleId : bundleIds) {
+            linkBundle(storedProduct(bundleId));
+        }
+    }
+
+    /**
+     * Links the bundles affected by adding or updating a product: the product itself if it is a
+     * bundle, and every bundle containing it, since the update replaced the instance they use.
+     *
+     * @param productId the ID of the added or updated product.
+     */
+    private void linkBundles(String productId) {
+        linkBundle(storedProduct(productId));
+        Set<String> bundles = bundlesByProduct.get(productId);
+        if (bundles != null) {
+            for (String bundleId : bundles) {
+                linkBundle(storedProduct(bundleId));
+            }
+        }
+    }
+
+    /**
+     * Makes a bundle use the stored instances of the products it bundles. Bundled products that are
+     * not in the catalog are kept as they are.
+     *
+     * @param bundle a stored product; ignored unless it is a bundle.
+     */
+    private void linkBundle(Product bundle) {
+        if (!(bundle instanceof ProductBundle)) {
+            return;
+        }
+        List<Product> components = ((ProductBundle) bundle).getProducts();
+        List<Product> linked = new ArrayList<>(components.size());
+        boolean changed = false;
+        for (Product component : components) {
+            Product stored = storedProduct(component.getId());
+            if (stored == null) {
+                stored = component;
+            }
+            changed |= !stored.equals(component); // Views of the same columnar row are equal
+            linked.add(stored);
+        }
+        if (changed) {
+            ((ProductBundle) bundle).setProducts(linked);
+        }
     }
 
     /**
-     * Retrieves the list of users.
+     * Replaces a discounted product read from a save with the product it wrapped, and collects a
+     * {@link PromotionRule.Percentage} for its discount. One whose discount cannot be read back
+     * is kept, and sells at its saved price.
      *
-     * @return the list of users.
+     * @param product a loaded product.
+     * @param discounts receives the rule for the discount.
+     * @return the undiscounted product, or the product itself if it is not a discounted one.
+     */
+    private static Product undiscounted(Product product, List<PromotionRule> discounts) {
+        if (!(product instanceof DiscountedProduct)) {
+            return product;
+        }
+        Product undiscounted = ((DiscountedProduct) product).toUndiscounted();
+        if (undiscounted == null) {
+            return product;
+        }
+        PromotionRule rule = new PromotionRule.Percentage(((DiscountedProduct) product).getDiscountRate())
+                .forProduct(product.getId());
+        rule.setId("discounted-" + product.getId()); // The same on every load, so the rule is added once
+        discounts.add(rule);
+        return undiscounted;
+    }
+
+    /**
+     * Adds the rules for the discounted products a load replaced to the {@link PromotionEngine},
+     * unless an earlier load added them, and marks the products dirty so they are saved as plain products.
+     *
+     * @param discounts the rules collected by {@link #undiscounted(Product, List)}.
+     */
+    private void migrateDiscounts(List<PromotionRule> discounts) {
+        PromotionEngine promotions = PromotionEngine.getInstance();
+        List<PromotionRule> rules = new ArrayList<>(promotions.getRules());
+        Set<String> ruleIds = new HashSet<>();
+        for (PromotionRule rule : rules) {
+            ruleIds.add(rule.getId());
+        }
+        for (PromotionRule discount : discounts) {
+            if (ruleIds.add(discount.getId())) {
+                rules.add(discount);
+            }
+            for (String productId : discount.getProductIds()) {
+                Product stored = storedProduct(productId);
+                if (stored != null) {
+                    dirtyProducts.put(productId, stored);
+                }
+            }
+        }
+        try {
+            promotions.setRules(rules);
+        } catch (IOException e) {
+            e.printStackTrace(); // The rules are still in effect, and are added again on the next load
+        }
+        System.out.println("Moved " + discounts.size() + " discounted products to promotion rules.");
+    }
+
+    private void applyHotMode(Product product) {
+        if (hotProducts.contains(product.getId())) {
+            product.enableHotMode(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private void markDirty(Product product) {
+        deletedProducts.remove(product.getId());
+        dirtyProducts.put(product.getId(), product);
+        writeIfNotBatched();
+    }
+
+    private void markDirty(User user) {
+        deletedUsers.remove(user.getId());
+        dirtyUsers.put(user.getId(), user);
+        writeIfNotBatched();
+    }
+
+    private void writeIfNotBatched() {
+        if (batchDepth == 0) {
+            writeDirty();
+        }
+    }
+
+    private void clearDirty() {
+        dirtyUsers.clear();
+        dirtyProducts.clear();
+        deletedUsers.clear();
+        deletedProducts.clear();
+    }
+
+    /**
+     * Hands every dirty entity to the storage engine in one transaction,
+     * checkpointing when the engine asks for it. Must be called while holding the write lock.
+     */
+    private void writeDirty() {
+        if (dirtyUsers.isEmpty() && dirtyProducts.isEmpty() && deletedUsers.isEmpty() && deletedProducts.isEmpty()) {
+            return;
+        }
+        try {
+            engine.begin();
+            for (String userId : deletedUsers) {
+                engine.deleteUser(userId);
+            }
+            for (String productId : deletedProducts) {
+                engine.deleteProduct(productId);
+            }
+            for (User user : dirtyUsers.values()) {
+                engine.upsertUser(user);
+            }
+            for (Product product : dirtyProducts.values()) {
+                engine.upsertProduct(product);
+            }
+            engine.commit();
+            clearDirty();
+        } catch (IOException e) {
+            // Fall back to a full checkpoint so the changes are not lost
+            e.printStackTrace();
+            try {
+                engine.rollback();
+            } catch (IOException ignored) {
+                // The checkpoint below supersedes the failed transaction
+            }
+            saveDataLocked();
+            return;
+        }
+        if (engine.needsCheckpoint()) {
+            requestCheckpoint();
+        }
+    }
+
+    /**
+     * Queues a checkpoint on the checkpoint thread, unless one is already queued. The checkpoint
+     * holds the read lock while the engine captures the state, so lookups carry on and writes wait;
+     * the thread that asked for it, which may be the event dispatch thread, does not.
+     * Every change is already with the engine, so a checkpoint that fails or never runs loses nothing.
+     */
+    private void requestCheckpoint() {
+        if (!checkpointQueued.compareAndSet(false, true)) {
+            return;
+        }
+        checkpoints.execute(() -> {
+            checkpointQueued.set(false);
+            long stamp = lock.readLock();
+            try {
+                if (engine.needsCheckpoint()) { // Not if a save ran in the meantime
+                    engine.checkpoint(users, products);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        });
+    }
+
+    /**
+     * Runs a lookup under an optimistic read, retrying under the shared lock if a mutation
+     * ran concurrently. The lookup may observe a half-applied mutation on the optimistic pass,
+     * so it must only read, and any exception it throws on that pass is treated as a conflict.
+     *
+     * @param lookup the lookup to run.
+     * @param <T> the result type.
+     * @return the result of a lookup that did not overlap any mutation.
+     */
+    private <T> T read(Supplier<T> lookup) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = lookup.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Torn read of a list being mutated; fall through to the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return lookup.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves a snapshot of the list of users.
+     *
+     * @return an unmodifiable copy of the list of users.
      */
     public List<User> getUsers() {
-        return users;
+        long stamp = lock.readLock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(users));
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     /**
-     * Retrieves the list of products.
+     * Retrieves a snapshot of the list of products.
      *
-     * @return the list of products.
+     * @return an unmodifiable copy of the list of products.
      */
     public List<Product> getProducts() {
-        return products;
+        long stamp = lock.readLock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<>(products));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Searches product names and descriptions. Every word of the query must match; the last may be
+     * the start of a word, so results can be shown as the query is typed. The index is built on the
+     * first search and kept current as products are added, updated and deleted.
+     *
+     * @param query the words to search for.
+     * @param limit the maximum number of results.
+     * @return the matching products, best match first; empty if the query has no words.
+     */
+    public List<Product> searchProducts(String query, int limit) {
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            long stamp = lock.writeLock();
+            try {
+                if (searchIndex == null) {
+                    SearchIndex built = new SearchIndex();
+                    built.addAll(products);
+                    searchIndex = built;
+                }
+                index = searchIndex;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        List<Product> results = new ArrayList<>();
+        for (SearchIndex.Hit hit : index.search(query, limit)) {
+            Product product = getProductById(hit.getProductId());
+            if (product != null) { // Deleted since the search
+                results.add(product);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds a page of products by price range, stock, seller and type, with the number of matches
+     * and facet counts, from secondary indexes rather than a scan of every product. The indexes are
+     * built on the first query and kept current as products are added, updated and deleted.
+     *
+     * @param query the criteria, sort order and page.
+     * @return the page of products and the counts.
+     */
+    public CatalogResult queryProducts(CatalogQuery query) {
+        CatalogIndex index = catalogIndex;
+        if (index == null) {
+            long stamp = lock.writeLock();
+            try {
+                if (catalogIndex == null) {
+                    CatalogIndex built = new CatalogIndex();
+                    built.addAll(products);
+                    catalogIndex = built;
+                }
+                index = catalogIndex;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        CatalogResult result = index.query(query);
+        List<Product> page = new ArrayList<>();
+        for (String productId : result.getProductIds()) {
+            Product product = getProductById(productId);
+            if (product != null) { // Deleted since the query
+                page.add(product);
+            }
+        }
+        return result.withProducts(page);
+    }
+
+    /**
+     * Finds a product by its unique ID.
+     *
+     * @param productId the unique identifier of the product.
+     * @return the Product object, or null if not found.
+     */
+    public Product getProductById(String productId) {
+        return read(() -> storedProduct(productId));
+    }
+
+    /**
+     * Finds a user by their unique ID.
+     *
+     * @param userId the unique identifier of the user.
+     * @return the User object, or null if not found.
+     */
+    public User getUserById(String userId) {
+        return read(() -> {
+            Integer position = userPositions.get(userId);
+            return position == null ? null : users.get(position);
+        });
+    }
+
+    /**
+     * Finds a user by their username.
+     *
+     * @param username the username to look up.
+     * @return the User object, or null if not found.
+     */
+    public User getUserByUsername(String username) {
+        return read(() -> usersByUsername.get(username));
     }
-    
+
     /**
      * Finds a seller by their unique ID.
      *
@@ -142,11 +1040,162 @@ public class Database {
      * @return the Seller object, or null if not found.
      */
     public Seller getSellerById(String sellerId) {
-        for (User user : users) {
-            if (user instanceof Seller && user.getId().equals(sellerId)) {
-                return (Seller) user;
+        User user = getUserById(sellerId);
+        return user instanceof Seller ? (Seller) user : null;
+    }
+
+    /**
+     * A unit of work that is made durable as a whole or not at all.
+     * <p>
+     * Updates made through the transaction take effect in memory immediately, like the database's
+     * own update methods, but are only handed to the engine by {@link #commit()}, as one engine
+     * transaction followed by a flush. Callers register an undo action for every in-memory change
+     * they make to an entity; {@link #rollback()}, which a failed commit runs itself, undoes them
+     * in reverse order and re-writes the restored entities. A transaction is used by one thread.
+     */
+    public class Transaction {
+        private final Map<String, User> stagedUsers = new LinkedHashMap<>();
+        private final Map<String, Product> stagedProducts = new LinkedHashMap<>();
+        private final List<Runnable> undoActions = new ArrayList<>();
+        private boolean written;  // Whether staged entities may have reached the engine
+        private boolean finished;
+
+        private Transaction() {
+        }
+
+        /**
+         * Registers an action that reverses an in-memory change made as part of this transaction.
+         *
+         * @param undoAction the action to run on rollback.
+         */
+        public void onRollback(Runnable undoAction) {
+            checkOpen();
+            undoActions.add(undoAction);
+        }
+
+        /**
+         * Updates a user in the user list and stages it for the commit.
+         *
+         * @param updatedUser the user to update.
+         */
+        public void updateUser(User updatedUser) {
+            checkOpen();
+            long stamp = lock.writeLock();
+            try {
+                if (replaceUser(updatedUser)) {
+                    stagedUsers.put(updatedUser.getId(), updatedUser);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Updates a product in the product list and stages it for the commit.
+         *
+         * @param updatedProduct the product to update.
+         */
+        public void updateProduct(Product updatedProduct) {
+            checkOpen();
+            long stamp = lock.writeLock();
+            try {
+                if (replaceProduct(updatedProduct)) {
+                    linkBundles(updatedProduct.getId());
+                    stagedProducts.put(updatedProduct.getId(), storedProduct(updatedProduct.getId()));
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Writes every staged entity in one engine transaction and waits until it is on disk.
+         * If that fails, the transaction is rolled back before the exception is rethrown.
+         *
+         * @throws IOException if the changes could not be made durable.
+         */
+        public void commit() throws IOException {
+            checkOpen();
+            try {
+                long stamp = lock.writeLock();
+                try {
+                    writeStaged();
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                engine.flush();
+            } catch (IOException e) {
+                rollback();
+                throw e;
+            }
+            finished = true;
+        }
+
+        /**
+         * Undoes every registered change, newest first. Does nothing once the transaction has
+         * committed or rolled back.
+         */
+        public void rollback() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            for (int i = undoActions.size() - 1; i >= 0; i--) {
+                undoActions.get(i).run();
+            }
+            if (!written) {
+                return;
+            }
+
+            // The failed write may have partly reached the engine; overwrite it with the restored state
+            long stamp = lock.writeLock();
+            try {
+                for (User user : stagedUsers.values()) {
+                    deletedUsers.remove(user.getId());
+                    dirtyUsers.put(user.getId(), user);
+                }
+                for (Product product : stagedProducts.values()) {
+                    deletedProducts.remove(product.getId());
+                    dirtyProducts.put(product.getId(), product);
+                }
+                writeIfNotBatched();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /** Must be called while holding the write lock. */
+        private void writeStaged() throws IOException {
+            if (stagedUsers.isEmpty() && stagedProducts.isEmpty()) {
+                return;
+            }
+            written = true;
+            engine.begin();
+            try {
+                for (User user : stagedUsers.values()) {
+                    engine.upsertUser(user);
+                }
+                for (Product product : stagedProducts.values()) {
+                    engine.upsertProduct(product);
+                }
+                engine.commit();
+            } catch (IOException e) {
+                try {
+                    engine.rollback();
+                } catch (IOException ignored) {
+                    // The original failure is reported to the caller
+                }
+                throw e;
+            }
+            if (engine.needsCheckpoint()) {
+                requestCheckpoint();
+            }
+        }
+
+        private void checkOpen() {
+            if (finished) {
+                throw new IllegalStateException("Transaction already committed or rolled back");
             }
         }
-        return null;
     }
 }
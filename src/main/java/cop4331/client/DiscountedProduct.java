@@ -1,10 +1,22 @@
 package cop4331.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Represents a discounted product that wraps another product and applies a discount.
+ * <p>
+ * New discounts are {@link PromotionRule}s priced by the {@link PromotionEngine}, which stack
+ * without wrapping. Saves only hold a discounted product's discounted name, description and price,
+ * not the product it wrapped, so one read from a save behaves as a plain product with those values
+ * until {@link #toUndiscounted()} recovers the wrapped product; the {@link Database} does that on
+ * load and moves the discount to a {@link PromotionRule.Percentage}.
  */
 public class DiscountedProduct extends Product {
-    private Product product;
+    private static final String NAME_SUFFIX = " (Discounted)";
+    private static final String DISCOUNT_PREFIX = "\nDiscount: ";
+    private static final String DISCOUNT_SUFFIX = "% off";
+
+    private Product product;   // Null if read from a save
     private double discountRate;
 
     public DiscountedProduct() {
@@ -15,30 +27,116 @@ public class DiscountedProduct extends Product {
         super(product.getId(), product.getName(), product.getDescription(), product.getPrice(), product.getQuantity(), product.getSellerId(), product.getInvoicePrice(), "discountedProduct");
         this.product = product;
         this.discountRate = discountRate;
+        product.addDependent(this); // Bundles containing this product see changes to the wrapped one
+    }
+
+    /**
+     * Recovers the product a discounted product read from a save wrapped, reading the discount
+     * rate back from the saved description and undoing it on the saved price.
+     *
+     * @return the undiscounted product with the same ID and stock, or null if this product was not
+     *         read from a save or its description does not state the discount.
+     */
+    Product toUndiscounted() {
+        String description = super.getDescription();
+        int at = description == null ? -1 : description.lastIndexOf(DISCOUNT_PREFIX);
+        if (product != null || at < 0 || !description.endsWith(DISCOUNT_SUFFIX)) {
+            return null;
+        }
+        double rate;
+        try {
+            rate = Double.parseDouble(description.substring(at + DISCOUNT_PREFIX.length(),
+                    description.length() - DISCOUNT_SUFFIX.length())) / 100;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (rate < 0 || rate >= 1) {
+            return null;
+        }
+        discountRate = rate;
+
+        String name = super.getName();
+        if (name != null && name.endsWith(NAME_SUFFIX)) {
+            name = name.substring(0, name.length() - NAME_SUFFIX.length());
+        }
+        double price = Money.toDollars(Money.toCents(super.getPrice() / (1 - rate)));
+        return new Product(getId(), name, description.substring(0, at), price, super.getQuantity(),
+                getSellerId(), getInvoicePrice(), "product");
+    }
+
+    /**
+     * Retrieves the fraction taken off the wrapped product's price.
+     *
+     * @return the discount rate; for a product read from a save, known once {@link #toUndiscounted()} has run.
+     */
+    @JsonIgnore
+    public double getDiscountRate() {
+        return discountRate;
     }
 
     @Override
     public double getPrice() {
-        return product.getPrice() * (1 - discountRate);
+        return product == null ? super.getPrice() : product.getPrice() * (1 - discountRate);
     }
 
     @Override
     public int getQuantity() {
-        return product.getQuantity();
+        return product == null ? super.getQuantity() : product.getQuantity();
     }
 
     @Override
     public void setQuantity(int quantity) {
+        if (product == null) {
+            super.setQuantity(quantity);
+            return;
+        }
         product.setQuantity(quantity);
     }
 
+    @Override
+    public int getAvailableQuantity() {
+        return product == null ? super.getAvailableQuantity() : product.getAvailableQuantity();
+    }
+
+    @Override
+    public boolean tryReserve(int quantity) {
+        return product == null ? super.tryReserve(quantity) : product.tryReserve(quantity);
+    }
+
+    @Override
+    public void commitReservation(int quantity) {
+        if (product == null) {
+            super.commitReservation(quantity);
+            return;
+        }
+        product.commitReservation(quantity);
+    }
+
+    @Override
+    public void releaseReservation(int quantity) {
+        if (product == null) {
+            super.releaseReservation(quantity);
+            return;
+        }
+        product.releaseReservation(quantity);
+    }
+
+    @Override
+    public void restock(int quantity) {
+        if (product == null) {
+            super.restock(quantity);
+            return;
+        }
+        product.restock(quantity);
+    }
+
     @Override
     public String getName() {
-        return product.getName() + " (Discounted)";
+        return product == null ? super.getName() : product.getName() + NAME_SUFFIX;
     }
 
     @Override
     public String getDescription() {
-        return product.getDescription() + "\nDiscount: " + (discountRate * 100) + "% off";
+        return product == null ? super.getDescription() : product.getDescription() + DISCOUNT_PREFIX + (discountRate * 100) + DISCOUNT_SUFFIX;
     }
 }
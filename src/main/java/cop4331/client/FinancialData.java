@@ -1,32 +1,65 @@
 package cop4331.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.Serializable;
 
 /**
  * The FinancialData class represents the financial data for a seller,
  * including revenues, costs, and profits.
+ * Amounts are accumulated in whole cents, so many small sales add up exactly.
  */
 public class FinancialData implements Serializable {
-    private double costs;
-    private double revenues;
-    private double profits;
+    private long costsCents;
+    private long revenuesCents;
 
     public FinancialData() {
-        this.costs = 0.0;
-        this.revenues = 0.0;
-        this.profits = 0.0;
+        this.costsCents = 0;
+        this.revenuesCents = 0;
     }
 
     public double getCosts() {
-        return costs;
+        return Money.toDollars(costsCents);
+    }
+
+    public void setCosts(double costs) {
+        this.costsCents = Money.toCents(costs);
     }
 
     public double getRevenues() {
-        return revenues;
+        return Money.toDollars(revenuesCents);
+    }
+
+    public void setRevenues(double revenues) {
+        this.revenuesCents = Money.toCents(revenues);
     }
 
     public double getProfits() {
-        return profits;
+        return Money.toDollars(getProfitsCents());
+    }
+
+    /**
+     * Accepts the saved profits for compatibility; profits are always revenues minus costs.
+     *
+     * @param profits the saved profits, ignored
+     */
+    public void setProfits(double profits) {
+        // Derived from revenues and costs
+    }
+
+    @JsonIgnore
+    public long getCostsCents() {
+        return costsCents;
+    }
+
+    @JsonIgnore
+    public long getRevenuesCents() {
+        return revenuesCents;
+    }
+
+    @JsonIgnore
+    public long getProfitsCents() {
+        return revenuesCents - costsCents;
     }
 
     /**
@@ -36,12 +69,17 @@ public class FinancialData implements Serializable {
      * @param costAmount the cost associated with the sale
      */
     public void updateData(double saleAmount, double costAmount) {
-        this.revenues += saleAmount;
-        this.costs += costAmount;
-        calculateProfits();
+        updateCents(Money.toCents(saleAmount), Money.toCents(costAmount));
     }
 
-    private void calculateProfits() {
-        this.profits = this.revenues - this.costs;
+    /**
+     * Updates the financial data with the given sale and cost amounts in cents.
+     *
+     * @param saleCents the amount earned from the sale, in cents
+     * @param costCents the cost associated with the sale, in cents
+     */
+    public void updateCents(long saleCents, long costCents) {
+        this.revenuesCents += saleCents;
+        this.costsCents += costCents;
     }
 }
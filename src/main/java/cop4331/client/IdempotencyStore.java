@@ -0,0 +1,147 @@
+package cop4331.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the results of requests by idempotency key, so a repeated request returns the
+ * original result instead of running again.
+ * <p>
+ * The first request with a key runs its action; duplicates that arrive while it runs wait for it,
+ * and later duplicates get the remembered result. Keys are forgotten after a time to live, and the
+ * oldest keys are forgotten first once the store is full. Entries are kept in insertion order,
+ * which is also expiry order, so both kinds of eviction only look at the head and every request
+ * costs O(1).
+ * <p>
+ * A key whose first request is still running is never evicted, since a duplicate would then run
+ * the action again. Eviction steps over such keys, so while many requests are running the store
+ * can briefly hold more than its maximum number of keys.
+ *
+ * @param <V> the type of result.
+ */
+public class IdempotencyStore<V> {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    /**
+     * A request's creation time and its result, completed once the first request finishes.
+     */
+    private static final class Entry<V> {
+        private final long createdNanos;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Entry(long createdNanos) {
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    /**
+     * Constructs an empty store.
+     *
+     * @param maxEntries the maximum number of keys remembered.
+     * @param ttl how long a key is remembered.
+     * @param unit the unit of {@code ttl}.
+     */
+    public IdempotencyStore(int maxEntries, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * Runs an action once per key. If the key was seen within the time to live, waits for and
+     * returns the result of the first request instead. If the action throws, the key is forgotten
+     * so the request can be retried.
+     *
+     * @param key the idempotency key of the request.
+     * @param action the work to perform for the first request with the key.
+     * @return the result of the first request with the key.
+     */
+    public V execute(String key, Supplier<V> action) {
+        try {
+            return executeAsync(key, () -> CompletableFuture.completedFuture(action.get())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Starts an action once per key. If the key was seen within the time to live, returns the
+     * result of the first request instead, completed once that request finishes. If the action
+     * throws or its future completes exceptionally, the key is forgotten so the request can be retried.
+     *
+     * @param key the idempotency key of the request.
+     * @param action starts the work for the first request with the key; called on the calling thread.
+     * @return a future completed with the result of the first request with the key.
+     */
+    public CompletableFuture<V> executeAsync(String key, Supplier<CompletableFuture<V>> action) {
+        Entry<V> entry;
+        boolean first = false;
+        synchronized (entries) {
+            long now = System.nanoTime();
+            evict(now);
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>(now);
+                entries.put(key, entry);
+                first = true;
+                evict(now);
+            }
+        }
+
+        if (first) {
+            Entry<V> started = entry;
+            try {
+                action.get().whenComplete((value, error) -> {
+                    if (error != null) {
+                        forget(key, started, error);
+                    } else {
+                        started.result.complete(value);
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                forget(key, started, e);
+            }
+        }
+        return entry.result.thenApply(value -> value); // Callers cannot complete the shared future
+    }
+
+    private void forget(String key, Entry<V> entry, Throwable error) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+        entry.result.completeExceptionally(error);
+    }
+
+    /**
+     * Retrieves the number of keys remembered, including ones that have expired but not yet been evicted.
+     *
+     * @return the key count.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (now - entry.createdNanos < ttlNanos && entries.size() <= maxEntries) {
+                return;
+            }
+            if (entry.result.isDone()) { // Pending entries are skipped, so their duplicates still wait
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -1,55 +1,122 @@
 package cop4331.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Represents an inventory of products, allowing for management of product lists 
  * and notification of changes to observers.
+ * The inventory stores product IDs only; products are resolved against the {@link Database} catalog,
+ * so each product has a single copy that is persisted once.
+ * Observers are notified with a {@link ChangeSet} of product IDs; changes made between
+ * {@link #beginBatch()} and {@link #endBatch()} are sent as one notification.
  */
 public class Inventory implements Iterable<Product> {
-    /** The list of products in the inventory. */
-    private List<Product> products;
+    /** The IDs of the products in the inventory, in insertion order. */
+    private Set<String> productIds;
+
+    /**
+     * Products embedded by inventories saved before they referenced the catalog.
+     * Used only for IDs the catalog does not know; see {@link #takeEmbeddedProducts()}.
+     */
+    private transient Map<String, Product> embeddedProducts;
 
     /** The list of observers monitoring the inventory. */
-    private transient List<Observer<Inventory>> observers;
+    private transient ObserverRegistry<Inventory> observers;
+
+    /** The changes not yet sent to observers. */
+    private transient ChangeSet pendingChanges;
+
+    /** The nesting depth of open batches. */
+    private transient int batchDepth;
 
     /**
      * Constructs an empty Inventory with no products or observers.
      */
     public Inventory() {
-        this.products = new ArrayList<>();
-        this.observers = new ArrayList<>();
+        this.productIds = new LinkedHashSet<>();
+        this.embeddedProducts = new HashMap<>();
+        this.observers = new ObserverRegistry<>();
+        this.pendingChanges = new ChangeSet();
     }
 
     /**
-     * Retrieves an unmodifiable list of products in the inventory.
+     * Retrieves the IDs of the products in the inventory.
+     *
+     * @return the product IDs, in insertion order.
+     */
+    public List<String> getProductIds() {
+        return new ArrayList<>(productIds);
+    }
+
+    /**
+     * Sets the IDs of the products in the inventory.
+     *
+     * @param productIds the product IDs to set.
+     */
+    public void setProductIds(List<String> productIds) {
+        Set<String> oldIds = this.productIds;
+        this.productIds = new LinkedHashSet<>(productIds);
+        pendingChanges.recordReplaced(oldIds, this.productIds);
+        notifyObservers();
+    }
+
+    /**
+     * Retrieves an unmodifiable list of products in the inventory, resolved against the catalog.
      *
      * @return the unmodifiable list of products.
      */
+    @JsonIgnore
     public List<Product> getProducts() {
+        List<Product> products = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = resolve(productId);
+            if (product != null) {
+                products.add(product);
+            }
+        }
         return Collections.unmodifiableList(products);
     }
 
     /**
      * Sets the list of products in the inventory and notifies all observers of the change.
+     * Also accepts the embedded {@code products} array of inventories saved before they
+     * referenced the catalog.
      *
      * @param products the new list of products to set.
      */
+    @JsonProperty("products")
     public void setProducts(List<Product> products) {
-        this.products = new ArrayList<>(products);
+        Set<String> oldIds = this.productIds;
+        this.productIds = new LinkedHashSet<>();
+        for (Product product : products) {
+            productIds.add(product.getId());
+            embeddedProducts.put(product.getId(), product);
+        }
+        pendingChanges.recordReplaced(oldIds, productIds);
         notifyObservers();
     }
 
     /**
      * Adds a product to the inventory and notifies all observers of the change.
+     * The product itself belongs in the catalog; see {@link Database#addProduct(Product)}.
      *
      * @param product the product to add to the inventory.
      */
     public void addProduct(Product product) {
-        products.add(product);
+        if (productIds.add(product.getId())) {
+            pendingChanges.recordAdded(product.getId());
+        }
         notifyObservers();
     }
 
@@ -59,7 +126,9 @@ public class Inventory implements Iterable<Product> {
      * @param product the product to remove from the inventory.
      */
     public void removeProduct(Product product) {
-        products.remove(product);
+        if (productIds.remove(product.getId())) {
+            pendingChanges.recordRemoved(product.getId());
+        }
         notifyObservers();
     }
 
@@ -70,30 +139,40 @@ public class Inventory implements Iterable<Product> {
      * @return the product with the matching ID, or null if not found.
      */
     public Product findProductById(String productId) {
-        for (Product product : products) {
-            if (product.getId().equals(productId)) {
-                return product;
-            }
-        }
-        return null;
+        return productIds.contains(productId) ? resolve(productId) : null;
     }
 
     /**
-     * Updates an existing product in the inventory.
+     * Notifies observers that a product in the inventory changed.
+     * The catalog holds the only copy of the product, so there is nothing to replace here.
      *
      * @param updatedProduct the product with updated information.
      */
     public void updateProduct(Product updatedProduct) {
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getId().equals(updatedProduct.getId())) {
-                products.set(i, updatedProduct);
-                notifyObservers();
-                return;
-            }
+        if (productIds.contains(updatedProduct.getId())) {
+            pendingChanges.recordChanged(updatedProduct.getId());
+            notifyObservers();
         }
         // Optionally, throw an exception if product not found
     }
 
+    /**
+     * Returns and forgets the embedded products loaded from a legacy inventory,
+     * so the database can adopt any the catalog lacks.
+     *
+     * @return the embedded products; empty for inventories that only store IDs.
+     */
+    List<Product> takeEmbeddedProducts() {
+        List<Product> products = new ArrayList<>(embeddedProducts.values());
+        embeddedProducts.clear();
+        return products;
+    }
+
+    private Product resolve(String productId) {
+        Product product = Database.getInstance().getProductById(productId);
+        return product != null ? product : embeddedProducts.get(productId);
+    }
+
     /**
      * Provides an iterator for the products in the inventory.
      *
@@ -101,11 +180,12 @@ public class Inventory implements Iterable<Product> {
      */
     @Override
     public Iterator<Product> iterator() {
-        return products.iterator();
+        return getProducts().iterator();
     }
 
     /**
      * Adds an observer to the inventory. Observers are notified whenever the inventory changes.
+     * Observers are held weakly, so the caller must keep a reference to the observer.
      *
      * @param observer the observer to add.
      */
@@ -113,6 +193,17 @@ public class Inventory implements Iterable<Product> {
         observers.add(observer);
     }
 
+    /**
+     * Adds an observer notified on the given executor, for example {@code SwingUtilities::invokeLater}.
+     * Observers are held weakly, so the caller must keep a reference to the observer.
+     *
+     * @param observer the observer to add.
+     * @param executor the executor to deliver notifications on.
+     */
+    public void addObserver(Observer<Inventory> observer, Executor executor) {
+        observers.add(observer, executor);
+    }
+
     /**
      * Removes an observer from the inventory.
      *
@@ -122,13 +213,37 @@ public class Inventory implements Iterable<Product> {
         observers.remove(observer);
     }
 
+    /**
+     * Starts a batch of changes, such as a bulk import: observers are not notified until the
+     * matching {@link #endBatch()}, and then only once. Batches may be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Ends a batch of changes. When the outermost batch ends, observers are notified once if
+     * anything changed.
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch without beginBatch");
+        }
+        if (--batchDepth == 0 && !pendingChanges.isEmpty()) {
+            notifyObservers();
+        }
+    }
 
     /**
-     * Notifies all observers of a change to the inventory.
+     * Notifies all observers of the changes to the inventory since the last notification,
+     * unless a batch is open.
      */
     public void notifyObservers() {
-        for (Observer<Inventory> observer : observers) {
-            observer.update(this);
+        if (batchDepth > 0) {
+            return;
         }
+        ChangeSet changes = pendingChanges;
+        pendingChanges = new ChangeSet();
+        observers.notifyObservers(this, changes);
     }
 }
@@ -0,0 +1,518 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only write-ahead log used by {@link JsonStorageEngine}.
+ * Each mutation is written as one JSON line of the form {@code {"op":..., "data":...}},
+ * so a change costs the size of the changed entity rather than the size of the whole data set.
+ * A transaction is written as a single {@link #BATCH} line, so it is replayed entirely or not at all.
+ * The log is replayed on startup, and a partially written last line is cut off so later records
+ * start on a line of their own.
+ * <p>
+ * Records are serialized on the calling thread and handed to a background writer, which
+ * group-commits everything queued since its last write in a single gathering write.
+ * When the written data is forced to disk is controlled by the journal's {@link Durability}.
+ * A {@link #checkpoint} is queued like a record: the writer writes the snapshot and truncates the
+ * log once every earlier record is written, and writes later records only after that, so the
+ * caller does not wait for the snapshot and no record can be truncated away unsaved.
+ */
+public class Journal implements Closeable {
+    /** Operation recorded when a product is inserted or replaced. */
+    public static final String PUT_PRODUCT = "putProduct";
+
+    /** Operation recorded when a user is inserted or replaced. */
+    public static final String PUT_USER = "putUser";
+
+    /** Operation recorded when a product is deleted; the data is the product ID. */
+    public static final String DELETE_PRODUCT = "deleteProduct";
+
+    /** Operation recorded when a user is deleted; the data is the user ID. */
+    public static final String DELETE_USER = "deleteUser";
+
+    /** Operation whose data is an array of records committed together. */
+    public static final String BATCH = "batch";
+
+    /**
+     * When group-committed records are forced to stable storage.
+     */
+    public enum Durability {
+        /** Force to disk after every group commit. */
+        SYNC,
+        /** Force to disk at most once per sync interval. */
+        INTERVAL,
+        /** Leave written data in the OS buffers; only {@link #flush()} forces it. */
+        BUFFERED
+    }
+
+    /**
+     * An I/O step run on the writer thread, such as writing the snapshot files of a checkpoint.
+     */
+    public interface Task {
+        /**
+         * Runs the step.
+         *
+         * @throws IOException if the step fails.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Callback used to apply journal records during replay.
+     */
+    public interface Handler {
+        /**
+         * Applies a single journal record.
+         *
+         * @param op the recorded operation.
+         * @param data the serialized entity the operation applies to.
+         * @throws IOException if the entity cannot be bound.
+         */
+        void apply(String op, JsonNode data) throws IOException;
+    }
+
+    private final File file;
+    private final ObjectMapper objectMapper;
+    private final Durability durability;
+    private final long syncIntervalMillis;
+
+    /** Guards every field below and is used to signal the writer thread and flush waiters. */
+    private final Object lock = new Object();
+    private List<Object> pending = new ArrayList<>(); // Serialized records and checkpoint tasks, in order
+    private long appendedSeq;   // Records handed to the writer
+    private long writtenSeq;    // Records written to the channel
+    private long syncedSeq;     // Records forced to disk
+    private long lastSyncTime;
+    private boolean syncRequested;
+    private boolean closed;
+    private IOException failure;
+    private FileChannel channel;
+    private Thread writer;
+    private int recordCount;
+
+    /**
+     * Constructs a journal that forces records to disk once per second.
+     *
+     * @param file the log file; created on first append if it does not exist.
+     * @param objectMapper the mapper used to serialize records.
+     */
+    public Journal(File file, ObjectMapper objectMapper) {
+        this(file, objectMapper, Durability.INTERVAL, 1000);
+    }
+
+    /**
+     * Constructs a journal backed by the given file.
+     *
+     * @param file the log file; created on first append if it does not exist.
+     * @param objectMapper the mapper used to serialize records.
+     * @param durability when written records are forced to disk.
+     * @param syncIntervalMillis the sync interval used by {@link Durability#INTERVAL}.
+     */
+    public Journal(File file, ObjectMapper objectMapper, Durability durability, long syncIntervalMillis) {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * Builds a mutation record. The entity is serialized immediately, so later changes
+     * to it do not affect the record.
+     *
+     * @param op the operation, one of the constants in this class.
+     * @param entity the product, user or ID the operation applies to.
+     * @return the record.
+     */
+    public ObjectNode record(String op, Object entity) {
+        ObjectNode record = objectMapper.createObjectNode();
+        record.put("op", op);
+        record.set("data", objectMapper.valueToTree(entity));
+        return record;
+    }
+
+    /**
+     * Builds a record that commits several records as one unit.
+     *
+     * @param records the records of the transaction.
+     * @return the batch record.
+     */
+    public ObjectNode batch(List<ObjectNode> records) {
+        ObjectNode batch = objectMapper.createObjectNode();
+        batch.put("op", BATCH);
+        batch.putArray("data").addAll(records);
+        return batch;
+    }
+
+    /**
+     * Queues a mutation record for the background writer and returns without waiting for I/O.
+     *
+     * @param op the operation, one of the constants in this class.
+     * @param entity the product, user or ID the operation applies to.
+     * @throws IOException if the record cannot be serialized or an earlier write failed.
+     */
+    public void append(String op, Object entity) throws IOException {
+        append(record(op, entity));
+    }
+
+    /**
+     * Queues a record built by {@link #record} or {@link #batch} for the background writer.
+     *
+     * @param record the record to append.
+     * @throws IOException if the record cannot be serialized or an earlier write failed.
+     */
+    public void append(ObjectNode record) throws IOException {
+        byte[] bytes = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        synchronized (lock) {
+            checkUsable();
+            startWriter();
+            pending.add(bytes);
+            appendedSeq++;
+            recordCount++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues a checkpoint: once every record appended before this call is written, the writer runs
+     * the task, which must save everything those records changed, and then truncates the log.
+     * Records appended after this call are kept. If the task fails, the log is left as it is, so no
+     * change is lost, and the next checkpoint tries again.
+     * <p>
+     * If the writer has stopped after a failed write, the task runs on the calling thread instead,
+     * and the log starts over empty if it succeeds.
+     *
+     * @param writeSnapshot writes the snapshot; must not depend on state that changes after this call.
+     * @throws IOException if the journal is closed, or the snapshot written on the calling thread fails.
+     */
+    public void checkpoint(Task writeSnapshot) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            if (failure == null) {
+                startWriter();
+                pending.add(writeSnapshot);
+                appendedSeq++;
+                recordCount = 0;
+                lock.notifyAll();
+                return;
+            }
+
+            // Everything is in the snapshot, including records the failed writer never wrote
+            writeSnapshot.run();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                channel = null;
+            }
+            Files.write(file.toPath(), new byte[0]);
+            pending.clear();
+            writtenSeq = appendedSeq;
+            syncedSeq = appendedSeq;
+            recordCount = 0;
+            failure = null;
+            writer = null; // Started again by the next append
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until every record appended before this call has been written and forced to disk,
+     * regardless of the journal's durability mode.
+     *
+     * @throws IOException if a write failed or the wait was interrupted.
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            long target = appendedSeq;
+            if (syncedSeq >= target) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return;
+            }
+            syncRequested = true;
+            lock.notifyAll();
+            while (syncedSeq < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for journal flush");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Replays every complete record in the log, in order.
+     * A trailing record that was only partially written (for example after a crash) is ignored
+     * and cut off the file, so the next record appended does not run into it.
+     *
+     * @param handler the callback applying each record.
+     * @return the number of records replayed.
+     * @throws IOException if the log cannot be read or truncated.
+     */
+    public int replay(Handler handler) throws IOException {
+        flush();
+        synchronized (lock) {
+            recordCount = file.exists() ? read(handler, true) : 0;
+            return recordCount;
+        }
+    }
+
+    /**
+     * Reads every complete record in the log without changing the file, so it is safe while
+     * another journal is appending to it; a last record still being written is skipped.
+     *
+     * @param handler the callback receiving each record.
+     * @return the number of records read.
+     * @throws IOException if the log cannot be read.
+     */
+    public int readComplete(Handler handler) throws IOException {
+        synchronized (lock) {
+            return file.exists() ? read(handler, false) : 0;
+        }
+    }
+
+    /** Must be called while holding {@code lock}. */
+    private int read(Handler handler, boolean truncateTorn) throws IOException {
+        int records = 0;
+        long complete = 0; // Bytes up to the end of the last complete record
+        long offset = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            reading:
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    line.write(buffer, start, i - start);
+                    start = i + 1;
+                    if (line.size() > 0) {
+                        JsonNode record;
+                        try {
+                            record = objectMapper.readTree(line.toByteArray());
+                        } catch (IOException e) {
+                            System.out.println("Ignoring torn journal record: " + e.getMessage());
+                            break reading;
+                        }
+                        apply(record, handler);
+                        records++;
+                        line.reset();
+                    }
+                    complete = offset + start;
+                }
+                line.write(buffer, start, read - start);
+                offset += read;
+            }
+        }
+
+        if (truncateTorn && file.length() > complete) {
+            System.out.println("Truncating " + (file.length() - complete) + " bytes of torn journal record");
+            if (channel != null) {
+                channel.truncate(complete);
+                channel.force(true);
+            } else {
+                try (FileChannel truncated = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    truncated.truncate(complete);
+                    truncated.force(true);
+                }
+            }
+        }
+        return records;
+    }
+
+    private static void apply(JsonNode record, Handler handler) throws IOException {
+        String op = record.get("op").asText();
+        if (BATCH.equals(op)) {
+            for (JsonNode child : record.get("data")) {
+                apply(child, handler);
+            }
+        } else {
+            handler.apply(op, record.get("data"));
+        }
+    }
+
+    /**
+     * Returns the number of records appended or replayed since the last checkpoint.
+     *
+     * @return the record count.
+     */
+    public int size() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+
+    /**
+     * Flushes outstanding records, stops the writer and closes the log file.
+     *
+     * @throws IOException if the final flush or close fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    /** Must be called while holding {@code lock}. */
+    private void startWriter() {
+        if (writer == null) {
+            writer = new Thread(this::runWriter, "journal-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+    }
+
+    /**
+     * Background loop: drains everything queued since the last pass into one write,
+     * then forces the channel when the durability mode or a flush barrier requires it.
+     * A checkpoint in the queue splits the write: records before it are written, the snapshot
+     * is written and the file truncated, and then the records after it are written.
+     */
+    private void runWriter() {
+        while (true) {
+            List<Object> batch;
+            long batchEnd;
+            boolean force;
+            FileChannel target;
+
+            synchronized (lock) {
+                while (!closed && pending.isEmpty() && !syncRequested && !intervalSyncDue()) {
+                    try {
+                        lock.wait(intervalWaitMillis());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                batchEnd = appendedSeq;
+                force = syncRequested || durability == Durability.SYNC || intervalSyncDue();
+                syncRequested = false;
+                target = channel;
+            }
+
+            try {
+                if (target == null) {
+                    target = FileChannel.open(file.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    synchronized (lock) {
+                        channel = target;
+                    }
+                }
+                int start = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i) instanceof Task) {
+                        write(target, batch.subList(start, i));
+                        start = i + 1;
+                        try {
+                            ((Task) batch.get(i)).run();
+                        } catch (IOException e) {
+                            // The records stay in the log, so nothing is lost; the next checkpoint retries
+                            e.printStackTrace();
+                            continue;
+                        }
+                        target.truncate(0);
+                        force = true;
+                    }
+                }
+                write(target, batch.subList(start, batch.size()));
+                if (force) {
+                    target.force(false);
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                writtenSeq = batchEnd;
+                if (force) {
+                    syncedSeq = batchEnd;
+                    lastSyncTime = System.currentTimeMillis();
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static void write(FileChannel target, List<Object> records) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[records.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            byte[] bytes = (byte[]) records.get(i);
+            buffers[i] = ByteBuffer.wrap(bytes);
+            remaining += bytes.length;
+        }
+        while (remaining > 0) {
+            remaining -= target.write(buffers);
+        }
+    }
+
+    /** Must be called while holding {@code lock}. */
+    private boolean intervalSyncDue() {
+        return durability == Durability.INTERVAL && writtenSeq > syncedSeq
+                && System.currentTimeMillis() - lastSyncTime >= syncIntervalMillis;
+    }
+
+    /** Must be called while holding {@code lock}; 0 means wait until notified. */
+    private long intervalWaitMillis() {
+        if (durability != Durability.INTERVAL || writtenSeq <= syncedSeq) {
+            return 0;
+        }
+        return Math.max(1, lastSyncTime + syncIntervalMillis - System.currentTimeMillis());
+    }
+}
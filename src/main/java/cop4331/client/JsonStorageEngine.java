@@ -0,0 +1,302 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Storage engine that keeps users and products in JSON snapshot files
+ * ({@code users.json}, {@code products.json}) plus a {@link Journal} of changes since the last checkpoint.
+ */
+public class JsonStorageEngine implements StorageEngine {
+    /** Number of journal records after which a checkpoint is requested. */
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    protected final File directory;
+    protected final ObjectMapper objectMapper;
+    private final Journal journal;
+    private List<ObjectNode> transaction; // Records staged since begin(), or null outside a transaction
+
+    /**
+     * Constructs a JSON storage engine.
+     *
+     * @param directory the directory holding the snapshot and journal files.
+     * @param durability when journal records are forced to disk.
+     * @param syncIntervalMillis the sync interval used by {@link Journal.Durability#INTERVAL}.
+     */
+    public JsonStorageEngine(File directory, Journal.Durability durability, long syncIntervalMillis) {
+        this.directory = directory;
+        this.objectMapper = new ObjectMapper();
+        this.journal = new Journal(new File(directory, "database.journal"), objectMapper, durability, syncIntervalMillis);
+    }
+
+    /**
+     * Loads the snapshot files, then replays the journal over them.
+     *
+     * @param loader receives the loaded state.
+     * @throws IOException if a file cannot be read.
+     */
+    @Override
+    public void load(Loader loader) throws IOException {
+        streamLoad(new File(directory, "users.json"), User.class, loader::loadUser);
+        loadProducts(loader);
+
+        int replayed = journal.replay((op, data) -> applyRecord(objectMapper, op, data, loader));
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journal records.");
+        }
+    }
+
+    /**
+     * Loads the product snapshot. Subclasses override this to read other snapshot formats.
+     *
+     * @param loader receives the products.
+     * @throws IOException if the snapshot cannot be read.
+     */
+    protected void loadProducts(Loader loader) throws IOException {
+        streamLoad(new File(directory, "products.json"), Product.class, loader::loadProduct);
+    }
+
+    /**
+     * Serializes the product snapshot and returns the step that writes it at a checkpoint.
+     * Subclasses override this to write other snapshot formats.
+     *
+     * @param products every product; read only before this returns.
+     * @return the step writing the snapshot, run on the journal's writer thread.
+     * @throws IOException if the products cannot be serialized.
+     */
+    protected Journal.Task prepareProducts(List<Product> products) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(products);
+        return () -> writeSnapshot(new File(directory, "products.json"), json);
+    }
+
+    /**
+     * Applies one change record, as written by {@link Journal#record}, to a loader.
+     *
+     * @param objectMapper the mapper used to bind the entity.
+     * @param op the recorded operation.
+     * @param data the serialized entity or ID.
+     * @param loader receives the change.
+     * @throws IOException if the entity cannot be bound.
+     */
+    static void applyRecord(ObjectMapper objectMapper, String op, JsonNode data, Loader loader) throws IOException {
+        switch (op) {
+            case Journal.PUT_PRODUCT:
+                loader.loadProduct(objectMapper.treeToValue(data, Product.class));
+                break;
+            case Journal.PUT_USER:
+                loader.loadUser(objectMapper.treeToValue(data, User.class));
+                break;
+            case Journal.DELETE_PRODUCT:
+                loader.unloadProduct(data.asText());
+                break;
+            case Journal.DELETE_USER:
+                loader.unloadUser(data.asText());
+                break;
+            default:
+                System.out.println("Unknown journal operation: " + op);
+        }
+    }
+
+    /**
+     * Copies the state stored by a JSON engine in a directory into another engine
+     * through a full checkpoint. Used by engines that migrate existing JSON data on first use.
+     *
+     * @param directory the directory holding users.json, products.json and the journal.
+     * @param target the engine to populate.
+     * @return true if there was JSON data to import.
+     * @throws IOException if the JSON data cannot be read or the target cannot be written.
+     */
+    static boolean importInto(File directory, StorageEngine target) throws IOException {
+        if (!new File(directory, "users.json").exists() && !new File(directory, "products.json").exists()) {
+            return false;
+        }
+        Map<String, User> users = new LinkedHashMap<>();
+        Map<String, Product> products = new LinkedHashMap<>();
+        try (JsonStorageEngine json = new JsonStorageEngine(directory, Journal.Durability.BUFFERED, 0)) {
+            json.load(new Loader() {
+                @Override
+                public void loadUser(User user) {
+                    users.put(user.getId(), user);
+                }
+
+                @Override
+                public void loadProduct(Product product) {
+                    products.put(product.getId(), product);
+                }
+
+                @Override
+                public void unloadUser(String userId) {
+                    users.remove(userId);
+                }
+
+                @Override
+                public void unloadProduct(String productId) {
+                    products.remove(productId);
+                }
+
+                @Override
+                public void loadProducts(List<Product> list, IntFunction<String> idAt) {
+                    for (Product product : list) {
+                        loadProduct(product);
+                    }
+                }
+            });
+        }
+        target.checkpoint(new ArrayList<>(users.values()), new ArrayList<>(products.values()));
+        System.out.println("Imported " + users.size() + " users and " + products.size() + " products from JSON.");
+        return true;
+    }
+
+    @Override
+    public void upsertUser(User user) throws IOException {
+        record(Journal.PUT_USER, user);
+    }
+
+    @Override
+    public void upsertProduct(Product product) throws IOException {
+        record(Journal.PUT_PRODUCT, product);
+    }
+
+    @Override
+    public void deleteUser(String userId) throws IOException {
+        record(Journal.DELETE_USER, userId);
+    }
+
+    @Override
+    public void deleteProduct(String productId) throws IOException {
+        record(Journal.DELETE_PRODUCT, productId);
+    }
+
+    private void record(String op, Object entity) throws IOException {
+        ObjectNode record = journal.record(op, entity);
+        if (transaction != null) {
+            transaction.add(record);
+        } else {
+            journal.append(record);
+        }
+    }
+
+    @Override
+    public void begin() {
+        transaction = new ArrayList<>();
+    }
+
+    @Override
+    public void commit() throws IOException {
+        List<ObjectNode> records = transaction;
+        transaction = null;
+        if (records != null && !records.isEmpty()) {
+            journal.append(records.size() == 1 ? records.get(0) : journal.batch(records));
+        }
+    }
+
+    @Override
+    public void rollback() {
+        transaction = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        journal.flush();
+    }
+
+    @Override
+    public boolean needsCheckpoint() {
+        return journal.size() >= CHECKPOINT_INTERVAL;
+    }
+
+    /**
+     * Serializes users and products, then queues a journal checkpoint that rewrites both snapshot
+     * files and truncates the journal on its writer thread, after the records appended so far.
+     *
+     * @param users every user.
+     * @param products every product.
+     * @throws IOException if the state cannot be serialized or the journal is closed.
+     */
+    @Override
+    public void checkpoint(List<User> users, List<Product> products) throws IOException {
+        byte[] usersJson = objectMapper.writeValueAsBytes(users);
+        Journal.Task writeProducts = prepareProducts(products);
+        journal.checkpoint(() -> {
+            writeSnapshot(new File(directory, "users.json"), usersJson);
+            writeProducts.run();
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * Streams a JSON array file element by element and reports the load throughput.
+     *
+     * @param file the snapshot file; a missing file loads nothing.
+     * @param type the element type to bind.
+     * @param sink receives each element as soon as it is bound.
+     * @param <T> the element type.
+     * @throws IOException if the file cannot be read or is not a JSON array.
+     */
+    protected <T> void streamLoad(File file, Class<T> type, Consumer<T> sink) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int records = 0;
+        ObjectReader reader = objectMapper.readerFor(type);
+        try (JsonParser parser = objectMapper.getFactory().createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException(file.getName() + " does not contain a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                sink.accept(reader.readValue(parser));
+                records++;
+            }
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        System.out.println(String.format("Loaded %d records from %s in %.1f ms (%.0f records/s, %.2f MB/s)",
+                records, file.getName(), seconds * 1000, records / seconds, file.length() / seconds / (1024 * 1024)));
+    }
+
+    /**
+     * Writes a serialized list to a snapshot file via a temporary file and an atomic rename,
+     * so a crash mid-write leaves the previous snapshot intact.
+     *
+     * @param target the snapshot file.
+     * @param json the serialized JSON array.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    protected static void writeSnapshot(File target, byte[] json) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        Files.write(temp.toPath(), json);
+        replace(temp, target);
+    }
+
+    /**
+     * Atomically moves a fully written temporary file over its target.
+     *
+     * @param temp the temporary file.
+     * @param target the file to replace.
+     * @throws IOException if the move fails.
+     */
+    protected static void replace(File temp, File target) throws IOException {
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
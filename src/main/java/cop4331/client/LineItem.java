@@ -1,5 +1,7 @@
 package cop4331.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Represents a line item in a cart or inventory, consisting of a product and its associated quantity.
  */
@@ -10,6 +12,12 @@ public class LineItem {
     /** The quantity of the product in this line item. */
     private int quantity;
 
+    /** The stock hold placed when the item entered a cart, or null if none. Not persisted. */
+    private transient CartHold hold;
+
+    /** The amount this item adds to its cart's total, in cents. Not persisted. */
+    private transient long amountCents;
+
     /**
      * Default constructor for creating an empty line item.
      */
@@ -61,4 +69,42 @@ public class LineItem {
     public void setQuantity(int quantity) {
         this.quantity = quantity;
     }
+
+    /**
+     * Retrieves the stock hold placed for this line item.
+     *
+     * @return the hold, or null if no stock is held.
+     */
+    @JsonIgnore
+    public CartHold getHold() {
+        return hold;
+    }
+
+    /**
+     * Sets the stock hold placed for this line item.
+     *
+     * @param hold the hold, or null if no stock is held.
+     */
+    @JsonIgnore
+    public void setHold(CartHold hold) {
+        this.hold = hold;
+    }
+
+    /**
+     * Retrieves the amount this item added to its cart's total when it was last priced.
+     *
+     * @return the line amount in cents.
+     */
+    long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * Sets the amount this item adds to its cart's total.
+     *
+     * @param amountCents the line amount in cents.
+     */
+    void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
 }
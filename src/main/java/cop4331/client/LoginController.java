@@ -47,13 +47,12 @@ public class LoginController {
         String password = loginView.getPassword();
 
         // Authenticate user
-        for (User user : database.getUsers()) {
-            if (user.getUsername().equals(username) && user.login(password)) {
-                // Successful login
-                authenticatedUser = user;
-                loginView.dispose();
-                return;
-            }
+        User user = database.getUserByUsername(username);
+        if (user != null && user.login(password)) {
+            // Successful login
+            authenticatedUser = user;
+            loginView.dispose();
+            return;
         }
 
         // If authentication fails
@@ -0,0 +1,78 @@
+package cop4331.client;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between dollar amounts and whole cents.
+ * <p>
+ * Totals are kept as {@code long} cents so that adding and subtracting line amounts is exact and
+ * never drifts the way repeated {@code double} arithmetic does. Prices are still stored as dollars,
+ * so each one is converted once, rounding half up to the nearest cent.
+ */
+public final class Money {
+    /**
+     * The highest price a product may have, in dollars. Any quantity of a product at this price
+     * still has a line amount that fits in a {@code long} of cents.
+     */
+    public static final double MAX_PRICE = 10_000_000;
+
+    private Money() {}
+
+    /**
+     * Checks whether an amount can be a product's price or invoice price.
+     *
+     * @param dollars the amount in dollars.
+     * @return true if the amount is a number from 0 to {@link #MAX_PRICE}.
+     */
+    public static boolean isValidPrice(double dollars) {
+        return dollars >= 0 && dollars <= MAX_PRICE; // False for NaN and infinities too
+    }
+
+    /**
+     * Rejects an amount that cannot be a product's price or invoice price.
+     *
+     * @param dollars the amount in dollars.
+     * @return the amount.
+     * @throws IllegalArgumentException if the amount is not a number from 0 to {@link #MAX_PRICE}.
+     */
+    static double checkPrice(double dollars) {
+        if (!isValidPrice(dollars)) {
+            throw new IllegalArgumentException("Invalid price: " + dollars);
+        }
+        return dollars;
+    }
+
+    /**
+     * Converts a dollar amount to cents, rounding half up to the nearest cent.
+     *
+     * @param dollars the amount in dollars.
+     * @return the amount in cents.
+     */
+    public static long toCents(double dollars) {
+        // BigDecimal.valueOf uses the shortest decimal form of the double, so 1.005 rounds to 101, not 100
+        return BigDecimal.valueOf(dollars).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * Converts cents to a dollar amount.
+     *
+     * @param cents the amount in cents.
+     * @return the amount in dollars.
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Calculates the amount of a line: a unit price times a quantity.
+     *
+     * @param unitPrice the price per unit in dollars.
+     * @param quantity the number of units.
+     * @return the line amount in cents.
+     * @throws ArithmeticException if the amount does not fit in a long.
+     */
+    public static long lineCents(double unitPrice, int quantity) {
+        return Math.multiplyExact(toCents(unitPrice), (long) quantity);
+    }
+}
@@ -8,4 +8,15 @@ package cop4331.client;
  */
 public interface Observer<T> {
     void update(T observable);
+
+    /**
+     * Called with the IDs of the elements that changed, once per change or once per batch of changes.
+     * Observers that can update incrementally override this; by default it calls {@link #update(Object)}.
+     *
+     * @param observable the observable object
+     * @param changes the elements added, removed and changed since the last notification
+     */
+    default void update(T observable, ChangeSet changes) {
+        update(observable);
+    }
 }
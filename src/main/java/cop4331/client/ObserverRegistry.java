@@ -0,0 +1,123 @@
+package cop4331.client;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The observers of an observable object, held weakly so that registering does not keep an
+ * observer alive: a closed window that never unregisters is collected like any other garbage,
+ * and its registration is pruned the next time the registry is used.
+ * <p>
+ * Registrations are stored in a copy-on-write list, so notifying, which only reads the current
+ * list, is safe from any thread and never sees a registration added or removed half-way.
+ * Each observer can name an executor its notifications are delivered on, such as
+ * {@code SwingUtilities::invokeLater} for views.
+ * <p>
+ * Because references are weak, the registering code must keep its own reference to the
+ * observer; an anonymous observer that nothing else references stops receiving notifications
+ * once it is collected.
+ *
+ * @param <T> the type of the observable object
+ */
+public class ObserverRegistry<T> {
+    private volatile List<Registration<T>> registrations = Collections.emptyList();
+
+    /**
+     * A weakly held observer and the executor its notifications are delivered on.
+     */
+    private static final class Registration<T> extends WeakReference<Observer<T>> {
+        private final Executor executor; // Null to deliver on the notifying thread
+
+        Registration(Observer<T> observer, Executor executor) {
+            super(observer);
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Registers an observer notified on the thread that makes the change.
+     *
+     * @param observer the observer to add
+     */
+    public void add(Observer<T> observer) {
+        add(observer, null);
+    }
+
+    /**
+     * Registers an observer notified on an executor.
+     *
+     * @param observer the observer to add
+     * @param executor the executor to deliver notifications on, or null for the notifying thread
+     */
+    public synchronized void add(Observer<T> observer, Executor executor) {
+        List<Registration<T>> copy = live();
+        copy.add(new Registration<>(observer, executor));
+        registrations = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Unregisters an observer.
+     *
+     * @param observer the observer to remove
+     * @return true if the observer was registered
+     */
+    public synchronized boolean remove(Observer<T> observer) {
+        List<Registration<T>> copy = live();
+        boolean removed = copy.removeIf(registration -> registration.get() == observer);
+        registrations = Collections.unmodifiableList(copy);
+        return removed;
+    }
+
+    /**
+     * Notifies every live observer of a change, directly or on its executor.
+     *
+     * @param observable the object that changed
+     * @param changes the changes since the last notification
+     */
+    public void notifyObservers(T observable, ChangeSet changes) {
+        boolean collected = false;
+        for (Registration<T> registration : registrations) {
+            Observer<T> observer = registration.get();
+            if (observer == null) {
+                collected = true;
+            } else if (registration.executor == null) {
+                observer.update(observable, changes);
+            } else {
+                registration.executor.execute(() -> observer.update(observable, changes));
+            }
+        }
+        if (collected) {
+            prune();
+        }
+    }
+
+    /**
+     * Retrieves the number of registered observers that have not been collected.
+     *
+     * @return the live observer count
+     */
+    public synchronized int size() {
+        prune();
+        return registrations.size();
+    }
+
+    private synchronized void prune() {
+        registrations = Collections.unmodifiableList(live());
+    }
+
+    /**
+     * Copies the registrations whose observers are still reachable.
+     */
+    private List<Registration<T>> live() {
+        List<Registration<T>> copy = new ArrayList<>(registrations.size() + 1);
+        for (Registration<T> registration : registrations) {
+            if (registration.get() != null) {
+                copy.add(registration);
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,288 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents a completed purchase: who bought what, from which sellers, at what price and when.
+ * Orders are immutable once recorded in the {@link OrderLedger}.
+ */
+public class Order {
+    /** The unique identifier of the order, assigned by the ledger. */
+    private String id;
+
+    /** The unique identifier of the customer who placed the order. */
+    private String customerId;
+
+    /** When the order was recorded, in milliseconds since the epoch. */
+    private long timestamp;
+
+    /** The purchased products. */
+    private List<Line> lines = new ArrayList<>();
+
+    /**
+     * One purchased product of an order, with the price paid per unit.
+     */
+    public static class Line {
+        private String productId;
+        private String productName;
+        private String sellerId;
+        private int quantity;
+        private double unitPrice;
+
+        /**
+         * Default constructor required for Jackson deserialization.
+         */
+        public Line() {}
+
+        /**
+         * Constructs an order line from a purchased product.
+         *
+         * @param product the product, as sold.
+         * @param quantity the number of units bought.
+         */
+        public Line(Product product, int quantity) {
+            this.productId = product.getId();
+            this.productName = product.getName();
+            this.sellerId = product.getSellerId();
+            this.quantity = quantity;
+            this.unitPrice = product.getPrice();
+        }
+
+        /**
+         * Constructs an order line from a purchased product and the amount paid for the line.
+         *
+         * @param product the product, as sold.
+         * @param quantity the number of units bought.
+         * @param amountCents the amount paid for all units, in cents, after promotions.
+         */
+        public Line(Product product, int quantity, long amountCents) {
+            this(product, quantity);
+            this.unitPrice = quantity == 0 ? 0 : Money.toDollars(amountCents) / quantity;
+        }
+
+        /**
+         * Retrieves the ID of the purchased product.
+         *
+         * @return the product ID.
+         */
+        public String getProductId() {
+            return productId;
+        }
+
+        /**
+         * Sets the ID of the purchased product.
+         *
+         * @param productId the product ID.
+         */
+        public void setProductId(String productId) {
+            this.productId = productId;
+        }
+
+        /**
+         * Retrieves the name of the product at the time of purchase.
+         *
+         * @return the product name.
+         */
+        public String getProductName() {
+            return productName;
+        }
+
+        /**
+         * Sets the name of the product at the time of purchase.
+         *
+         * @param productName the product name.
+         */
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        /**
+         * Retrieves the ID of the seller of the product.
+         *
+         * @return the seller ID.
+         */
+        public String getSellerId() {
+            return sellerId;
+        }
+
+        /**
+         * Sets the ID of the seller of the product.
+         *
+         * @param sellerId the seller ID.
+         */
+        public void setSellerId(String sellerId) {
+            this.sellerId = sellerId;
+        }
+
+        /**
+         * Retrieves the number of units bought.
+         *
+         * @return the quantity.
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Sets the number of units bought.
+         *
+         * @param quantity the quantity.
+         */
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        /**
+         * Retrieves the price paid per unit.
+         *
+         * @return the unit price.
+         */
+        public double getUnitPrice() {
+            return unitPrice;
+        }
+
+        /**
+         * Sets the price paid per unit.
+         *
+         * @param unitPrice the unit price.
+         */
+        public void setUnitPrice(double unitPrice) {
+            this.unitPrice = unitPrice;
+        }
+    }
+
+    /**
+     * Default constructor required for Jackson deserialization.
+     */
+    public Order() {}
+
+    /**
+     * Constructs an order for the reserved items of a checkout. The ledger assigns its ID and timestamp.
+     *
+     * @param customerId the ID of the customer placing the order.
+     * @param items the purchased line items.
+     */
+    public Order(String customerId, List<LineItem> items) {
+        this.customerId = customerId;
+        for (LineItem item : items) {
+            lines.add(new Line(item.getProduct(), item.getQuantity()));
+        }
+    }
+
+    /**
+     * Constructs an order for the reserved items of a checkout, at the prices they were quoted at.
+     *
+     * @param customerId the ID of the customer placing the order.
+     * @param items the purchased line items.
+     * @param quote the promotional prices of the items.
+     */
+    public Order(String customerId, List<LineItem> items, PromotionEngine.Quote quote) {
+        this.customerId = customerId;
+        for (int i = 0; i < items.size(); i++) {
+            LineItem item = items.get(i);
+            lines.add(new Line(item.getProduct(), item.getQuantity(), quote.getLineCents(i)));
+        }
+    }
+
+    /**
+     * Retrieves the unique identifier of the order.
+     *
+     * @return the order ID.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the unique identifier of the order.
+     *
+     * @param id the order ID.
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the ID of the customer who placed the order.
+     *
+     * @return the customer ID.
+     */
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * Sets the ID of the customer who placed the order.
+     *
+     * @param customerId the customer ID.
+     */
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    /**
+     * Retrieves when the order was recorded.
+     *
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Sets when the order was recorded.
+     *
+     * @param timestamp the time in milliseconds since the epoch.
+     */
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Retrieves the purchased products.
+     *
+     * @return an unmodifiable list of order lines.
+     */
+    public List<Line> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Sets the purchased products.
+     *
+     * @param lines the order lines.
+     */
+    public void setLines(List<Line> lines) {
+        this.lines = new ArrayList<>(lines);
+    }
+
+    /**
+     * Calculates the amount paid for the order.
+     *
+     * @return the sum of unit price times quantity over all lines.
+     */
+    @JsonIgnore
+    public double getTotal() {
+        return lines.stream().mapToDouble(line -> line.getUnitPrice() * line.getQuantity()).sum();
+    }
+
+    /**
+     * Retrieves the distinct sellers of the purchased products.
+     *
+     * @return the seller IDs, in line order.
+     */
+    @JsonIgnore
+    public Set<String> getSellerIds() {
+        Set<String> sellerIds = new LinkedHashSet<>();
+        for (Line line : lines) {
+            sellerIds.add(line.getSellerId());
+        }
+        return sellerIds;
+    }
+}
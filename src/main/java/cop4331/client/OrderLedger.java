@@ -0,0 +1,348 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of every order placed, with in-memory indexes by customer, seller and product.
+ * <p>
+ * Orders are written as {@link Journal} records to segment files ({@code orders/orders-00000001.log}, ...)
+ * that are never rewritten; a new segment is started every {@value #ORDERS_PER_SEGMENT} orders.
+ * Recording an order only queues its record for the journal's background writer and appends it to
+ * the indexes, so it is cheap enough for the checkout path. Orders are kept in the order they were
+ * recorded, which is also timestamp order, so time-range queries are a binary search plus a slice,
+ * and {@link #scan} reads the segments front to back for reporting.
+ * <p>
+ * Only the last segment is ever appended to. If a crash tore its last record, loading cuts the
+ * torn bytes off before the segment is reopened, so orders recorded afterwards stay readable.
+ */
+public class OrderLedger implements Closeable {
+    /** Number of orders per segment file. */
+    static final int ORDERS_PER_SEGMENT = 10_000;
+
+    /** Journal operation of an order record. */
+    private static final String PUT_ORDER = "putOrder";
+
+    private static OrderLedger instance; // Singleton instance
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final Journal.Durability durability;
+    private final List<Segment> segments = new ArrayList<>();
+    private Journal active;         // Journal of the last segment, or null before the first order
+
+    private final List<Order> orders = new ArrayList<>();
+    private final Map<String, List<Order>> ordersByCustomer = new HashMap<>();
+    private final Map<String, List<Order>> ordersBySeller = new HashMap<>();
+    private final Map<String, List<Order>> ordersByProduct = new HashMap<>();
+    private long lastTimestamp;
+
+    /**
+     * A segment file and the time range of the orders in it.
+     */
+    private static final class Segment {
+        private final File file;
+        private int count;
+        private long firstTimestamp = Long.MAX_VALUE;
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        void add(Order order) {
+            count++;
+            firstTimestamp = Math.min(firstTimestamp, order.getTimestamp());
+            lastTimestamp = Math.max(lastTimestamp, order.getTimestamp());
+        }
+
+        boolean overlaps(long from, long to) {
+            return count > 0 && firstTimestamp < to && lastTimestamp >= from;
+        }
+    }
+
+    /**
+     * Opens the ledger in a directory and loads its segments into the indexes.
+     *
+     * @param directory the directory holding the segment files; created on first order.
+     * @param durability when order records are forced to disk.
+     * @throws IOException if a segment cannot be read.
+     */
+    public OrderLedger(File directory, Journal.Durability durability) throws IOException {
+        this.directory = directory;
+        this.objectMapper = new ObjectMapper();
+        this.durability = durability;
+        load();
+    }
+
+    /**
+     * Returns the Singleton instance, stored in the {@code orders} subdirectory of the data directory.
+     *
+     * @return the OrderLedger instance.
+     */
+    public static synchronized OrderLedger getInstance() {
+        if (instance == null) {
+            File directory = new File(Database.getDataDirectory(), "orders");
+            try {
+                instance = new OrderLedger(directory, Journal.Durability.INTERVAL);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open order ledger in " + directory, e);
+            }
+            OrderLedger ledger = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    ledger.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the Singleton instance, for example with a ledger in a temporary directory in tests.
+     *
+     * @param ledger the instance to return from {@link #getInstance()}, or null to create it on next use.
+     */
+    static synchronized void setInstance(OrderLedger ledger) {
+        instance = ledger;
+    }
+
+    private void load() throws IOException {
+        // Replay truncates a torn last record, so the last segment can be appended to again
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("orders-") && name.endsWith(".log"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            Segment segment = new Segment(file);
+            segments.add(segment);
+            try (Journal journal = new Journal(file, objectMapper)) {
+                journal.replay((op, data) -> {
+                    Order order = objectMapper.treeToValue(data, Order.class);
+                    segment.add(order);
+                    index(order);
+                });
+            }
+        }
+        if (!orders.isEmpty()) {
+            lastTimestamp = orders.get(orders.size() - 1).getTimestamp();
+        }
+    }
+
+    /**
+     * Assigns an order its ID and timestamp, appends it to the log and indexes it.
+     * The record is written in the background; call {@link #flush()} to wait until it is on disk.
+     *
+     * @param order the order to record.
+     * @return the recorded order.
+     * @throws IOException if the record cannot be queued.
+     */
+    public synchronized Order record(Order order) throws IOException {
+        // Timestamps never go backwards, so the log stays sorted even if the clock does
+        lastTimestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+        order.setId("order-" + (orders.size() + 1));
+        order.setTimestamp(lastTimestamp);
+
+        Segment segment = activeSegment();
+        active.append(PUT_ORDER, order);
+        segment.add(order);
+        index(order);
+        return order;
+    }
+
+    private Segment activeSegment() throws IOException {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last != null && last.count < ORDERS_PER_SEGMENT) {
+            if (active == null) {
+                active = new Journal(last.file, objectMapper, durability, 1000);
+            }
+            return last;
+        }
+
+        if (active != null) {
+            active.close();
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        Segment segment = new Segment(new File(directory, String.format("orders-%08d.log", segments.size() + 1)));
+        segments.add(segment);
+        active = new Journal(segment.file, objectMapper, durability, 1000);
+        return segment;
+    }
+
+    private void index(Order order) {
+        orders.add(order);
+        ordersByCustomer.computeIfAbsent(order.getCustomerId(), key -> new ArrayList<>()).add(order);
+        for (String sellerId : order.getSellerIds()) {
+            ordersBySeller.computeIfAbsent(sellerId, key -> new ArrayList<>()).add(order);
+        }
+        for (Order.Line line : order.getLines()) {
+            List<Order> productOrders = ordersByProduct.computeIfAbsent(line.getProductId(), key -> new ArrayList<>());
+            if (productOrders.isEmpty() || productOrders.get(productOrders.size() - 1) != order) {
+                productOrders.add(order);
+            }
+        }
+    }
+
+    /**
+     * Retrieves a page of all orders recorded in a time range, oldest first.
+     *
+     * @param from the start of the range in milliseconds since the epoch, inclusive.
+     * @param to the end of the range in milliseconds since the epoch, exclusive.
+     * @param offset the number of matching orders to skip.
+     * @param limit the maximum number of orders to return.
+     * @return the orders of the page.
+     */
+    public synchronized List<Order> getOrders(long from, long to, int offset, int limit) {
+        return page(orders, from, to, offset, limit);
+    }
+
+    /**
+     * Retrieves a page of a customer's orders in a time range, oldest first.
+     *
+     * @param customerId the ID of the customer.
+     * @param from the start of the range in milliseconds since the epoch, inclusive.
+     * @param to the end of the range in milliseconds since the epoch, exclusive.
+     * @param offset the number of matching orders to skip.
+     * @param limit the maximum number of orders to return.
+     * @return the orders of the page.
+     */
+    public synchronized List<Order> getOrdersByCustomer(String customerId, long from, long to, int offset, int limit) {
+        return page(ordersByCustomer.getOrDefault(customerId, Collections.emptyList()), from, to, offset, limit);
+    }
+
+    /**
+     * Retrieves a page of the orders that include a seller's products in a time range, oldest first.
+     *
+     * @param sellerId the ID of the seller.
+     * @param from the start of the range in milliseconds since the epoch, inclusive.
+     * @param to the end of the range in milliseconds since the epoch, exclusive.
+     * @param offset the number of matching orders to skip.
+     * @param limit the maximum number of orders to return.
+     * @return the orders of the page.
+     */
+    public synchronized List<Order> getOrdersBySeller(String sellerId, long from, long to, int offset, int limit) {
+        return page(ordersBySeller.getOrDefault(sellerId, Collections.emptyList()), from, to, offset, limit);
+    }
+
+    /**
+     * Retrieves a page of the orders that include a product in a time range, oldest first.
+     *
+     * @param productId the ID of the product.
+     * @param from the start of the range in milliseconds since the epoch, inclusive.
+     * @param to the end of the range in milliseconds since the epoch, exclusive.
+     * @param offset the number of matching orders to skip.
+     * @param limit the maximum number of orders to return.
+     * @return the orders of the page.
+     */
+    public synchronized List<Order> getOrdersByProduct(String productId, long from, long to, int offset, int limit) {
+        return page(ordersByProduct.getOrDefault(productId, Collections.emptyList()), from, to, offset, limit);
+    }
+
+    /**
+     * Retrieves the number of orders recorded.
+     *
+     * @return the order count.
+     */
+    public synchronized int size() {
+        return orders.size();
+    }
+
+    /**
+     * Reads every order recorded in a time range from the segment files, oldest first,
+     * skipping segments outside the range. Used for reports that should not rely on the indexes.
+     *
+     * @param from the start of the range in milliseconds since the epoch, inclusive.
+     * @param to the end of the range in milliseconds since the epoch, exclusive.
+     * @param consumer receives each order.
+     * @throws IOException if a segment cannot be read.
+     */
+    public void scan(long from, long to, Consumer<Order> consumer) throws IOException {
+        List<File> files = new ArrayList<>();
+        Journal current;
+        synchronized (this) {
+            for (Segment segment : segments) {
+                if (segment.overlaps(from, to)) {
+                    files.add(segment.file);
+                }
+            }
+            current = active;
+        }
+        if (current != null) {
+            current.flush(); // Make the orders recorded so far readable from the file
+        }
+        for (File file : files) {
+            try (Journal journal = new Journal(file, objectMapper)) {
+                // The active journal may be writing to the last segment, so read it without truncating
+                journal.readComplete((op, data) -> {
+                    Order order = objectMapper.treeToValue(data, Order.class);
+                    if (order.getTimestamp() >= from && order.getTimestamp() < to) {
+                        consumer.accept(order);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Blocks until every recorded order is on disk.
+     *
+     * @throws IOException if a write failed.
+     */
+    public synchronized void flush() throws IOException {
+        if (active != null) {
+            active.flush();
+        }
+    }
+
+    /**
+     * Flushes and closes the active segment.
+     *
+     * @throws IOException if the final flush fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.close();
+            active = null;
+        }
+    }
+
+    private static List<Order> page(List<Order> list, long from, long to, int offset, int limit) {
+        // First order at or after 'from'; the list is sorted by timestamp
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (list.get(middle).getTimestamp() < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<Order> page = new ArrayList<>(Math.min(limit, 64));
+        for (int i = low + offset; i < list.size() && page.size() < limit; i++) {
+            Order order = list.get(i);
+            if (order.getTimestamp() >= to) {
+                break;
+            }
+            page.add(order);
+        }
+        return page;
+    }
+}
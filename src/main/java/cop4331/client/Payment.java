@@ -1,12 +1,129 @@
 package cop4331.client;
 
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * The Payment class handles payment processing.
- * Currently, it simulates payment processing and always returns true.
+ * <p>
+ * Payments are authorized asynchronously through a {@link PaymentGateway}. Requests are queued and
+ * sent in batches of up to {@code maxBatchSize}, waiting at most {@code batchWindowMillis} for a batch
+ * to fill. Each gateway call is abandoned after {@code timeoutMillis} and retried up to
+ * {@code maxRetries} times with exponential backoff and full jitter; declines are final and not retried.
+ * At most {@code maxInFlight} payments may be outstanding; beyond that new payments are refused at
+ * once rather than queued without bound.
+ * <p>
+ * The shared instance uses a {@link SimulatedPaymentGateway} configured with
+ * {@code -Dcop4331.payment.latencyMillis}, {@code -Dcop4331.payment.failureRate} and
+ * {@code -Dcop4331.payment.declineRate}.
  */
-public class Payment {
+public class Payment implements Closeable {
+    private static Payment instance; // Singleton instance
+
+    private final PaymentGateway gateway;
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+    private final long timeoutMillis;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final Semaphore inFlight;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService callers;
+    private final ScheduledExecutorService timers;
+    private final Thread batcher;
+    private volatile boolean closed;
+
+    /**
+     * A queued payment and the future completed with its outcome.
+     */
+    private static final class Pending {
+        private final PaymentRequest request;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Pending(PaymentRequest request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Constructs a payment pipeline with the default settings, authorizing against a
+     * {@link SimulatedPaymentGateway} configured from the system properties.
+     */
+    public Payment() {
+        this(new SimulatedPaymentGateway(
+                Long.getLong("cop4331.payment.latencyMillis", 0), 0,
+                Double.parseDouble(System.getProperty("cop4331.payment.failureRate", "0")),
+                Double.parseDouble(System.getProperty("cop4331.payment.declineRate", "0"))),
+                50, 5, 4, 1000, 2000, 3, 100);
+    }
+
+    /**
+     * Constructs a payment pipeline.
+     *
+     * @param gateway the gateway that authorizes payments.
+     * @param maxBatchSize the maximum number of payments per gateway call.
+     * @param batchWindowMillis how long to wait for a batch to fill after its first payment.
+     * @param maxConcurrentCalls the maximum number of gateway calls running at once.
+     * @param maxInFlight the maximum number of payments queued or being authorized.
+     * @param timeoutMillis how long a gateway call may take before it is retried.
+     * @param maxRetries how many times a failed or timed-out call is retried.
+     * @param retryBackoffMillis the backoff before the first retry; doubles with each retry.
+     */
+    public Payment(PaymentGateway gateway, int maxBatchSize, long batchWindowMillis, int maxConcurrentCalls,
+                   int maxInFlight, long timeoutMillis, int maxRetries, long retryBackoffMillis) {
+        this.gateway = gateway;
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMillis = batchWindowMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.callers = Executors.newFixedThreadPool(maxConcurrentCalls, daemonThreads("payment-gateway"));
+        this.timers = Executors.newSingleThreadScheduledExecutor(daemonThreads("payment-timer"));
+        this.batcher = daemonThreads("payment-batcher").newThread(this::runBatcher);
+        batcher.start();
+    }
+
     /**
-     * Processes the payment with the provided details.
+     * Returns the shared payment pipeline, configured from the system properties on first use.
+     *
+     * @return the Payment instance.
+     */
+    public static synchronized Payment getInstance() {
+        if (instance == null) {
+            instance = new Payment();
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the shared payment pipeline, for example with a different gateway in tests.
+     *
+     * @param payment the instance to return from {@link #getInstance()}, or null to create it on next use.
+     */
+    static synchronized void setInstance(Payment payment) {
+        instance = payment;
+    }
+
+    /**
+     * Processes the payment with the provided details, blocking until it is decided.
      *
      * @param cardNumber the credit card number
      * @param expiration the expiration date in MM/YY format
@@ -15,8 +132,171 @@ public class Payment {
      * @return true if payment is successful, false otherwise
      */
     public boolean processPayment(String cardNumber, String expiration, String cvv, double amount) {
-        // Simulate payment processing logic
-        // In a real application, integrate with a payment gateway
-        return true;
+        try {
+            return processPaymentAsync(cardNumber, expiration, cvv, amount).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            System.out.println("Payment could not be processed: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Queues a payment for authorization and returns immediately.
+     *
+     * @param cardNumber the credit card number
+     * @param expiration the expiration date in MM/YY format
+     * @param cvv        the CVV code
+     * @param amount     the amount to charge
+     * @return a future completed with true if the payment was approved and false if it was declined,
+     *         or exceptionally if the gateway could not be reached or too many payments are outstanding
+     */
+    public CompletableFuture<Boolean> processPaymentAsync(String cardNumber, String expiration, String cvv, double amount) {
+        return processPaymentAsync(new PaymentRequest(cardNumber, expiration, cvv, amount));
+    }
+
+    /**
+     * Queues a payment for authorization under a caller-supplied ID and returns immediately.
+     * A payment sent again with the same ID gets the gateway's earlier decision, so it is charged at most once.
+     *
+     * @param paymentId  the unique ID of the payment, such as the ID of the checkout it pays for
+     * @param cardNumber the credit card number
+     * @param expiration the expiration date in MM/YY format
+     * @param cvv        the CVV code
+     * @param amount     the amount to charge
+     * @return a future completed with true if the payment was approved and false if it was declined,
+     *         or exceptionally if the gateway could not be reached or too many payments are outstanding
+     */
+    public CompletableFuture<Boolean> processPaymentAsync(String paymentId, String cardNumber, String expiration,
+                                                          String cvv, double amount) {
+        return processPaymentAsync(new PaymentRequest(paymentId, cardNumber, expiration, cvv, amount));
+    }
+
+    private CompletableFuture<Boolean> processPaymentAsync(PaymentRequest request) {
+        Pending pending = new Pending(request);
+        if (closed) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Payment processing has stopped"));
+            return pending.result;
+        }
+        if (!inFlight.tryAcquire()) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Too many payments in progress"));
+            return pending.result;
+        }
+        queue.add(pending);
+        return pending.result.whenComplete((approved, error) -> inFlight.release()); // Freed before callers see the outcome
+    }
+
+    /**
+     * Stops accepting payments and shuts down the pipeline's threads.
+     * Payments still queued fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        batcher.interrupt();
+        callers.shutdownNow();
+        timers.shutdownNow();
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Payment processing has stopped"));
+        }
+    }
+
+    /**
+     * Collects queued payments into batches and dispatches each batch to the gateway.
+     */
+    private void runBatcher() {
+        while (!closed) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                for (Pending pending : batch) {
+                    pending.result.completeExceptionally(new RejectedExecutionException("Payment processing has stopped"));
+                }
+                return;
+            }
+            attempt(batch, 0);
+        }
+    }
+
+    /**
+     * Sends a batch to the gateway, with a timeout, and retries it with jittered backoff on failure.
+     *
+     * @param batch the payments to authorize.
+     * @param retry the number of earlier attempts.
+     */
+    private void attempt(List<Pending> batch, int retry) {
+        List<PaymentRequest> requests = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            requests.add(pending.request);
+        }
+
+        CompletableFuture<List<Boolean>> call = new CompletableFuture<>();
+        try {
+            Future<?> task = callers.submit(() -> {
+                try {
+                    List<Boolean> results = gateway.authorize(requests);
+                    if (results == null || results.size() != requests.size() || results.contains(null)) {
+                        // Retried like a failed call rather than leaving payments without a decision
+                        throw new IllegalStateException("Payment gateway returned " + (results == null ? "no"
+                                : results.size()) + " decisions for " + requests.size() + " payments");
+                    }
+                    call.complete(results);
+                } catch (Exception e) {
+                    call.completeExceptionally(e);
+                }
+            });
+            ScheduledFuture<?> timer = timers.schedule(() -> {
+                if (call.completeExceptionally(new TimeoutException("Payment gateway timed out"))) {
+                    task.cancel(true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            call.whenComplete((results, error) -> timer.cancel(false));
+        } catch (RejectedExecutionException e) {
+            call.completeExceptionally(e); // Closed while dispatching
+        }
+
+        call.whenComplete((results, error) -> {
+            if (error == null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(results.get(i));
+                }
+            } else if (retry < maxRetries && !closed) {
+                // Full jitter: a random delay up to the exponential backoff, so retries spread out
+                long backoff = ThreadLocalRandom.current().nextLong((retryBackoffMillis << retry) + 1);
+                try {
+                    timers.schedule(() -> attempt(batch, retry + 1), backoff, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    fail(batch, e);
+                }
+            } else {
+                fail(batch, error);
+            }
+        });
+    }
+
+    private static void fail(List<Pending> batch, Throwable error) {
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(error);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
@@ -0,0 +1,19 @@
+package cop4331.client;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Connection to a card payment processor. Calls block for the round trip to the processor.
+ */
+public interface PaymentGateway {
+    /**
+     * Authorizes a batch of payments in one round trip.
+     * A request whose ID was already authorized gets the earlier decision again.
+     *
+     * @param requests the payments to authorize.
+     * @return whether each payment was approved, in request order.
+     * @throws IOException if the processor could not be reached; the batch may be retried.
+     */
+    List<Boolean> authorize(List<PaymentRequest> requests) throws IOException;
+}
@@ -0,0 +1,90 @@
+package cop4331.client;
+
+import java.util.UUID;
+
+/**
+ * A request to authorize a card payment. Each request carries a unique ID that the gateway uses
+ * as an idempotency key, so a request retried after a timeout is never charged twice.
+ */
+public class PaymentRequest {
+    private final String id;
+    private final String cardNumber;
+    private final String expiration;
+    private final String cvv;
+    private final double amount;
+
+    /**
+     * Constructs a payment request with a new unique ID.
+     *
+     * @param cardNumber the credit card number
+     * @param expiration the expiration date in MM/YY format
+     * @param cvv        the CVV code
+     * @param amount     the amount to charge
+     */
+    public PaymentRequest(String cardNumber, String expiration, String cvv, double amount) {
+        this(UUID.randomUUID().toString(), cardNumber, expiration, cvv, amount);
+    }
+
+    /**
+     * Constructs a payment request with a caller-supplied ID, so that sending it again, even from
+     * a new request object, gets the gateway's earlier decision instead of a second charge.
+     *
+     * @param id         the unique ID of the payment
+     * @param cardNumber the credit card number
+     * @param expiration the expiration date in MM/YY format
+     * @param cvv        the CVV code
+     * @param amount     the amount to charge
+     */
+    public PaymentRequest(String id, String cardNumber, String expiration, String cvv, double amount) {
+        this.id = id;
+        this.cardNumber = cardNumber;
+        this.expiration = expiration;
+        this.cvv = cvv;
+        this.amount = amount;
+    }
+
+    /**
+     * Retrieves the unique ID of the request.
+     *
+     * @return the request ID.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the credit card number.
+     *
+     * @return the card number.
+     */
+    public String getCardNumber() {
+        return cardNumber;
+    }
+
+    /**
+     * Retrieves the expiration date.
+     *
+     * @return the expiration date in MM/YY format.
+     */
+    public String getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * Retrieves the CVV code.
+     *
+     * @return the CVV code.
+     */
+    public String getCvv() {
+        return cvv;
+    }
+
+    /**
+     * Retrieves the amount to charge.
+     *
+     * @return the amount.
+     */
+    public double getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,146 @@
+package cop4331.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Every promotion that applies to one product, compiled into a few numbers so that pricing a cart
+ * line is plain integer arithmetic instead of a walk over rules or wrapper products.
+ * <p>
+ * Discounts are kept as the fraction of the price that remains, in millionths, so stacked
+ * percentages multiply exactly. A line is priced by taking the percentage and tier discounts off
+ * the unit price, rounding half up to the cent, taking off the fixed amount, and charging for the
+ * units that are not free under buy-X-get-Y.
+ */
+final class PricePlan {
+    private static final long ONE = 1_000_000; // The whole price, in millionths
+
+    /** The plan of a product no promotion applies to. */
+    static final PricePlan NONE = new Builder(null).build();
+
+    private final String sellerId;      // The seller the plan was compiled for
+    private final long remaining;       // Fraction of the unit price left after percentages
+    private final long fixedCents;      // Taken off each unit after percentages
+    private final int groupSize;        // Buy plus free quantity, or 0 without buy-X-get-Y
+    private final int freeQuantity;
+    private final int[] tierMinimums;   // Ascending
+    private final long[] tierRemaining; // Fraction left at each tier, for all tiered rules together
+
+    private PricePlan(Builder builder) {
+        this.sellerId = builder.sellerId;
+        this.remaining = builder.remaining;
+        this.fixedCents = builder.fixedCents;
+        this.groupSize = builder.freeQuantity == 0 ? 0 : builder.buyQuantity + builder.freeQuantity;
+        this.freeQuantity = builder.freeQuantity;
+
+        // Merge the tiers of every tiered rule: at each minimum, every rule's reached tier applies
+        TreeSet<Integer> minimums = new TreeSet<>();
+        for (Map<Integer, Double> tiers : builder.tiers) {
+            minimums.addAll(tiers.keySet());
+        }
+        this.tierMinimums = new int[minimums.size()];
+        this.tierRemaining = new long[minimums.size()];
+        int i = 0;
+        for (int minimum : minimums) {
+            long left = ONE;
+            for (TreeMap<Integer, Double> tiers : builder.tiers) {
+                Map.Entry<Integer, Double> reached = tiers.floorEntry(minimum);
+                if (reached != null) {
+                    left = left * remainingOf(reached.getValue()) / ONE;
+                }
+            }
+            tierMinimums[i] = minimum;
+            tierRemaining[i++] = left;
+        }
+    }
+
+    /**
+     * Collects the discounts of the rules that apply to a product.
+     */
+    static final class Builder {
+        private final String sellerId;
+        private long remaining = ONE;
+        private long fixedCents;
+        private int buyQuantity;
+        private int freeQuantity;
+        private final List<TreeMap<Integer, Double>> tiers = new ArrayList<>();
+
+        Builder(String sellerId) {
+            this.sellerId = sellerId;
+        }
+
+        void percentage(double rate) {
+            remaining = remaining * remainingOf(rate) / ONE;
+        }
+
+        void fixedAmount(long cents) {
+            fixedCents += cents;
+        }
+
+        void buyXGetY(int buy, int free) {
+            // Keep the most generous offer: the larger share of free units
+            if (freeQuantity == 0 || (long) free * (buyQuantity + freeQuantity) > (long) freeQuantity * (buy + free)) {
+                buyQuantity = buy;
+                freeQuantity = free;
+            }
+        }
+
+        void tiers(TreeMap<Integer, Double> ruleTiers) {
+            if (!ruleTiers.isEmpty()) {
+                tiers.add(ruleTiers);
+            }
+        }
+
+        PricePlan build() {
+            return new PricePlan(this);
+        }
+    }
+
+    private static long remainingOf(double rate) {
+        return ONE - Math.round(rate * ONE);
+    }
+
+    /**
+     * Checks whether the plan was compiled for a product's current seller, so seller-wide rules still match.
+     *
+     * @param product the product.
+     * @return true if the product's seller is the one the plan was compiled for.
+     */
+    boolean isFor(Product product) {
+        String current = product.getSellerId();
+        return sellerId == null ? current == null : sellerId.equals(current);
+    }
+
+    /**
+     * Prices a line.
+     *
+     * @param unitCents the regular price per unit, in cents.
+     * @param quantity the number of units.
+     * @return the promotional line amount, in cents.
+     * @throws ArithmeticException if the amount does not fit in a long.
+     */
+    long lineCents(long unitCents, int quantity) {
+        long left = remaining;
+        for (int i = tierMinimums.length - 1; i >= 0; i--) {
+            if (quantity >= tierMinimums[i]) {
+                left = left * tierRemaining[i] / ONE;
+                break;
+            }
+        }
+        long unit = left == ONE ? unitCents : (Math.multiplyExact(unitCents, left) + ONE / 2) / ONE;
+        unit = Math.max(0, unit - fixedCents);
+        long charged = groupSize == 0 ? quantity : quantity - (long) (quantity / groupSize) * freeQuantity;
+        return Math.multiplyExact(unit, charged);
+    }
+
+    @Override
+    public String toString() {
+        return "PricePlan{remaining=" + remaining + ", fixedCents=" + fixedCents + ", groupSize=" + groupSize
+                + ", freeQuantity=" + freeQuantity + ", tierMinimums=" + Arrays.toString(tierMinimums)
+                + ", tierRemaining=" + Arrays.toString(tierRemaining) + "}";
+    }
+}
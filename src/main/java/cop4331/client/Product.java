@@ -1,9 +1,13 @@
 package cop4331.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 @JsonTypeInfo(
     use = JsonTypeInfo.Id.NAME,
@@ -18,6 +22,16 @@ import java.io.Serializable;
 })
 /**
  * Represents a product in the system, including its details such as ID, name, description, price, and quantity.
+ * <p>
+ * Stock can be reserved without locking: {@link #tryReserve(int)} sets units aside if enough are
+ * available, {@link #commitReservation(int)} removes reserved units from stock once sold, and
+ * {@link #releaseReservation(int)} returns them. The quantity in stock and the quantity reserved
+ * are packed into one atomic word and changed together by compare-and-set, so concurrent
+ * reservations can never set aside more units than are in stock.
+ * <p>
+ * A product that sells in nearly every checkout can be switched to hot mode with
+ * {@link #enableHotMode(int)}, which spreads its stock over a {@link StripedStock} so that
+ * concurrent checkouts stop contending on one word.
  */
 public class Product implements Serializable {
     /** The unique identifier of the product. */
@@ -32,8 +46,17 @@ public class Product implements Serializable {
     /** The price of the product. */
     private double price;
 
-    /** The quantity of the product available in stock. */
-    private int quantity;
+    /** The quantity in stock (high 32 bits) and the quantity reserved (low 32 bits). */
+    private final AtomicLong stock = new AtomicLong();
+
+    /** The striped stock of a product in hot mode; only read once {@link #stock} is {@link #HOT}. */
+    private volatile StripedStock stripedStock;
+
+    /** Value of {@link #stock} once the stock has moved to {@link #stripedStock}. */
+    private static final long HOT = Long.MIN_VALUE;
+
+    /** Bundles and wrappers whose computed values depend on this product; copy-on-write, null if none. */
+    private transient volatile List<Product> dependents;
 
     /** The unique identifier of the seller of the product. */
     private String sellerId;
@@ -63,10 +86,10 @@ public class Product implements Serializable {
         this.id = id;
         this.name = name;
         this.description = description;
-        this.price = price;
-        this.quantity = quantity;
+        this.price = Money.checkPrice(price);
+        this.stock.set(pack(quantity, 0));
         this.sellerId = sellerId;
-        this.invoicePrice = invoicePrice;
+        this.invoicePrice = Money.checkPrice(invoicePrice);
         this.type = type;
     }
 
@@ -122,6 +145,7 @@ public class Product implements Serializable {
      */
     public void setName(String name) {
         this.name = name;
+        pricingChanged();
     }
 
     /**
@@ -140,6 +164,7 @@ public class Product implements Serializable {
      */
     public void setDescription(String description) {
         this.description = description;
+        pricingChanged();
     }
 
     /**
@@ -155,27 +180,231 @@ public class Product implements Serializable {
      * Sets the price of the product.
      *
      * @param price the product price to set.
+     * @throws IllegalArgumentException if the price is not a number from 0 to {@link Money#MAX_PRICE}.
      */
     public void setPrice(double price) {
-        this.price = price;
+        this.price = Money.checkPrice(price);
+        pricingChanged();
     }
 
     /**
-     * Retrieves the quantity of the product available in stock.
+     * Retrieves the quantity of the product in stock, including reserved units.
      *
      * @return the product quantity.
      */
     public int getQuantity() {
-        return quantity;
+        long current = stock.get();
+        return current == HOT ? stripedStock.getQuantity() : onHand(current);
     }
 
     /**
-     * Sets the quantity of the product available in stock.
+     * Sets the quantity of the product in stock. Outstanding reservations are kept.
      *
      * @param quantity the product quantity to set.
      */
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
+        long current;
+        do {
+            current = stock.get();
+            if (current == HOT) {
+                stripedStock.setQuantity(quantity);
+                break;
+            }
+        } while (!stock.compareAndSet(current, pack(quantity, reserved(current))));
+        stockChanged();
+    }
+
+    /**
+     * Retrieves the quantity of the product in stock that is not reserved.
+     *
+     * @return the quantity that can still be reserved.
+     */
+    @JsonIgnore
+    public int getAvailableQuantity() {
+        long current = stock.get();
+        return current == HOT ? stripedStock.getAvailableQuantity() : onHand(current) - reserved(current);
+    }
+
+    /**
+     * Reserves units of the product if enough are available. Reserved units stay in stock
+     * until the reservation is committed or released.
+     *
+     * @param quantity the number of units to reserve.
+     * @return true if the units were reserved, false if fewer were available.
+     */
+    public boolean tryReserve(int quantity) {
+        while (true) {
+            long current = stock.get();
+            if (current == HOT) {
+                boolean reserved = stripedStock.tryReserve(quantity);
+                if (reserved) {
+                    stockChanged();
+                }
+                return reserved;
+            }
+            int onHand = onHand(current);
+            int reserved = reserved(current);
+            if (onHand - reserved < quantity) {
+                return false;
+            }
+            if (stock.compareAndSet(current, pack(onHand, reserved + quantity))) {
+                stockChanged();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes reserved units from stock, completing their sale.
+     *
+     * @param quantity the number of reserved units sold.
+     */
+    public void commitReservation(int quantity) {
+        long current;
+        do {
+            current = stock.get();
+            if (current == HOT) {
+                stripedStock.commitReservation(quantity);
+                break;
+            }
+        } while (!stock.compareAndSet(current, pack(onHand(current) - quantity, reserved(current) - quantity)));
+        stockChanged();
+    }
+
+    /**
+     * Returns reserved units to the available stock.
+     *
+     * @param quantity the number of reserved units to release.
+     */
+    public void releaseReservation(int quantity) {
+        long current;
+        do {
+            current = stock.get();
+            if (current == HOT) {
+                stripedStock.releaseReservation(quantity);
+                break;
+            }
+        } while (!stock.compareAndSet(current, pack(onHand(current), reserved(current) - quantity)));
+        stockChanged();
+    }
+
+    /**
+     * Adds units to stock, for example to undo a sale that could not be completed.
+     *
+     * @param quantity the number of units to add.
+     */
+    public void restock(int quantity) {
+        long current;
+        do {
+            current = stock.get();
+            if (current == HOT) {
+                stripedStock.restock(quantity);
+                break;
+            }
+        } while (!stock.compareAndSet(current, current + ((long) quantity << 32)));
+        stockChanged();
+    }
+
+    /**
+     * Switches the product to hot mode, spreading its stock and reservations over striped counters.
+     * Meant for flash sales, where many checkouts buy the same product at once: each thread reserves
+     * from its own stripe, and totals become eventually consistent. Stock can still never be
+     * oversold. Hot mode lasts as long as this object; it is not saved.
+     * <p>
+     * Synchronized so that only one thread builds the striped counters: a thread that lost the
+     * switch to another must not replace the counters the winner published.
+     *
+     * @param stripes the number of stripes, rounded up to a power of two; typically the number of cores.
+     */
+    public synchronized void enableHotMode(int stripes) {
+        while (true) {
+            long current = stock.get();
+            if (current == HOT) {
+                return;
+            }
+            // Published before the switch, so any thread that sees HOT also sees these counters
+            stripedStock = new StripedStock(stripes, onHand(current), reserved(current));
+            if (stock.compareAndSet(current, HOT)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the product's stock is striped for concurrent checkouts.
+     *
+     * @return true if the product is in hot mode.
+     */
+    @JsonIgnore
+    public boolean isHotMode() {
+        return stock.get() == HOT;
+    }
+
+    /**
+     * Registers a product whose computed values depend on this one, such as a bundle containing it,
+     * so that it is told when this product's price or stock changes.
+     *
+     * @param dependent the dependent product.
+     */
+    synchronized void addDependent(Product dependent) {
+        List<Product> copy = dependents == null ? new ArrayList<>() : new ArrayList<>(dependents);
+        copy.add(dependent);
+        dependents = copy;
+    }
+
+    /**
+     * Unregisters a product registered with {@link #addDependent(Product)}.
+     *
+     * @param dependent the dependent product.
+     */
+    synchronized void removeDependent(Product dependent) {
+        if (dependents == null) {
+            return;
+        }
+        List<Product> copy = new ArrayList<>(dependents);
+        for (int i = 0; i < copy.size(); i++) {
+            if (copy.get(i) == dependent) {
+                copy.remove(i);
+                break;
+            }
+        }
+        dependents = copy.isEmpty() ? null : copy;
+    }
+
+    /**
+     * Called when the price, name or description of this product changed; tells its dependents.
+     */
+    protected void pricingChanged() {
+        List<Product> list = dependents;
+        if (list != null) {
+            for (Product dependent : list) {
+                dependent.pricingChanged();
+            }
+        }
+    }
+
+    /**
+     * Called when the stock of this product changed; tells its dependents.
+     */
+    protected void stockChanged() {
+        List<Product> list = dependents;
+        if (list != null) {
+            for (Product dependent : list) {
+                dependent.stockChanged();
+            }
+        }
+    }
+
+    static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    static int onHand(long stock) {
+        return (int) (stock >> 32);
+    }
+
+    static int reserved(long stock) {
+        return (int) stock;
     }
 
     /**
@@ -209,8 +438,9 @@ public class Product implements Serializable {
      * Sets the invoice price of the product.
      *
      * @param invoicePrice the invoice price to set.
+     * @throws IllegalArgumentException if the price is not a number from 0 to {@link Money#MAX_PRICE}.
      */
     public void setInvoicePrice(double invoicePrice) {
-        this.invoicePrice = invoicePrice;
+        this.invoicePrice = Money.checkPrice(invoicePrice);
     }
 }
@@ -1,14 +1,62 @@
 package cop4331.client;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a product bundle that consists of multiple products.
- * Applies a 10% discount to the total price of the bundled products.
+ * Applies a discount, 10% unless set otherwise, to the total price of the bundled products.
+ * <p>
+ * The price, description, quantity and available quantity are computed from the bundled products
+ * and cached. Each bundled product registers the bundle as a dependent and tells it when its price
+ * or stock changes, which invalidates the matching cache; the bundle passes the change on to its
+ * own dependents, so nested bundles stay current too. Each cache is tagged with the version it was
+ * computed at, so a value computed while a change was in flight is never kept.
+ * <p>
+ * A bundle is stored with copies of its products. The {@link Database} points it at the catalog's
+ * own instances when it loads and whenever a product is added or updated, so bundles sell from
+ * the catalog's stock.
  */
 public class ProductBundle extends Product {
     private List<Product> products;
+    private double discountRate = 0.1;
+
+    private final AtomicLong pricingVersion = new AtomicLong(); // Bumped when a price, name or description changes
+    private final AtomicLong stockVersion = new AtomicLong();   // Bumped when stock changes
+    private transient volatile Pricing pricingCache;
+    private transient volatile Stock stockCache;
+
+    /**
+     * The computed price and description, as of a pricing version.
+     */
+    private static final class Pricing {
+        private final long version;
+        private final double price;
+        private final String description;
+
+        Pricing(long version, double price, String description) {
+            this.version = version;
+            this.price = price;
+            this.description = description;
+        }
+    }
+
+    /**
+     * The computed quantity and available quantity, as of a stock version.
+     */
+    private static final class Stock {
+        private final long version;
+        private final int quantity;
+        private final int available;
+
+        Stock(long version, int quantity, int available) {
+            this.version = version;
+            this.quantity = quantity;
+            this.available = available;
+        }
+    }
 
     public ProductBundle() {
         super();
@@ -20,12 +68,47 @@ public class ProductBundle extends Product {
         this.products = new ArrayList<>();
     }
 
+    /**
+     * Retrieves the bundled products.
+     *
+     * @return an unmodifiable list of the bundled products.
+     */
     public List<Product> getProducts() {
-        return products;
+        return Collections.unmodifiableList(products);
+    }
+
+    /**
+     * Sets the bundled products, replacing the current ones.
+     *
+     * @param products the products to bundle.
+     */
+    public void setProducts(List<Product> products) {
+        for (Product product : this.products) {
+            product.removeDependent(this);
+        }
+        this.products = new ArrayList<>(products);
+        for (Product product : this.products) {
+            product.addDependent(this);
+        }
+        pricingChanged();
+        stockChanged();
+    }
+
+    /**
+     * Unregisters the bundle from its products, once it has been replaced or removed from the
+     * catalog. The bundle keeps its products, but its cached values no longer follow them.
+     */
+    void unlink() {
+        for (Product product : products) {
+            product.removeDependent(this);
+        }
     }
 
     public void addProduct(Product product) {
         this.products.add(product);
+        product.addDependent(this);
+        pricingChanged();
+        stockChanged();
         // Update sellerId if necessary
         if (this.getSellerId() == null || this.getSellerId().isEmpty()) {
             this.setSellerId(product.getSellerId());
@@ -35,15 +118,37 @@ public class ProductBundle extends Product {
         this.setQuantity(getQuantity());
     }
 
+    /**
+     * Retrieves the fraction taken off the total price of the bundled products.
+     *
+     * @return the discount rate.
+     */
+    public double getDiscountRate() {
+        return discountRate;
+    }
+
+    /**
+     * Sets the fraction taken off the total price of the bundled products.
+     *
+     * @param discountRate the discount rate, between 0 and 1 (0.10 for 10% off).
+     * @throws IllegalArgumentException if the rate is out of range.
+     */
+    public void setDiscountRate(double discountRate) {
+        if (discountRate < 0 || discountRate > 1) {
+            throw new IllegalArgumentException("Discount rate must be between 0 and 1: " + discountRate);
+        }
+        this.discountRate = discountRate;
+        pricingChanged();
+    }
+
     @Override
     public double getPrice() {
-        double totalPrice = products.stream().mapToDouble(Product::getPrice).sum();
-        return totalPrice * 0.9; // Apply 10% discount
+        return pricing().price;
     }
 
     @Override
     public int getQuantity() {
-        return products.stream().mapToInt(Product::getQuantity).min().orElse(0);
+        return stock().quantity;
     }
 
     @Override
@@ -53,12 +158,99 @@ public class ProductBundle extends Product {
         }
     }
 
+    @Override
+    public int getAvailableQuantity() {
+        return stock().available;
+    }
+
+    /**
+     * Reserves the quantity in every bundled product, or in none of them.
+     *
+     * @param quantity the number of bundles to reserve.
+     * @return true if every bundled product had enough available units.
+     */
+    @Override
+    public boolean tryReserve(int quantity) {
+        for (int i = 0; i < products.size(); i++) {
+            if (!products.get(i).tryReserve(quantity)) {
+                for (int j = 0; j < i; j++) {
+                    products.get(j).releaseReservation(quantity);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void commitReservation(int quantity) {
+        for (Product product : products) {
+            product.commitReservation(quantity);
+        }
+    }
+
+    @Override
+    public void releaseReservation(int quantity) {
+        for (Product product : products) {
+            product.releaseReservation(quantity);
+        }
+    }
+
+    @Override
+    public void restock(int quantity) {
+        for (Product product : products) {
+            product.restock(quantity);
+        }
+    }
+
     @Override
     public String getDescription() {
+        return pricing().description;
+    }
+
+    @Override
+    protected void pricingChanged() {
+        pricingVersion.incrementAndGet();
+        super.pricingChanged();
+    }
+
+    @Override
+    protected void stockChanged() {
+        stockVersion.incrementAndGet();
+        super.stockChanged();
+    }
+
+    private Pricing pricing() {
+        Pricing cached = pricingCache;
+        long version = pricingVersion.get();
+        if (cached != null && cached.version == version) {
+            return cached;
+        }
+        double totalPrice = 0;
         StringBuilder description = new StringBuilder(super.getDescription() + "\nIncludes:\n");
         for (Product product : products) {
+            totalPrice += product.getPrice();
             description.append("- ").append(product.getName()).append("\n");
         }
-        return description.toString();
+        Pricing computed = new Pricing(version, totalPrice * (1 - discountRate), description.toString());
+        pricingCache = computed; // Tagged with the version read before computing, so stale if a change raced
+        return computed;
+    }
+
+    private Stock stock() {
+        Stock cached = stockCache;
+        long version = stockVersion.get();
+        if (cached != null && cached.version == version) {
+            return cached;
+        }
+        int quantity = Integer.MAX_VALUE;
+        int available = Integer.MAX_VALUE;
+        for (Product product : products) {
+            quantity = Math.min(quantity, product.getQuantity());
+            available = Math.min(available, product.getAvailableQuantity());
+        }
+        Stock computed = products.isEmpty() ? new Stock(version, 0, 0) : new Stock(version, quantity, available);
+        stockCache = computed;
+        return computed;
     }
 }
@@ -0,0 +1,311 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prices carts under the current promotions: percentage and fixed amount discounts, buy-X-get-Y,
+ * quantity tiers, and any of these limited to one seller's products.
+ * <p>
+ * Promotions used to be {@link DiscountedProduct} wrappers, so stacked promotions became wrapper
+ * chains walked on every {@code getPrice()}. The engine instead compiles the rules that apply to a
+ * product into a flat {@link PricePlan} the first time the product is priced, and keeps it until
+ * the rules change; {@link #quote} then prices a whole cart in one pass, each line a map lookup and
+ * a few integer operations. Rules are indexed by product and seller, so compiling a plan only looks
+ * at the rules that can apply.
+ * <p>
+ * Rules are saved to {@code promotions.json} in the data directory whenever they change.
+ */
+public class PromotionEngine {
+    private static final TypeReference<List<PromotionRule>> RULES = new TypeReference<List<PromotionRule>>() {};
+
+    private static PromotionEngine instance; // Singleton instance
+
+    private final File file; // Null if the rules are not saved
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private volatile Compiled compiled = new Compiled(Collections.emptyList());
+
+    /**
+     * A set of rules, indexed for compiling, and the plans compiled from them so far.
+     */
+    private static final class Compiled {
+        private final List<PromotionRule> rules;
+        private final Map<String, List<PromotionRule>> byProduct = new HashMap<>();
+        private final Map<String, List<PromotionRule>> bySeller = new HashMap<>();
+        private final List<PromotionRule> global = new ArrayList<>();
+        private final Map<String, PricePlan> plans = new ConcurrentHashMap<>();
+
+        Compiled(List<PromotionRule> rules) {
+            this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+            for (PromotionRule rule : rules) {
+                if (!rule.getProductIds().isEmpty()) {
+                    for (String productId : rule.getProductIds()) {
+                        byProduct.computeIfAbsent(productId, id -> new ArrayList<>()).add(rule);
+                    }
+                } else if (rule.getSellerId() != null) {
+                    bySeller.computeIfAbsent(rule.getSellerId(), id -> new ArrayList<>()).add(rule);
+                } else {
+                    global.add(rule);
+                }
+            }
+        }
+
+        PricePlan plan(Product product) {
+            PricePlan plan = plans.get(product.getId());
+            if (plan == null || !plan.isFor(product)) {
+                plan = compile(product);
+                plans.put(product.getId(), plan);
+            }
+            return plan;
+        }
+
+        private PricePlan compile(Product product) {
+            PricePlan.Builder builder = new PricePlan.Builder(product.getSellerId());
+            boolean any = compileInto(builder, global, product);
+            any |= compileInto(builder, byProduct.get(product.getId()), product);
+            if (product.getSellerId() != null) {
+                any |= compileInto(builder, bySeller.get(product.getSellerId()), product);
+            }
+            return any ? builder.build() : PricePlan.NONE;
+        }
+
+        private static boolean compileInto(PricePlan.Builder builder, List<PromotionRule> rules, Product product) {
+            boolean any = false;
+            if (rules != null) {
+                for (PromotionRule rule : rules) {
+                    if (rule.appliesTo(product)) {
+                        rule.compileInto(builder);
+                        any = true;
+                    }
+                }
+            }
+            return any;
+        }
+    }
+
+    /**
+     * The promotional prices of a list of line items.
+     */
+    public static final class Quote {
+        private final long[] lineCents;
+        private final long subtotalCents;
+        private final long totalCents;
+
+        Quote(long[] lineCents, long subtotalCents, long totalCents) {
+            this.lineCents = lineCents;
+            this.subtotalCents = subtotalCents;
+            this.totalCents = totalCents;
+        }
+
+        /**
+         * Retrieves the promotional amount of a line.
+         *
+         * @param index the position of the line in the quoted items.
+         * @return the line amount in cents.
+         */
+        public long getLineCents(int index) {
+            return lineCents[index];
+        }
+
+        /**
+         * Retrieves the amount before promotions.
+         *
+         * @return the subtotal in cents.
+         */
+        public long getSubtotalCents() {
+            return subtotalCents;
+        }
+
+        /**
+         * Retrieves the amount after promotions.
+         *
+         * @return the total in cents.
+         */
+        public long getTotalCents() {
+            return totalCents;
+        }
+
+        /**
+         * Retrieves the amount after promotions.
+         *
+         * @return the total in dollars.
+         */
+        public double getTotal() {
+            return Money.toDollars(totalCents);
+        }
+
+        /**
+         * Retrieves the amount saved by promotions.
+         *
+         * @return the discount in cents.
+         */
+        public long getDiscountCents() {
+            return subtotalCents - totalCents;
+        }
+    }
+
+    /**
+     * Creates an engine with no rules that does not save them.
+     */
+    public PromotionEngine() {
+        this.file = null;
+    }
+
+    /**
+     * Creates an engine with the rules saved in a file.
+     *
+     * @param file the file the rules are loaded from and saved to; it need not exist yet.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    public PromotionEngine(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            List<PromotionRule> rules = objectMapper.readValue(file, RULES);
+            compiled = new Compiled(rules);
+        }
+    }
+
+    /**
+     * Returns the Singleton instance, with its rules in {@code promotions.json} in the data directory.
+     *
+     * @return the PromotionEngine instance.
+     */
+    public static synchronized PromotionEngine getInstance() {
+        if (instance == null) {
+            File file = new File(Database.getDataDirectory(), "promotions.json");
+            try {
+                instance = new PromotionEngine(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load promotions from " + file, e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the Singleton instance, for example with an engine that does not save its rules in tests.
+     *
+     * @param engine the instance to return from {@link #getInstance()}, or null to create it on next use.
+     */
+    static synchronized void setInstance(PromotionEngine engine) {
+        instance = engine;
+    }
+
+    /**
+     * Retrieves the current rules.
+     *
+     * @return an unmodifiable list of rules, in the order they were added.
+     */
+    public List<PromotionRule> getRules() {
+        return compiled.rules;
+    }
+
+    /**
+     * Adds a rule, assigning it an ID if it has none, and saves the rules.
+     *
+     * @param rule the rule to add.
+     * @throws IOException if the rules cannot be saved; the rule is still in effect.
+     */
+    public synchronized void addRule(PromotionRule rule) throws IOException {
+        if (rule.getId() == null) {
+            rule.setId(UUID.randomUUID().toString());
+        }
+        List<PromotionRule> rules = new ArrayList<>(compiled.rules);
+        rules.add(rule);
+        setRules(rules);
+    }
+
+    /**
+     * Removes a rule and saves the rules.
+     *
+     * @param ruleId the ID of the rule to remove.
+     * @return true if the rule existed.
+     * @throws IOException if the rules cannot be saved; the rule is still removed.
+     */
+    public synchronized boolean removeRule(String ruleId) throws IOException {
+        List<PromotionRule> rules = new ArrayList<>(compiled.rules);
+        if (!rules.removeIf(rule -> ruleId.equals(rule.getId()))) {
+            return false;
+        }
+        setRules(rules);
+        return true;
+    }
+
+    /**
+     * Replaces every rule and saves them. Plans compiled from the old rules are discarded.
+     *
+     * @param rules the new rules.
+     * @throws IOException if the rules cannot be saved; the new rules are still in effect.
+     */
+    public synchronized void setRules(List<PromotionRule> rules) throws IOException {
+        compiled = new Compiled(rules);
+        if (file != null) {
+            objectMapper.writerFor(RULES).withDefaultPrettyPrinter().writeValue(file, compiled.rules);
+        }
+    }
+
+    /**
+     * Prices a cart under the current promotions, in one pass.
+     *
+     * @param cart the cart.
+     * @return the quote, with line amounts in the order of {@link Cart#getItems()}.
+     * @throws ArithmeticException if an amount does not fit in a long.
+     */
+    public Quote quote(Cart cart) {
+        return quote(cart.getItems());
+    }
+
+    /**
+     * Prices line items under the current promotions, in one pass.
+     *
+     * @param items the line items, such as a reservation's.
+     * @return the quote, with line amounts in the order of the items.
+     * @throws ArithmeticException if an amount does not fit in a long.
+     */
+    public Quote quote(List<LineItem> items) {
+        Compiled current = compiled; // One set of rules for the whole quote
+        long[] lineCents = new long[items.size()];
+        long subtotal = 0;
+        long total = 0;
+        for (int i = 0; i < lineCents.length; i++) {
+            LineItem item = items.get(i);
+            Product product = item.getProduct();
+            long unitCents = Money.toCents(product.getPrice());
+            subtotal = Math.addExact(subtotal, Math.multiplyExact(unitCents, (long) item.getQuantity()));
+            lineCents[i] = current.plan(product).lineCents(unitCents, item.getQuantity());
+            total = Math.addExact(total, lineCents[i]);
+        }
+        return new Quote(lineCents, subtotal, total);
+    }
+
+    /**
+     * Prices a quantity of one product under the current promotions.
+     *
+     * @param product the product.
+     * @param quantity the number of units.
+     * @return the promotional amount in cents.
+     */
+    public long lineCents(Product product, int quantity) {
+        return compiled.plan(product).lineCents(Money.toCents(product.getPrice()), quantity);
+    }
+
+    /**
+     * Retrieves the promotional price of a single unit of a product, for display.
+     *
+     * @param product the product.
+     * @return the unit price in dollars.
+     */
+    public double getPrice(Product product) {
+        return Money.toDollars(lineCents(product, 1));
+    }
+}
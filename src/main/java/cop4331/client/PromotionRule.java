@@ -0,0 +1,345 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A promotion run by the {@link PromotionEngine}: a discount and the products it applies to.
+ * <p>
+ * A rule applies to the products listed in its product IDs, or to every product if none are
+ * listed; if it names a seller, only that seller's products qualify, so a rule with a seller and
+ * no product IDs is a seller-wide promotion. Rules are not evaluated directly: the engine compiles
+ * every rule that applies to a product into one {@link PricePlan} and prices cart lines from that.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "kind")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = PromotionRule.Percentage.class, name = "percentage"),
+        @JsonSubTypes.Type(value = PromotionRule.FixedAmount.class, name = "fixedAmount"),
+        @JsonSubTypes.Type(value = PromotionRule.BuyXGetY.class, name = "buyXGetY"),
+        @JsonSubTypes.Type(value = PromotionRule.Tiered.class, name = "tiered")
+})
+public abstract class PromotionRule {
+    private String id;
+    private Set<String> productIds = new LinkedHashSet<>();
+    private String sellerId;
+
+    /**
+     * A percentage off the unit price. Several percentage rules on one product stack multiplicatively.
+     */
+    public static class Percentage extends PromotionRule {
+        private double rate;
+
+        /**
+         * Default constructor required for Jackson deserialization.
+         */
+        public Percentage() {}
+
+        /**
+         * Constructs a percentage rule.
+         *
+         * @param rate the fraction taken off, between 0 and 1 (0.10 for 10% off).
+         */
+        public Percentage(double rate) {
+            setRate(rate);
+        }
+
+        /**
+         * Retrieves the fraction taken off the unit price.
+         *
+         * @return the discount rate.
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * Sets the fraction taken off the unit price.
+         *
+         * @param rate the discount rate, between 0 and 1.
+         * @throws IllegalArgumentException if the rate is out of range.
+         */
+        public void setRate(double rate) {
+            if (!(rate >= 0 && rate <= 1)) { // Also rejects NaN
+                throw new IllegalArgumentException("Discount rate must be between 0 and 1: " + rate);
+            }
+            this.rate = rate;
+        }
+
+        @Override
+        void compileInto(PricePlan.Builder plan) {
+            plan.percentage(rate);
+        }
+    }
+
+    /**
+     * A fixed amount off the unit price, taken after any percentage; the price never goes below zero.
+     */
+    public static class FixedAmount extends PromotionRule {
+        private double amount;
+
+        /**
+         * Default constructor required for Jackson deserialization.
+         */
+        public FixedAmount() {}
+
+        /**
+         * Constructs a fixed amount rule.
+         *
+         * @param amount the amount taken off each unit, in dollars.
+         */
+        public FixedAmount(double amount) {
+            setAmount(amount);
+        }
+
+        /**
+         * Retrieves the amount taken off each unit.
+         *
+         * @return the amount in dollars.
+         */
+        public double getAmount() {
+            return amount;
+        }
+
+        /**
+         * Sets the amount taken off each unit.
+         *
+         * @param amount the amount in dollars.
+         * @throws IllegalArgumentException if the amount is negative, above {@link Money#MAX_PRICE} or not a number.
+         */
+        public void setAmount(double amount) {
+            if (!Money.isValidPrice(amount)) {
+                throw new IllegalArgumentException("Invalid discount amount: " + amount);
+            }
+            this.amount = amount;
+        }
+
+        @Override
+        void compileInto(PricePlan.Builder plan) {
+            plan.fixedAmount(Money.toCents(amount));
+        }
+    }
+
+    /**
+     * Buy X, get Y free: of every X + Y units on a line, Y are free. If several apply to a product,
+     * the most generous one is used.
+     */
+    public static class BuyXGetY extends PromotionRule {
+        private int buyQuantity;
+        private int freeQuantity;
+
+        /**
+         * Default constructor required for Jackson deserialization.
+         */
+        public BuyXGetY() {}
+
+        /**
+         * Constructs a buy-X-get-Y rule.
+         *
+         * @param buyQuantity the number of units paid for in each group.
+         * @param freeQuantity the number of free units in each group.
+         */
+        public BuyXGetY(int buyQuantity, int freeQuantity) {
+            setBuyQuantity(buyQuantity);
+            setFreeQuantity(freeQuantity);
+        }
+
+        /**
+         * Retrieves the number of units paid for in each group.
+         *
+         * @return the buy quantity.
+         */
+        public int getBuyQuantity() {
+            return buyQuantity;
+        }
+
+        /**
+         * Sets the number of units paid for in each group.
+         *
+         * @param buyQuantity the buy quantity, at least 1.
+         * @throws IllegalArgumentException if the quantity is less than 1.
+         */
+        public void setBuyQuantity(int buyQuantity) {
+            if (buyQuantity < 1) {
+                throw new IllegalArgumentException("Buy quantity must be at least 1: " + buyQuantity);
+            }
+            this.buyQuantity = buyQuantity;
+        }
+
+        /**
+         * Retrieves the number of free units in each group.
+         *
+         * @return the free quantity.
+         */
+        public int getFreeQuantity() {
+            return freeQuantity;
+        }
+
+        /**
+         * Sets the number of free units in each group.
+         *
+         * @param freeQuantity the free quantity, at least 1.
+         * @throws IllegalArgumentException if the quantity is less than 1.
+         */
+        public void setFreeQuantity(int freeQuantity) {
+            if (freeQuantity < 1) {
+                throw new IllegalArgumentException("Free quantity must be at least 1: " + freeQuantity);
+            }
+            this.freeQuantity = freeQuantity;
+        }
+
+        @Override
+        void compileInto(PricePlan.Builder plan) {
+            plan.buyXGetY(buyQuantity, freeQuantity);
+        }
+    }
+
+    /**
+     * A percentage off the unit price that grows with the quantity on the line: the rate of the
+     * highest tier whose minimum quantity is reached applies.
+     */
+    public static class Tiered extends PromotionRule {
+        private TreeMap<Integer, Double> tiers = new TreeMap<>();
+
+        /**
+         * Default constructor required for Jackson deserialization.
+         */
+        public Tiered() {}
+
+        /**
+         * Constructs a tiered rule.
+         *
+         * @param tiers the discount rate for each minimum quantity.
+         */
+        public Tiered(Map<Integer, Double> tiers) {
+            setTiers(tiers);
+        }
+
+        /**
+         * Retrieves the discount rate for each minimum quantity.
+         *
+         * @return the tiers, by ascending minimum quantity.
+         */
+        public Map<Integer, Double> getTiers() {
+            return tiers;
+        }
+
+        /**
+         * Sets the discount rate for each minimum quantity.
+         *
+         * @param tiers the tiers.
+         * @throws IllegalArgumentException if a minimum quantity is less than 1 or a rate is out of range.
+         */
+        public void setTiers(Map<Integer, Double> tiers) {
+            for (Map.Entry<Integer, Double> tier : tiers.entrySet()) {
+                if (tier.getKey() < 1 || !(tier.getValue() >= 0 && tier.getValue() <= 1)) {
+                    throw new IllegalArgumentException("Invalid tier: " + tier);
+                }
+            }
+            this.tiers = new TreeMap<>(tiers);
+        }
+
+        @Override
+        void compileInto(PricePlan.Builder plan) {
+            plan.tiers(tiers);
+        }
+    }
+
+    /**
+     * Retrieves the unique identifier of the rule, assigned by the engine if not set.
+     *
+     * @return the rule ID.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the unique identifier of the rule.
+     *
+     * @param id the rule ID.
+     */
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Retrieves the IDs of the products the rule applies to.
+     *
+     * @return the product IDs, or an empty set if the rule is not limited to particular products.
+     */
+    public Set<String> getProductIds() {
+        return productIds;
+    }
+
+    /**
+     * Sets the IDs of the products the rule applies to.
+     *
+     * @param productIds the product IDs, or an empty set for every product.
+     */
+    public void setProductIds(Set<String> productIds) {
+        this.productIds = new LinkedHashSet<>(productIds);
+    }
+
+    /**
+     * Limits the rule to one product.
+     *
+     * @param productId the product ID.
+     * @return this rule.
+     */
+    public PromotionRule forProduct(String productId) {
+        productIds.add(productId);
+        return this;
+    }
+
+    /**
+     * Retrieves the seller whose products the rule applies to.
+     *
+     * @return the seller ID, or null if the rule is not limited to one seller.
+     */
+    public String getSellerId() {
+        return sellerId;
+    }
+
+    /**
+     * Sets the seller whose products the rule applies to.
+     *
+     * @param sellerId the seller ID, or null for every seller.
+     */
+    public void setSellerId(String sellerId) {
+        this.sellerId = sellerId;
+    }
+
+    /**
+     * Limits the rule to one seller's products.
+     *
+     * @param sellerId the seller ID.
+     * @return this rule.
+     */
+    public PromotionRule forSeller(String sellerId) {
+        this.sellerId = sellerId;
+        return this;
+    }
+
+    /**
+     * Checks whether the rule applies to a product.
+     *
+     * @param product the product.
+     * @return true if the product is listed (or none are) and belongs to the rule's seller, if any.
+     */
+    public boolean appliesTo(Product product) {
+        return (productIds.isEmpty() || productIds.contains(product.getId()))
+                && (sellerId == null || sellerId.equals(product.getSellerId()));
+    }
+
+    /**
+     * Adds the rule's discount to a product's price plan.
+     *
+     * @param plan the plan being compiled.
+     */
+    abstract void compileInto(PricePlan.Builder plan);
+}
@@ -0,0 +1,509 @@
+package cop4331.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory full-text index over product names and descriptions, ranked with BM25.
+ * <p>
+ * Text is split into lower-case runs of letters and digits. Each term has a postings list of the
+ * documents containing it, in document order, with the term's frequency; a term in the name counts
+ * {@value #NAME_WEIGHT} times, so name matches rank first. Every query term must match a document,
+ * and the last one also matches as a prefix, so results narrow as a customer types. A prefix
+ * expands to at most {@value #MAX_EXPANSIONS} of its most common terms, always including the
+ * prefix itself if it is a term.
+ * <p>
+ * The index is updated one product at a time. A product is indexed as a new document and its old
+ * document, if any, is marked deleted; deleted documents are skipped by queries and purged from
+ * the postings once they outnumber half the live ones. Re-indexing a product whose name and
+ * description did not change does nothing, so stock updates cost no more than a lookup.
+ * <p>
+ * Queries share a read lock and updates take a write lock.
+ */
+public class SearchIndex {
+    /** How many times a term in the name counts, relative to one in the description. */
+    static final int NAME_WEIGHT = 3;
+
+    /** The maximum number of terms a prefix expands to. */
+    static final int MAX_EXPANSIONS = 64;
+
+    private static final double K1 = 1.2;  // BM25 term frequency saturation
+    private static final double B = 0.75;  // BM25 document length normalization
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> terms = new HashMap<>();           // Term -> postings
+    private final TreeMap<String, Postings> sortedTerms = new TreeMap<>(); // The same, sorted for prefix lookups
+    private final Map<String, Integer> documents = new HashMap<>();  // Product ID -> live document
+    private String[] productIds = new String[1024];                 // Document -> product ID
+    private String[] names = new String[1024];                      // Document -> indexed name
+    private String[] descriptions = new String[1024];               // Document -> indexed description
+    private int[] lengths = new int[1024];                          // Document -> weighted term count
+    private final BitSet deleted = new BitSet();
+    private int documentCount;  // Documents ever added
+    private int deletedCount;   // Deleted documents still in the postings
+    private long totalLength;   // Weighted term count of the live documents
+
+    /**
+     * The documents containing a term, in increasing document order, with the term's weighted frequency.
+     */
+    private static final class Postings {
+        private int[] documents = new int[2];
+        private byte[] frequencies = new byte[2]; // Capped at 255
+        private int size;
+
+        void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = (byte) Math.min(frequency, 255);
+            size++;
+        }
+
+        /**
+         * Retrieves the frequency of the term in a document.
+         *
+         * @return the frequency, or 0 if the document does not contain the term.
+         */
+        int frequency(int document) {
+            int position = Arrays.binarySearch(documents, 0, size, document);
+            return position < 0 ? 0 : frequencies[position] & 0xFF;
+        }
+
+        /**
+         * Drops the deleted documents.
+         */
+        void purge(BitSet deleted) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!deleted.get(documents[i])) {
+                    documents[kept] = documents[i];
+                    frequencies[kept++] = frequencies[i];
+                }
+            }
+            size = kept;
+        }
+    }
+
+    /**
+     * A product ID and how well it matched a query.
+     */
+    public static final class Hit {
+        private final String productId;
+        private final double score;
+
+        Hit(String productId, double score) {
+            this.productId = productId;
+            this.score = score;
+        }
+
+        /**
+         * Retrieves the ID of the matching product.
+         *
+         * @return the product ID.
+         */
+        public String getProductId() {
+            return productId;
+        }
+
+        /**
+         * Retrieves the BM25 score of the match; higher is better.
+         *
+         * @return the score.
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return productId + " (" + score + ")";
+        }
+    }
+
+    /**
+     * Adds products to the index, or re-indexes them if already present.
+     *
+     * @param products the products to index.
+     */
+    public void addAll(Collection<Product> products) {
+        lock.writeLock().lock();
+        try {
+            for (Product product : products) {
+                indexLocked(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a product to the index, or re-indexes it if its name or description changed.
+     *
+     * @param product the product to index.
+     */
+    public void index(Product product) {
+        lock.writeLock().lock();
+        try {
+            indexLocked(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a product from the index.
+     *
+     * @param productId the ID of the product.
+     * @return true if the product was indexed.
+     */
+    public boolean remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            Integer document = documents.remove(productId);
+            if (document == null) {
+                return false;
+            }
+            delete(document);
+            purgeIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of products in the index.
+     *
+     * @return the indexed product count.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the products best matching a query. Every word of the query must appear in a product's
+     * name or description; the last may be the start of a word.
+     *
+     * @param query the words to search for.
+     * @param limit the maximum number of results.
+     * @return the matching products, best first; empty if the query has no words.
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            return searchLocked(words, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lower-case words of letters and digits.
+     *
+     * @param text the text; may be null.
+     * @return the words, in order, with repeats.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void indexLocked(Product product) {
+        String name = product.getName();
+        String description = product.getDescription();
+        Integer previous = documents.get(product.getId());
+        if (previous != null) {
+            if (Objects.equals(names[previous], name) && Objects.equals(descriptions[previous], description)) {
+                return; // Same text; nothing to re-index
+            }
+            delete(previous);
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        for (String word : tokenize(name)) {
+            frequencies.merge(word, NAME_WEIGHT, Integer::sum);
+            length += NAME_WEIGHT;
+        }
+        for (String word : tokenize(description)) {
+            frequencies.merge(word, 1, Integer::sum);
+            length++;
+        }
+
+        int document = documentCount++;
+        if (document == productIds.length) {
+            productIds = Arrays.copyOf(productIds, document * 2);
+            names = Arrays.copyOf(names, document * 2);
+            descriptions = Arrays.copyOf(descriptions, document * 2);
+            lengths = Arrays.copyOf(lengths, document * 2);
+        }
+        productIds[document] = product.getId();
+        names[document] = name;
+        descriptions[document] = description;
+        lengths[document] = length;
+        totalLength += length;
+        documents.put(product.getId(), document);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            Postings postings = terms.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(entry.getKey(), postings);
+                sortedTerms.put(entry.getKey(), postings);
+            }
+            postings.add(document, entry.getValue());
+        }
+        purgeIfNeeded();
+    }
+
+    private void delete(int document) {
+        deleted.set(document);
+        deletedCount++;
+        totalLength -= lengths[document];
+        productIds[document] = null;
+    }
+
+    /**
+     * Drops deleted documents from the postings once they outnumber half the live ones.
+     */
+    private void purgeIfNeeded() {
+        if (deletedCount <= 1024 || deletedCount <= documents.size() / 2) {
+            return;
+        }
+        Iterator<Map.Entry<String, Postings>> entries = terms.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Postings> entry = entries.next();
+            entry.getValue().purge(deleted);
+            if (entry.getValue().size == 0) {
+                entries.remove();
+                sortedTerms.remove(entry.getKey());
+            }
+        }
+        deletedCount = 0; // Deleted documents stay marked, so they are never matched again
+    }
+
+    private List<Hit> searchLocked(List<String> words, int limit) {
+        int live = documents.size();
+        if (live == 0) {
+            return new ArrayList<>();
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / live);
+        int indexed = live + deletedCount; // Postings still count deleted documents, so the IDF does too
+
+        // Each query word matches a group of terms: itself, or for the last word, the terms it starts
+        List<List<Postings>> groups = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            List<Postings> group = i == words.size() - 1 ? expand(words.get(i)) : exact(words.get(i));
+            if (group.isEmpty()) {
+                return new ArrayList<>(); // A word no product contains
+            }
+            groups.add(group);
+        }
+        groups.sort(Comparator.comparingLong(SearchIndex::documentFrequency)); // Rarest first
+
+        // Candidates are the live documents of the rarest group; the others can only filter them
+        Matches matches = merge(groups.get(0), indexed, averageLength);
+        for (int g = 1; g < groups.size() && matches.size > 0; g++) {
+            List<Postings> group = groups.get(g);
+            int kept = 0;
+            for (int i = 0; i < matches.size; i++) {
+                int document = matches.documents[i];
+                double best = Double.NaN;
+                for (Postings postings : group) {
+                    int frequency = postings.frequency(document);
+                    if (frequency > 0) {
+                        double score = bm25(idf(postings.size, indexed), frequency, lengths[document], averageLength);
+                        best = Double.isNaN(best) ? score : Math.max(best, score);
+                    }
+                }
+                if (!Double.isNaN(best)) {
+                    matches.documents[kept] = document;
+                    matches.scores[kept++] = matches.scores[i] + best;
+                }
+            }
+            matches.size = kept;
+        }
+
+        // Keep the best results in a bounded min-heap
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::getScore));
+        for (int i = 0; i < matches.size; i++) {
+            if (best.size() < limit || matches.scores[i] > best.peek().getScore()) {
+                best.add(new Hit(productIds[matches.documents[i]], matches.scores[i]));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Comparator.comparingDouble(Hit::getScore).reversed().thenComparing(Hit::getProductId));
+        return hits;
+    }
+
+    /**
+     * Live documents and their scores, in document order.
+     */
+    private static final class Matches {
+        final int[] documents;
+        final double[] scores;
+        int size;
+
+        Matches(int capacity) {
+            documents = new int[capacity];
+            scores = new double[capacity];
+        }
+    }
+
+    /**
+     * Merges the postings of a group into the live documents containing any of its terms, each
+     * scored by its best term. The postings are in document order, so a heap of their heads yields
+     * the documents in order without hashing.
+     */
+    private Matches merge(List<Postings> group, int indexed, double averageLength) {
+        int lists = group.size();
+        double[] idfs = new double[lists];
+        int[] cursors = new int[lists];
+        int[] heap = new int[lists]; // List indexes, ordered by the document at their cursor
+        int total = 0;
+        for (int l = 0; l < lists; l++) {
+            Postings postings = group.get(l);
+            idfs[l] = idf(postings.size, indexed);
+            total += postings.size;
+            heap[l] = l;
+        }
+        for (int i = lists / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, lists, group, cursors);
+        }
+
+        Matches matches = new Matches(total);
+        int heapSize = lists;
+        int last = -1;
+        while (heapSize > 0) {
+            int l = heap[0];
+            Postings postings = group.get(l);
+            int document = postings.documents[cursors[l]];
+            int frequency = postings.frequencies[cursors[l]] & 0xFF;
+            if (++cursors[l] == postings.size) {
+                heap[0] = heap[--heapSize];
+            }
+            if (heapSize > 0) {
+                siftDown(heap, 0, heapSize, group, cursors);
+            }
+
+            if (deleted.get(document)) {
+                continue;
+            }
+            double score = bm25(idfs[l], frequency, lengths[document], averageLength);
+            if (document == last) {
+                int i = matches.size - 1;
+                matches.scores[i] = Math.max(matches.scores[i], score); // Best expansion of the word
+            } else {
+                matches.documents[matches.size] = document;
+                matches.scores[matches.size++] = score;
+                last = document;
+            }
+        }
+        return matches;
+    }
+
+    private static void siftDown(int[] heap, int i, int size, List<Postings> group, int[] cursors) {
+        int list = heap[i];
+        int document = group.get(list).documents[cursors[list]];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            int childDocument = group.get(heap[child]).documents[cursors[heap[child]]];
+            if (child + 1 < size) {
+                int right = group.get(heap[child + 1]).documents[cursors[heap[child + 1]]];
+                if (right < childDocument) {
+                    child++;
+                    childDocument = right;
+                }
+            }
+            if (document <= childDocument) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = list;
+    }
+
+    private List<Postings> exact(String word) {
+        Postings postings = terms.get(word);
+        List<Postings> group = new ArrayList<>(1);
+        if (postings != null) {
+            group.add(postings);
+        }
+        return group;
+    }
+
+    /**
+     * Finds the most common terms starting with a prefix. The prefix itself, if it is a term, is
+     * always kept, so a rare exact word is still found when many longer words share it.
+     */
+    private List<Postings> expand(String prefix) {
+        Collection<Postings> matches = sortedTerms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+        List<Postings> group = new ArrayList<>(matches);
+        if (group.size() > MAX_EXPANSIONS) {
+            Postings exact = terms.get(prefix);
+            group.sort(Comparator.comparingInt((Postings postings) -> postings.size).reversed());
+            group = new ArrayList<>(group.subList(0, MAX_EXPANSIONS));
+            if (exact != null && !group.contains(exact)) {
+                group.set(MAX_EXPANSIONS - 1, exact);
+            }
+        }
+        return group;
+    }
+
+    private static long documentFrequency(List<Postings> group) {
+        long total = 0;
+        for (Postings postings : group) {
+            total += postings.size;
+        }
+        return total;
+    }
+
+    private static double idf(int documentFrequency, int documentCount) {
+        return Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private static double bm25(double idf, int frequency, int length, double averageLength) {
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+}
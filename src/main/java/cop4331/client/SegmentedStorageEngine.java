@@ -0,0 +1,220 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage engine that writes each commit as a new immutable segment file holding only the
+ * changed users and products, in the same record format as the {@link Journal}.
+ * <p>
+ * A {@code MANIFEST} file lists the live segments in order. A commit first writes and syncs its
+ * segment, then writes a new manifest to a temporary file and atomically renames it into place,
+ * so a crash leaves either the old or the new set of segments visible, never a partial commit.
+ * Loading replays the listed segments in order. Once too many segments accumulate,
+ * a checkpoint rewrites the full state as a single base segment and deletes the rest.
+ * If no manifest exists on first load, existing JSON files in the same directory are imported.
+ */
+public class SegmentedStorageEngine implements StorageEngine {
+    /** Number of live segments after which a checkpoint is requested. */
+    private static final int MAX_SEGMENTS = 64;
+
+    private final File directory;
+    private final File manifestFile;
+    private final ObjectMapper objectMapper;
+    private final List<String> segments = new ArrayList<>();
+    private long nextSegment = 1;
+    private List<ObjectNode> transaction; // Records staged since begin(), or null outside a transaction
+
+    /**
+     * Constructs a segmented storage engine.
+     *
+     * @param directory the directory holding the data files; segments go in its {@code segments} subdirectory.
+     */
+    public SegmentedStorageEngine(File directory) {
+        this.directory = directory;
+        this.manifestFile = new File(new File(directory, "segments"), "MANIFEST");
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @Override
+    public void load(Loader loader) throws IOException {
+        if (!manifestFile.exists()) {
+            Files.createDirectories(manifestFile.getParentFile().toPath());
+            JsonStorageEngine.importInto(directory, this);
+        }
+        if (!manifestFile.exists()) {
+            return;
+        }
+
+        JsonNode manifest = objectMapper.readTree(manifestFile);
+        segments.clear();
+        nextSegment = manifest.get("next").asLong();
+        for (JsonNode name : manifest.get("segments")) {
+            segments.add(name.asText());
+        }
+        for (String segment : segments) {
+            for (JsonNode record : objectMapper.readTree(segmentFile(segment))) {
+                JsonStorageEngine.applyRecord(objectMapper, record.get("op").asText(), record.get("data"), loader);
+            }
+        }
+    }
+
+    @Override
+    public void upsertUser(User user) throws IOException {
+        record(Journal.PUT_USER, user);
+    }
+
+    @Override
+    public void upsertProduct(Product product) throws IOException {
+        record(Journal.PUT_PRODUCT, product);
+    }
+
+    @Override
+    public void deleteUser(String userId) throws IOException {
+        record(Journal.DELETE_USER, userId);
+    }
+
+    @Override
+    public void deleteProduct(String productId) throws IOException {
+        record(Journal.DELETE_PRODUCT, productId);
+    }
+
+    private void record(String op, Object entity) throws IOException {
+        ObjectNode record = objectMapper.createObjectNode();
+        record.put("op", op);
+        record.set("data", objectMapper.valueToTree(entity));
+        if (transaction != null) {
+            transaction.add(record);
+        } else {
+            List<ObjectNode> single = new ArrayList<>();
+            single.add(record);
+            appendSegment(single, false);
+        }
+    }
+
+    @Override
+    public void begin() {
+        transaction = new ArrayList<>();
+    }
+
+    @Override
+    public void commit() throws IOException {
+        List<ObjectNode> records = transaction;
+        transaction = null;
+        if (records != null && !records.isEmpty()) {
+            appendSegment(records, false);
+        }
+    }
+
+    @Override
+    public void rollback() {
+        transaction = null;
+    }
+
+    /**
+     * Segments and manifests are synced before a commit returns, so there is nothing to wait for.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean needsCheckpoint() {
+        return segments.size() > MAX_SEGMENTS;
+    }
+
+    /**
+     * Writes every user and product as one base segment that replaces all live segments.
+     *
+     * @param users every user.
+     * @param products every product.
+     * @throws IOException if the base segment or manifest cannot be written.
+     */
+    @Override
+    public void checkpoint(List<User> users, List<Product> products) throws IOException {
+        List<ObjectNode> records = new ArrayList<>(users.size() + products.size());
+        for (User user : users) {
+            ObjectNode record = objectMapper.createObjectNode();
+            record.put("op", Journal.PUT_USER);
+            record.set("data", objectMapper.valueToTree(user));
+            records.add(record);
+        }
+        for (Product product : products) {
+            ObjectNode record = objectMapper.createObjectNode();
+            record.put("op", Journal.PUT_PRODUCT);
+            record.set("data", objectMapper.valueToTree(product));
+            records.add(record);
+        }
+        appendSegment(records, true);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Writes a new segment and publishes it through an atomic manifest swap.
+     *
+     * @param records the records of the segment.
+     * @param replaceAll whether the segment replaces every live segment.
+     * @throws IOException if the segment or manifest cannot be written.
+     */
+    private void appendSegment(List<ObjectNode> records, boolean replaceAll) throws IOException {
+        Files.createDirectories(manifestFile.getParentFile().toPath());
+        String name = String.format("seg-%08d.json", nextSegment);
+        ArrayNode array = objectMapper.createArrayNode().addAll(records);
+        writeSynced(segmentFile(name), objectMapper.writeValueAsBytes(array));
+
+        List<String> obsolete = new ArrayList<>();
+        List<String> live = new ArrayList<>(segments);
+        if (replaceAll) {
+            obsolete.addAll(live);
+            live.clear();
+        }
+        live.add(name);
+
+        ObjectNode manifest = objectMapper.createObjectNode();
+        manifest.put("next", nextSegment + 1);
+        ArrayNode names = manifest.putArray("segments");
+        for (String segment : live) {
+            names.add(segment);
+        }
+        File temp = new File(manifestFile.getPath() + ".tmp");
+        writeSynced(temp, objectMapper.writeValueAsBytes(manifest));
+        Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        nextSegment++;
+        segments.clear();
+        segments.addAll(live);
+        for (String segment : obsolete) {
+            Files.deleteIfExists(segmentFile(segment).toPath());
+        }
+    }
+
+    private File segmentFile(String name) {
+        return new File(manifestFile.getParentFile(), name);
+    }
+
+    private static void writeSynced(File file, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+}
@@ -58,10 +58,10 @@ public class Seller extends User implements Serializable {
      */
     public void addProduct(Product product) {
         product.setSellerId(this.getId()); // Set the seller reference
-        inventory.addProduct(product);
 
-        // Add the product to the global products list in the Database
+        // Add the product to the global catalog; the inventory only references it by ID
         Database.getInstance().addProduct(product);
+        inventory.addProduct(product);
 
         // Update financial data with the cost of the product
         double costAmount = product.getInvoicePrice() * product.getQuantity();
@@ -98,9 +98,19 @@ public class Seller extends User implements Serializable {
      * @param quantity the quantity sold
      */
     public void recordSale(Product product, int quantity) {
-        double saleAmount = product.getPrice() * quantity;
-        double costAmount = product.getInvoicePrice() * quantity; // Include cost
-        financialData.updateData(saleAmount, costAmount);
+        recordSale(product, quantity, Money.lineCents(product.getPrice(), quantity));
+    }
+
+    /**
+     * Records a sale of a product at a given amount, such as a promotional price, and updates the financial data.
+     *
+     * @param product the product sold
+     * @param quantity the quantity sold
+     * @param saleCents the amount paid, in cents
+     */
+    public void recordSale(Product product, int quantity, long saleCents) {
+        long costCents = Money.lineCents(product.getInvoicePrice(), quantity); // Include cost
+        financialData.updateCents(saleCents, costCents);
     }
 
     /**
@@ -0,0 +1,74 @@
+package cop4331.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Local stand-in for a payment processor, with configurable latency and failure rates,
+ * for running and load-testing checkout without a network.
+ * <p>
+ * Each call sleeps for the configured latency, then fails as a whole with the configured
+ * failure rate (as a dropped connection would) or decides each request, declining it with the
+ * configured decline rate. Decisions are remembered by request ID, so retries are idempotent.
+ */
+public class SimulatedPaymentGateway implements PaymentGateway {
+    /** Number of decisions remembered for idempotent retries. */
+    private static final int REMEMBERED_DECISIONS = 100_000;
+
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double failureRate;
+    private final double declineRate;
+
+    private final Map<String, Boolean> decisions = Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > REMEMBERED_DECISIONS;
+                }
+            });
+
+    /**
+     * Constructs a simulated gateway.
+     *
+     * @param latencyMillis the minimum duration of each call.
+     * @param latencyJitterMillis the maximum random time added to each call.
+     * @param failureRate the probability, from 0 to 1, that a call fails with an IOException.
+     * @param declineRate the probability, from 0 to 1, that a payment is declined.
+     */
+    public SimulatedPaymentGateway(long latencyMillis, long latencyJitterMillis, double failureRate, double declineRate) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        this.failureRate = failureRate;
+        this.declineRate = declineRate;
+    }
+
+    @Override
+    public List<Boolean> authorize(List<PaymentRequest> requests) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency = latencyMillis + (latencyJitterMillis > 0 ? random.nextLong(latencyJitterMillis + 1) : 0);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Payment authorization interrupted");
+            }
+        }
+        if (random.nextDouble() < failureRate) {
+            throw new IOException("Simulated payment gateway failure");
+        }
+
+        List<Boolean> results = new ArrayList<>(requests.size());
+        for (PaymentRequest request : requests) {
+            results.add(decisions.computeIfAbsent(request.getId(), id -> random.nextDouble() >= declineRate));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,276 @@
+package cop4331.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Storage engine backed by an embedded, file-based H2 SQL database ({@code shopping-cart.mv.db}).
+ * <p>
+ * Each user and product is one row keyed by ID, so a change writes only that row.
+ * The full entity is stored as JSON; the fields used for lookups (username, seller, type, price,
+ * quantity) are also stored as indexed columns. Rows keep their insertion order.
+ * If the database is empty on first load, existing JSON files in the same directory are imported.
+ */
+public class SqlStorageEngine implements StorageEngine {
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS users ("
+            + "seq BIGINT GENERATED BY DEFAULT AS IDENTITY, id VARCHAR PRIMARY KEY, "
+            + "username VARCHAR, type VARCHAR, data CLOB NOT NULL)",
+        "CREATE UNIQUE INDEX IF NOT EXISTS users_username ON users(username)",
+        "CREATE TABLE IF NOT EXISTS products ("
+            + "seq BIGINT GENERATED BY DEFAULT AS IDENTITY, id VARCHAR PRIMARY KEY, "
+            + "seller_id VARCHAR, type VARCHAR, price DOUBLE, quantity INT, data CLOB NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS products_seller ON products(seller_id)",
+        "CREATE INDEX IF NOT EXISTS products_type ON products(type)",
+        "CREATE INDEX IF NOT EXISTS products_price ON products(price)"
+    };
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final Connection connection;
+    private final PreparedStatement upsertUser;
+    private final PreparedStatement upsertProduct;
+    private final PreparedStatement deleteUser;
+    private final PreparedStatement deleteProduct;
+
+    /**
+     * Held from {@link #begin()} to {@link #commit()} or {@link #rollback()}, so that a concurrent
+     * {@link #flush()}, whose CHECKPOINT statement commits the connection, never splits a transaction.
+     */
+    private final ReentrantLock transactionLock = new ReentrantLock();
+
+    /**
+     * Opens (creating if necessary) the embedded database in a directory.
+     *
+     * @param directory the directory holding the database file.
+     * @throws IOException if the database cannot be opened.
+     */
+    public SqlStorageEngine(File directory) throws IOException {
+        this.directory = directory;
+        this.objectMapper = new ObjectMapper();
+        try {
+            String path = new File(directory, "shopping-cart").getAbsolutePath();
+            this.connection = DriverManager.getConnection("jdbc:h2:file:" + path, "sa", "");
+            try (Statement statement = connection.createStatement()) {
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+            }
+            this.upsertUser = connection.prepareStatement(
+                    "MERGE INTO users (id, username, type, data) KEY(id) VALUES (?, ?, ?, ?)");
+            this.upsertProduct = connection.prepareStatement(
+                    "MERGE INTO products (id, seller_id, type, price, quantity, data) KEY(id) VALUES (?, ?, ?, ?, ?, ?)");
+            this.deleteUser = connection.prepareStatement("DELETE FROM users WHERE id = ?");
+            this.deleteProduct = connection.prepareStatement("DELETE FROM products WHERE id = ?");
+        } catch (SQLException e) {
+            throw new IOException("Cannot open embedded database", e);
+        }
+    }
+
+    @Override
+    public void load(Loader loader) throws IOException {
+        try {
+            if (isEmpty()) {
+                JsonStorageEngine.importInto(directory, this);
+            }
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet rows = statement.executeQuery("SELECT data FROM users ORDER BY seq")) {
+                    while (rows.next()) {
+                        loader.loadUser(objectMapper.readValue(rows.getString(1), User.class));
+                    }
+                }
+                try (ResultSet rows = statement.executeQuery("SELECT data FROM products ORDER BY seq")) {
+                    while (rows.next()) {
+                        loader.loadProduct(objectMapper.readValue(rows.getString(1), Product.class));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot load from embedded database", e);
+        }
+    }
+
+    private boolean isEmpty() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(
+                     "SELECT (SELECT COUNT(*) FROM users) + (SELECT COUNT(*) FROM products)")) {
+            return rows.next() && rows.getLong(1) == 0;
+        }
+    }
+
+    @Override
+    public void upsertUser(User user) throws IOException {
+        try {
+            bindUser(user);
+            upsertUser.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Cannot store user " + user.getId(), e);
+        }
+    }
+
+    @Override
+    public void upsertProduct(Product product) throws IOException {
+        try {
+            bindProduct(product);
+            upsertProduct.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Cannot store product " + product.getId(), e);
+        }
+    }
+
+    private void bindUser(User user) throws SQLException, IOException {
+        upsertUser.setString(1, user.getId());
+        upsertUser.setString(2, user.getUsername());
+        upsertUser.setString(3, user.getType());
+        upsertUser.setString(4, objectMapper.writeValueAsString(user));
+    }
+
+    private void bindProduct(Product product) throws SQLException, IOException {
+        upsertProduct.setString(1, product.getId());
+        upsertProduct.setString(2, product.getSellerId());
+        upsertProduct.setString(3, product.getType());
+        upsertProduct.setDouble(4, product.getPrice());
+        upsertProduct.setInt(5, product.getQuantity());
+        upsertProduct.setString(6, objectMapper.writeValueAsString(product));
+    }
+
+    @Override
+    public void deleteUser(String userId) throws IOException {
+        try {
+            deleteUser.setString(1, userId);
+            deleteUser.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Cannot delete user " + userId, e);
+        }
+    }
+
+    @Override
+    public void deleteProduct(String productId) throws IOException {
+        try {
+            deleteProduct.setString(1, productId);
+            deleteProduct.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Cannot delete product " + productId, e);
+        }
+    }
+
+    @Override
+    public void begin() throws IOException {
+        transactionLock.lock();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            transactionLock.unlock();
+            throw new IOException("Cannot begin transaction", e);
+        }
+    }
+
+    @Override
+    public void commit() throws IOException {
+        try {
+            connection.commit();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IOException("Cannot commit transaction", e);
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    @Override
+    public void rollback() throws IOException {
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new IOException("Cannot roll back transaction", e);
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        transactionLock.lock();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CHECKPOINT SYNC");
+        } catch (SQLException e) {
+            throw new IOException("Cannot sync embedded database", e);
+        } finally {
+            transactionLock.unlock();
+        }
+    }
+
+    /**
+     * Row-level writes never need compaction.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean needsCheckpoint() {
+        return false;
+    }
+
+    /**
+     * Replaces the stored state with the given users and products in one transaction.
+     *
+     * @param users every user.
+     * @param products every product.
+     * @throws IOException if the state cannot be written.
+     */
+    @Override
+    public void checkpoint(List<User> users, List<Product> products) throws IOException {
+        transactionLock.lock();
+        try {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DELETE FROM users");
+                statement.execute("DELETE FROM products");
+            }
+            for (User user : users) {
+                bindUser(user);
+                upsertUser.addBatch();
+            }
+            upsertUser.executeBatch();
+            for (Product product : products) {
+                bindProduct(product);
+                upsertProduct.addBatch();
+            }
+            upsertProduct.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+                // The original failure is reported below
+            }
+            throw new IOException("Cannot write checkpoint", e);
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // Connection is unusable; the next call reports it
+            }
+            transactionLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Cannot close embedded database", e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cop4331.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of stock reservations made for one purchase, committed or released together.
+ * Units are set aside with {@link Product#tryReserve(int)} as line items are added; if any line
+ * cannot be reserved the caller releases the whole set, so a purchase gets all of its units or none.
+ */
+public class StockReservation {
+    private final List<LineItem> items = new ArrayList<>();
+    private boolean completed;
+
+    /**
+     * Reserves units of a product as part of this purchase.
+     *
+     * @param product the product to reserve.
+     * @param quantity the number of units to reserve.
+     * @return true if the units were reserved, false if fewer were available.
+     */
+    public synchronized boolean add(Product product, int quantity) {
+        if (completed) {
+            throw new IllegalStateException("Reservation already committed or released");
+        }
+        if (!product.tryReserve(quantity)) {
+            return false;
+        }
+        items.add(new LineItem(product, quantity));
+        return true;
+    }
+
+    /**
+     * Takes over units already reserved elsewhere, such as a converted {@link CartHold}.
+     *
+     * @param product the product the units are reserved on.
+     * @param quantity the number of reserved units.
+     */
+    synchronized void adopt(Product product, int quantity) {
+        if (completed) {
+            throw new IllegalStateException("Reservation already committed or released");
+        }
+        items.add(new LineItem(product, quantity));
+    }
+
+    /**
+     * Reserves every line item of a cart, or none of them.
+     *
+     * @param lineItems the line items to reserve, with products resolved against the catalog.
+     * @return the reservation, or null if any product had too few units available.
+     */
+    public static StockReservation reserveAll(List<LineItem> lineItems) {
+        StockReservation reservation = new StockReservation();
+        for (LineItem item : lineItems) {
+            if (!reservation.add(item.getProduct(), item.getQuantity())) {
+                reservation.release();
+                return null;
+            }
+        }
+        return reservation;
+    }
+
+    /**
+     * Retrieves the reserved line items.
+     *
+     * @return the products and quantities reserved, in the order they were added.
+     */
+    public synchronized List<LineItem> getItems() {
+        return new ArrayList<>(items);
+    }
+
+    /**
+     * Removes every reserved unit from stock, completing the purchase.
+     */
+    public synchronized void commit() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        for (LineItem item : items) {
+            item.getProduct().commitReservation(item.getQuantity());
+        }
+    }
+
+    /**
+     * Returns every reserved unit to the available stock, abandoning the purchase.
+     */
+    public synchronized void release() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        for (LineItem item : items) {
+            item.getProduct().releaseReservation(item.getQuantity());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cop4331.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Persistence backend used by {@link Database}.
+ * <p>
+ * The database keeps every user and product in memory and reports each change to its engine.
+ * Outside a {@link #begin()}/{@link #commit()} pair every change is its own transaction;
+ * inside one, changes become visible to the next {@link #load(Loader)} only after commit.
+ * Engines may acknowledge a change before it reaches stable storage; {@link #flush()} waits until it has.
+ * The database calls every method from one thread at a time, except {@link #flush()},
+ * which may run while another thread is writing.
+ */
+public interface StorageEngine extends Closeable {
+    /**
+     * Receives the persisted state during {@link #load(Loader)}.
+     * A user or product whose ID was already loaded replaces the earlier one.
+     */
+    interface Loader {
+        /**
+         * Loads or replaces a user.
+         *
+         * @param user the user.
+         */
+        void loadUser(User user);
+
+        /**
+         * Loads or replaces a product.
+         *
+         * @param product the product.
+         */
+        void loadProduct(Product product);
+
+        /**
+         * Removes a previously loaded user.
+         *
+         * @param userId the user's ID.
+         */
+        void unloadUser(String userId);
+
+        /**
+         * Removes a previously loaded product.
+         *
+         * @param productId the product's ID.
+         */
+        void unloadProduct(String productId);
+
+        /**
+         * Bulk-loads the initial product list. Used by engines whose products are
+         * materialized lazily, so the IDs can be indexed without touching the products.
+         *
+         * @param products the product list to adopt.
+         * @param idAt returns the ID of the product at an index.
+         */
+        void loadProducts(List<Product> products, IntFunction<String> idAt);
+    }
+
+    /**
+     * Reads the persisted users and products.
+     *
+     * @param loader receives the loaded state.
+     * @throws IOException if the state cannot be read.
+     */
+    void load(Loader loader) throws IOException;
+
+    /**
+     * Inserts or replaces a user.
+     *
+     * @param user the user to store.
+     * @throws IOException if the change cannot be recorded.
+     */
+    void upsertUser(User user) throws IOException;
+
+    /**
+     * Inserts or replaces a product.
+     *
+     * @param product the product to store.
+     * @throws IOException if the change cannot be recorded.
+     */
+    void upsertProduct(Product product) throws IOException;
+
+    /**
+     * Deletes a user.
+     *
+     * @param userId the ID of the user to delete.
+     * @throws IOException if the change cannot be recorded.
+     */
+    void deleteUser(String userId) throws IOException;
+
+    /**
+     * Deletes a product.
+     *
+     * @param productId the ID of the product to delete.
+     * @throws IOException if the change cannot be recorded.
+     */
+    void deleteProduct(String productId) throws IOException;
+
+    /**
+     * Starts a transaction grouping the following changes.
+     *
+     * @throws IOException if the transaction cannot be started.
+     */
+    void begin() throws IOException;
+
+    /**
+     * Commits the changes made since {@link #begin()} as one unit.
+     *
+     * @throws IOException if the transaction cannot be committed.
+     */
+    void commit() throws IOException;
+
+    /**
+     * Discards the changes made since {@link #begin()}.
+     *
+     * @throws IOException if the transaction cannot be rolled back.
+     */
+    void rollback() throws IOException;
+
+    /**
+     * Blocks until every committed change is on stable storage.
+     *
+     * @throws IOException if a pending write failed.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Returns whether incremental state has grown enough that the engine wants a {@link #checkpoint}.
+     *
+     * @return true if the database should checkpoint.
+     */
+    boolean needsCheckpoint();
+
+    /**
+     * Writes the complete state, allowing the engine to discard incremental logs.
+     * The state is captured before this returns, but an engine may write it in the background;
+     * {@link #flush()} waits until it is written.
+     *
+     * @param users every user.
+     * @param products every product.
+     * @throws IOException if the state cannot be written.
+     */
+    void checkpoint(List<User> users, List<Product> products) throws IOException;
+}
@@ -0,0 +1,275 @@
+package cop4331.client;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock of a hot product split across several counters, so that concurrent checkouts of the same
+ * product update different memory locations instead of all retrying one compare-and-set.
+ * <p>
+ * Each stripe packs its quantity in stock and its quantity reserved into one word, like
+ * {@link Product} does, and can never reserve more than it holds. A thread reserves from the stripe
+ * its thread ID hashes to; when that stripe runs dry, the thread takes the rebalance lock and moves
+ * unreserved units from the other stripes into it. Units are only ever moved, never copied, so the
+ * stripes together can never reserve more than the product has. Totals are the sum of the stripes
+ * and are only eventually consistent while units are changing hands.
+ * <p>
+ * A thread whose stripe is dry answers "sold out" without the lock if the stripes sum to too few
+ * units. Units only become available by being returned (a release, a restock or a rebalance), and
+ * each return is counted before and after it happens. The sum is trusted only if no return ran
+ * while it was taken; then every stripe held at most what was read by the end of the sum, so the
+ * product really was sold out at that moment.
+ */
+class StripedStock implements Serializable {
+    /** Longs between stripes, so that each stripe sits on its own cache line. */
+    private static final int PADDING = 16;
+
+    private final AtomicLongArray stripes;
+    private final int mask;
+    private final AtomicLong returnsStarted = new AtomicLong();  // Returns of units to a stripe begun
+    private final AtomicLong returnsFinished = new AtomicLong(); // Returns of units to a stripe completed
+
+    /**
+     * Constructs striped stock holding the given quantities.
+     *
+     * @param stripeCount the number of stripes, rounded up to a power of two.
+     * @param onHand the quantity in stock.
+     * @param reserved the quantity reserved; kept in the first stripe.
+     */
+    StripedStock(int stripeCount, int onHand, int reserved) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount));
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+
+        // Spread the unreserved units evenly; the reserved units stay with enough stock to commit them
+        int available = Math.max(0, onHand - reserved);
+        for (int i = 0; i < size; i++) {
+            int share = available / size + (i < available % size ? 1 : 0);
+            stripes.set(i * PADDING, pack(share, 0));
+        }
+        stripes.set(0, pack(onHand(stripes.get(0)) + onHand - available, reserved));
+    }
+
+    /**
+     * Retrieves the number of stripes.
+     *
+     * @return the stripe count.
+     */
+    int getStripeCount() {
+        return mask + 1;
+    }
+
+    /**
+     * Sums the quantity in stock over all stripes.
+     *
+     * @return the quantity in stock, including reserved units.
+     */
+    int getQuantity() {
+        int total = 0;
+        for (int i = 0; i <= mask; i++) {
+            total += onHand(stripes.get(i * PADDING));
+        }
+        return total;
+    }
+
+    /**
+     * Sums the unreserved quantity over all stripes.
+     *
+     * @return the quantity that can still be reserved.
+     */
+    int getAvailableQuantity() {
+        int total = 0;
+        for (int i = 0; i <= mask; i++) {
+            long current = stripes.get(i * PADDING);
+            total += onHand(current) - reserved(current);
+        }
+        return total;
+    }
+
+    /**
+     * Reserves units from this thread's stripe, rebalancing from the other stripes if it runs dry.
+     *
+     * @param quantity the number of units to reserve.
+     * @return true if the units were reserved, false if fewer were available in total.
+     */
+    boolean tryReserve(int quantity) {
+        int home = home();
+        if (reserveFrom(home, quantity)) {
+            return true;
+        }
+        // Sold out is the common case at the end of a sale; answer it without the lock unless units were returned meanwhile
+        long finished = returnsFinished.get();
+        long started = returnsStarted.get();
+        if (started == finished && getAvailableQuantity() < quantity && returnsStarted.get() == started) {
+            return false;
+        }
+        synchronized (this) {
+            // Another thread may have refilled the stripe while this one waited
+            if (reserveFrom(home, quantity)) {
+                return true;
+            }
+            int needed = quantity - available(home);
+            returnsStarted.incrementAndGet();
+            try {
+                for (int i = 1; i <= mask && needed > 0; i++) {
+                    needed -= moveAvailable((home + i) & mask, home, needed);
+                }
+            } finally {
+                returnsFinished.incrementAndGet();
+            }
+            return reserveFrom(home, quantity);
+        }
+    }
+
+    /**
+     * Removes reserved units from stock, taking them from whichever stripes hold reservations.
+     *
+     * @param quantity the number of reserved units sold.
+     */
+    void commitReservation(int quantity) {
+        int home = home();
+        int remaining = quantity;
+        for (int i = 0; i <= mask && remaining > 0; i++) {
+            int index = ((home + i) & mask) * PADDING;
+            while (remaining > 0) {
+                long current = stripes.get(index);
+                int taken = Math.min(remaining, reserved(current));
+                if (taken <= 0) {
+                    break;
+                }
+                if (stripes.compareAndSet(index, current, pack(onHand(current) - taken, reserved(current) - taken))) {
+                    remaining -= taken;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns reserved units to the available stock of whichever stripes hold reservations.
+     *
+     * @param quantity the number of reserved units to release.
+     */
+    void releaseReservation(int quantity) {
+        int home = home();
+        int remaining = quantity;
+        returnsStarted.incrementAndGet();
+        try {
+            for (int i = 0; i <= mask && remaining > 0; i++) {
+                int index = ((home + i) & mask) * PADDING;
+                while (remaining > 0) {
+                    long current = stripes.get(index);
+                    int released = Math.min(remaining, reserved(current));
+                    if (released <= 0) {
+                        break;
+                    }
+                    if (stripes.compareAndSet(index, current, pack(onHand(current), reserved(current) - released))) {
+                        remaining -= released;
+                    }
+                }
+            }
+        } finally {
+            returnsFinished.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds units to this thread's stripe.
+     *
+     * @param quantity the number of units to add.
+     */
+    void restock(int quantity) {
+        returnsStarted.incrementAndGet();
+        try {
+            stripes.addAndGet(home() * PADDING, (long) quantity << 32);
+        } finally {
+            returnsFinished.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets the total quantity in stock, adding to or removing unreserved units from the stripes.
+     * Outstanding reservations are kept.
+     *
+     * @param quantity the new quantity in stock.
+     */
+    synchronized void setQuantity(int quantity) {
+        int delta = quantity - getQuantity();
+        if (delta >= 0) {
+            restock(delta);
+            return;
+        }
+        int excess = -delta;
+        for (int i = 0; i <= mask && excess > 0; i++) {
+            excess -= moveAvailable(i, -1, excess);
+        }
+        if (excess > 0) {
+            stripes.addAndGet(0, -((long) excess << 32)); // Only reserved units are left; match the single-counter behavior
+        }
+    }
+
+    /**
+     * Moves up to {@code max} unreserved units out of a stripe.
+     *
+     * @param from the stripe to take units from.
+     * @param to the stripe to add them to, or -1 to remove them from stock.
+     * @param max the maximum number of units to move.
+     * @return the number of units moved.
+     */
+    private int moveAvailable(int from, int to, int max) {
+        int index = from * PADDING;
+        while (true) {
+            long current = stripes.get(index);
+            int moved = Math.min(max, onHand(current) - reserved(current));
+            if (moved <= 0) {
+                return 0;
+            }
+            if (stripes.compareAndSet(index, current, pack(onHand(current) - moved, reserved(current)))) {
+                if (to >= 0) {
+                    stripes.addAndGet(to * PADDING, (long) moved << 32);
+                }
+                return moved;
+            }
+        }
+    }
+
+    private boolean reserveFrom(int stripe, int quantity) {
+        int index = stripe * PADDING;
+        while (true) {
+            long current = stripes.get(index);
+            int onHand = onHand(current);
+            int reserved = reserved(current);
+            if (onHand - reserved < quantity) {
+                return false;
+            }
+            if (stripes.compareAndSet(index, current, pack(onHand, reserved + quantity))) {
+                return true;
+            }
+        }
+    }
+
+    private int available(int stripe) {
+        long current = stripes.get(stripe * PADDING);
+        return onHand(current) - reserved(current);
+    }
+
+    private int home() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask; // Fibonacci hash spreads sequential IDs
+    }
+
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int onHand(long stock) {
+        return (int) (stock >> 32);
+    }
+
+    private static int reserved(long stock) {
+        return (int) stock;
+    }
+}
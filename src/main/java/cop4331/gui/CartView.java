@@ -4,7 +4,9 @@ import cop4331.client.Cart;
 import cop4331.client.Customer;
 import cop4331.client.Database;
 import cop4331.client.LineItem;
+import cop4331.client.Money;
 import cop4331.client.Product;
+import cop4331.client.PromotionEngine;
 import cop4331.gui.CheckoutView;
 
 import javax.swing.*;
@@ -104,7 +106,11 @@ public class CartView extends JFrame {
     }
 
     private void updateTotal() {
-        totalLabel.setText("Total: $" + String.format("%.2f", cart.getTotal()));
+        // Charged at checkout; includes the sellers' promotions
+        PromotionEngine.Quote quote = PromotionEngine.getInstance().quote(cart);
+        String savings = quote.getDiscountCents() > 0
+                ? String.format(" (you save $%.2f)", Money.toDollars(quote.getDiscountCents())) : "";
+        totalLabel.setText("Total: $" + String.format("%.2f", quote.getTotal()) + savings);
     }
 
     private void proceedToCheckout() {
@@ -159,11 +165,11 @@ public class CartView extends JFrame {
                 case 0:
                     return product.getName();
                 case 1:
-                    return "$" + String.format("%.2f", product.getPrice());
+                    return "$" + String.format("%.2f", PromotionEngine.getInstance().getPrice(product));
                 case 2:
                     return item.getQuantity();
                 case 3:
-                    return "$" + String.format("%.2f", product.getPrice() * item.getQuantity());
+                    return "$" + String.format("%.2f", Money.toDollars(PromotionEngine.getInstance().lineCents(product, item.getQuantity())));
                 case 4:
                     return "Remove";
                 default:
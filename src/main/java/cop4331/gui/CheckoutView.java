@@ -2,10 +2,12 @@ package cop4331.gui;
 
 import cop4331.client.Customer;
 import cop4331.client.Cart;
-import cop4331.client.Payment;
+import cop4331.client.PromotionEngine;
+import cop4331.client.StockReservation;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.UUID;
 
 /**
  * The CheckoutView class provides a window where customers can input credit card information to complete the checkout process.
@@ -13,6 +15,7 @@ import java.awt.*;
 public class CheckoutView extends JDialog {
     private Customer customer;
     private Cart cart;
+    private String requestId = UUID.randomUUID().toString(); // Idempotency key of this checkout and its payment
 
     private JTextField cardNumberField;
     private JTextField expirationField;
@@ -40,7 +43,7 @@ public class CheckoutView extends JDialog {
         cvvField = new JTextField(3);
         submitButton = new JButton("Submit Payment");
         cancelButton = new JButton("Cancel");
-        totalLabel = new JLabel("Total: $" + String.format("%.2f", cart.getTotal()));
+        totalLabel = new JLabel("Total: $" + String.format("%.2f", PromotionEngine.getInstance().quote(cart).getTotal()));
     }
 
     private void layoutComponents() {
@@ -104,7 +107,6 @@ public class CheckoutView extends JDialog {
         String cardNumber = cardNumberField.getText().trim();
         String expiration = expirationField.getText().trim();
         String cvv = cvvField.getText().trim();
-        double amount = cart.getTotal();
 
         // Basic validation
         if (cardNumber.isEmpty() || expiration.isEmpty() || cvv.isEmpty()) {
@@ -127,20 +129,38 @@ public class CheckoutView extends JDialog {
             return;
         }
 
-        // Simulate payment processing
-        Payment payment = new Payment();
-        boolean paymentSuccess = payment.processPayment(cardNumber, expiration, cvv, amount);
-        if (paymentSuccess) {
-            // Clear the cart
-            customer.checkout(); // Reduces stock quantity
-
-            // Inform the user
-            JOptionPane.showMessageDialog(this, "Payment successful! Thank you for your purchase.");
-
-            // Close the checkout window
-            dispose();
-        } else {
-            JOptionPane.showMessageDialog(this, "Payment failed. Please try again.", "Payment Error", JOptionPane.ERROR_MESSAGE);
+        // Set the stock aside before charging, so the customer is never charged for sold-out items
+        StockReservation reservation = customer.reserveCart();
+        if (reservation == null) {
+            JOptionPane.showMessageDialog(this, "Some items in your cart are no longer in stock.", "Out of Stock", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+
+        // Charge the promotional price of exactly what was reserved
+        double amount = PromotionEngine.getInstance().quote(reservation.getItems()).getTotal();
+
+        // Pay and place the order in the background so the window stays responsive. The payment is
+        // keyed on the request ID, so retrying after an error never charges the card a second time.
+        submitButton.setEnabled(false);
+        customer.checkout(requestId, reservation, cardNumber, expiration, cvv, amount)
+                .whenComplete((purchased, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        submitButton.setEnabled(true);
+                        JOptionPane.showMessageDialog(this, "Your order could not be completed. Please try again.", "Checkout Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    if (!purchased) {
+                        requestId = UUID.randomUUID().toString(); // Nothing was charged; the decline is remembered
+                        submitButton.setEnabled(true);
+                        JOptionPane.showMessageDialog(this, "Payment failed. Please try again.", "Payment Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+
+                    // Inform the user
+                    JOptionPane.showMessageDialog(this, "Payment successful! Thank you for your purchase.");
+
+                    // Close the checkout window
+                    dispose();
+                }));
     }
 }
@@ -4,14 +4,26 @@ import cop4331.client.Customer;
 import cop4331.client.Database;
 import cop4331.client.Product;
 import cop4331.client.Cart;
+import cop4331.client.ChangeSet;
 import cop4331.client.Observer;
 import cop4331.client.LineItem;
+import cop4331.client.PromotionEngine;
 
 import cop4331.gui.CheckoutView; // Import CheckoutView
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * GUI class representing the customer view in the system.
@@ -25,6 +37,18 @@ public class CustomerView extends JFrame implements Observer<Cart> {
     /** Text area for displaying available products. */
     private JTextArea productDisplay;
 
+    /** Line of each product in the product display, so single products can be redrawn. */
+    private final Map<String, Integer> productLines = new HashMap<>();
+
+    /** ID of the product on each line of the product display. */
+    private final List<String> lineProducts = new ArrayList<>();
+
+    /** Maximum number of search results shown in the product display. */
+    private static final int SEARCH_RESULTS = 100;
+
+    /** Text field for searching product names and descriptions; empty to show every product. */
+    private JTextField searchField;
+
     /** Text area for displaying items in the customer's cart. */
     private JTextArea cartDisplay;
 
@@ -87,13 +111,18 @@ public class CustomerView extends JFrame implements Observer<Cart> {
         add(bottomPanel, BorderLayout.SOUTH);
 
         // Add cart icon to the top right
-        JPanel topPanel = new JPanel(new BorderLayout());
+        JPanel topPanel = new JPanel(new BorderLayout(5, 5));
         cartIcon = new JButton("Cart (0)");
         topPanel.add(cartIcon, BorderLayout.EAST);
+
+        // Search field, filtering the product display as the customer types
+        topPanel.add(new JLabel("Search:"), BorderLayout.WEST);
+        searchField = new JTextField();
+        topPanel.add(searchField, BorderLayout.CENTER);
         add(topPanel, BorderLayout.NORTH);
 
-        // Register as an observer of the cart
-        customer.getCart().addObserver(this);
+        // Register as an observer of the cart, updated on the event thread; held weakly, so a closed view is not kept alive
+        customer.getCart().addObserver(this, SwingUtilities::invokeLater);
 
         // Add ActionListener to cartIcon
         cartIcon.addActionListener(e -> {
@@ -104,7 +133,39 @@ public class CustomerView extends JFrame implements Observer<Cart> {
         setLocationRelativeTo(null);
 
         // Load products into the display
-        updateProductDisplay(Database.getInstance().getProducts());
+        refreshProductDisplay();
+
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refreshProductDisplay();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refreshProductDisplay();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refreshProductDisplay();
+            }
+        });
+
+        // Clicking a product fills in its ID
+        productDisplay.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                try {
+                    int line = productDisplay.getLineOfOffset(productDisplay.viewToModel(e.getPoint()));
+                    if (line < lineProducts.size()) {
+                        productIdField.setText(lineProducts.get(line));
+                    }
+                } catch (BadLocationException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        });
 
         // Initial update of cart display and icon
         updateCartDisplay();
@@ -117,14 +178,11 @@ public class CustomerView extends JFrame implements Observer<Cart> {
                 int qty = getQuantity();
 
                 // Find the product in the database
-                Product product = Database.getInstance().getProducts().stream()
-                        .filter(p -> p.getId().equals(productId))
-                        .findFirst()
-                        .orElse(null);
+                Product product = Database.getInstance().getProductById(productId);
 
                 if (product == null) {
                     JOptionPane.showMessageDialog(this, "Product not found!", "Error", JOptionPane.ERROR_MESSAGE);
-                } else if (product.getQuantity() < qty) {
+                } else if (product.getAvailableQuantity() < qty) {
                     JOptionPane.showMessageDialog(this, "Insufficient stock for " + product.getName(), "Error", JOptionPane.ERROR_MESSAGE);
                 } else {
                     customer.addToCart(product, qty);
@@ -158,13 +216,60 @@ public class CustomerView extends JFrame implements Observer<Cart> {
      * @param products the list of products to display.
      */
     public void updateProductDisplay(List<Product> products) {
-        productDisplay.setText("");
+        StringBuilder text = new StringBuilder();
+        productLines.clear();
+        lineProducts.clear();
         for (Product product : products) {
-            productDisplay.append(product.getId() + ": " + product.getName() +
-                    " - $" + product.getPrice() + " (Stock: " + product.getQuantity() + ")\n");
+            productLines.put(product.getId(), productLines.size());
+            lineProducts.add(product.getId());
+            text.append(formatProduct(product)).append('\n');
+        }
+        productDisplay.setText(text.toString());
+        productDisplay.setCaretPosition(0);
+    }
+
+    /**
+     * Updates the product display with the products matching the search field, best match first,
+     * or with every product if the search field is empty.
+     */
+    public void refreshProductDisplay() {
+        String query = searchField.getText().trim();
+        updateProductDisplay(query.isEmpty()
+                ? Database.getInstance().getProducts()
+                : Database.getInstance().searchProducts(query, SEARCH_RESULTS));
+    }
+
+    /**
+     * Redraws the lines of the given products in the product display, for example after their stock changed.
+     * Products that are not displayed or are gone from the catalog are skipped until the next full refresh.
+     * Falls back to redrawing every product if the display no longer has a recorded line.
+     *
+     * @param productIds the IDs of the products to redraw.
+     */
+    public void updateProductLines(Set<String> productIds) {
+        try {
+            for (String productId : productIds) {
+                Integer line = productLines.get(productId);
+                Product product = Database.getInstance().getProductById(productId);
+                if (line == null || product == null) {
+                    continue; // Not displayed, or gone from the catalog; shown on the next full refresh
+                }
+                int start = productDisplay.getLineStartOffset(line);
+                int end = productDisplay.getLineEndOffset(line) - 1; // Keep the newline
+                productDisplay.replaceRange(formatProduct(product), start, end);
+            }
+        } catch (BadLocationException e) {
+            refreshProductDisplay();
         }
     }
 
+    private static String formatProduct(Product product) {
+        double price = PromotionEngine.getInstance().getPrice(product);
+        String sale = price < product.getPrice() ? String.format(" (was $%.2f)", product.getPrice()) : "";
+        return product.getId() + ": " + product.getName() +
+                " - $" + String.format("%.2f", price) + sale + " (Stock: " + product.getAvailableQuantity() + ")";
+    }
+
     /**
      * Updates the cart display with the items currently in the customer's cart.
      */
@@ -204,16 +309,31 @@ public class CustomerView extends JFrame implements Observer<Cart> {
     }
 
     /**
-     * Called when the cart is updated.
+     * Called on the event thread when the cart is updated.
      *
      * @param cart the cart that was updated.
      */
     @Override
     public void update(Cart cart) {
-        SwingUtilities.invokeLater(() -> {
-            updateCartDisplay();
-            updateCartIcon();
-            updateProductDisplay(Database.getInstance().getProducts()); // Refresh product display
-        });
+        updateCartDisplay();
+        updateCartIcon();
+        refreshProductDisplay(); // Refresh product display, keeping the search
+    }
+
+    /**
+     * Called on the event thread when the cart is updated, with the products whose lines changed.
+     * Only the stock of those products can have changed, so only their lines are redrawn.
+     *
+     * @param cart the cart that was updated.
+     * @param changes the product IDs added to, removed from or changed in the cart.
+     */
+    @Override
+    public void update(Cart cart, ChangeSet changes) {
+        Set<String> productIds = new LinkedHashSet<>(changes.getAdded());
+        productIds.addAll(changes.getRemoved());
+        productIds.addAll(changes.getChanged());
+        updateCartDisplay();
+        updateCartIcon();
+        updateProductLines(productIds);
     }
 }
@@ -4,11 +4,15 @@ import cop4331.client.Product;
 import cop4331.client.Seller;
 import cop4331.client.FinancialData;
 import cop4331.client.Database;
-import cop4331.client.DiscountedProduct;
+import cop4331.client.Money;
+import cop4331.client.PromotionEngine;
+import cop4331.client.PromotionRule;
 import cop4331.client.ProductBundle;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -28,6 +32,7 @@ public class SellerView extends JFrame {
     private JButton viewFinancialButton;
     private JButton createBundleButton;
     private JButton applyDiscountButton;
+    private JButton removeDiscountButton;
 
     /**
      * Constructs the seller view with the specified seller.
@@ -131,11 +136,13 @@ public class SellerView extends JFrame {
         viewFinancialButton = new JButton("View Financial Data");
         createBundleButton = new JButton("Create Bundle");
         applyDiscountButton = new JButton("Apply Discount");
+        removeDiscountButton = new JButton("Remove Discount");
 
         buttonsPanel.add(addProductButton);
         buttonsPanel.add(viewFinancialButton);
         buttonsPanel.add(createBundleButton);
         buttonsPanel.add(applyDiscountButton);
+        buttonsPanel.add(removeDiscountButton);
 
         bottomPanel.add(buttonsPanel);
 
@@ -160,16 +167,16 @@ public class SellerView extends JFrame {
                     JOptionPane.showMessageDialog(this, "Product description cannot be empty!", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (price <= 0) {
-                    JOptionPane.showMessageDialog(this, "Price must be greater than 0!", "Error", JOptionPane.ERROR_MESSAGE);
+                if (price <= 0 || !Money.isValidPrice(price)) {
+                    JOptionPane.showMessageDialog(this, String.format("Price must be greater than 0 and at most $%,.2f!", Money.MAX_PRICE), "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
                 if (quantity <= 0) {
                     JOptionPane.showMessageDialog(this, "Quantity must be greater than 0!", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                if (invoicePrice <= 0) {
-                    JOptionPane.showMessageDialog(this, "Invoice price must be greater than 0!", "Error", JOptionPane.ERROR_MESSAGE);
+                if (invoicePrice <= 0 || !Money.isValidPrice(invoicePrice)) {
+                    JOptionPane.showMessageDialog(this, String.format("Invoice price must be greater than 0 and at most $%,.2f!", Money.MAX_PRICE), "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
 
@@ -177,8 +184,8 @@ public class SellerView extends JFrame {
                 Product product = new Product(productId, name, description, price, quantity, seller.getId(), invoicePrice, "product");
                 seller.addProduct(product);
 
-                // Save the updated data to products.json
-                Database.getInstance().saveData();
+                // Save the seller's inventory and costs; the product itself is saved when added
+                Database.getInstance().updateUser(seller);
 
                 updateInventoryDisplay();
 
@@ -207,6 +214,7 @@ public class SellerView extends JFrame {
         // Action listeners for product bundle and discount buttons
         createBundleButton.addActionListener(e -> createBundle());
         applyDiscountButton.addActionListener(e -> applyDiscount());
+        removeDiscountButton.addActionListener(e -> removeDiscount());
 
         // Initial inventory display
         updateInventoryDisplay();
@@ -222,6 +230,13 @@ public class SellerView extends JFrame {
             inventoryDisplay.append("Name: " + product.getName() + "\n");
             inventoryDisplay.append("Description: " + product.getDescription() + "\n");
             inventoryDisplay.append("Listed Price: $" + product.getPrice() + "\n");
+            for (PromotionRule rule : promotionsFor(product)) {
+                inventoryDisplay.append("Promotion: " + describe(rule) + "\n");
+            }
+            double price = PromotionEngine.getInstance().getPrice(product);
+            if (price != product.getPrice()) {
+                inventoryDisplay.append(String.format("Promotional Price: $%.2f%n", price));
+            }
             inventoryDisplay.append("Invoice Price: $" + product.getInvoicePrice() + "\n");
             inventoryDisplay.append("Stock: " + product.getQuantity() + "\n");
             inventoryDisplay.append("-----------------------------------\n");
@@ -331,16 +346,13 @@ public class SellerView extends JFrame {
                 String discountRateStr = JOptionPane.showInputDialog(this, "Enter Discount Rate (e.g., 0.10 for 10%):");
                 try {
                     double discountRate = Double.parseDouble(discountRateStr);
-                    if (discountRate <= 0 || discountRate >= 1) {
+                    if (!(discountRate > 0 && discountRate < 1)) { // Also rejects NaN
                         JOptionPane.showMessageDialog(this, "Discount rate must be between 0 and 1.", "Error", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
 
-                    // Create a DiscountedProduct and replace the original product in the inventory
-                    DiscountedProduct discountedProduct = new DiscountedProduct(product, discountRate);
-                    seller.getInventory().removeProduct(product);
-                    seller.getInventory().addProduct(discountedProduct);
-                    Database.getInstance().saveData();
+                    // Add a promotion for the product; it stacks with any other promotion without wrapping the product
+                    PromotionEngine.getInstance().addRule(new PromotionRule.Percentage(discountRate).forProduct(product.getId()));
 
                     updateInventoryDisplay();
 
@@ -348,11 +360,85 @@ public class SellerView extends JFrame {
 
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(this, "Invalid discount rate.", "Error", JOptionPane.ERROR_MESSAGE);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "The discount is applied but could not be saved.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
         }
     }
 
+    /**
+     * Removes a promotion from one of the seller's products.
+     */
+    private void removeDiscount() {
+        List<PromotionRule> rules = new ArrayList<>();
+        List<String> choices = new ArrayList<>();
+        for (Product product : seller.getInventory().getProducts()) {
+            for (PromotionRule rule : promotionsFor(product)) {
+                if (!rules.contains(rule)) {
+                    rules.add(rule);
+                    choices.add(product.getName() + ": " + describe(rule));
+                }
+            }
+        }
+
+        if (rules.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "None of your products have a discount.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        String[] options = choices.toArray(new String[0]);
+        String selected = (String) JOptionPane.showInputDialog(this, "Select a Discount:", "Remove Discount",
+                JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if (selected != null) {
+            try {
+                PromotionEngine.getInstance().removeRule(rules.get(choices.indexOf(selected)).getId());
+                updateInventoryDisplay();
+                JOptionPane.showMessageDialog(this, "Discount removed successfully!");
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "The discount is removed but could not be saved.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the promotions that apply to a product.
+     *
+     * @param product the product.
+     * @return the rules of the promotion engine that apply to the product.
+     */
+    private static List<PromotionRule> promotionsFor(Product product) {
+        List<PromotionRule> rules = new ArrayList<>();
+        for (PromotionRule rule : PromotionEngine.getInstance().getRules()) {
+            if (rule.appliesTo(product)) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Describes a promotion for display.
+     *
+     * @param rule the promotion rule.
+     * @return a short description of the discount.
+     */
+    private static String describe(PromotionRule rule) {
+        if (rule instanceof PromotionRule.Percentage) {
+            return String.format("%.1f%% off", ((PromotionRule.Percentage) rule).getRate() * 100);
+        } else if (rule instanceof PromotionRule.FixedAmount) {
+            return String.format("$%.2f off", ((PromotionRule.FixedAmount) rule).getAmount());
+        } else if (rule instanceof PromotionRule.BuyXGetY) {
+            PromotionRule.BuyXGetY buyXGetY = (PromotionRule.BuyXGetY) rule;
+            return "Buy " + buyXGetY.getBuyQuantity() + ", get " + buyXGetY.getFreeQuantity() + " free";
+        } else if (rule instanceof PromotionRule.Tiered) {
+            return "Quantity discount " + ((PromotionRule.Tiered) rule).getTiers();
+        }
+        return rule.getClass().getSimpleName();
+    }
+
     /**
      * Retrieves the product name entered by the seller.
      *
@@ -0,0 +1,116 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Checks that bundles in the {@link Database} use the catalog's own instances of their products,
+ * both when loaded with copies of them and after a bundled product is replaced by an update, so
+ * bundle prices stay current and bundles cannot sell stock the catalog no longer has.
+ */
+public class BundleLinkingTest {
+    @Test
+    public void loadedBundleUsesCatalogProducts() {
+        Database database = load();
+        Product mug = database.getProductById("mug");
+        ProductBundle bundle = (ProductBundle) database.getProductById("gift-set");
+        assertSame(mug, bundle.getProducts().get(0));
+        assertSame(database.getProductById("pen"), bundle.getProducts().get(1));
+
+        // Stock sold on its own is gone from the bundle too
+        assertTrue(mug.tryReserve(3));
+        mug.commitReservation(3);
+        assertEquals(2, bundle.getAvailableQuantity());
+        assertTrue(bundle.tryReserve(2));
+        assertFalse(bundle.tryReserve(1));
+        assertEquals(0, mug.getAvailableQuantity());
+    }
+
+    @Test
+    public void updatedProductIsRelinked() {
+        Database database = load();
+        ProductBundle bundle = (ProductBundle) database.getProductById("gift-set");
+        assertEquals((8.00 + 1.50) * 0.9, bundle.getPrice(), 1e-9);
+
+        Product cheaperMug = mug();
+        cheaperMug.setPrice(6.00);
+        database.updateProduct(cheaperMug);
+        assertSame(database.getProductById("mug"), bundle.getProducts().get(0));
+        assertEquals((6.00 + 1.50) * 0.9, bundle.getPrice(), 1e-9);
+
+        database.getProductById("mug").setPrice(4.00);
+        assertEquals((4.00 + 1.50) * 0.9, bundle.getPrice(), 1e-9);
+    }
+
+    @Test
+    public void replacedAndRemovedBundlesAreUnlinked() {
+        Database database = load();
+        CountingBundle first = new CountingBundle();
+        first.addProduct(mug());
+        database.addProduct(first);
+        CountingBundle second = new CountingBundle();
+        second.addProduct(mug());
+        second.addProduct(pen());
+        database.updateProduct(second);
+        assertSame(database.getProductById("pen"), second.getProducts().get(1));
+
+        first.changes = 0;
+        database.getProductById("mug").setPrice(7.00);
+        database.getProductById("pen").setPrice(2.00);
+        assertEquals(0, first.changes); // The replaced bundle is no longer told
+        assertEquals((7.00 + 2.00) * 0.9, second.getPrice(), 1e-9);
+
+        // An update to the mug relinks the bundles containing it
+        database.updateProduct(mug());
+        assertSame(database.getProductById("mug"), second.getProducts().get(0));
+        assertSame(database.getProductById("mug"),
+                ((ProductBundle) database.getProductById("gift-set")).getProducts().get(0));
+
+        database.deleteProduct("offer");
+        second.changes = 0;
+        database.getProductById("mug").setPrice(9.00);
+        assertEquals(0, second.changes);
+    }
+
+    /**
+     * A bundle that counts the changes its products tell it about.
+     */
+    private static class CountingBundle extends ProductBundle {
+        private int changes;
+
+        CountingBundle() {
+            super("offer", "Offer", "");
+        }
+
+        @Override
+        protected void pricingChanged() {
+            changes++;
+            super.pricingChanged();
+        }
+    }
+
+    private static Database load() {
+        // The stored bundle holds its own copies of the products, as one read from disk does
+        ProductBundle bundle = new ProductBundle("gift-set", "Gift set", "");
+        bundle.addProduct(mug());
+        bundle.addProduct(pen());
+        return new Database(new InMemoryStorageEngine(
+                Collections.singletonList(new Seller("seller-1", "seller", "password")),
+                Arrays.asList(mug(), pen(), bundle)));
+    }
+
+    private static Product mug() {
+        return new Product("mug", "Mug", "", 8.00, 5, "seller-1", 4.00, "product");
+    }
+
+    private static Product pen() {
+        return new Product("pen", "Pen", "", 1.50, 50, "seller-1", 0.50, "product");
+    }
+}
@@ -0,0 +1,123 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link CartHolds} return held stock when holds expire or are released, and that a
+ * hold racing between conversion at checkout and expiry ends exactly once.
+ */
+public class CartHoldsTest {
+    @Test
+    public void expiryReturnsStock() throws InterruptedException {
+        CartHolds holds = new CartHolds(150, TimeUnit.MILLISECONDS);
+        Product product = product(10);
+        CartHold hold = holds.hold(product, 4);
+        assertNotNull(hold);
+        assertEquals(6, product.getAvailableQuantity());
+        assertNull(holds.hold(product, 7));
+
+        awaitEnded(holds, 1);
+        assertFalse(hold.isActive());
+        assertEquals(10, product.getAvailableQuantity());
+        assertEquals(1, holds.getExpirations());
+        assertEquals(0, holds.getActiveHolds());
+        assertFalse(holds.convert(hold));
+        assertEquals(10, product.getAvailableQuantity());
+    }
+
+    @Test
+    public void releaseCancelsExpiry() throws InterruptedException {
+        CartHolds holds = new CartHolds(100, TimeUnit.MILLISECONDS);
+        Product product = product(10);
+        CartHold hold = holds.hold(product, 3);
+        holds.release(hold);
+        holds.release(hold);
+        assertEquals(10, product.getAvailableQuantity());
+        assertEquals(1, holds.getReleases());
+
+        Thread.sleep(400); // Past the deadline and a few ticks
+        assertEquals(0, holds.getExpirations());
+        assertEquals(10, product.getAvailableQuantity());
+    }
+
+    @Test
+    public void disabledHoldsReserveNothing() {
+        CartHolds holds = new CartHolds(0, TimeUnit.SECONDS);
+        Product product = product(10);
+        assertNull(holds.hold(product, 1));
+        assertEquals(10, product.getAvailableQuantity());
+    }
+
+    @Test
+    public void conversionRacingExpiryEndsHoldOnce() throws InterruptedException {
+        int count = 2_000;
+        int threads = 4;
+        CartHolds holds = new CartHolds(100, TimeUnit.MILLISECONDS);
+        Product product = product(count);
+        List<CartHold> held = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            held.add(holds.hold(product, 1));
+        }
+        assertEquals(0, product.getAvailableQuantity());
+
+        // Convert the holds spread from 100 to 300 ms, so conversions race the wheel expiring them
+        AtomicInteger converted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            new Thread(() -> {
+                try {
+                    // The holds expire in the tick ending about 200 ms after they were placed
+                    long start = System.nanoTime();
+                    for (int i = thread; i < count; i += threads) {
+                        long convertAt = TimeUnit.MILLISECONDS.toNanos(100 + 200L * i / count);
+                        long wait = start + convertAt - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        if (holds.convert(held.get(i))) {
+                            converted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        awaitEnded(holds, count);
+
+        assertEquals(converted.get(), holds.getConversions());
+        assertEquals(count, holds.getConversions() + holds.getExpirations());
+        assertEquals(0, holds.getActiveHolds());
+        // Converted units stay reserved for their checkouts; expired ones are back in stock
+        assertEquals(holds.getExpirations(), product.getAvailableQuantity());
+        System.out.println("Cart holds racing expiry: " + holds);
+    }
+
+    private static void awaitEnded(CartHolds holds, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (holds.getExpirations() + holds.getConversions() + holds.getReleases() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Product product(int quantity) {
+        return new Product("mug", "Mug", "", 8.00, quantity, "seller-1", 4.00, "product");
+    }
+}
@@ -0,0 +1,126 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that a {@link Cart} keeps one line item per product: adding a product again merges the
+ * quantities, items are found by product ID rather than by instance, and duplicates passed to
+ * {@link Cart#setItems(List)} are merged without changing the caller's items.
+ */
+public class CartTest {
+    @Test
+    public void addingAgainMergesQuantities() {
+        Cart cart = new Cart();
+        cart.addItem(mug(), 2);
+        cart.addItem(pen(), 1);
+        cart.addItem(mug(), 3); // Another instance of the same product
+
+        assertEquals(2, cart.getItems().size());
+        assertEquals("mug", cart.getItems().get(0).getProduct().getId());
+        assertEquals(5, cart.getItem("mug").getQuantity());
+        assertEquals(5 * 800 + 150, cart.getTotalCents());
+    }
+
+    @Test
+    public void removeAndUpdateFindItemsByProductId() {
+        Cart cart = new Cart();
+        cart.addItem(mug(), 2);
+        cart.addItem(pen(), 4);
+
+        cart.updateItemQuantity(mug(), 1);
+        assertEquals(1, cart.getItem("mug").getQuantity());
+        assertEquals(800 + 4 * 150, cart.getTotalCents());
+
+        cart.removeItem(pen());
+        assertNull(cart.getItem("pen"));
+        assertEquals(1, cart.getItems().size());
+        assertEquals(800, cart.getTotalCents());
+
+        cart.removeItem(pen()); // Not in the cart
+        cart.updateItemQuantity(pen(), 3);
+        assertEquals(1, cart.getItems().size());
+
+        cart.removeItem(mug());
+        assertTrue(cart.isEmpty());
+        assertEquals(0, cart.getTotalCents());
+    }
+
+    @Test
+    public void setItemsMergesDuplicatesWithoutChangingThem() {
+        LineItem first = new LineItem(mug(), 2);
+        LineItem pens = new LineItem(pen(), 1);
+        LineItem second = new LineItem(mug(), 3);
+        List<LineItem> items = Arrays.asList(first, pens, second);
+
+        Cart cart = new Cart();
+        cart.setItems(items);
+        assertEquals(2, cart.getItems().size());
+        assertEquals(5, cart.getItem("mug").getQuantity());
+        assertSame(pens, cart.getItem("pen"));
+        assertEquals(5 * 800 + 150, cart.getTotalCents());
+
+        // The caller's items are unchanged
+        assertEquals(2, first.getQuantity());
+        assertEquals(3, second.getQuantity());
+        assertEquals(Arrays.asList(first, pens, second), items);
+    }
+
+    @Test
+    public void batchNotifiesOnceWithEveryChange() {
+        Cart cart = new Cart();
+        cart.addItem(pen(), 1);
+        List<ChangeSet> notifications = new ArrayList<>();
+        Observer<Cart> observer = new Observer<Cart>() {
+            @Override
+            public void update(Cart observable) {
+            }
+
+            @Override
+            public void update(Cart observable, ChangeSet changes) {
+                notifications.add(changes);
+            }
+        };
+        cart.addObserver(observer);
+
+        cart.beginBatch();
+        cart.addItem(mug(), 1);
+        cart.beginBatch(); // Nested
+        cart.updateItemQuantity(mug(), 2);
+        cart.removeItem(pen());
+        cart.endBatch();
+        assertTrue(notifications.isEmpty());
+        cart.addItem(new Product("cup", "Cup", "", 3.00, 5, "seller-1", 1.00, "product"), 1);
+        cart.removeItem(new Product("cup", "Cup", "", 3.00, 5, "seller-1", 1.00, "product"));
+        cart.endBatch();
+
+        assertEquals(1, notifications.size());
+        ChangeSet changes = notifications.get(0);
+        assertEquals(Collections.singleton("mug"), changes.getAdded());
+        assertEquals(Collections.singleton("pen"), changes.getRemoved());
+        assertTrue(changes.getChanged().isEmpty());
+
+        // An empty batch does not notify
+        cart.beginBatch();
+        cart.endBatch();
+        assertEquals(1, notifications.size());
+        cart.removeObserver(observer); // Held weakly, so kept reachable until here
+    }
+
+    private static Product mug() {
+        return new Product("mug", "Mug", "", 8.00, 10, "seller-1", 4.00, "product");
+    }
+
+    private static Product pen() {
+        return new Product("pen", "Pen", "", 1.50, 50, "seller-1", 0.50, "product");
+    }
+}
@@ -0,0 +1,226 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks {@link CatalogIndex} queries against filtering and sorting a stream of the products, and
+ * benchmarks the two. Timings are printed; the assertions check that both give the same pages and counts.
+ * The benchmark builds a large catalog and only runs with {@code -Dcop4331.benchmarks=true}.
+ */
+public class CatalogIndexTest {
+    private static final int PRODUCTS = 500_000; // In the benchmark
+    private static final int BATCH = 2_500;      // Products added at once in the correctness check
+    private static final int SELLERS = 200;
+    private static final int QUERIES = 200;
+    private static final String[] TYPES = {"product", "bundle", "discountedProduct"};
+
+    private static final Comparator<Product> NAME = Comparator.comparing(Product::getName,
+            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.<String>naturalOrder())));
+
+    @After
+    public void tearDown() {
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void queriesMatchStreamFiltering() {
+        Random random = new Random(7);
+        Map<String, Product> catalog = new LinkedHashMap<>();
+        CatalogIndex index = new CatalogIndex();
+        for (int batch = 0; batch < 2; batch++) {
+            List<Product> added = new ArrayList<>();
+            for (int i = 0; i < BATCH; i++) {
+                added.add(product(random, batch * BATCH + i));
+            }
+            added.add(product(random, BATCH - 1)); // Already indexed, or listed twice in the first batch
+            added.add(product(random, BATCH));
+            for (Product product : added) {
+                catalog.put(product.getId(), product);
+            }
+            index.addAll(added);
+        }
+        // Churn enough to reuse slots and merge the sorted indexes several times
+        for (int i = 0; i < 6 * BATCH; i++) {
+            String productId = "product-" + random.nextInt(BATCH * 5 / 2);
+            if (random.nextInt(4) == 0) {
+                assertEquals(catalog.remove(productId) != null, index.remove(productId));
+            } else {
+                Product product = product(random, Integer.parseInt(productId.substring(8)));
+                catalog.put(productId, product);
+                index.index(product);
+            }
+        }
+        assertEquals(catalog.size(), index.size());
+
+        List<Product> products = new ArrayList<>(catalog.values());
+        for (int i = 0; i < 200; i++) {
+            CatalogQuery query = query(random);
+            CatalogResult result = index.query(query);
+            CatalogResult expected = streamQuery(products, query);
+            assertEquals("query " + i, expected.getProductIds(), result.getProductIds());
+            assertEquals(expected.getTotal(), result.getTotal());
+            assertEquals(expected.getSellerCounts(), result.getSellerCounts());
+            assertEquals(expected.getTypeCounts(), result.getTypeCounts());
+            assertEquals(expected.getInStockCount(), result.getInStockCount());
+        }
+    }
+
+    @Test
+    public void pagesDoNotOverlap() {
+        CatalogIndex index = new CatalogIndex();
+        for (int i = 0; i < 5_000; i++) {
+            index.index(new Product("p" + i, "Same name", "", 1.0 + i % 3, 1, "seller-1", 0.5, "product"));
+        }
+        for (CatalogQuery.Sort sort : CatalogQuery.Sort.values()) {
+            List<String> pages = new ArrayList<>();
+            for (int offset = 0; offset < 5_000; offset += 700) {
+                pages.addAll(index.query(new CatalogQuery().sortBy(sort).page(offset, 700)).getProductIds());
+            }
+            assertEquals(5_000, pages.stream().distinct().count());
+        }
+    }
+
+    @Test
+    public void databaseKeepsIndexCurrent() {
+        Database database = new Database(new InMemoryStorageEngine(Collections.<User>emptyList(), Arrays.asList(
+                new Product("mug", "Mug", "", 8.00, 5, "seller-1", 4.00, "product"),
+                new Product("pen", "Pen", "", 1.50, 0, "seller-2", 0.50, "product"))));
+        Database.setInstance(database);
+        CatalogQuery cheapInStock = new CatalogQuery().priceBetween(0, 5).inStock();
+        assertEquals(0, database.queryProducts(cheapInStock).getTotal());
+
+        database.updateProduct(new Product("pen", "Pen", "", 1.50, 10, "seller-2", 0.50, "product"));
+        database.addProduct(new Product("cup", "Cup", "", 4.99, 3, "seller-1", 2.00, "product"));
+        CatalogResult result = database.queryProducts(cheapInStock);
+        assertEquals(Arrays.asList("cup", "pen"), result.getProductIds());
+        assertEquals("Cup", result.getProducts().get(0).getName());
+        assertEquals(Integer.valueOf(1), result.getSellerCounts().get("seller-2"));
+
+        database.deleteProduct("cup");
+        result = database.queryProducts(new CatalogQuery().sortBy(CatalogQuery.Sort.PRICE_DESCENDING));
+        assertEquals(Arrays.asList("mug", "pen"), result.getProductIds());
+        assertEquals(2, result.getInStockCount());
+    }
+
+    @Test
+    public void benchmarkAgainstStreams() {
+        Assume.assumeTrue(Boolean.getBoolean(StorageEngineTest.BENCHMARKS_PROPERTY));
+        Random random = new Random(11);
+        List<Product> products = new ArrayList<>(PRODUCTS);
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(product(random, i));
+        }
+        CatalogIndex index = new CatalogIndex();
+        long begin = System.nanoTime();
+        index.addAll(products);
+        double buildMillis = (System.nanoTime() - begin) / 1e6;
+
+        List<CatalogQuery> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(query(random));
+        }
+        long sink = 0;
+        for (int round = 0; round < 2; round++) { // The first round warms up
+            begin = System.nanoTime();
+            for (CatalogQuery query : queries) {
+                sink += index.query(query).getTotal();
+            }
+            double indexMillis = (System.nanoTime() - begin) / 1e6 / QUERIES;
+
+            begin = System.nanoTime();
+            for (CatalogQuery query : queries) {
+                sink -= streamQuery(products, query).getTotal();
+            }
+            double streamMillis = (System.nanoTime() - begin) / 1e6 / QUERIES;
+            if (round == 1) {
+                System.out.println(String.format("Catalog queries over %d products: index built in %.0f ms; "
+                                + "index %.2f ms/query, streams %.2f ms/query (%.1fx)",
+                        PRODUCTS, buildMillis, indexMillis, streamMillis, streamMillis / indexMillis));
+            }
+        }
+        assertEquals(0, sink); // Both found the same number of matches
+        CatalogQuery sample = queries.get(0);
+        assertEquals(streamQuery(products, sample).getProductIds(), index.query(sample).getProductIds());
+    }
+
+    /**
+     * Answers a query the way callers did before the index: filter, count and sort a stream of every product.
+     */
+    private static CatalogResult streamQuery(List<Product> products, CatalogQuery query) {
+        Predicate<Product> price = product -> !query.hasPriceRange()
+                || Money.toCents(product.getPrice()) >= query.getMinPriceCents()
+                && Money.toCents(product.getPrice()) <= query.getMaxPriceCents();
+        Predicate<Product> stock = product -> !query.isInStockOnly() || product.getAvailableQuantity() > 0;
+        Predicate<Product> seller = product -> query.getSellerIds().isEmpty()
+                || query.getSellerIds().contains(product.getSellerId());
+        Predicate<Product> type = product -> query.getTypes().isEmpty() || query.getTypes().contains(product.getType());
+
+        List<Product> matches = products.stream().filter(price.and(stock).and(seller).and(type))
+                .collect(Collectors.toList());
+        Map<String, Integer> sellerCounts = products.stream().filter(price.and(stock).and(type))
+                .collect(Collectors.groupingBy(Product::getSellerId, Collectors.summingInt(product -> 1)));
+        Map<String, Integer> typeCounts = products.stream().filter(price.and(stock).and(seller))
+                .collect(Collectors.groupingBy(Product::getType, Collectors.summingInt(product -> 1)));
+        int inStock = (int) products.stream().filter(price.and(seller).and(type))
+                .filter(product -> product.getAvailableQuantity() > 0).count();
+
+        Comparator<Product> byId = Comparator.comparing(Product::getId); // Ties are broken by product ID
+        Comparator<Product> byPrice = Comparator.comparingLong((Product product) -> Money.toCents(product.getPrice()));
+        Comparator<Product> order;
+        switch (query.getSort()) {
+            case PRICE_ASCENDING:
+                order = byPrice.thenComparing(byId);
+                break;
+            case PRICE_DESCENDING:
+                order = byPrice.thenComparing(byId).reversed();
+                break;
+            default:
+                order = NAME.thenComparing(byId);
+                break;
+        }
+        List<String> page = matches.stream().sorted(order).skip(query.getOffset()).limit(query.getLimit())
+                .map(Product::getId).collect(Collectors.toList());
+        return new CatalogResult(page, matches.size(), sellerCounts, typeCounts, inStock);
+    }
+
+    private static CatalogQuery query(Random random) {
+        CatalogQuery query = new CatalogQuery();
+        if (random.nextBoolean()) {
+            double min = random.nextInt(400);
+            query.priceBetween(min, min + random.nextInt(200));
+        }
+        if (random.nextBoolean()) {
+            query.inStock();
+        }
+        for (int i = random.nextInt(3); i > 0; i--) {
+            query.fromSeller("seller-" + random.nextInt(SELLERS));
+        }
+        if (random.nextInt(3) == 0) {
+            query.ofType(TYPES[random.nextInt(TYPES.length)]);
+        }
+        query.sortBy(CatalogQuery.Sort.values()[random.nextInt(CatalogQuery.Sort.values().length)]);
+        return query.page(random.nextInt(10) == 0 ? random.nextInt(5_000) : random.nextInt(3) * 20, 20);
+    }
+
+    private static Product product(Random random, int i) {
+        return new Product("product-" + i, "Item " + Integer.toString(random.nextInt(1_000_000), 36), "",
+                (1 + random.nextInt(50_000)) / 100.0, random.nextInt(4) == 0 ? 0 : random.nextInt(100),
+                "seller-" + random.nextInt(SELLERS), 0.5, TYPES[random.nextInt(10) == 0 ? 1 + random.nextInt(2) : 0]);
+    }
+}
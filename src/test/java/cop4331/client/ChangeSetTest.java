@@ -0,0 +1,73 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks how a {@link ChangeSet} coalesces changes to the same ID.
+ */
+public class ChangeSetTest {
+    @Test
+    public void addedThenRemovedCancels() {
+        ChangeSet changes = new ChangeSet();
+        changes.recordAdded("a");
+        changes.recordChanged("a");
+        changes.recordRemoved("a");
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void removedThenAddedIsChanged() {
+        ChangeSet changes = new ChangeSet();
+        changes.recordRemoved("a");
+        changes.recordAdded("a");
+        assertEquals(ids("a"), changes.getChanged());
+        assertTrue(changes.getAdded().isEmpty());
+        assertTrue(changes.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void addedThenChangedIsAdded() {
+        ChangeSet changes = new ChangeSet();
+        changes.recordAdded("a");
+        changes.recordChanged("a");
+        assertEquals(ids("a"), changes.getAdded());
+        assertTrue(changes.getChanged().isEmpty());
+    }
+
+    @Test
+    public void changedThenRemovedIsRemoved() {
+        ChangeSet changes = new ChangeSet();
+        changes.recordChanged("a");
+        changes.recordRemoved("a");
+        assertEquals(ids("a"), changes.getRemoved());
+        assertTrue(changes.getChanged().isEmpty());
+
+        changes.recordChanged("a"); // A removed element cannot change
+        assertTrue(changes.getChanged().isEmpty());
+    }
+
+    @Test
+    public void replacedKeepsCommonIdsAsChanged() {
+        ChangeSet changes = new ChangeSet();
+        changes.recordReplaced(Arrays.asList("a", "b"), Arrays.asList("b", "c"));
+        assertEquals(ids("a"), changes.getRemoved());
+        assertEquals(ids("b"), changes.getChanged());
+        assertEquals(ids("c"), changes.getAdded());
+
+        ChangeSet unchanged = new ChangeSet();
+        unchanged.recordReplaced(Collections.<String>emptyList(), Collections.<String>emptyList());
+        assertTrue(unchanged.isEmpty());
+    }
+
+    private static Set<String> ids(String... ids) {
+        return new LinkedHashSet<>(Arrays.asList(ids));
+    }
+}
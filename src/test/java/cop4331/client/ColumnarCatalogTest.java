@@ -0,0 +1,258 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Measures memory per product and full-scan throughput of a {@link ColumnarCatalog} against the
+ * list of products and position index the database keeps in list mode. Results are printed; the
+ * assertions check that the catalog is smaller, that both scans agree, that views behave like
+ * products, and that bundles follow every change to the rows they contain.
+ */
+public class ColumnarCatalogTest {
+    private static final int SKUS = 200_000;
+    private static final int SELLERS = 500;
+    private static final int SCANS = 20;
+
+    @After
+    public void tearDown() {
+        System.clearProperty("cop4331.catalog");
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void memoryAndScanAgainstList() throws Exception {
+        long before = usedHeapAfterGc();
+        List<Product> list = new ArrayList<>(SKUS);
+        Map<String, Integer> positions = new HashMap<>(); // As the database indexes its list
+        for (int i = 0; i < SKUS; i++) {
+            list.add(product(i));
+            positions.put(list.get(i).getId(), i);
+        }
+        long listBytes = usedHeapAfterGc() - before;
+        long listSum = 0;
+        for (int scan = 0; scan < SCANS; scan++) { // Warm up
+            listSum = scanList(list);
+        }
+        long begin = System.nanoTime();
+        for (int scan = 0; scan < SCANS; scan++) {
+            listSum = scanList(list);
+        }
+        double listNanos = (System.nanoTime() - begin) / (double) SCANS / SKUS;
+        assertEquals(SKUS / 2, (int) positions.get(list.get(SKUS / 2).getId()));
+        list = null;
+        positions = null;
+
+        before = usedHeapAfterGc();
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        for (int i = 0; i < SKUS; i++) {
+            catalog.add(product(i));
+        }
+        long catalogBytes = usedHeapAfterGc() - before;
+        long catalogSum = 0;
+        for (int scan = 0; scan < SCANS; scan++) { // Warm up
+            catalogSum = scanCatalog(catalog);
+        }
+        begin = System.nanoTime();
+        for (int scan = 0; scan < SCANS; scan++) {
+            catalogSum = scanCatalog(catalog);
+        }
+        double catalogNanos = (System.nanoTime() - begin) / (double) SCANS / SKUS;
+
+        System.out.println(String.format("Catalog of %d SKUs: list %d bytes/SKU, %.1f ns/SKU scan; "
+                        + "columnar %d bytes/SKU, %.1f ns/SKU scan",
+                SKUS, listBytes / SKUS, listNanos, catalogBytes / SKUS, catalogNanos));
+        assertEquals(listSum, catalogSum);
+        assertTrue("columnar catalog used " + catalogBytes + " bytes, list " + listBytes, catalogBytes < listBytes);
+        assertEquals("product-" + (SKUS / 2), catalog.get("product-" + (SKUS / 2)).getId());
+    }
+
+    @Test
+    public void viewsShareTheirRow() throws Exception {
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        catalog.add(new Product("a", "A", "First", 2.50, 10, "seller-1", 1.00, "product"));
+        Product first = catalog.get("a");
+        Product second = catalog.get("a");
+
+        assertTrue(first.tryReserve(4));
+        assertEquals(6, second.getAvailableQuantity());
+        assertFalse(second.tryReserve(7));
+        second.commitReservation(4);
+        assertEquals(6, first.getQuantity());
+        first.setPrice(3.00);
+        assertEquals(3.00, second.getPrice(), 0);
+        assertEquals("seller-1", second.getSellerId());
+
+        // Serialized as a plain product
+        ObjectMapper objectMapper = new ObjectMapper();
+        Product copy = objectMapper.readValue(objectMapper.writeValueAsString(first), Product.class);
+        assertSame(Product.class, copy.getClass());
+        assertEquals("A", copy.getName());
+        assertEquals(6, copy.getQuantity());
+
+        // Hot mode moves the row to an object that earlier views follow
+        assertTrue(first.tryReserve(1));
+        first.enableHotMode(4);
+        assertTrue(second.isHotMode());
+        assertEquals(5, second.getAvailableQuantity());
+        second.releaseReservation(1);
+        assertEquals(6, catalog.get("a").getAvailableQuantity());
+        assertTrue(catalog.get("a").isHotMode());
+
+        // Bundles are kept as objects
+        ProductBundle bundle = new ProductBundle("bundle", "Bundle", "");
+        bundle.addProduct(catalog.get("a"));
+        catalog.add(bundle);
+        assertSame(bundle, catalog.get("bundle"));
+
+        // Removed rows stay readable through existing views
+        Product removed = catalog.get("a");
+        assertTrue(catalog.remove("a"));
+        assertNull(catalog.get("a"));
+        assertEquals("A", removed.getName());
+        assertEquals(1, catalog.size());
+    }
+
+    @Test
+    public void bundlesFollowEveryViewOfARow() {
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        catalog.add(new Product("a", "A", "", 10.0, 5, "seller-1", 5.0, "product"));
+        catalog.add(new Product("b", "B", "", 20.0, 8, "seller-1", 10.0, "product"));
+        ProductBundle bundle = new ProductBundle("bundle", "Bundle", "");
+        bundle.addProduct(catalog.get("a"));
+        bundle.addProduct(catalog.get("b"));
+        assertEquals(27.0, bundle.getPrice(), 1e-9);
+        assertEquals(5, bundle.getAvailableQuantity());
+
+        // Changes through other views of the rows
+        catalog.get("a").setPrice(20.0);
+        assertEquals(36.0, bundle.getPrice(), 1e-9);
+        assertTrue(catalog.get("a").tryReserve(3));
+        assertEquals(2, bundle.getAvailableQuantity());
+
+        // Replacing a row
+        catalog.set(catalog.rowOf("b"), new Product("b", "B", "", 30.0, 1, "seller-1", 10.0, "product"));
+        assertEquals(45.0, bundle.getPrice(), 1e-9);
+        assertEquals(1, bundle.getAvailableQuantity());
+
+        // Changes to the object a row was moved to
+        catalog.get("a").enableHotMode(4);
+        assertTrue(catalog.get("a").tryReserve(2));
+        assertEquals(0, bundle.getAvailableQuantity());
+        catalog.get("a").setPrice(10.0);
+        assertEquals(36.0, bundle.getPrice(), 1e-9);
+    }
+
+    @Test
+    public void indexSurvivesGrowthAndRemoval() {
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        List<Product> list = catalog.asList();
+        for (int i = 0; i < 50_000; i++) {
+            list.add(product(i));
+        }
+        for (int i = 0; i < 50_000; i += 2) {
+            assertTrue(catalog.remove("product-" + i));
+        }
+        list.remove(0); // product-1
+        assertEquals(24_999, list.size());
+        assertEquals("product-3", list.get(0).getId());
+        for (int i = 0; i < 50_000; i++) {
+            assertEquals(i % 2 == 1 && i != 1, catalog.get("product-" + i) != null);
+        }
+
+        list.set(0, new Product("renamed", "Renamed", "", 1.0, 1, "seller-2", 0.5, "product"));
+        assertNull(catalog.get("product-3"));
+        assertEquals("Renamed", catalog.get("renamed").getName());
+        catalog.get("renamed").setId("renamed-again");
+        assertEquals("Renamed", catalog.get("renamed-again").getName());
+        assertNull(catalog.get("renamed"));
+    }
+
+    @Test
+    public void databaseWithColumnarCatalog() {
+        System.setProperty("cop4331.catalog", "columnar");
+        Product stored = new Product("p", "P", "", 4.0, 3, "seller-1", 2.0, "product");
+        Database database = new Database(new InMemoryStorageEngine(Collections.<User>emptyList(),
+                Collections.singletonList(stored)));
+        Database.setInstance(database);
+
+        Product product = database.getProductById("p");
+        assertTrue(product.tryReserve(2));
+        assertEquals(1, database.getProductById("p").getAvailableQuantity());
+
+        Product replacement = new Product("p", "P2", "", 5.0, 3, "seller-1", 2.0, "product");
+        database.updateProduct(replacement);
+        assertEquals("P2", product.getName()); // The view reads the replaced row
+        database.addProduct(new Product("q", "Q", "", 1.0, 1, "seller-1", 0.5, "product"));
+        database.deleteProduct("p");
+        assertNull(database.getProductById("p"));
+        assertEquals(1, database.getProducts().size());
+        assertEquals("Q", database.getProducts().get(0).getName());
+
+        // A bundle's cached price follows updates to the rows it bundles
+        ProductBundle bundle = new ProductBundle("bundle", "Bundle", "");
+        bundle.addProduct(new Product("q", "Q", "", 1.0, 1, "seller-1", 0.5, "product"));
+        database.addProduct(bundle);
+        assertEquals(database.getProductById("q"), bundle.getProducts().get(0));
+        assertEquals(0.9, bundle.getPrice(), 1e-9);
+        database.updateProduct(new Product("q", "Q", "", 2.0, 1, "seller-1", 0.5, "product"));
+        assertEquals(1.8, bundle.getPrice(), 1e-9);
+        assertTrue(database.getProductById("q").tryReserve(1));
+        assertEquals(0, bundle.getAvailableQuantity());
+    }
+
+    private static long scanList(List<Product> products) {
+        long valueCents = 0;
+        for (Product product : products) {
+            if (product.getSellerId().equals("seller-7")) {
+                continue;
+            }
+            valueCents += (long) (product.getPrice() * 100) * product.getAvailableQuantity();
+        }
+        return valueCents;
+    }
+
+    private static long scanCatalog(ColumnarCatalog catalog) {
+        int excluded = catalog.sellerCode("seller-7");
+        long valueCents = 0;
+        for (int position = 0, size = catalog.size(); position < size; position++) {
+            int row = catalog.rowAt(position);
+            if (catalog.sellerCodeAt(row) == excluded) {
+                continue;
+            }
+            valueCents += (long) (catalog.priceAt(row) * 100) * catalog.availableQuantityAt(row);
+        }
+        return valueCents;
+    }
+
+    /**
+     * Builds a product with its own copy of every string, as JSON loading would.
+     */
+    private static Product product(int i) {
+        return new Product("product-" + i, "Product " + i, "Description of product " + i,
+                1.0 + (i % 1000) * 0.25, 100 + i % 50, "seller-" + (i % SELLERS), 0.5 + (i % 1000) * 0.1,
+                new String("product"));
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
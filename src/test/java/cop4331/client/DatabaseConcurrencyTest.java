@@ -0,0 +1,197 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Stress test for concurrent catalog reads while checkouts mutate the database.
+ * Read throughput is printed for one reader and for one reader per core, so scaling can be
+ * compared across machines; the assertions only check that no read or write was lost or torn.
+ */
+public class DatabaseConcurrencyTest {
+    private static final int PRODUCTS = 2000;
+    private static final int INITIAL_STOCK = 1_000_000;
+    private static final int CHECKOUT_THREADS = 2;
+    private static final int CHECKOUTS_PER_THREAD = 200;
+    private static final long MEASURE_MILLIS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Database database;
+    private Seller seller;
+    private List<Customer> customers;
+
+    @Before
+    public void setUp() throws Exception {
+        seller = new Seller("seller-1", "seller", "password");
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(new Product("p" + i, "Product " + i, "Stress test product", 2.0, INITIAL_STOCK,
+                    seller.getId(), 1.0, "product"));
+        }
+        List<User> users = new ArrayList<>();
+        users.add(seller);
+        customers = new ArrayList<>();
+        for (int i = 0; i < CHECKOUT_THREADS; i++) {
+            Customer customer = new Customer("customer-" + i, "customer" + i, "password");
+            customers.add(customer);
+            users.add(customer);
+        }
+
+        database = new Database(new InMemoryStorageEngine(users, products));
+        Database.setInstance(database);
+        OrderLedger.setInstance(new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        OrderLedger.getInstance().close();
+        OrderLedger.setInstance(null);
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void readsStayConsistentWhileCheckoutsRun() throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int[][] purchased = new int[CHECKOUT_THREADS][PRODUCTS];
+
+        List<Thread> checkoutThreads = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(CHECKOUT_THREADS);
+        for (int t = 0; t < CHECKOUT_THREADS; t++) {
+            int thread = t;
+            checkoutThreads.add(new Thread(() -> {
+                started.countDown();
+                try {
+                    Random random = new Random(thread);
+                    Customer customer = customers.get(thread);
+                    for (int i = 0; i < CHECKOUTS_PER_THREAD; i++) {
+                        int index = random.nextInt(PRODUCTS);
+                        customer.getCart().addItem(database.getProductById("p" + index), 1);
+                        customer.checkout();
+                        purchased[thread][index]++;
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "checkout-" + t));
+        }
+        for (Thread thread : checkoutThreads) {
+            thread.start();
+        }
+        started.await();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        measureReads(1, failure); // Warm up
+        double single = measureReads(1, failure);
+        double parallel = measureReads(cores, failure);
+        System.out.println(String.format("Catalog reads during checkouts: %.0f ops/s with 1 reader, "
+                + "%.0f ops/s with %d readers (%.1fx)", single, parallel, cores, parallel / single));
+
+        for (Thread thread : checkoutThreads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Concurrent access failed", failure.get());
+        }
+
+        double expectedRevenue = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            int sold = 0;
+            for (int[] counts : purchased) {
+                sold += counts[i];
+            }
+            expectedRevenue += sold * 2.0;
+            assertEquals("stock of p" + i, INITIAL_STOCK - sold, database.getProductById("p" + i).getQuantity());
+        }
+        assertEquals(expectedRevenue, database.getSellerById(seller.getId()).getFinancialData().getRevenues(), 1e-6);
+        assertEquals(PRODUCTS, database.getProducts().size());
+        assertEquals(CHECKOUT_THREADS * CHECKOUTS_PER_THREAD, OrderLedger.getInstance().size());
+    }
+
+    /**
+     * Runs readers doing random ID and username lookups for a fixed time.
+     *
+     * @param readers the number of reader threads.
+     * @param failure receives the first error.
+     * @return the lookups per second across all readers.
+     * @throws InterruptedException if interrupted while waiting for the readers.
+     */
+    private double measureReads(int readers, AtomicReference<Throwable> failure) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int seed = r;
+            threads.add(new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    long count = 0;
+                    while (!stop.get()) {
+                        String id = "p" + random.nextInt(PRODUCTS);
+                        Product product = database.getProductById(id);
+                        assertNotNull(id, product);
+                        assertEquals(id, product.getId());
+                        assertNotNull(database.getUserByUsername("customer" + random.nextInt(CHECKOUT_THREADS)));
+                        count += 2;
+                    }
+                    operations.add(count);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "reader-" + r));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(MEASURE_MILLIS);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return operations.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    @Test
+    public void checkpointsRunOffTheWritingThread() throws Exception {
+        AtomicReference<String> checkpointer = new AtomicReference<>();
+        CountDownLatch checkpointed = new CountDownLatch(1);
+        Database database = new Database(new InMemoryStorageEngine(Collections.singletonList(seller),
+                Collections.<Product>emptyList()) {
+            @Override
+            public boolean needsCheckpoint() {
+                return checkpointed.getCount() > 0;
+            }
+
+            @Override
+            public synchronized void checkpoint(List<User> users, List<Product> products) {
+                super.checkpoint(users, products);
+                checkpointer.set(Thread.currentThread().getName());
+                checkpointed.countDown();
+            }
+        });
+
+        database.addProduct(new Product("p", "P", "", 1.0, 1, seller.getId(), 0.5, "product"));
+        assertTrue(checkpointed.await(5, TimeUnit.SECONDS));
+        assertEquals("database-checkpoint", checkpointer.get());
+    }
+}
@@ -0,0 +1,111 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that discounted products read from a save, which hold only their discounted values, can be
+ * used without the product they wrapped, and that the {@link Database} replaces them on load with the
+ * undiscounted product and a {@link PromotionRule.Percentage} that prices it as before.
+ */
+public class DiscountedProductMigrationTest {
+    private PromotionEngine promotions;
+
+    @Before
+    public void setUp() {
+        promotions = new PromotionEngine(); // Not backed by a file
+        PromotionEngine.setInstance(promotions);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("cop4331.catalog");
+        PromotionEngine.setInstance(null);
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void savedDiscountedProductBehavesAsPlainProduct() throws Exception {
+        Product saved = saved(new Product("lamp", "Lamp", "Desk lamp", 40.00, 6, "seller-1", 20.00, "product"), 0.25);
+        assertTrue(saved instanceof DiscountedProduct);
+        assertEquals("Lamp (Discounted)", saved.getName());
+        assertEquals(30.00, saved.getPrice(), 1e-9);
+        assertEquals(6, saved.getQuantity());
+        assertTrue(saved.tryReserve(2));
+        saved.commitReservation(2);
+        assertEquals(4, saved.getAvailableQuantity());
+    }
+
+    @Test
+    public void loadMovesDiscountToRule() throws Exception {
+        migrate();
+    }
+
+    @Test
+    public void loadMovesDiscountToRuleInColumnarCatalog() throws Exception {
+        System.setProperty("cop4331.catalog", "columnar");
+        migrate();
+    }
+
+    @Test
+    public void reloadAddsRuleOnce() throws Exception {
+        for (int load = 0; load < 2; load++) { // As if the first load's save had not been written
+            new Database(new InMemoryStorageEngine(Collections.<User>emptyList(), Collections.singletonList(
+                    saved(new Product("lamp", "Lamp", "Desk lamp", 40.00, 6, "seller-1", 20.00, "product"), 0.25))));
+        }
+        assertEquals(1, promotions.getRules().size());
+    }
+
+    @Test
+    public void unreadableDiscountIsKept() throws Exception {
+        Product saved = saved(new Product("lamp", "Lamp", "Desk lamp", 40.00, 6, "seller-1", 20.00, "product"), 0.25);
+        saved.setDescription("Edited by hand");
+        assertNull(((DiscountedProduct) saved).toUndiscounted());
+
+        Database database = new Database(new InMemoryStorageEngine(Collections.<User>emptyList(),
+                Collections.singletonList(saved)));
+        assertSame(DiscountedProduct.class, database.getProductById("lamp").getClass());
+        assertEquals(30.00, database.getProductById("lamp").getPrice(), 1e-9);
+        assertTrue(promotions.getRules().isEmpty());
+    }
+
+    private void migrate() throws Exception {
+        Database database = new Database(new InMemoryStorageEngine(Collections.<User>emptyList(), Arrays.asList(
+                saved(new Product("lamp", "Lamp", "Desk lamp", 40.00, 6, "seller-1", 20.00, "product"), 0.25),
+                new Product("bulb", "Bulb", "LED bulb", 3.00, 50, "seller-1", 1.00, "product"))));
+        Database.setInstance(database);
+
+        Product lamp = database.getProductById("lamp");
+        assertFalse(lamp instanceof DiscountedProduct);
+        assertEquals("Lamp", lamp.getName());
+        assertEquals("Desk lamp", lamp.getDescription());
+        assertEquals(40.00, lamp.getPrice(), 1e-9);
+        assertEquals(6, lamp.getQuantity());
+
+        assertEquals(1, promotions.getRules().size());
+        PromotionRule rule = promotions.getRules().get(0);
+        assertTrue(rule instanceof PromotionRule.Percentage);
+        assertEquals(0.25, ((PromotionRule.Percentage) rule).getRate(), 1e-9);
+        assertEquals(3000, promotions.lineCents(lamp, 1));
+        assertEquals(300, promotions.lineCents(database.getProductById("bulb"), 1));
+    }
+
+    /**
+     * Discounts a product, then saves and reads it back as the JSON storage engine would.
+     */
+    private static Product saved(Product product, double discountRate) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        return objectMapper.readValue(objectMapper.writeValueAsString(new DiscountedProduct(product, discountRate)), Product.class);
+    }
+}
@@ -0,0 +1,98 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that {@link HashedTimingWheel} runs every timeout once, never before its deadline,
+ * including deadlines several rounds of the wheel away, and never runs cancelled timeouts.
+ */
+public class HashedTimingWheelTest {
+    private HashedTimingWheel wheel;
+
+    @After
+    public void tearDown() {
+        if (wheel != null) {
+            wheel.close();
+        }
+    }
+
+    @Test
+    public void deadlinesBeyondOneRoundWaitForTheirRound() throws InterruptedException {
+        wheel = new HashedTimingWheel(10, TimeUnit.MILLISECONDS, 4, "test-wheel"); // One round is 40 ms
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicLong ranAfter = new AtomicLong();
+        long scheduled = System.nanoTime();
+        HashedTimingWheel.Timeout timeout = wheel.schedule(() -> {
+            ranAfter.set(System.nanoTime() - scheduled);
+            ran.countDown();
+        }, 130, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(90);
+        assertFalse(timeout.isExpired()); // Its bucket has come round twice already
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertTrue(ranAfter.get() >= TimeUnit.MILLISECONDS.toNanos(130));
+        assertEquals(0, wheel.getOutstanding());
+    }
+
+    @Test
+    public void manyTimeoutsRunOnceAndNotEarly() throws InterruptedException {
+        wheel = new HashedTimingWheel(1, TimeUnit.MILLISECONDS, 8, "test-wheel");
+        int count = 10_000;
+        Random random = new Random(3);
+        CountDownLatch ran = new CountDownLatch(count);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            long delayMillis = random.nextInt(100);
+            long scheduled = System.nanoTime();
+            wheel.schedule(() -> {
+                if (System.nanoTime() - scheduled < TimeUnit.MILLISECONDS.toNanos(delayMillis)) {
+                    early.incrementAndGet();
+                }
+                runs.incrementAndGet();
+                ran.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50); // Any second run would happen within a few ticks
+        assertEquals(count, runs.get());
+        assertEquals(0, early.get());
+        assertEquals(0, wheel.getOutstanding());
+    }
+
+    @Test
+    public void cancelledTimeoutsNeverRun() throws InterruptedException {
+        wheel = new HashedTimingWheel(1, TimeUnit.MILLISECONDS, 8, "test-wheel");
+        AtomicInteger runs = new AtomicInteger();
+        HashedTimingWheel.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        HashedTimingWheel.Timeout kept = wheel.schedule(runs::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        Thread.sleep(5); // Let the wheel move both into their bucket
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, wheel.getOutstanding());
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!kept.isExpired() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(20);
+        assertTrue(kept.isExpired());
+        assertTrue(cancelled.isCancelled());
+        assertFalse(kept.cancel());
+        assertEquals(1, runs.get());
+        assertEquals(0, wheel.getOutstanding());
+    }
+}
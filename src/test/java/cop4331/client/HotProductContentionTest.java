@@ -0,0 +1,197 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+/**
+ * Benchmark of checkout throughput on one hot product, with a single stock counter and in hot mode.
+ * Throughput per core is printed; the assertions check that neither mode oversells, that hot
+ * mode still sells every unit when the stripes have to rebalance, that racing switches to hot mode
+ * keep one set of counters, and that units being released are never reported as sold out.
+ */
+public class HotProductContentionTest {
+    private static final int THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int PURCHASES_PER_THREAD = 200_000;
+
+    @Test
+    public void hotModeSellsWithoutOversellingUnderContention() throws Exception {
+        int stock = THREADS * PURCHASES_PER_THREAD / 2; // Runs out halfway, so rebalancing is exercised
+
+        run(newProduct(stock), false); // Warm up both paths
+        run(newProduct(stock), true);
+
+        Product single = newProduct(stock);
+        Result singleResult = run(single, false);
+        Product hot = newProduct(stock);
+        Result hotResult = run(hot, true);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(String.format("Hot product checkout, %d threads on %d cores: single counter %.0f ops/s/core, hot mode %.0f ops/s/core (%.1fx)",
+                THREADS, cores, singleResult.opsPerSecond / cores, hotResult.opsPerSecond / cores,
+                hotResult.opsPerSecond / singleResult.opsPerSecond));
+
+        assertEquals(stock, singleResult.sold);
+        assertEquals(0, single.getQuantity());
+        assertEquals(stock, hotResult.sold);
+        assertEquals(0, hot.getQuantity());
+        assertEquals(0, hot.getAvailableQuantity());
+        assertFalse(hot.tryReserve(1));
+    }
+
+    @Test
+    public void enablingHotModeKeepsReservations() {
+        Product product = newProduct(10);
+        assertTrue(product.tryReserve(4));
+
+        product.enableHotMode(4);
+        assertTrue(product.isHotMode());
+        assertEquals(10, product.getQuantity());
+        assertEquals(6, product.getAvailableQuantity());
+
+        product.commitReservation(4);
+        assertEquals(6, product.getQuantity());
+        assertTrue(product.tryReserve(6)); // Gathered from every stripe
+        assertFalse(product.tryReserve(1));
+        product.releaseReservation(6);
+        product.restock(2);
+        assertEquals(8, product.getAvailableQuantity());
+        product.setQuantity(3);
+        assertEquals(3, product.getQuantity());
+        assertEquals(3, product.getAvailableQuantity());
+    }
+
+    @Test
+    public void concurrentSwitchesKeepOneSetOfCounters() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            Product product = newProduct(1_000);
+            LongAdder reserved = new LongAdder();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                boolean switcher = t % 2 == 0;
+                workers.add(new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 20; i++) {
+                        if (switcher) {
+                            product.enableHotMode(4);
+                        } else if (product.tryReserve(1)) {
+                            reserved.increment();
+                        }
+                    }
+                }));
+            }
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertEquals(1_000, product.getQuantity());
+            assertEquals(1_000 - reserved.sum(), product.getAvailableQuantity());
+        }
+    }
+
+    @Test
+    public void releasedUnitsAreNeverReportedSoldOut() throws Exception {
+        // Each thread holds at most one unit and there is one per thread, so every reservation must succeed
+        Product product = newProduct(THREADS);
+        product.enableHotMode(THREADS);
+        LongAdder failed = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 50_000; i++) {
+                    if (product.tryReserve(1)) {
+                        product.releaseReservation(1);
+                    } else {
+                        failed.increment();
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, failed.sum());
+        assertEquals(THREADS, product.getAvailableQuantity());
+    }
+
+    private static Product newProduct(int stock) {
+        return new Product("hot", "Hot", "Flash sale", 1.0, stock, "seller-1", 0.5, "product");
+    }
+
+    private static Result run(Product product, boolean hotMode) throws InterruptedException {
+        if (hotMode) {
+            product.enableHotMode(Runtime.getRuntime().availableProcessors());
+        }
+        LongAdder sold = new LongAdder();
+        LongAdder attempts = new LongAdder();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < PURCHASES_PER_THREAD; i++) {
+                        attempts.increment();
+                        if (product.tryReserve(1)) {
+                            product.commitReservation(1);
+                            sold.increment();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        if (failure.get() != null) {
+            throw new AssertionError("Checkout failed", failure.get());
+        }
+        return new Result(sold.sum(), attempts.sum() / seconds);
+    }
+
+    private static final class Result {
+        private final long sold;
+        private final double opsPerSecond;
+
+        Result(long sold, double opsPerSecond) {
+            this.sold = sold;
+            this.opsPerSecond = opsPerSecond;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link IdempotencyStore} runs an action once per key however many duplicates race it,
+ * never evicts a key whose first request is still running, and lets a failed request be retried.
+ */
+public class IdempotencyStoreTest {
+    @Test
+    public void concurrentDuplicatesRunOnce() throws Exception {
+        int threads = 16;
+        IdempotencyStore<Integer> store = new IdempotencyStore<>(100, 1, TimeUnit.HOURS);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            results.add(result);
+            new Thread(() -> {
+                try {
+                    start.await();
+                    result.complete(store.execute("request-1", () -> {
+                        sleep(50); // Keep the first request running while the duplicates arrive
+                        return executions.incrementAndGet();
+                    }));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }).start();
+        }
+        start.countDown();
+
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(1, (int) result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void fullStoreKeepsPendingKeys() throws Exception {
+        IdempotencyStore<String> store = new IdempotencyStore<>(2, 1, TimeUnit.HOURS);
+        CompletableFuture<String> payment = new CompletableFuture<>();
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> first = store.executeAsync("pending", () -> {
+            executions.incrementAndGet();
+            return payment;
+        });
+        for (int i = 0; i < 5; i++) {
+            String value = "done-" + i;
+            assertEquals(value, store.execute(value, () -> value));
+        }
+        assertEquals(2, store.size()); // The newest finished key and the pending one
+
+        CompletableFuture<String> duplicate = store.executeAsync("pending", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture("charged twice");
+        });
+        assertFalse(duplicate.isDone());
+        payment.complete("charged once");
+        assertEquals("charged once", first.get(5, TimeUnit.SECONDS));
+        assertEquals("charged once", duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+
+        // Once finished, the key is the oldest and goes first
+        store.execute("done-5", () -> "done-5");
+        assertEquals(2, store.size());
+        assertEquals("again", store.execute("pending", () -> "again"));
+    }
+
+    @Test
+    public void failureAllowsRetry() throws Exception {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, 1, TimeUnit.HOURS);
+        CompletableFuture<String> failed = store.executeAsync("request-1", () -> {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.completeExceptionally(new IllegalStateException("Declined"));
+            return result;
+        });
+        try {
+            failed.get(5, TimeUnit.SECONDS);
+            fail("The first request should have failed");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, store.size());
+        assertEquals("retried", store.execute("request-1", () -> "retried"));
+        assertEquals("retried", store.execute("request-1", () -> "ran again"));
+    }
+
+    @Test
+    public void expiredKeysRunAgain() throws Exception {
+        IdempotencyStore<String> store = new IdempotencyStore<>(10, 50, TimeUnit.MILLISECONDS);
+        assertEquals("first", store.execute("request-1", () -> "first"));
+        assertEquals("first", store.execute("request-1", () -> "second"));
+        Thread.sleep(80);
+        assertEquals("third", store.execute("request-1", () -> "third"));
+        assertEquals(1, store.size());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
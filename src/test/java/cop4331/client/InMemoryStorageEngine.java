@@ -0,0 +1,122 @@
+package cop4331.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage engine that keeps committed users and products in memory, for tests.
+ */
+class InMemoryStorageEngine implements StorageEngine {
+    private final Map<String, User> users = new LinkedHashMap<>();
+    private final Map<String, Product> products = new LinkedHashMap<>();
+    private int commits;
+    private int failingCommits;
+
+    /**
+     * Constructs an engine whose next load returns the given state.
+     *
+     * @param users the stored users.
+     * @param products the stored products.
+     */
+    InMemoryStorageEngine(List<? extends User> users, List<? extends Product> products) {
+        for (User user : users) {
+            this.users.put(user.getId(), user);
+        }
+        for (Product product : products) {
+            this.products.put(product.getId(), product);
+        }
+    }
+
+    /**
+     * Retrieves the number of committed transactions.
+     *
+     * @return the commit count.
+     */
+    synchronized int getCommits() {
+        return commits;
+    }
+
+    @Override
+    public synchronized void load(Loader loader) {
+        for (User user : users.values()) {
+            loader.loadUser(user);
+        }
+        for (Product product : products.values()) {
+            loader.loadProduct(product);
+        }
+    }
+
+    @Override
+    public synchronized void upsertUser(User user) {
+        users.put(user.getId(), user);
+    }
+
+    @Override
+    public synchronized void upsertProduct(Product product) {
+        products.put(product.getId(), product);
+    }
+
+    @Override
+    public synchronized void deleteUser(String userId) {
+        users.remove(userId);
+    }
+
+    @Override
+    public synchronized void deleteProduct(String productId) {
+        products.remove(productId);
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    /**
+     * Makes the next commits fail, as a full disk would.
+     *
+     * @param count the number of commits to fail.
+     */
+    synchronized void failCommits(int count) {
+        failingCommits = count;
+    }
+
+    @Override
+    public synchronized void commit() throws IOException {
+        if (failingCommits > 0) {
+            failingCommits--;
+            throw new IOException("Simulated commit failure");
+        }
+        commits++;
+    }
+
+    @Override
+    public void rollback() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean needsCheckpoint() {
+        return false;
+    }
+
+    @Override
+    public synchronized void checkpoint(List<User> users, List<Product> products) {
+        this.users.clear();
+        this.products.clear();
+        for (User user : new ArrayList<>(users)) {
+            this.users.put(user.getId(), user);
+        }
+        for (Product product : new ArrayList<>(products)) {
+            this.products.put(product.getId(), product);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
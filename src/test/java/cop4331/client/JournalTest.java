@@ -0,0 +1,126 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that {@link Journal} recovers from a record torn by a crash without losing later records,
+ * and that checkpoints written in the background do not lose records appended meanwhile.
+ */
+public class JournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void tornTailIsCutOffBeforeAppending() throws IOException {
+        File file = new File(folder.getRoot(), "journal.log");
+        Journal journal = new Journal(file, objectMapper, Journal.Durability.SYNC, 0);
+        for (int i = 0; i < 3; i++) {
+            journal.append(Journal.DELETE_USER, "user-" + i);
+        }
+        journal.close();
+        long intact = file.length();
+        Files.write(file.toPath(), "{\"op\":\"deleteUser\",\"da".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        journal = new Journal(file, objectMapper, Journal.Durability.SYNC, 0);
+        assertEquals(3, replay(journal).size());
+        assertEquals(intact, file.length());
+        journal.append(Journal.DELETE_USER, "user-3");
+        journal.close();
+
+        List<String> replayed = replay(new Journal(file, objectMapper, Journal.Durability.SYNC, 0));
+        assertEquals(4, replayed.size());
+        assertEquals("user-3", replayed.get(3));
+    }
+
+    @Test
+    public void recordWithoutNewlineIsTorn() throws IOException {
+        File file = new File(folder.getRoot(), "journal.log");
+        Files.write(file.toPath(), "{\"op\":\"deleteUser\",\"data\":\"user-0\"}\n{\"op\":\"deleteUser\",\"data\":\"user-1\"}"
+                .getBytes(StandardCharsets.UTF_8));
+
+        Journal journal = new Journal(file, objectMapper, Journal.Durability.SYNC, 0);
+        assertEquals(1, replay(journal).size());
+        journal.append(Journal.DELETE_USER, "user-2");
+        journal.close();
+
+        List<String> replayed = replay(new Journal(file, objectMapper, Journal.Durability.SYNC, 0));
+        assertEquals(2, replayed.size());
+        assertEquals("user-2", replayed.get(1));
+    }
+
+    @Test
+    public void checkpointsKeepConcurrentAppends() throws Exception {
+        File file = new File(folder.getRoot(), "journal.log");
+        File snapshot = new File(folder.getRoot(), "snapshot.txt");
+        Journal journal = new Journal(file, objectMapper, Journal.Durability.BUFFERED, 0);
+        Set<String> state = new LinkedHashSet<>(); // Guarded by itself, like the database's write lock
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        synchronized (state) {
+                            String id = thread + "-" + i;
+                            state.add(id);
+                            journal.append(Journal.DELETE_USER, id);
+                            if (i % 50 == 49) {
+                                byte[] saved = String.join("\n", state).getBytes(StandardCharsets.UTF_8);
+                                journal.checkpoint(() -> {
+                                    try {
+                                        Thread.sleep(2); // Let appends queue up behind the checkpoint
+                                    } catch (InterruptedException e) {
+                                        Thread.currentThread().interrupt();
+                                    }
+                                    Files.write(snapshot.toPath(), saved);
+                                });
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        journal.close();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        Set<String> recovered = new LinkedHashSet<>(Files.readAllLines(snapshot.toPath(), StandardCharsets.UTF_8));
+        recovered.addAll(replay(new Journal(file, objectMapper, Journal.Durability.BUFFERED, 0)));
+        assertEquals(2000, recovered.size());
+        assertEquals(state, recovered);
+    }
+
+    private static List<String> replay(Journal journal) throws IOException {
+        List<String> ids = new ArrayList<>();
+        journal.replay((op, data) -> ids.add(data.asText()));
+        return ids;
+    }
+}
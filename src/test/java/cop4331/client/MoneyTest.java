@@ -0,0 +1,120 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * Checks that amounts are rounded to cents the way a person would round them, that running totals
+ * kept in cents match totals computed from scratch, and that prices which cannot be kept in cents
+ * are rejected when they are entered.
+ */
+public class MoneyTest {
+    @Test
+    public void toCentsRoundsHalfUp() {
+        assertEquals(101, Money.toCents(1.005)); // Stored as 1.00499999..., still rounds up
+        assertEquals(100, Money.toCents(1.004));
+        assertEquals(30, Money.toCents(0.1 + 0.2));
+        assertEquals(-101, Money.toCents(-1.005));
+        assertEquals(0, Money.toCents(0));
+        assertEquals(1.01, Money.toDollars(101), 0);
+    }
+
+    @Test
+    public void lineCents() {
+        assertEquals(2997, Money.lineCents(9.99, 3));
+        assertEquals(0, Money.lineCents(9.99, 0));
+        assertEquals(1_000_000_000L * Integer.MAX_VALUE, Money.lineCents(Money.MAX_PRICE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void cartRunningTotalMatchesRecalculation() {
+        Random random = new Random(3);
+        Product[] products = new Product[20];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product("product-" + i, "Product " + i, "", random.nextInt(100_000) / 100.0 + 0.005,
+                    1000, "seller-1", 1.00, "product");
+        }
+        Cart cart = new Cart();
+        for (int step = 0; step < 2_000; step++) {
+            Product product = products[random.nextInt(products.length)];
+            switch (random.nextInt(3)) {
+                case 0:
+                    cart.addItem(product, 1 + random.nextInt(5));
+                    break;
+                case 1:
+                    cart.removeItem(product);
+                    break;
+                default:
+                    cart.updateItemQuantity(product, 1 + random.nextInt(9));
+                    break;
+            }
+            long running = cart.getTotalCents();
+            cart.calculateTotal();
+            assertEquals("after step " + step, cart.getTotalCents(), running);
+        }
+    }
+
+    @Test
+    public void financialDataAddsUpInCents() throws Exception {
+        FinancialData data = new FinancialData();
+        for (int i = 0; i < 1_000; i++) {
+            data.updateData(0.10, 0.07);
+        }
+        assertEquals(10_000, data.getRevenuesCents());
+        assertEquals(7_000, data.getCostsCents());
+        assertEquals(100.00, data.getRevenues(), 0);
+        assertEquals(30.00, data.getProfits(), 0);
+
+        // Saved with the same fields as before, in dollars
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(data));
+        assertEquals(3, json.size());
+        assertEquals(70.00, json.get("costs").asDouble(), 0);
+        assertEquals(100.00, json.get("revenues").asDouble(), 0);
+        assertEquals(30.00, json.get("profits").asDouble(), 0);
+
+        FinancialData copy = objectMapper.readValue("{\"costs\":70.0,\"revenues\":100.0,\"profits\":12.0}", FinancialData.class);
+        assertEquals(7_000, copy.getCostsCents());
+        assertEquals(10_000, copy.getRevenuesCents());
+        assertEquals(3_000, copy.getProfitsCents()); // Derived, not read
+    }
+
+    @Test
+    public void invalidPricesAreRejected() {
+        assertTrue(Money.isValidPrice(0));
+        assertTrue(Money.isValidPrice(Money.MAX_PRICE));
+        for (double price : new double[] {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.01, 1e300}) {
+            assertFalse(Money.isValidPrice(price));
+            Product product = new Product("p", "P", "", 1.00, 1, "seller-1", 0.50, "product");
+            try {
+                product.setPrice(price);
+                fail("Accepted price " + price);
+            } catch (IllegalArgumentException expected) {
+                assertEquals(1.00, product.getPrice(), 0);
+            }
+            try {
+                product.setInvoicePrice(price);
+                fail("Accepted invoice price " + price);
+            } catch (IllegalArgumentException expected) {
+                assertEquals(0.50, product.getInvoicePrice(), 0);
+            }
+        }
+
+        ColumnarCatalog catalog = new ColumnarCatalog();
+        catalog.add(new Product("p", "P", "", 1.00, 1, "seller-1", 0.50, "product"));
+        try {
+            catalog.get("p").setPrice(Double.NaN);
+            fail("Accepted a price of NaN");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(1.00, catalog.get("p").getPrice(), 0);
+        }
+    }
+}
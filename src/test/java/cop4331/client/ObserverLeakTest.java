@@ -0,0 +1,123 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Leak test for observers that never unregister: a long seller session opens and abandons many
+ * views of its inventory and a customer's cart. Heap use is sampled after garbage collection and
+ * printed; the assertions check that it stays flat and that abandoned views are collected.
+ */
+public class ObserverLeakTest {
+    private static final int VIEWS = 4_000;
+    private static final int VIEW_BYTES = 256 * 1024; // Stands in for a window's components and buffers
+    private static final long MAX_HEAP_GROWTH = 64L * 1024 * 1024;
+
+    /**
+     * An observer that retains memory, like a view that is closed without unregistering.
+     */
+    private static final class View implements Observer<Inventory> {
+        private final byte[] state = new byte[VIEW_BYTES];
+        private final AtomicInteger updates;
+
+        View(AtomicInteger updates) {
+            this.updates = updates;
+        }
+
+        @Override
+        public void update(Inventory inventory) {
+            state[0]++;
+            updates.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void abandonedViewsDoNotAccumulate() throws Exception {
+        Seller seller = new Seller("seller-1", "seller", "password");
+        Inventory inventory = seller.getInventory();
+        Cart cart = new Cart();
+        AtomicInteger updates = new AtomicInteger();
+        View openView = new View(updates); // Stays open for the whole session
+        inventory.addObserver(openView);
+
+        List<Long> samples = new ArrayList<>();
+        WeakReference<View> firstAbandoned = null;
+        for (int i = 0; i < VIEWS; i++) {
+            View view = new View(new AtomicInteger());
+            inventory.addObserver(view);
+            cart.addObserver(c -> view.state[1]++, Runnable::run);
+            if (firstAbandoned == null) {
+                firstAbandoned = new WeakReference<>(view);
+            }
+
+            Product product = new Product("product-" + i, "Product " + i, "", 1.0, 10, seller.getId(), 0.5, "product");
+            inventory.beginBatch();
+            inventory.addProduct(product);
+            inventory.removeProduct(product);
+            inventory.addProduct(product);
+            inventory.endBatch();
+            cart.addItem(product, 1);
+            cart.removeItem(product);
+
+            if (i % 500 == 0) {
+                samples.add(usedHeapAfterGc());
+            }
+        }
+        samples.add(usedHeapAfterGc());
+
+        System.out.println("Heap used during seller session (MB): " + samples.stream()
+                .map(bytes -> String.valueOf(bytes / (1024 * 1024))).reduce((a, b) -> a + ", " + b).orElse(""));
+        long growth = samples.get(samples.size() - 1) - samples.get(0);
+        assertTrue("heap grew by " + growth / (1024 * 1024) + " MB", growth < MAX_HEAP_GROWTH);
+        assertNull("an abandoned view is still reachable", firstAbandoned.get());
+        assertEquals("the open view missed notifications", VIEWS, updates.get());
+    }
+
+    @Test
+    public void deliversOnTheChosenExecutor() {
+        List<Runnable> queued = new ArrayList<>();
+        Executor executor = queued::add;
+        Cart cart = new Cart();
+        List<ChangeSet> received = new ArrayList<>();
+        Observer<Cart> observer = new Observer<Cart>() {
+            @Override
+            public void update(Cart observable) {
+            }
+
+            @Override
+            public void update(Cart observable, ChangeSet changes) {
+                received.add(changes);
+            }
+        };
+        cart.addObserver(observer, executor);
+
+        cart.addItem(new Product("p", "P", "", 1.0, 1, "seller-1", 0.5, "product"), 1);
+        assertTrue(received.isEmpty());
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).getAdded().contains("p"));
+
+        cart.removeObserver(observer);
+        cart.clearCart();
+        assertEquals(1, queued.size());
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
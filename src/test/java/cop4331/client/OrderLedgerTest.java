@@ -0,0 +1,129 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks the {@link OrderLedger} indexes and time-range paging, and that reopening the ledger after
+ * a torn write keeps every complete order and the orders recorded afterwards.
+ */
+public class OrderLedgerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Product mug = new Product("mug", "Mug", "", 8.00, 100, "seller-1", 4.00, "product");
+    private final Product pen = new Product("pen", "Pen", "", 1.50, 100, "seller-2", 0.50, "product");
+
+    @Test
+    public void indexesAndPagesByTime() throws IOException {
+        OrderLedger ledger = new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED);
+        List<Order> recorded = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            List<LineItem> items = i % 3 == 0 ? Arrays.asList(new LineItem(mug, 1), new LineItem(pen, 2))
+                    : Collections.singletonList(new LineItem(i % 3 == 1 ? mug : pen, 1));
+            recorded.add(ledger.record(new Order("customer-" + i % 2, items)));
+        }
+        assertEquals(30, ledger.size());
+        assertEquals("order-30", recorded.get(29).getId());
+
+        assertEquals(15, ledger.getOrdersByCustomer("customer-1", 0, Long.MAX_VALUE, 0, 100).size());
+        assertEquals(20, ledger.getOrdersBySeller("seller-1", 0, Long.MAX_VALUE, 0, 100).size());
+        assertEquals(20, ledger.getOrdersByProduct("pen", 0, Long.MAX_VALUE, 0, 100).size());
+        assertEquals(0, ledger.getOrdersByCustomer("nobody", 0, Long.MAX_VALUE, 0, 100).size());
+
+        // Pages are disjoint and together hold every order, oldest first
+        List<Order> pages = new ArrayList<>();
+        for (int offset = 0; offset < 30; offset += 7) {
+            pages.addAll(ledger.getOrders(0, Long.MAX_VALUE, offset, 7));
+        }
+        assertEquals(ids(recorded), ids(pages));
+
+        // Time ranges are inclusive at the start and exclusive at the end
+        long from = recorded.get(10).getTimestamp();
+        long to = recorded.get(20).getTimestamp();
+        List<String> expected = recorded.stream()
+                .filter(order -> order.getTimestamp() >= from && order.getTimestamp() < to)
+                .map(Order::getId).collect(Collectors.toList());
+        assertEquals(expected, ids(ledger.getOrders(from, to, 0, 100)));
+        List<Order> scanned = new ArrayList<>();
+        ledger.scan(from, to, scanned::add);
+        assertEquals(expected, ids(scanned));
+        ledger.close();
+
+        OrderLedger reopened = new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED);
+        assertEquals(ids(recorded), ids(reopened.getOrders(0, Long.MAX_VALUE, 0, 100)));
+        assertEquals(10, reopened.getOrdersByProduct("mug", 0, Long.MAX_VALUE, 10, 100).size());
+        reopened.close();
+    }
+
+    @Test
+    public void reopensAfterTornWrite() throws IOException {
+        OrderLedger ledger = new OrderLedger(folder.getRoot(), Journal.Durability.SYNC);
+        for (int i = 0; i < 5; i++) {
+            ledger.record(new Order("customer-1", Collections.singletonList(new LineItem(mug, 1))));
+        }
+        ledger.close();
+        File segment = new File(folder.getRoot(), "orders-00000001.log");
+        Files.write(segment.toPath(), "{\"op\":\"putOrder\",\"data\":{\"id\":\"ord".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        ledger = new OrderLedger(folder.getRoot(), Journal.Durability.SYNC);
+        assertEquals(5, ledger.size());
+        Order next = ledger.record(new Order("customer-2", Collections.singletonList(new LineItem(pen, 3))));
+        assertEquals("order-6", next.getId());
+        ledger.close();
+
+        ledger = new OrderLedger(folder.getRoot(), Journal.Durability.SYNC);
+        assertEquals(6, ledger.size());
+        List<Order> customerOrders = ledger.getOrdersByCustomer("customer-2", 0, Long.MAX_VALUE, 0, 10);
+        assertEquals(1, customerOrders.size());
+        assertEquals(3, customerOrders.get(0).getLines().get(0).getQuantity());
+        ledger.close();
+    }
+
+    @Test
+    public void scanWhileRecordingDoesNotCutOffOrders() throws Exception {
+        OrderLedger ledger = new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED);
+        Thread recorder = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2_000; i++) {
+                    ledger.record(new Order("customer-1", Collections.singletonList(new LineItem(mug, 1))));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        recorder.start();
+        int scans = 0;
+        while (recorder.isAlive()) {
+            ledger.scan(0, Long.MAX_VALUE, order -> { });
+            scans++;
+        }
+        recorder.join();
+        ledger.close();
+        assertTrue(scans > 0);
+
+        OrderLedger reopened = new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED);
+        assertEquals(2_000, reopened.size());
+        reopened.close();
+    }
+
+    private static List<String> ids(List<Order> orders) {
+        return orders.stream().map(Order::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,211 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a checkout and its payment are idempotent together: retrying a checkout whose order
+ * could not be saved reuses the first authorization instead of charging the card again, and
+ * duplicate submissions racing each other charge and buy once.
+ */
+public class PaidCheckoutTest {
+    private static final String CARD = "4111111111111111";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> paymentIds = Collections.synchronizedList(new ArrayList<String>()); // Sent to the gateway
+    private InMemoryStorageEngine engine;
+    private Customer customer;
+    private Product mug;
+
+    @Before
+    public void setUp() throws Exception {
+        customer = new Customer("customer-1", "alice", "password");
+        engine = new InMemoryStorageEngine(
+                Arrays.asList(customer, new Seller("seller-1", "seller", "password")),
+                Collections.singletonList(new Product("mug", "Mug", "", 8.00, 10, "seller-1", 4.00, "product")));
+        Database.setInstance(new Database(engine));
+        customer = (Customer) Database.getInstance().getUserById("customer-1");
+        mug = Database.getInstance().getProductById("mug");
+        OrderLedger.setInstance(new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED));
+
+        SimulatedPaymentGateway gateway = new SimulatedPaymentGateway(20, 0, 0, 0);
+        Payment.setInstance(new Payment(requests -> {
+            for (PaymentRequest request : requests) {
+                paymentIds.add(request.getId());
+            }
+            return gateway.authorize(requests);
+        }, 50, 5, 4, 1000, 2000, 3, 100));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Payment.getInstance().close();
+        Payment.setInstance(null);
+        OrderLedger.getInstance().close();
+        OrderLedger.setInstance(null);
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void retryAfterFailedSaveDoesNotChargeAgain() throws Exception {
+        customer.addToCart(mug, 2);
+        engine.failCommits(1);
+        try {
+            customer.checkout("retried-request", customer.reserveCart(), CARD, "12/30", "123", 16.00).get(5, TimeUnit.SECONDS);
+            fail("The order should not have been saved");
+        } catch (ExecutionException expected) {
+            // The payment was approved but the order was rolled back
+        }
+        assertEquals(10, mug.getQuantity());
+        assertEquals(10, mug.getAvailableQuantity());
+        assertEquals(1, customer.getCart().getItems().size());
+
+        assertTrue(customer.checkout("retried-request", customer.reserveCart(), CARD, "12/30", "123", 16.00)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(8, mug.getQuantity());
+        assertEquals(8, mug.getAvailableQuantity());
+        assertEquals(1, OrderLedger.getInstance().size());
+        assertEquals(2, paymentIds.size()); // Sent twice under one ID, so the gateway charged once
+        assertEquals(1, new HashSet<>(paymentIds).size());
+    }
+
+    @Test
+    public void concurrentDuplicatesChargeAndBuyOnce() throws Exception {
+        int threads = 4;
+        customer.addToCart(mug, 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            results.add(result);
+            new Thread(() -> {
+                try {
+                    start.await();
+                    customer.checkout("duplicated-request", customer.reserveCart(), CARD, "12/30", "123", 16.00)
+                            .whenComplete((purchased, error) -> {
+                                if (error != null) {
+                                    result.completeExceptionally(error);
+                                } else {
+                                    result.complete(purchased);
+                                }
+                            });
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }).start();
+        }
+        start.countDown();
+
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, paymentIds.size());
+        assertEquals(1, OrderLedger.getInstance().size());
+        assertEquals(8, mug.getQuantity());
+        assertEquals(8, mug.getAvailableQuantity()); // The duplicates' reservations were released
+    }
+
+    @Test
+    public void declinedPaymentReleasesStock() throws Exception {
+        Payment.getInstance().close();
+        Payment.setInstance(new Payment(new SimulatedPaymentGateway(0, 0, 0, 1), 50, 5, 4, 1000, 2000, 3, 100));
+        customer.addToCart(mug, 2);
+
+        assertEquals(false, customer.checkout("declined-request", customer.reserveCart(), CARD, "12/30", "123", 16.00)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(10, mug.getAvailableQuantity());
+        assertEquals(0, OrderLedger.getInstance().size());
+    }
+
+    @Test
+    public void malformedGatewayResponseFailsAndFreesThePayment() throws Exception {
+        Payment.getInstance().close();
+        Payment.setInstance(new Payment(requests -> Collections.<Boolean>emptyList(), 50, 5, 4, 1, 2000, 1, 1));
+        customer.addToCart(mug, 2);
+
+        try {
+            customer.checkout("malformed-request", customer.reserveCart(), CARD, "12/30", "123", 16.00)
+                    .get(5, TimeUnit.SECONDS);
+            fail("A payment without a decision should fail");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(10, mug.getAvailableQuantity());
+
+        // The only in-flight permit was returned, so the next payment is sent rather than refused
+        try {
+            Payment.getInstance().processPaymentAsync(CARD, "12/30", "123", 1.00).get(5, TimeUnit.SECONDS);
+            fail("A payment without a decision should fail");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void orderIsCommittedOffTheGatewayThreads() throws Exception {
+        List<String> committers = Collections.synchronizedList(new ArrayList<String>());
+        Database.setInstance(new Database(new InMemoryStorageEngine(
+                Collections.singletonList(new Customer("customer-1", "alice", "password")),
+                Collections.singletonList(new Product("mug", "Mug", "", 8.00, 10, "seller-1", 4.00, "product"))) {
+            @Override
+            public synchronized void commit() throws IOException {
+                committers.add(Thread.currentThread().getName());
+                super.commit();
+            }
+        }));
+        customer = (Customer) Database.getInstance().getUserById("customer-1");
+        customer.addToCart(Database.getInstance().getProductById("mug"), 2);
+
+        assertTrue(customer.checkout("committed-request", customer.reserveCart(), CARD, "12/30", "123", 16.00)
+                .get(5, TimeUnit.SECONDS));
+        assertFalse(committers.isEmpty());
+        for (String committer : committers) {
+            assertFalse(committer, committer.startsWith("payment-"));
+        }
+    }
+
+    @Test
+    public void itemsAddedAfterReservingStayInTheCart() throws Exception {
+        Product pen = new Product("pen", "Pen", "", 1.50, 50, "seller-1", 0.50, "product");
+        Database.getInstance().addProduct(pen);
+        pen = Database.getInstance().getProductById("pen");
+        customer.addToCart(mug, 2);
+        StockReservation reservation = customer.reserveCart();
+        customer.addToCart(mug, 1);
+        customer.addToCart(pen, 4);
+
+        engine.failCommits(1);
+        assertFalse(customer.checkout(reservation));
+        assertEquals(3, customer.getCart().getItem("mug").getQuantity()); // Restored on rollback
+        assertEquals(4, customer.getCart().getItem("pen").getQuantity());
+
+        reservation = new StockReservation(); // The first reservation was released by the rollback
+        assertTrue(reservation.add(mug, 2));
+        assertTrue(customer.checkout(reservation));
+        assertEquals(8, mug.getQuantity());
+        assertEquals(1, customer.getCart().getItem("mug").getQuantity());
+        assertEquals(4, customer.getCart().getItem("pen").getQuantity());
+        assertEquals(2, customer.getCart().getItems().size());
+    }
+}
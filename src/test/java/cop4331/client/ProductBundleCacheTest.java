@@ -0,0 +1,155 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Benchmark of bundle pricing and availability on deep and wide bundle trees, comparing the cached
+ * values with recomputing the tree on every call as bundles used to. Timings are printed; the
+ * assertions check that the cache always agrees with a full recomputation, including after
+ * components deep in the tree change.
+ */
+public class ProductBundleCacheTest {
+    private static final int READS = 20_000;
+
+    @Test
+    public void deepTree() {
+        List<Product> leaves = new ArrayList<>();
+        ProductBundle root = deep(40, leaves);
+        benchmark("deep (40 levels)", root, leaves);
+    }
+
+    @Test
+    public void wideTree() {
+        List<Product> leaves = new ArrayList<>();
+        ProductBundle root = wide(3, 12, leaves);
+        benchmark("wide (12^3 leaves)", root, leaves);
+    }
+
+    @Test
+    public void discountedComponentInvalidatesBundle() {
+        Product base = leaf("base", 10.0, 5);
+        DiscountedProduct discounted = new DiscountedProduct(base, 0.5);
+        ProductBundle bundle = new ProductBundle("bundle", "Bundle", "");
+        bundle.addProduct(discounted);
+        bundle.addProduct(leaf("other", 10.0, 5));
+        assertEquals(13.5, bundle.getPrice(), 1e-9);
+
+        base.setPrice(20.0);
+        assertEquals(18.0, bundle.getPrice(), 1e-9);
+        assertTrue(base.tryReserve(4));
+        assertEquals(1, bundle.getAvailableQuantity());
+    }
+
+    private static void benchmark(String shape, ProductBundle root, List<Product> leaves) {
+        for (int i = 0; i < 1_000; i++) { // Warm up
+            root.getPrice();
+            root.getAvailableQuantity();
+            recomputePrice(root);
+            recomputeAvailable(root);
+        }
+
+        long begin = System.nanoTime();
+        double sink = 0;
+        for (int i = 0; i < READS; i++) {
+            sink += root.getPrice() + root.getAvailableQuantity();
+        }
+        double cachedNanos = (System.nanoTime() - begin) / (double) READS;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < READS / 20; i++) {
+            sink += recomputePrice(root) + recomputeAvailable(root);
+        }
+        double recomputedNanos = (System.nanoTime() - begin) / (double) (READS / 20);
+        System.out.println(String.format("Bundle %s: cached %.0f ns/read, recomputed %.0f ns/read (%.0fx)",
+                shape, cachedNanos, recomputedNanos, recomputedNanos / cachedNanos));
+        assertTrue(sink > 0); // Keeps the reads from being optimized away
+
+        // Changes deep in the tree reach the root
+        assertEquals(recomputePrice(root), root.getPrice(), 1e-6);
+        assertEquals(recomputeAvailable(root), root.getAvailableQuantity());
+        Product changed = leaves.get(leaves.size() - 1);
+        changed.setPrice(changed.getPrice() + 100.0);
+        assertEquals(recomputePrice(root), root.getPrice(), 1e-6);
+        assertTrue(changed.tryReserve(changed.getAvailableQuantity() - 1));
+        assertEquals(1, root.getAvailableQuantity());
+        changed.releaseReservation(changed.getQuantity() - 1);
+        assertEquals(recomputeAvailable(root), root.getAvailableQuantity());
+        changed.setName("Renamed");
+        assertTrue(descriptionsContain(root, "Renamed"));
+    }
+
+    private static ProductBundle deep(int depth, List<Product> leaves) {
+        ProductBundle bundle = new ProductBundle("bundle-" + depth, "Bundle " + depth, "Level " + depth);
+        Product first = leaf("leaf-" + depth + "-a", 1.0 + depth, 100 + depth);
+        Product second = leaf("leaf-" + depth + "-b", 2.0 + depth, 200 + depth);
+        leaves.add(first);
+        leaves.add(second);
+        bundle.addProduct(first);
+        bundle.addProduct(second);
+        if (depth > 1) {
+            bundle.addProduct(deep(depth - 1, leaves));
+        }
+        return bundle;
+    }
+
+    private static ProductBundle wide(int levels, int width, List<Product> leaves) {
+        ProductBundle bundle = new ProductBundle("bundle-" + levels + "-" + leaves.size(), "Bundle", "");
+        for (int i = 0; i < width; i++) {
+            if (levels > 1) {
+                bundle.addProduct(wide(levels - 1, width, leaves));
+            } else {
+                Product leaf = leaf("leaf-" + leaves.size(), 1.0 + leaves.size() % 7, 50 + leaves.size());
+                leaves.add(leaf);
+                bundle.addProduct(leaf);
+            }
+        }
+        return bundle;
+    }
+
+    private static Product leaf(String id, double price, int quantity) {
+        return new Product(id, id, "", price, quantity, "seller-1", price / 2, "product");
+    }
+
+    private static double recomputePrice(Product product) {
+        if (!(product instanceof ProductBundle)) {
+            return product.getPrice();
+        }
+        double total = 0;
+        for (Product component : ((ProductBundle) product).getProducts()) {
+            total += recomputePrice(component);
+        }
+        return total * 0.9;
+    }
+
+    private static int recomputeAvailable(Product product) {
+        if (!(product instanceof ProductBundle)) {
+            return product.getAvailableQuantity();
+        }
+        int available = Integer.MAX_VALUE;
+        for (Product component : ((ProductBundle) product).getProducts()) {
+            available = Math.min(available, recomputeAvailable(component));
+        }
+        return available;
+    }
+
+    private static boolean descriptionsContain(Product product, String name) {
+        if (!(product instanceof ProductBundle)) {
+            return false;
+        }
+        if (product.getDescription().contains(name)) {
+            return true;
+        }
+        for (Product component : ((ProductBundle) product).getProducts()) {
+            if (descriptionsContain(component, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,139 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Checks each kind of promotion rule and benchmarks pricing a cart with the engine against the
+ * {@link DiscountedProduct} wrapper chains it replaces. Timings are printed; the assertions check
+ * that both approaches agree on the total.
+ */
+public class PromotionEngineTest {
+    private static final int PRODUCTS = 1_000;
+    private static final int QUOTES = 2_000;
+
+    @Test
+    public void ruleKinds() throws Exception {
+        PromotionEngine engine = new PromotionEngine();
+        Product shirt = product("shirt", 20.00, "seller-1");
+        Product mug = product("mug", 8.00, "seller-1");
+        Product pen = product("pen", 1.50, "seller-2");
+        assertEquals(4000, engine.lineCents(shirt, 2)); // No rules
+
+        engine.addRule(new PromotionRule.Percentage(0.25).forProduct("shirt"));
+        assertEquals(1500, engine.lineCents(shirt, 1));
+
+        engine.addRule(new PromotionRule.FixedAmount(2.00).forProduct("shirt"));
+        assertEquals(1300, engine.lineCents(shirt, 1)); // Percentage first, then the fixed amount
+
+        engine.addRule(new PromotionRule.BuyXGetY(2, 1).forProduct("mug"));
+        assertEquals(1600, engine.lineCents(mug, 3));
+        assertEquals(4000, engine.lineCents(mug, 7)); // Two groups of three, plus one paid unit
+
+        TreeMap<Integer, Double> tiers = new TreeMap<>();
+        tiers.put(10, 0.10);
+        tiers.put(100, 0.20);
+        engine.addRule(new PromotionRule.Tiered(tiers).forProduct("pen"));
+        assertEquals(1350, engine.lineCents(pen, 9));
+        assertEquals(1350, engine.lineCents(pen, 10)); // 1.35 each from 10 units
+        assertEquals(12000, engine.lineCents(pen, 100));
+
+        engine.addRule(new PromotionRule.Percentage(0.5).forSeller("seller-2"));
+        assertEquals(75, engine.lineCents(pen, 1)); // Half price; no tier is reached at 1 unit
+        assertEquals(1600, engine.lineCents(mug, 3)); // Other sellers are unaffected
+
+        pen.setSellerId("seller-1"); // The plan is recompiled for the new seller
+        assertEquals(150, engine.lineCents(pen, 1));
+
+        PromotionRule removed = engine.getRules().get(0);
+        assertTrue(engine.removeRule(removed.getId()));
+        assertEquals(1800, engine.lineCents(shirt, 1));
+    }
+
+    @Test
+    public void rulesAreSaved() throws Exception {
+        File file = new File(Files.createTempDirectory("promotions").toFile(), "promotions.json");
+        PromotionEngine engine = new PromotionEngine(file);
+        TreeMap<Integer, Double> tiers = new TreeMap<>();
+        tiers.put(5, 0.15);
+        engine.addRule(new PromotionRule.Percentage(0.1).forSeller("seller-1"));
+        engine.addRule(new PromotionRule.FixedAmount(0.99).forProduct("a"));
+        engine.addRule(new PromotionRule.BuyXGetY(3, 1));
+        engine.addRule(new PromotionRule.Tiered(tiers).forProduct("a").forProduct("b"));
+
+        Cart cart = new Cart();
+        cart.addItem(product("a", 12.34, "seller-1"), 8);
+        cart.addItem(product("b", 5.55, "seller-2"), 3);
+        PromotionEngine.Quote before = engine.quote(cart);
+        PromotionEngine.Quote after = new PromotionEngine(file).quote(cart);
+        assertEquals(4, new PromotionEngine(file).getRules().size());
+        assertEquals(before.getTotalCents(), after.getTotalCents());
+        assertEquals(cart.getTotalCents(), after.getSubtotalCents());
+        assertTrue(after.getDiscountCents() > 0);
+    }
+
+    @Test
+    public void benchmarkAgainstDecorators() throws Exception {
+        // Three stacked promotions per product: a seller-wide sale and two product discounts
+        PromotionEngine engine = new PromotionEngine();
+        engine.addRule(new PromotionRule.Percentage(0.10).forSeller("seller-1"));
+        Cart plainCart = new Cart();
+        Cart decoratedCart = new Cart();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = product("product-" + i, 1.0 + (i % 97) * 0.37, "seller-1");
+            engine.addRule(new PromotionRule.Percentage(0.05).forProduct(product.getId()));
+            engine.addRule(new PromotionRule.Percentage(0.20).forProduct(product.getId()));
+            plainCart.addItem(product, 1 + i % 5);
+
+            Product decorated = new DiscountedProduct(new DiscountedProduct(new DiscountedProduct(
+                    product("product-" + i, product.getPrice(), "seller-1"), 0.10), 0.05), 0.20);
+            decoratedCart.addItem(decorated, 1 + i % 5);
+        }
+
+        for (int i = 0; i < 200; i++) { // Warm up
+            engine.quote(plainCart);
+            decoratedCart.calculateTotal();
+        }
+
+        long begin = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < QUOTES; i++) {
+            sink += engine.quote(plainCart).getTotalCents();
+        }
+        double engineNanos = (System.nanoTime() - begin) / (double) QUOTES / PRODUCTS;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < QUOTES; i++) {
+            decoratedCart.calculateTotal();
+            sink += decoratedCart.getTotalCents();
+        }
+        double decoratorNanos = (System.nanoTime() - begin) / (double) QUOTES / PRODUCTS;
+        System.out.println(String.format("Promotions: engine %.0f ns/line, decorators %.0f ns/line (%.1fx)",
+                engineNanos, decoratorNanos, decoratorNanos / engineNanos));
+        assertTrue(sink > 0); // Keeps the quotes from being optimized away
+
+        // The engine rounds once per unit from an exact discount; the chains round their double product
+        long engineTotal = engine.quote(plainCart).getTotalCents();
+        long decoratedTotal = decoratedCart.getTotalCents();
+        assertTrue("engine " + engineTotal + " vs decorators " + decoratedTotal,
+                Math.abs(engineTotal - decoratedTotal) <= units(plainCart));
+    }
+
+    private static long units(Cart cart) {
+        long units = 0;
+        for (LineItem item : cart) {
+            units += item.getQuantity();
+        }
+        return units;
+    }
+
+    private static Product product(String id, double price, String sellerId) {
+        return new Product(id, id, "", price, 1_000, sellerId, price / 2, "product");
+    }
+}
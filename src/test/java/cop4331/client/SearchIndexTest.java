@@ -0,0 +1,196 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks ranking and incremental updates of the {@link SearchIndex}, and measures query latency over
+ * a catalog of a million products. Timings are printed; the assertions check the results.
+ * The benchmark only runs with {@code -Dcop4331.benchmarks=true}.
+ */
+public class SearchIndexTest {
+    private static final int PRODUCTS = 1_000_000;
+    private static final int VOCABULARY = 20_000;
+    private static final int QUERIES = 2_000;
+
+    @After
+    public void tearDown() {
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void tokenize() {
+        assertEquals(Arrays.asList("usb", "c", "cable", "2m", "café"), SearchIndex.tokenize("USB-C  cable, 2m (Café)"));
+        assertTrue(SearchIndex.tokenize(null).isEmpty());
+        assertTrue(SearchIndex.tokenize(" -- ").isEmpty());
+    }
+
+    @Test
+    public void ranking() {
+        SearchIndex index = new SearchIndex();
+        index.index(product("mug", "Coffee Mug", "A large ceramic mug"));
+        index.index(product("beans", "Espresso Beans", "Dark roast for coffee lovers"));
+        index.index(product("press", "French Press", "Makes coffee and tea"));
+        index.index(product("kettle", "Kettle", "Boils water for tea"));
+
+        // A name match outranks a description match
+        assertEquals(Arrays.asList("mug", "press", "beans"), ids(index.search("coffee", 10))); // Shorter first
+        assertEquals(Collections.singletonList("press"), ids(index.search("coffee tea", 10)));
+        assertEquals(2, index.search("coffee", 2).size());
+
+        // The last word matches as a prefix, earlier words only exactly
+        assertEquals(Arrays.asList("mug", "press", "beans"), ids(index.search("cof", 10)));
+        assertEquals(Collections.singletonList("kettle"), ids(index.search("tea kett", 10)));
+        assertTrue(index.search("cof tea", 10).isEmpty());
+        assertTrue(index.search("chai", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    public void incrementalUpdates() {
+        SearchIndex index = new SearchIndex();
+        Product mug = product("mug", "Coffee Mug", "Ceramic");
+        index.index(mug);
+        mug.setName("Travel Mug");
+        index.index(mug);
+        assertTrue(index.search("coffee", 10).isEmpty());
+        assertEquals(Collections.singletonList("mug"), ids(index.search("travel", 10)));
+
+        assertTrue(index.remove("mug"));
+        assertFalse(index.remove("mug"));
+        assertTrue(index.search("mug", 10).isEmpty());
+        assertEquals(0, index.size());
+
+        // Enough churn to purge deleted documents from the postings
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                index.index(product("p" + i, "Widget " + (char) ('a' + round), "Part " + i));
+            }
+        }
+        assertEquals(1_000, index.size());
+        assertTrue(index.search("widget d", 10).isEmpty());
+        assertEquals(10, index.search("widget e", 10).size());
+        assertEquals(Collections.singletonList("p7"), ids(index.search("widget e 7 part", 10)));
+    }
+
+    @Test
+    public void textWithTheSameHashIsReindexed() {
+        SearchIndex index = new SearchIndex();
+        Product product = product("p", "Aa", "Same");
+        index.index(product);
+        product.setName("BB"); // "Aa".hashCode() == "BB".hashCode()
+        index.index(product);
+        assertTrue(index.search("aa", 10).isEmpty());
+        assertEquals(Collections.singletonList("p"), ids(index.search("bb", 10)));
+    }
+
+    @Test
+    public void prefixExpansionKeepsTheExactTerm() {
+        SearchIndex index = new SearchIndex();
+        index.index(product("exact", "Cab", ""));
+        // More common longer terms than the expansion keeps
+        for (int i = 0; i < SearchIndex.MAX_EXPANSIONS + 10; i++) {
+            String term = "cab" + Integer.toString(i + 36, 36);
+            index.index(product("p" + i + "a", term, ""));
+            index.index(product("p" + i + "b", term, ""));
+        }
+        assertTrue(ids(index.search("cab", 1_000)).contains("exact"));
+    }
+
+    @Test
+    public void databaseKeepsIndexCurrent() {
+        Database database = new Database(new InMemoryStorageEngine(Collections.<User>emptyList(),
+                Collections.singletonList(product("mug", "Coffee Mug", "Ceramic"))));
+        Database.setInstance(database);
+        assertEquals("mug", database.searchProducts("coffee", 10).get(0).getId());
+
+        Seller seller = new Seller("seller-1", "seller", "password");
+        seller.addProduct(product("beans", "Coffee Beans", "Whole"));
+        assertEquals(2, database.searchProducts("coffee", 10).size());
+
+        Product renamed = product("mug", "Travel Mug", "Steel");
+        database.updateProduct(renamed);
+        assertEquals(Collections.singletonList("beans"), ids(database.searchProducts("coffee", 10)));
+
+        database.deleteProduct("beans");
+        assertTrue(database.searchProducts("coffee", 10).isEmpty());
+        assertEquals("Travel Mug", database.searchProducts("trav", 10).get(0).getName());
+    }
+
+    @Test
+    public void benchmarkMillionProducts() {
+        Assume.assumeTrue(Boolean.getBoolean(StorageEngineTest.BENCHMARKS_PROPERTY));
+        // Words follow a Zipf-like distribution, as in real catalogs: a few are in most products
+        Random random = new Random(42);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            words[i] = Integer.toString(i * 7919, 36) + "x";
+        }
+        SearchIndex index = new SearchIndex();
+        long begin = System.nanoTime();
+        for (int i = 0; i < PRODUCTS; i++) {
+            index.index(product("product-" + i, sentence(random, words, 3), sentence(random, words, 12)));
+        }
+        double indexSeconds = (System.nanoTime() - begin) / 1e9;
+        assertEquals(PRODUCTS, index.size());
+
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            String last = word(random, words);
+            String query = random.nextBoolean() ? last.substring(0, Math.max(1, last.length() - 2)) // Prefix
+                    : word(random, words) + " " + last;
+            queries.add(query);
+        }
+        long hits = 0;
+        for (String query : queries) { // Warm up
+            hits += index.search(query, 20).size();
+        }
+        begin = System.nanoTime();
+        long slowest = 0;
+        for (String query : queries) {
+            long start = System.nanoTime();
+            hits += index.search(query, 20).size();
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        double millis = (System.nanoTime() - begin) / 1e6 / QUERIES;
+        System.out.println(String.format("Search over %d products: indexed in %.1f s; %.2f ms/query, slowest %.1f ms",
+                PRODUCTS, indexSeconds, millis, slowest / 1e6));
+        assertTrue(hits > 0);
+    }
+
+    private static String sentence(Random random, String[] words, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(i == 0 ? "" : " ").append(word(random, words));
+        }
+        return text.toString();
+    }
+
+    private static String word(Random random, String[] words) {
+        double u = random.nextDouble();
+        return words[(int) (Math.pow(u, 3) * words.length)]; // Skewed toward the first words
+    }
+
+    private static List<String> ids(List<?> results) {
+        List<String> ids = new ArrayList<>();
+        for (Object result : results) {
+            ids.add(result instanceof Product ? ((Product) result).getId() : ((SearchIndex.Hit) result).getProductId());
+        }
+        return ids;
+    }
+
+    private static Product product(String id, String name, String description) {
+        return new Product(id, name, description, 1.0, 10, "seller-1", 0.5, "product");
+    }
+}
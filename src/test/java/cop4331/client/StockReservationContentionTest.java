@@ -0,0 +1,166 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Contention benchmark for stock reservation: many threads buy a scarce product together with a
+ * plentiful one. Throughput is printed; the assertions check that no unit is oversold and that
+ * every purchase got all of its line items or none.
+ */
+public class StockReservationContentionTest {
+    private static final int SCARCE_STOCK = 10_000;
+    private static final int ATTEMPTS_PER_THREAD = 2_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        OrderLedger.setInstance(new OrderLedger(folder.getRoot(), Journal.Durability.BUFFERED));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        OrderLedger.getInstance().close();
+        OrderLedger.setInstance(null);
+        Database.setInstance(null);
+    }
+
+    @Test
+    public void neverOversellsUnderContention() throws Exception {
+        Product scarce = new Product("scarce", "Scarce", "Hot product", 5.0, SCARCE_STOCK, "seller-1", 1.0, "product");
+        Product plentiful = new Product("plentiful", "Plentiful", "Cold product", 1.0, Integer.MAX_VALUE / 2, "seller-1", 0.5, "product");
+        int plentifulStock = plentiful.getQuantity();
+
+        int threads = Math.max(32, Runtime.getRuntime().availableProcessors() * 4);
+        LongAdder scarceSold = new LongAdder();
+        LongAdder plentifulSold = new LongAdder();
+        LongAdder attempts = new LongAdder();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers.add(new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                        int quantity = 1 + random.nextInt(3);
+                        StockReservation reservation = StockReservation.reserveAll(Arrays.asList(
+                                new LineItem(plentiful, quantity), new LineItem(scarce, quantity)));
+                        attempts.increment();
+                        if (reservation == null) {
+                            continue;
+                        }
+                        if (random.nextInt(10) == 0) {
+                            reservation.release(); // Abandoned, e.g. payment declined
+                        } else {
+                            reservation.commit();
+                            scarceSold.add(quantity);
+                            plentifulSold.add(quantity);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "buyer-" + t));
+        }
+
+        long begin = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        if (failure.get() != null) {
+            throw new AssertionError("Reservation failed", failure.get());
+        }
+        System.out.println(String.format("Stock reservation: %d threads, %.0f checkouts/s, %d of %d scarce units sold",
+                threads, attempts.sum() / seconds, scarceSold.sum(), SCARCE_STOCK));
+
+        assertTrue("scarce stock went negative", scarce.getQuantity() >= 0);
+        assertEquals(SCARCE_STOCK - scarceSold.sum(), scarce.getQuantity());
+        assertEquals(plentifulStock - plentifulSold.sum(), plentiful.getQuantity());
+        assertEquals("all reservations were committed or released", scarce.getQuantity(), scarce.getAvailableQuantity());
+        assertEquals(plentiful.getQuantity(), plentiful.getAvailableQuantity());
+    }
+
+    @Test
+    public void releasedPartialReservationRestoresStock() {
+        Product first = new Product("a", "A", "", 1.0, 5, "seller-1", 0.5, "product");
+        Product second = new Product("b", "B", "", 1.0, 1, "seller-1", 0.5, "product");
+
+        assertNull(StockReservation.reserveAll(Arrays.asList(new LineItem(first, 2), new LineItem(second, 2))));
+        assertEquals(5, first.getAvailableQuantity());
+        assertEquals(1, second.getAvailableQuantity());
+    }
+
+    @Test
+    public void onlyOneCustomerBuysTheLastUnit() throws Exception {
+        Seller seller = new Seller("seller-1", "seller", "password");
+        Product last = new Product("last", "Last One", "", 10.0, 1, seller.getId(), 4.0, "product");
+        List<User> users = new ArrayList<>();
+        users.add(seller);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Customer customer = new Customer("customer-" + i, "customer" + i, "password");
+            customer.getCart().addItem(last, 1);
+            customers.add(customer);
+            users.add(customer);
+        }
+        Database database = new Database(new InMemoryStorageEngine(users, Arrays.asList(last)));
+        Database.setInstance(database);
+
+        AtomicInteger successes = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (Customer customer : customers) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (customer.checkout()) {
+                    successes.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, successes.get());
+        assertEquals(0, database.getProductById("last").getQuantity());
+        assertEquals(10.0, database.getSellerById(seller.getId()).getFinancialData().getRevenues(), 1e-9);
+        assertFalse(last.tryReserve(1));
+        assertEquals(1, OrderLedger.getInstance().size());
+    }
+}
@@ -0,0 +1,290 @@
+package cop4331.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round-trips users and products through every {@link StorageEngine}: checkpoints, single changes,
+ * committed and rolled-back transactions, and reopening. The comparison benchmark of the engines
+ * only runs with {@code -Dcop4331.benchmarks=true}; its timings are printed.
+ */
+public class StorageEngineTest {
+    /** System property enabling the benchmarks. */
+    static final String BENCHMARKS_PROPERTY = "cop4331.benchmarks";
+
+    private static final int BENCHMARK_PRODUCTS = 50_000;
+    private static final int BENCHMARK_UPDATES = 2_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Opens an engine on a data directory.
+     */
+    private interface Engine {
+        StorageEngine open(File directory) throws IOException;
+    }
+
+    private static Map<String, Engine> engines() {
+        Map<String, Engine> engines = new LinkedHashMap<>();
+        engines.put("json", directory -> new JsonStorageEngine(directory, Journal.Durability.INTERVAL, 1000));
+        engines.put("binary", directory -> new BinaryStorageEngine(directory, Journal.Durability.INTERVAL, 1000));
+        engines.put("sql", SqlStorageEngine::new);
+        engines.put("segmented", SegmentedStorageEngine::new);
+        return engines;
+    }
+
+    @Test
+    public void everyEngineRoundTrips() throws IOException {
+        for (Map.Entry<String, Engine> engine : engines().entrySet()) {
+            roundTrip(engine.getKey(), engine.getValue());
+        }
+    }
+
+    @Test
+    public void sqlAndSegmentedImportJsonData() throws IOException {
+        File json = folder.newFolder("json");
+        State expected = new State();
+        try (StorageEngine engine = new JsonStorageEngine(json, Journal.Durability.BUFFERED, 0)) {
+            engine.load(new State());
+            List<User> users = new ArrayList<>();
+            users.add(new Customer("customer-1", "alice", "password"));
+            List<Product> products = products(20);
+            engine.checkpoint(users, products);
+            expected.putAll(users, products);
+
+            Product changed = product(3, 99.0, 1);
+            engine.upsertProduct(changed); // Still in the journal when imported
+            expected.loadProduct(changed);
+        }
+
+        for (String name : new String[] {"sql", "segmented"}) {
+            File directory = folder.newFolder(name + "-import");
+            for (File file : json.listFiles()) {
+                Files.copy(file.toPath(), new File(directory, file.getName()).toPath());
+            }
+            assertEquals(name, expected, load(engines().get(name), directory));
+        }
+    }
+
+    @Test
+    public void benchmarkEngines() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean(BENCHMARKS_PROPERTY));
+        List<User> users = new ArrayList<>();
+        users.add(new Seller("seller-1", "seller", "password"));
+        List<Product> products = products(BENCHMARK_PRODUCTS);
+
+        for (Map.Entry<String, Engine> engine : engines().entrySet()) {
+            File directory = folder.newFolder(engine.getKey() + "-benchmark");
+            long begin = System.nanoTime();
+            try (StorageEngine storage = engine.getValue().open(directory)) {
+                storage.load(new State());
+                storage.checkpoint(users, products);
+                storage.flush();
+            }
+            double checkpointMillis = (System.nanoTime() - begin) / 1e6;
+
+            double updateMicros;
+            try (StorageEngine storage = engine.getValue().open(directory)) {
+                storage.load(new State());
+                begin = System.nanoTime();
+                for (int i = 0; i < BENCHMARK_UPDATES; i++) {
+                    storage.upsertProduct(product(i * 7 % BENCHMARK_PRODUCTS, 5.0, i));
+                }
+                storage.flush();
+                updateMicros = (System.nanoTime() - begin) / 1e3 / BENCHMARK_UPDATES;
+            }
+
+            begin = System.nanoTime();
+            State loaded = load(engine.getValue(), directory);
+            double loadMillis = (System.nanoTime() - begin) / 1e6;
+            System.out.println(String.format("Storage %-9s %d products: checkpoint %.0f ms, update %.1f us/product, "
+                            + "load %.0f ms, %d KB on disk",
+                    engine.getKey(), BENCHMARK_PRODUCTS, checkpointMillis, updateMicros, loadMillis,
+                    size(directory) / 1024));
+            assertEquals(BENCHMARK_PRODUCTS, loaded.products.size());
+        }
+    }
+
+    private void roundTrip(String name, Engine engine) throws IOException {
+        File directory = folder.newFolder(name);
+        State expected = new State();
+        try (StorageEngine storage = engine.open(directory)) {
+            assertEquals(name, expected, loadInto(storage));
+
+            List<User> users = new ArrayList<>();
+            users.add(new Seller("seller-1", "seller", "password"));
+            users.add(new Customer("customer-1", "alice", "password"));
+            users.add(new Customer("customer-2", "bob", "password"));
+            List<Product> products = products(50);
+            storage.checkpoint(users, products);
+            expected.putAll(users, products);
+
+            Product changed = product(0, 12.5, 3);
+            storage.upsertProduct(changed);
+            expected.loadProduct(changed);
+            storage.deleteProduct("product-1");
+            expected.unloadProduct("product-1");
+            Customer added = new Customer("customer-3", "carol", "password");
+            storage.upsertUser(added);
+            expected.loadUser(added);
+
+            storage.begin();
+            Product inserted = product(50, 1.0, 1);
+            storage.upsertProduct(inserted);
+            storage.deleteUser("customer-2");
+            storage.commit();
+            expected.loadProduct(inserted);
+            expected.unloadUser("customer-2");
+
+            storage.begin();
+            storage.upsertProduct(product(51, 1.0, 1));
+            storage.deleteProduct("product-2");
+            storage.rollback();
+            storage.flush();
+        }
+        assertEquals(name, expected, load(engine, directory));
+
+        // A checkpoint over a reopened engine replaces everything written before it
+        try (StorageEngine storage = engine.open(directory)) {
+            loadInto(storage);
+            List<Product> products = products(10);
+            products.add(product(60, 2.0, 2));
+            List<User> users = new ArrayList<>();
+            users.add(new Customer("customer-1", "alice", "password"));
+            storage.checkpoint(users, products);
+            expected = new State();
+            expected.putAll(users, products);
+
+            storage.deleteProduct("product-4");
+            expected.unloadProduct("product-4");
+        }
+        assertEquals(name, expected, load(engine, directory));
+    }
+
+    private State load(Engine engine, File directory) throws IOException {
+        try (StorageEngine storage = engine.open(directory)) {
+            return loadInto(storage);
+        }
+    }
+
+    private State loadInto(StorageEngine storage) throws IOException {
+        State state = new State();
+        storage.load(state);
+        return state;
+    }
+
+    private static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(product(i, 1.0 + i % 100, i % 20));
+        }
+        return products;
+    }
+
+    private static Product product(int i, double price, int quantity) {
+        return new Product("product-" + i, "Product " + i, "Description of product " + i, price, quantity,
+                "seller-1", price / 2, "product");
+    }
+
+    private static long size(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += size(child);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Loaded state, kept as the JSON of each user and product so engines can be compared by value.
+     */
+    private class State implements StorageEngine.Loader {
+        final Map<String, String> users = new TreeMap<>();
+        final Map<String, String> products = new TreeMap<>();
+
+        void putAll(List<User> users, List<Product> products) {
+            for (User user : users) {
+                loadUser(user);
+            }
+            for (Product product : products) {
+                loadProduct(product);
+            }
+        }
+
+        @Override
+        public void loadUser(User user) {
+            users.put(user.getId(), json(user));
+        }
+
+        @Override
+        public void loadProduct(Product product) {
+            products.put(product.getId(), json(product));
+        }
+
+        @Override
+        public void unloadUser(String userId) {
+            users.remove(userId);
+        }
+
+        @Override
+        public void unloadProduct(String productId) {
+            products.remove(productId);
+        }
+
+        @Override
+        public void loadProducts(List<Product> list, IntFunction<String> idAt) {
+            for (Product product : list) {
+                loadProduct(product);
+            }
+        }
+
+        private String json(Object value) {
+            try {
+                return objectMapper.writeValueAsString(value);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof State && users.equals(((State) other).users)
+                    && products.equals(((State) other).products);
+        }
+
+        @Override
+        public int hashCode() {
+            return users.hashCode() * 31 + products.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return users.keySet() + " " + products.keySet();
+        }
+    }
+}